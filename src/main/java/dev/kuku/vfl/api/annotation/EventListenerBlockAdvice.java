@@ -87,15 +87,15 @@ public class EventListenerBlockAdvice {
         }
 
         BlockContext currentContext = stack.pop();
-        Block eventListenerBlock = currentContext.getBlock();
+        String eventListenerBlockId = currentContext.getBlockId();
 
         if (throwable != null) {
-            BlockLog errorLog = new BlockLog(throwable.getMessage(), currentContext.getBlock().getId(), currentContext.getCurrentLogId(), LogTypeBase.ERROR);
+            BlockLog errorLog = new BlockLog(throwable.getMessage(), eventListenerBlockId, currentContext.getCurrentLogId(), LogTypeBase.ERROR);
             buffer.pushLog(errorLog);
         }
         //Block finished and returned
         long time = Instant.now().toEpochMilli();
-        buffer.pushBlockExited(eventListenerBlock.getId(), time);
-        buffer.pushBlockReturned(eventListenerBlock.getId(), time);
+        buffer.pushBlockExited(eventListenerBlockId, time);
+        buffer.pushBlockReturned(eventListenerBlockId, time);
     }
 }
\ No newline at end of file
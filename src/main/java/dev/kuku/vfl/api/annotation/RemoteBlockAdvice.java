@@ -85,10 +85,10 @@ public class RemoteBlockAdvice {
 
         BlockContext context = stack.pop();
         if (throwable != null) {
-            BlockLog errorLog = new BlockLog("Exception " + throwable.getMessage(), context.getBlock().getId(), context.getCurrentLogId(), LogTypeBase.ERROR);
+            BlockLog errorLog = new BlockLog("Exception " + throwable.getMessage(), context.getBlockId(), context.getCurrentLogId(), LogTypeBase.ERROR);
             buffer.pushLog(errorLog);
             context.setCurrentLogId(errorLog.getId());
         }
-        buffer.pushBlockExited(context.getBlock().getId(), Instant.now().toEpochMilli());
+        buffer.pushBlockExited(context.getBlockId(), Instant.now().toEpochMilli());
     }
 }
\ No newline at end of file
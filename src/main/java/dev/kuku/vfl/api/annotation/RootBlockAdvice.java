@@ -77,15 +77,15 @@ public class RootBlockAdvice {
         if (throwable != null) {
             logger.error("Root Method threw an exception: {}", throwable.getMessage(), throwable);
             BlockLog errorLog = new BlockLog("Exception : " + throwable.getMessage(),
-                    blockContext.getBlock().getId(),
+                    blockContext.getBlockId(),
                     blockContext.getCurrentLogId(),
                     LogTypeBase.ERROR);
             //blockContext.setCurrentLogId(errorLog.getId()); no need to set context anymore, its the last log of the block
             buffer.pushLog(errorLog);
         }
         long time = Instant.now().toEpochMilli();
-        buffer.pushBlockExited(blockContext.getBlock().getId(), time);
-        buffer.pushBlockReturned(blockContext.getBlock().getId(), time);
-        buffer.forceFlush();
+        buffer.pushBlockExited(blockContext.getBlockId(), time);
+        buffer.pushBlockReturned(blockContext.getBlockId(), time);
+        buffer.flushTrace(blockContext.getBlockId());
     }
 }
\ No newline at end of file
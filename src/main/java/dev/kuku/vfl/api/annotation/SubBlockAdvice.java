@@ -1,11 +1,14 @@
 package dev.kuku.vfl.api.annotation;
 
 import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.buffer.VFLDeferredCapture;
 import dev.kuku.vfl.internal.dto.BlockContext;
 import dev.kuku.vfl.internal.models.Block;
 import dev.kuku.vfl.internal.models.BlockLog;
 import dev.kuku.vfl.internal.models.logType.LogTypeBase;
 import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import dev.kuku.vfl.internal.util.LazyId;
+import dev.kuku.vfl.internal.util.VFLIds;
 import net.bytebuddy.asm.Advice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +19,9 @@ import java.util.Stack;
 
 /**
  * Internal ByteBuddy advice class injected into methods annotated with {@link dev.kuku.vfl.api.annotation.SubBlock}.
+ * <p>
+ * If the buffer implements {@link VFLDeferredCapture}, the advice only records the method name, a nanoTime reading
+ * and reserved ids, and the buffer builds the block and log objects on its own thread.
  */
 public final class SubBlockAdvice {
     public static final Logger log = LoggerFactory.getLogger(SubBlockAdvice.class);
@@ -51,14 +57,18 @@ public final class SubBlockAdvice {
             log.error("Sub block method called but parent context is null!");
             return;
         }
+        if (buffer instanceof VFLDeferredCapture) {
+            enterDeferred((VFLDeferredCapture) buffer, method.getName(), threadContextStack, parentContext);
+            return;
+        }
         //Create sub block for the method, createdAt will be set by constructor
-        Block subBlock = new Block(method.getName(), parentContext.getBlock().getId());
+        Block subBlock = new Block(method.getName(), parentContext.getBlockId());
         long time = Instant.now().toEpochMilli();
         buffer.pushBlock(subBlock);
         buffer.pushBlockEntered(subBlock.getId(), time);
         //Create sub block start log for current block's context
         BlockLog subBlockStartLog = new BlockLog(null,
-                parentContext.getBlock().getId(),
+                parentContext.getBlockId(),
                 parentContext.getCurrentLogId(),
                 subBlock.getId(),
                 LogTypeTraceBlock.TRACE_PRIMARY);
@@ -69,6 +79,21 @@ public final class SubBlockAdvice {
         parentContext.setCurrentLogId(subBlockStartLog.getId());
     }
 
+    /**
+     * Same as the regular entry, but leaves building the block, the trace log and their ids to the buffer.
+     */
+    private void enterDeferred(VFLDeferredCapture capture, String name, Stack<BlockContext> threadContextStack, BlockContext parentContext) {
+        long now = System.nanoTime();
+        // One reservation covers the block id and the start log id
+        long sequence = VFLIds.reserve(2);
+        LazyId subBlockId = LazyId.reserved(now, sequence);
+        LazyId subBlockStartLogId = LazyId.reserved(now, sequence + 1);
+        capture.captureSubBlockEntered(name, now, subBlockId, parentContext.getBlockHandle(),
+                subBlockStartLogId, parentContext.getCurrentLogHandle());
+        threadContextStack.push(new BlockContext(name, subBlockId, now, parentContext));
+        parentContext.setCurrentLogId(subBlockStartLogId);
+    }
+
     public void methodExited(@Advice.Origin Method method, @Advice.AllArguments Object[] args, @Advice.Thrown Throwable throwable) {
         //Validation
         Stack<BlockContext> threadContextStack = VFLAnnotation.threadContextStack.get();
@@ -89,12 +114,16 @@ public final class SubBlockAdvice {
         //If exception was thrown, log it
         if (throwable != null) {
             BlockLog errorLog = new BlockLog("Exception : " + throwable.getMessage(),
-                    subBlockContext.getBlock().getId(), subBlockContext.getCurrentLogId(), LogTypeBase.ERROR);
+                    subBlockContext.getBlockId(), subBlockContext.getCurrentLogId(), LogTypeBase.ERROR);
             buffer.pushLog(errorLog);
         }
+        if (buffer instanceof VFLDeferredCapture) {
+            ((VFLDeferredCapture) buffer).captureSubBlockExited(subBlockContext.getBlockHandle(), System.nanoTime());
+            return;
+        }
         long time = Instant.now().toEpochMilli();
-        buffer.pushBlockExited(subBlockContext.getBlock().getId(), time);
-        buffer.pushBlockReturned(subBlockContext.getBlock().getId(), time);
+        buffer.pushBlockExited(subBlockContext.getBlockId(), time);
+        buffer.pushBlockReturned(subBlockContext.getBlockId(), time);
 
     }
 }
\ No newline at end of file
@@ -105,11 +105,11 @@ public class VFLAnnotation extends VFLBase {
             msg = CommonUtil.FormatMessage(message, args);
         }
         //Create publish block and push it
-        Block publishBlock = new Block(publisherName, currentContext.getBlock().getId());
+        Block publishBlock = new Block(publisherName, currentContext.getBlockId());
         localBuffer.pushBlock(publishBlock);
         localBuffer.pushBlockEntered(publishBlock.getId(), Instant.now().toEpochMilli());
         //Create publish log and push it
-        BlockLog publishLog = new BlockLog(msg, currentContext.getBlock().getId(), currentContext.getCurrentLogId(), publishBlock.getId(), LogTypeTraceBlock.PUBLISH_EVENT);
+        BlockLog publishLog = new BlockLog(msg, currentContext.getBlockId(), currentContext.getCurrentLogId(), publishBlock.getId(), LogTypeTraceBlock.PUBLISH_EVENT);
         localBuffer.pushLog(publishLog);
         //Set start and end time for the publish block
         long time = Instant.now().toEpochMilli();
@@ -135,9 +135,9 @@ public class VFLAnnotation extends VFLBase {
         }
 
         BlockContext currentContext = stack.peek();
-        Block remoteBlock = new Block(blockName, currentContext.getBlock().getId());
+        Block remoteBlock = new Block(blockName, currentContext.getBlockId());
         localBuffer.pushBlock(remoteBlock);
-        BlockLog remoteLog = new BlockLog(message, currentContext.getBlock().getId(), currentContext.getCurrentLogId(), remoteBlock.getId(), LogTypeTraceBlock.TRACE_REMOTE);
+        BlockLog remoteLog = new BlockLog(message, currentContext.getBlockId(), currentContext.getCurrentLogId(), remoteBlock.getId(), LogTypeTraceBlock.TRACE_REMOTE);
         localBuffer.pushLog(remoteLog);
         currentContext.setCurrentLogId(remoteLog.getId());
         try {
@@ -145,7 +145,7 @@ public class VFLAnnotation extends VFLBase {
             return fn.apply(new RemoteBlockWrapper(remoteBlock));
         } catch (Exception e) {
             log.error("[VFL] Remote block failed", e);
-            BlockLog errorLog = new BlockLog("Exception executing remote block ${e.getMessage()}", currentContext.getBlock().getId(), currentContext.getCurrentLogId(), LogTypeBase.ERROR);
+            BlockLog errorLog = new BlockLog("Exception executing remote block ${e.getMessage()}", currentContext.getBlockId(), currentContext.getCurrentLogId(), LogTypeBase.ERROR);
             buffer.pushLog(errorLog);
             currentContext.setCurrentLogId(errorLog.getId());
             throw e;
@@ -250,7 +250,7 @@ public class VFLAnnotation extends VFLBase {
             }
             var ctx = stack.pop();
             if (stack.isEmpty() && clean) {
-                log.debug("[VFL] Emptied block context after popping ${ctx.getBlock().getId().substring(0,5)}");
+                log.debug("[VFL] Emptied block context after popping ${ctx.getBlockId().substring(0,5)}");
                 VFLAnnotation.threadContextStack.remove();
             }
             return ctx;
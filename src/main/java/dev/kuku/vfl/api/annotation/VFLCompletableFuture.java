@@ -49,11 +49,11 @@ public class VFLCompletableFuture {
 
             try {
                 //3. Create sub block to represent this async operation
-                asyncBlock = new Block(blockName, ctxCopy.getBlock().getId());
+                asyncBlock = new Block(blockName, ctxCopy.getBlockId());
 
                 //4. Create async sub block start log for parent log (ctxCopy) to show the start of a parallel block starting
                 var asyncFireForgetBlockStartLog = new BlockLog(message,
-                        ctxCopy.getBlock().getId(),
+                        ctxCopy.getBlockId(),
                         ctxCopy.getCurrentLogId(),
                         asyncBlock.getId(),
                         LogTypeTraceBlock.TRACE_PARALLEL
@@ -87,7 +87,7 @@ public class VFLCompletableFuture {
                     if (currentContext != null && VFLAnnotation.buffer != null) {
                         BlockLog errorLog = new BlockLog(
                                 "Exception: " + e.getMessage(),
-                                currentContext.getBlock().getId(),
+                                currentContext.getBlockId(),
                                 currentContext.getCurrentLogId(),
                                 LogTypeBase.ERROR
                         );
@@ -103,8 +103,8 @@ public class VFLCompletableFuture {
                 } else {
                     long time = Instant.now().toEpochMilli();
                     // Complete block lifecycle
-                    VFLAnnotation.buffer.pushBlockExited(poppedCt.getBlock().getId(), time);
-                    VFLAnnotation.buffer.pushBlockReturned(poppedCt.getBlock().getId(), time);
+                    VFLAnnotation.buffer.pushBlockExited(poppedCt.getBlockId(), time);
+                    VFLAnnotation.buffer.pushBlockReturned(poppedCt.getBlockId(), time);
                 }
             }
         };
@@ -147,11 +147,11 @@ public class VFLCompletableFuture {
 
             try {
                 //3. Create sub block to represent this async operation
-                asyncBlock = new Block(blockName, ctxCopy.getBlock().getId());
+                asyncBlock = new Block(blockName, ctxCopy.getBlockId());
 
                 //4. Create async sub block start log for parent log (ctxCopy) to show the start of a parallel block starting
                 var asyncFireForgetBlockStartLog = new BlockLog(message,
-                        ctxCopy.getBlock().getId(),
+                        ctxCopy.getBlockId(),
                         ctxCopy.getCurrentLogId(),
                         asyncBlock.getId(),
                         LogTypeTraceBlock.TRACE_PARALLEL
@@ -182,7 +182,7 @@ public class VFLCompletableFuture {
                     if (currentContext != null) {
                         BlockLog resultLog = new BlockLog(
                                 "Async operation completed successfully" + (result != null ? ": " + result : ""),
-                                currentContext.getBlock().getId(),
+                                currentContext.getBlockId(),
                                 currentContext.getCurrentLogId(),
                                 LogTypeBase.INFO
                         );
@@ -201,7 +201,7 @@ public class VFLCompletableFuture {
                     if (currentContext != null && VFLAnnotation.buffer != null) {
                         BlockLog errorLog = new BlockLog(
                                 "Exception: " + e.getMessage(),
-                                currentContext.getBlock().getId(),
+                                currentContext.getBlockId(),
                                 currentContext.getCurrentLogId(),
                                 LogTypeBase.ERROR
                         );
@@ -217,8 +217,8 @@ public class VFLCompletableFuture {
                 } else {
                     // Complete block lifecycle
                     long time = Instant.now().toEpochMilli();
-                    VFLAnnotation.buffer.pushBlockExited(poppedCt.getBlock().getId(), time);
-                    VFLAnnotation.buffer.pushBlockReturned(poppedCt.getBlock().getId(), time);
+                    VFLAnnotation.buffer.pushBlockExited(poppedCt.getBlockId(), time);
+                    VFLAnnotation.buffer.pushBlockReturned(poppedCt.getBlockId(), time);
                 }
             }
         };
@@ -0,0 +1,201 @@
+package dev.kuku.vfl.api.buffer;
+
+import dev.kuku.vfl.internal.metrics.HubMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the batch size trigger and periodic flush interval of an {@link AsynchronousBuffer} at runtime.
+ * <p>
+ * The tuner is fed the size, latency and outcome of every flush, and derives the push rate from the items flushed
+ * between two adjustments. On every periodic flush it:
+ * <ul>
+ *     <li>Shrinks the batch size by a quarter when flushes take longer than the target latency, and grows it by a
+ *     fixed step of 1/32 of the batch size range when they are comfortably faster</li>
+ *     <li>Halves the batch size and doubles the interval after a failed flush, backing off from an unhealthy hub</li>
+ *     <li>Otherwise sets the interval to the time the current push rate needs to fill one batch, so quiet
+ *     applications still flush regularly and busy ones are flushed by size</li>
+ * </ul>
+ * Both settings always stay within the configured bounds, {@code maxBatchSize} also caps the payload per request.
+ * <p>
+ * A flush only counts as failed if the flush handler throws. Handlers that log errors instead, like a
+ * {@code VFLHubFlushHandler} with {@code throwExceptions} off, must be watched with {@link #watchHubFailures(HubMetrics)}
+ * for the tuner to back off.
+ * <p>
+ * A tuner belongs to a single buffer.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class AdaptiveFlushTuner {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveFlushTuner.class);
+    // Weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.3;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int minIntervalMs;
+    private final int maxIntervalMs;
+    private final long targetFlushLatencyNanos;
+    // Additive increase step of the batch size
+    private final int growthStep;
+
+    // Effective settings, read on every push
+    private volatile int batchSize;
+    private volatile int flushIntervalMs;
+
+    // Measurements, guarded by this
+    private double averageLatencyNanos = -1;
+    private long itemsSinceAdjust = 0;
+    private int failuresSinceAdjust = 0;
+    private long lastAdjustNanos = System.nanoTime();
+    private double pushRatePerSecond = 0;
+    // Null unless hub failures are watched
+    private HubMetrics hubMetrics;
+    private long lastHubFailureCount;
+
+    /**
+     * @param minBatchSize         Smallest batch size trigger
+     * @param maxBatchSize         Largest batch size trigger, also bounding the payload of one flush
+     * @param minIntervalMs        Shortest periodic flush interval in milliseconds
+     * @param maxIntervalMs        Longest periodic flush interval in milliseconds
+     * @param targetFlushLatencyMs Flush handler latency the batch size is tuned towards
+     */
+    public AdaptiveFlushTuner(int minBatchSize, int maxBatchSize, int minIntervalMs, int maxIntervalMs,
+                              int targetFlushLatencyMs) {
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException("Batch size bounds must satisfy 0 < min <= max");
+        }
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("Interval bounds must satisfy 0 < min <= max");
+        }
+        if (targetFlushLatencyMs <= 0) {
+            throw new IllegalArgumentException("targetFlushLatencyMs must be positive");
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.targetFlushLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetFlushLatencyMs);
+        this.growthStep = Math.max(1, (maxBatchSize - minBatchSize) / 32);
+        this.batchSize = minBatchSize;
+        this.flushIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * Also counts failed hub requests, error responses and encode failures of the handler as failed flushes, for
+     * handlers that do not throw on hub errors.
+     *
+     * @param hubMetrics metrics of the hub flush handler, see {@code VFLHubFlushHandler.getMetrics()}
+     * @return this tuner
+     */
+    public synchronized AdaptiveFlushTuner watchHubFailures(HubMetrics hubMetrics) {
+        this.hubMetrics = hubMetrics;
+        this.lastHubFailureCount = hubFailureCount(hubMetrics);
+        return this;
+    }
+
+    private static long hubFailureCount(HubMetrics hubMetrics) {
+        return hubMetrics.getFailedRequestCount() + hubMetrics.getErrorResponseCount()
+               + hubMetrics.getEncodeFailureCount();
+    }
+
+    /**
+     * Sets the starting point, clamped to the bounds. Called by the buffer on construction.
+     */
+    synchronized void start(int initialBatchSize, int initialIntervalMs) {
+        batchSize = clamp(initialBatchSize, minBatchSize, maxBatchSize);
+        flushIntervalMs = clamp(initialIntervalMs, minIntervalMs, maxIntervalMs);
+        lastAdjustNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the outcome of one flush handler call sequence.
+     */
+    synchronized void recordFlush(int itemCount, long latencyNanos, boolean succeeded) {
+        itemsSinceAdjust += itemCount;
+        if (!succeeded) {
+            failuresSinceAdjust++;
+            return;
+        }
+        averageLatencyNanos = averageLatencyNanos < 0
+                ? latencyNanos
+                : SMOOTHING * latencyNanos + (1 - SMOOTHING) * averageLatencyNanos;
+    }
+
+    /**
+     * Recomputes the effective settings from the measurements since the last call.
+     */
+    synchronized void adjust() {
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(1, now - lastAdjustNanos);
+        lastAdjustNanos = now;
+        double rate = itemsSinceAdjust * 1e9 / elapsedNanos;
+        pushRatePerSecond = SMOOTHING * rate + (1 - SMOOTHING) * pushRatePerSecond;
+        itemsSinceAdjust = 0;
+        if (hubMetrics != null) {
+            long hubFailures = hubFailureCount(hubMetrics);
+            failuresSinceAdjust += (int) Math.min(Integer.MAX_VALUE, hubFailures - lastHubFailureCount);
+            lastHubFailureCount = hubFailures;
+        }
+
+        int newBatchSize = batchSize;
+        int newInterval;
+        if (failuresSinceAdjust > 0) {
+            newBatchSize = batchSize / 2;
+            newInterval = flushIntervalMs * 2;
+            failuresSinceAdjust = 0;
+        } else {
+            if (averageLatencyNanos > targetFlushLatencyNanos * 1.2) {
+                newBatchSize = batchSize - batchSize / 4;
+            } else if (averageLatencyNanos >= 0 && averageLatencyNanos < targetFlushLatencyNanos * 0.8) {
+                newBatchSize = batchSize + growthStep;
+            }
+            newInterval = pushRatePerSecond <= 0
+                    ? maxIntervalMs
+                    : (int) Math.min(Integer.MAX_VALUE, newBatchSize * 1000.0 / pushRatePerSecond);
+        }
+        newBatchSize = clamp(newBatchSize, minBatchSize, maxBatchSize);
+        newInterval = clamp(newInterval, minIntervalMs, maxIntervalMs);
+        if (newBatchSize != batchSize || newInterval != flushIntervalMs) {
+            log.debug("Tuned flush settings: batch size {} -> {}, interval {} -> {} ms",
+                    batchSize, newBatchSize, flushIntervalMs, newInterval);
+        }
+        batchSize = newBatchSize;
+        flushIntervalMs = newInterval;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * @return current batch size trigger
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return current periodic flush interval in milliseconds
+     */
+    public int getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * @return smoothed flush handler latency in milliseconds, or -1 before the first successful flush
+     */
+    public synchronized double getAverageFlushLatencyMs() {
+        return averageLatencyNanos < 0 ? -1 : averageLatencyNanos / 1e6;
+    }
+
+    /**
+     * @return smoothed rate of items passing through the buffer per second
+     */
+    public synchronized double getPushRatePerSecond() {
+        return pushRatePerSecond;
+    }
+}
@@ -1,19 +1,30 @@
 package dev.kuku.vfl.api.buffer;
 
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.FlushBatchPool;
+import dev.kuku.vfl.internal.buffer.OpenTraces;
+import dev.kuku.vfl.internal.buffer.TraceSampler;
 import dev.kuku.vfl.internal.buffer.VFLBuffer;
 import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
 import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
 import dev.kuku.vfl.internal.models.BlockLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -24,36 +35,64 @@ import java.util.concurrent.atomic.AtomicInteger;
  *     <li>Concurrent flushes without blocking operations</li>
  *     <li>Automatic flushing when buffer reaches capacity</li>
  *     <li>Periodic flushing at configured intervals</li>
- *     <li>Force flush with timeout for graceful shutdown</li>
+ *     <li>Non-blocking {@link #flushAsync()} and force flush with timeout built on top of it</li>
+ *     <li>Optional cap on in-flight items with a selectable {@link OverflowPolicy}</li>
+ *     <li>O(1) batch swap on flush, with drained batches recycled through a pool</li>
+ *     <li>Optional trace-aware flushing, where a trace's items are held until its root block completes</li>
+ *     <li>Optional runtime tuning of batch size and flush interval through an {@link AdaptiveFlushTuner}</li>
+ *     <li>Push, flush and drop metrics through {@link #getMetrics()}</li>
  * </ul>
+ * The optional features are configured through {@link #builder(VFLFlushHandler)}.
  * <p>
  * Thread Safety: This class is thread-safe and designed for concurrent access.
  */
 public class AsynchronousBuffer implements VFLBuffer {
 
     private static final Logger log = LoggerFactory.getLogger(AsynchronousBuffer.class);
-    private static final int FORCE_FLUSH_POLL_INTERVAL_MS = 50;
+    private static final int MAX_POOLED_BATCHES = 16;
 
     // Configuration
     private final int bufferSize;
+    private final int flushIntervalMs;
     private final int flushTimeoutMs;
     private final ExecutorService flushExecutor;
     private final ScheduledExecutorService periodicFlushScheduler;
     private final VFLFlushHandler flushHandler;
+    // Null when the batch size and interval are fixed
+    private final AdaptiveFlushTuner flushTuner;
+    // Whether the executors were created by this buffer and are shut down with it
+    private final boolean ownsFlushExecutor;
+    private final boolean ownsScheduler;
+    private volatile boolean shutdown = false;
+    // Null when the adaptive tuner schedules each periodic flush itself
+    private ScheduledFuture<?> periodicFlush;
 
     // Buffer state - all access must be synchronized
-    private final List<Block> blocks = new ArrayList<>();
-    private final List<BlockLog> logs = new ArrayList<>();
-    private final Map<String, Long> blockEntered = new HashMap<>();
-    private final Map<String, Long> blockExited = new HashMap<>();
-    private final Map<String, Long> blockReturned = new HashMap<>();
-    private int totalSize = 0;
+    private final FlushBatchPool batchPool;
+    // Items ready to be flushed
+    private FlushBatch activeBatch;
+    // Items of traces still running, null unless trace-aware flushing is enabled
+    private final OpenTraces openTraces;
 
     // Flush operation tracking
-    private final AtomicInteger pendingFlushCount = new AtomicInteger(0);
+    // Completion of every batch submitted but not yet processed by the flush handler
+    private final Set<CompletableFuture<Void>> pendingFlushes = ConcurrentHashMap.newKeySet();
+    // Batches handed to the executor but not yet picked up by a flush task, oldest first
+    private final ConcurrentLinkedDeque<PendingFlush> queuedBatches = new ConcurrentLinkedDeque<>();
+
+    // Overflow control
+    private final int maxInFlightItems;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicInteger inFlightItems = new AtomicInteger(0);
+    // Null unless the overflow policy samples
+    private final TraceSampler traceSampler;
+    private final Object capacityMonitor = new Object();
+
+    private final BufferMetrics metrics;
 
     /**
-     * Creates a new AsynchronousBuffer with the specified configuration.
+     * Creates a new unbounded AsynchronousBuffer with the specified configuration.
+     * See {@link #builder(VFLFlushHandler)} for the optional features.
      *
      * @param bufferSize             Maximum number of items to buffer before auto-flush
      * @param flushIntervalMs        Interval between periodic flushes in milliseconds
@@ -69,21 +108,111 @@ public class AsynchronousBuffer implements VFLBuffer {
             ExecutorService flushExecutor,
             ScheduledExecutorService periodicFlushScheduler,
             VFLFlushHandler flushHandler) {
+        this(builder(flushHandler)
+                .bufferSize(bufferSize)
+                .flushIntervalMs(flushIntervalMs)
+                .flushTimeoutMs(flushTimeoutMs)
+                .flushExecutor(flushExecutor)
+                .periodicFlushScheduler(periodicFlushScheduler));
+    }
+
+    /**
+     * Creates a new unbounded AsynchronousBuffer that runs every flush on its own virtual thread.
+     * <p>
+     * Slow flush handler calls then wait without holding platform threads, so no flush pool has to be sized.
+     * See {@link VirtualThreadFlushExecutor} for runtimes older than Java 21. The buffer owns the executors it creates,
+     * call {@link #shutdown()} to stop them.
+     *
+     * @param bufferSize           Maximum number of items to buffer before auto-flush
+     * @param flushIntervalMs      Interval between periodic flushes in milliseconds
+     * @param flushTimeoutMs       Maximum time to wait for flush operations during force flush
+     * @param maxConcurrentFlushes Maximum number of flush handler calls in flight at the same time
+     * @param flushHandler         Handler that performs the actual flush operations
+     */
+    public AsynchronousBuffer(
+            int bufferSize,
+            int flushIntervalMs,
+            int flushTimeoutMs,
+            int maxConcurrentFlushes,
+            VFLFlushHandler flushHandler) {
+        this(builder(flushHandler)
+                .bufferSize(bufferSize)
+                .flushIntervalMs(flushIntervalMs)
+                .flushTimeoutMs(flushTimeoutMs)
+                .maxConcurrentFlushes(maxConcurrentFlushes));
+    }
 
-        this.bufferSize = bufferSize;
-        this.flushTimeoutMs = flushTimeoutMs;
-        this.flushExecutor = flushExecutor;
-        this.periodicFlushScheduler = periodicFlushScheduler;
-        this.flushHandler = flushHandler;
+    /**
+     * Starts configuring a buffer with the optional features: an in-flight cap with an overflow policy,
+     * trace-aware flushing and an {@link AdaptiveFlushTuner}. Unset executors are created by the buffer, see
+     * {@link Builder#maxConcurrentFlushes(int)}.
+     *
+     * @param flushHandler Handler that performs the actual flush operations
+     */
+    public static Builder builder(VFLFlushHandler flushHandler) {
+        return new Builder(flushHandler);
+    }
 
-        startPeriodicFlushing(flushIntervalMs);
+    private AsynchronousBuffer(Builder builder) {
+        this.bufferSize = builder.bufferSize;
+        this.flushIntervalMs = builder.flushIntervalMs;
+        this.flushTimeoutMs = builder.flushTimeoutMs;
+        this.ownsFlushExecutor = builder.flushExecutor == null;
+        this.flushExecutor = ownsFlushExecutor
+                ? new VirtualThreadFlushExecutor(builder.maxConcurrentFlushes)
+                : builder.flushExecutor;
+        this.ownsScheduler = builder.periodicFlushScheduler == null;
+        this.periodicFlushScheduler = ownsScheduler
+                ? VirtualThreadFlushExecutor.newPeriodicFlushScheduler()
+                : builder.periodicFlushScheduler;
+        this.flushHandler = builder.flushHandler;
+        this.flushTuner = builder.flushTuner;
+        this.maxInFlightItems = builder.maxInFlightItems;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.batchPool = new FlushBatchPool(MAX_POOLED_BATCHES, bufferSize);
+        this.activeBatch = batchPool.acquire();
+        this.openTraces = builder.traceAwareFlush ? new OpenTraces(MAX_POOLED_BATCHES, builder.maxTraceAgeMs, builder.maxOpenTraces) : null;
+        this.traceSampler = maxInFlightItems > 0 && overflowPolicy.getMode() == OverflowPolicy.Mode.SAMPLE
+                ? new TraceSampler(overflowPolicy.getSampleRate(), builder.maxTraceAgeMs, builder.maxOpenTraces)
+                : null;
+        this.metrics = new BufferMetrics(this::getCurrentBufferSize, this::getPendingFlushCount);
+
+        if (flushTuner != null) {
+            flushTuner.start(bufferSize, flushIntervalMs);
+            scheduleTunedFlush();
+            log.debug("Started adaptive periodic flushing with initial interval {} ms", flushTuner.getFlushIntervalMs());
+        } else {
+            startPeriodicFlushing(flushIntervalMs);
+        }
+    }
+
+    /**
+     * Schedules the next periodic flush with the tuner's current interval.
+     * Each run adjusts the settings and schedules the next one, so interval changes apply immediately.
+     */
+    private void scheduleTunedFlush() {
+        if (shutdown) {
+            return;
+        }
+        try {
+            periodicFlushScheduler.schedule(() -> {
+                try {
+                    flushTuner.adjust();
+                    performPeriodicFlush();
+                } finally {
+                    scheduleTunedFlush();
+                }
+            }, flushTuner.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Periodic flush scheduler shut down, stopping adaptive flushing");
+        }
     }
 
     /**
      * Starts the periodic flush task that runs at fixed intervals.
      */
     private void startPeriodicFlushing(int flushIntervalMs) {
-        periodicFlushScheduler.scheduleWithFixedDelay(
+        periodicFlush = periodicFlushScheduler.scheduleWithFixedDelay(
                 this::performPeriodicFlush,
                 flushIntervalMs,
                 flushIntervalMs,
@@ -96,11 +225,17 @@ public class AsynchronousBuffer implements VFLBuffer {
      * Performs a periodic flush if there's data to flush.
      */
     private void performPeriodicFlush() {
+        if (shutdown) {
+            return;
+        }
         try {
-            FlushData dataToFlush = copyBufferContentsAndClear();
-            if (!dataToFlush.isEmpty()) {
+            if (traceSampler != null) {
+                traceSampler.expire();
+            }
+            FlushBatch dataToFlush = swapActiveBatch(true);
+            if (dataToFlush != null) {
                 submitFlushTask(dataToFlush);
-                log.debug("Performed periodic flush with {} items", dataToFlush.getTotalSize());
+                log.debug("Performed periodic flush with {} items", dataToFlush.getItemCount());
             }
         } catch (Exception e) {
             log.error("Error during periodic flush", e);
@@ -108,34 +243,21 @@ public class AsynchronousBuffer implements VFLBuffer {
     }
 
     /**
-     * Copies all buffer contents and clears the buffer atomically.
-     * Must be called within synchronized block.
+     * Swaps the active batch for an empty one from the pool. This is O(1) regardless of batch size.
      *
-     * @return FlushData containing copied buffer contents
-     */
-    private synchronized FlushData copyBufferContentsAndClear() {
-        FlushData data = new FlushData(
-                new ArrayList<>(blocks),
-                new ArrayList<>(logs),
-                new HashMap<>(blockEntered),
-                new HashMap<>(blockExited),
-                new HashMap<>(blockReturned)
-        );
-
-        clearBuffer();
-        return data;
-    }
-
-    /**
-     * Clears all buffer contents. Must be called within synchronized block.
+     * @param includeOpenTraces Whether to first move the items of traces still running into the active batch
+     * @return the previously active batch, or null if it was empty
      */
-    private void clearBuffer() {
-        blocks.clear();
-        logs.clear();
-        blockEntered.clear();
-        blockExited.clear();
-        blockReturned.clear();
-        totalSize = 0;
+    private synchronized FlushBatch swapActiveBatch(boolean includeOpenTraces) {
+        if (includeOpenTraces && openTraces != null) {
+            openTraces.drainInto(activeBatch);
+        }
+        if (activeBatch.isEmpty()) {
+            return null;
+        }
+        FlushBatch full = activeBatch;
+        activeBatch = batchPool.acquire();
+        return full;
     }
 
     /**
@@ -143,62 +265,221 @@ public class AsynchronousBuffer implements VFLBuffer {
      * This method is non-blocking - flush happens asynchronously.
      */
     private void flushIfBufferFull() {
-        FlushData dataToFlush = null;
+        FlushBatch dataToFlush = null;
 
         synchronized (this) {
-            if (totalSize >= bufferSize) {
-                dataToFlush = copyBufferContentsAndClear();
+            if (activeBatch.getItemCount() >= getEffectiveBufferSize()) {
+                dataToFlush = swapActiveBatch(false);
             }
         }
 
-        if (dataToFlush != null && !dataToFlush.isEmpty()) {
+        if (dataToFlush != null) {
             submitFlushTask(dataToFlush);
-            log.debug("Auto-flushed buffer containing {} items", dataToFlush.getTotalSize());
+            log.debug("Auto-flushed buffer containing {} items", dataToFlush.getItemCount());
         }
     }
 
     /**
      * Submits a flush task to the executor and tracks it.
+     * The batch is queued separately from the task so that {@link OverflowPolicy.Mode#DROP_OLDEST_BATCH} can
+     * discard it before a flush thread picks it up.
      */
-    private void submitFlushTask(FlushData dataToFlush) {
-        pendingFlushCount.incrementAndGet();
-        flushExecutor.execute(() -> executeFlushOperation(dataToFlush));
+    private void submitFlushTask(FlushBatch dataToFlush) {
+        PendingFlush pending = new PendingFlush(dataToFlush);
+        pendingFlushes.add(pending.completion);
+        queuedBatches.addLast(pending);
+        try {
+            flushExecutor.execute(this::executeFlushOperation);
+        } catch (RejectedExecutionException e) {
+            // Nothing will ever pick the batch up, take it back out so waiters are not left hanging
+            if (queuedBatches.remove(pending)) {
+                log.error("Flush executor rejected flush task, dropping {} items", dataToFlush.getItemCount(), e);
+                recordDropped(dataToFlush.getItemCount());
+                completeFlush(pending, e);
+            }
+        }
     }
 
     /**
-     * Executes the actual flush operation and handles completion tracking.
+     * Executes the actual flush operation on the oldest queued batch and handles completion tracking.
+     * Handlers delivering in the background complete the flush from their own callback.
      */
-    private void executeFlushOperation(FlushData dataToFlush) {
+    private void executeFlushOperation() {
+        PendingFlush pending = queuedBatches.pollFirst();
+        if (pending == null) {
+            // The batch this task was submitted for has been dropped to make room
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> delivery;
         try {
-            performFlushOperations(dataToFlush);
-            log.debug("Successfully flushed {} items", dataToFlush.getTotalSize());
+            delivery = pending.batch.flushAsyncUsing(flushHandler);
         } catch (Exception e) {
-            log.error("Error during flush operation", e);
             // Don't rethrow - we don't want to kill the executor thread
-        } finally {
-            pendingFlushCount.decrementAndGet();
+            delivery = CompletableFuture.failedFuture(e);
+        }
+        delivery.whenComplete((ignored, failure) -> finishFlush(pending, start, failure));
+    }
+
+    private void finishFlush(PendingFlush pending, long start, Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure == null) {
+            log.debug("Successfully flushed {} items", pending.batch.getItemCount());
+        } else {
+            log.error("Error during flush operation", failure);
+        }
+        long latency = System.nanoTime() - start;
+        metrics.recordFlush(pending.batch.getItemCount(), latency, failure == null);
+        if (flushTuner != null) {
+            flushTuner.recordFlush(pending.batch.getItemCount(), latency, failure == null);
         }
+        completeFlush(pending, failure);
     }
 
     /**
-     * Performs the individual flush operations in the correct order.
-     * Order is important for data consistency.
+     * Releases the batch's capacity, recycles it and completes its future.
      */
-    private void performFlushOperations(FlushData dataToFlush) {
-        if (!dataToFlush.blocks.isEmpty()) {
-            flushHandler.flushBlocks(dataToFlush.blocks);
+    private void completeFlush(PendingFlush pending, Throwable failure) {
+        releaseCapacity(pending.batch.getItemCount());
+        // The handler is done with the batch, recycle it
+        batchPool.release(pending.batch);
+        pendingFlushes.remove(pending.completion);
+        if (failure == null) {
+            pending.completion.complete(null);
+        } else {
+            pending.completion.completeExceptionally(failure);
         }
-        if (!dataToFlush.logs.isEmpty()) {
-            flushHandler.flushLogs(dataToFlush.logs);
+    }
+
+    // Overflow control
+
+    /**
+     * Reserves room for one new item, applying the overflow policy if the buffer is at its cap.
+     *
+     * @return true if the item may be buffered, false if it has been dropped
+     */
+    private boolean admit() {
+        if (maxInFlightItems <= 0) {
+            // Nothing to enforce, so keep the shared counter off the push path
+            return true;
+        }
+        switch (overflowPolicy.getMode()) {
+            case BLOCK:
+                if (tryReserve(maxInFlightItems) || awaitCapacity(overflowPolicy.getBlockTimeoutMs())) {
+                    return true;
+                }
+                break;
+            case DROP_NEWEST:
+                if (tryReserve(maxInFlightItems)) {
+                    return true;
+                }
+                break;
+            case DROP_OLDEST_BATCH:
+                while (!tryReserve(maxInFlightItems)) {
+                    PendingFlush oldest = queuedBatches.pollFirst();
+                    if (oldest == null) {
+                        recordDropped(1);
+                        return false;
+                    }
+                    recordDropped(oldest.batch.getItemCount());
+                    // Dropped data counts as done for anyone waiting on a flush
+                    completeFlush(oldest, null);
+                }
+                return true;
+            case SAMPLE:
+                // Traces are sampled as a whole by sampledOut, only the cap itself applies per item
+                if (tryReserve(maxInFlightItems)) {
+                    return true;
+                }
+                break;
+        }
+        recordDropped(1);
+        return false;
+    }
+
+    private boolean tryReserve(int limit) {
+        while (true) {
+            int current = inFlightItems.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlightItems.compareAndSet(current, current + 1)) {
+                return true;
+            }
         }
-        if (!dataToFlush.blockEntered.isEmpty()) {
-            flushHandler.flushBlockEntered(dataToFlush.blockEntered);
+    }
+
+    /**
+     * Blocks the caller until an item can be reserved or the timeout expires.
+     * Buffered items are submitted first so the wait is not stuck behind the periodic flush.
+     */
+    private boolean awaitCapacity(int timeoutMs) {
+        FlushBatch buffered = swapActiveBatch(true);
+        if (buffered != null) {
+            submitFlushTask(buffered);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (capacityMonitor) {
+            while (!tryReserve(maxInFlightItems)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(capacityMonitor, remaining);
+                } catch (InterruptedException e) {
+                    // Give up on this item instead of failing the traced method
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
         }
-        if (!dataToFlush.blockExited.isEmpty()) {
-            flushHandler.flushBlockExited(dataToFlush.blockExited);
+        return true;
+    }
+
+    private void releaseCapacity(int items) {
+        if (maxInFlightItems <= 0) {
+            return;
         }
-        if (!dataToFlush.blockReturned.isEmpty()) {
-            flushHandler.flushBlockReturned(dataToFlush.blockReturned);
+        inFlightItems.addAndGet(-items);
+        if (overflowPolicy.getMode() == OverflowPolicy.Mode.BLOCK) {
+            synchronized (capacityMonitor) {
+                capacityMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * With a sampling policy, decides the trace of a root block pushed past half the cap and drops blocks of traces
+     * that were not kept.
+     *
+     * @return true if the block has been dropped
+     */
+    private boolean sampledOut(Block block) {
+        if (traceSampler == null || !traceSampler.dropsBlock(block, inFlightItems.get() >= maxInFlightItems / 2)) {
+            return false;
+        }
+        recordDropped(1);
+        return true;
+    }
+
+    /**
+     * @return true if the item has been dropped because its block belongs to a trace that was not kept
+     */
+    private boolean sampledOut(String blockId) {
+        if (traceSampler == null || !traceSampler.drops(blockId)) {
+            return false;
+        }
+        recordDropped(1);
+        return true;
+    }
+
+    private void recordDropped(int items) {
+        if (metrics.recordDropped(items) == items) {
+            log.warn("Buffer reached its cap of {} in-flight items, dropping telemetry with policy {}",
+                    maxInFlightItems, overflowPolicy.getMode());
         }
     }
 
@@ -206,103 +487,163 @@ public class AsynchronousBuffer implements VFLBuffer {
 
     @Override
     public void pushLog(BlockLog log) {
+        metrics.recordPush(BlockEvent.Type.LOG);
+        if (sampledOut(log.getBlockId()) || !admit()) {
+            return;
+        }
+        long waitStart = metrics.startPushWait();
+        long waited;
         synchronized (this) {
-            logs.add(log);
-            totalSize++;
+            waited = metrics.endPushWait(waitStart);
+            if (openTraces == null || !openTraces.addLog(log)) {
+                activeBatch.addLog(log);
+            }
         }
+        metrics.recordPushWait(waited);
         flushIfBufferFull();
     }
 
     @Override
     public void pushBlock(Block block) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_CREATED);
+        if (sampledOut(block) || !admit()) {
+            return;
+        }
+        long waitStart = metrics.startPushWait();
+        long waited;
         synchronized (this) {
-            blocks.add(block);
-            totalSize++;
+            waited = metrics.endPushWait(waitStart);
+            if (openTraces == null || !openTraces.addBlock(block)) {
+                activeBatch.addBlock(block);
+            }
         }
+        metrics.recordPushWait(waited);
         flushIfBufferFull();
     }
 
     @Override
     public void pushBlockReturned(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_RETURNED);
+        if (sampledOut(blockId) || !admit()) {
+            return;
+        }
+        long waitStart = metrics.startPushWait();
+        long waited;
         synchronized (this) {
-            blockReturned.put(blockId, time);
-            totalSize++;
+            waited = metrics.endPushWait(waitStart);
+            if (openTraces == null || !openTraces.addBlockReturned(blockId, time)) {
+                activeBatch.addBlockReturned(blockId, time);
+            }
         }
+        metrics.recordPushWait(waited);
         flushIfBufferFull();
     }
 
     @Override
     public void pushBlockEntered(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_ENTERED);
+        if (sampledOut(blockId) || !admit()) {
+            return;
+        }
+        long waitStart = metrics.startPushWait();
+        long waited;
         synchronized (this) {
-            blockEntered.put(blockId, time);
-            totalSize++;
+            waited = metrics.endPushWait(waitStart);
+            if (openTraces == null || !openTraces.addBlockEntered(blockId, time)) {
+                activeBatch.addBlockEntered(blockId, time);
+            }
         }
+        metrics.recordPushWait(waited);
         flushIfBufferFull();
     }
 
     @Override
     public void pushBlockExited(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_EXITED);
+        if (sampledOut(blockId) || !admit()) {
+            return;
+        }
+        long waitStart = metrics.startPushWait();
+        long waited;
         synchronized (this) {
-            blockExited.put(blockId, time);
-            totalSize++;
+            waited = metrics.endPushWait(waitStart);
+            if (openTraces == null || !openTraces.addBlockExited(blockId, time)) {
+                activeBatch.addBlockExited(blockId, time);
+            }
         }
+        metrics.recordPushWait(waited);
         flushIfBufferFull();
     }
 
+    /**
+     * With trace-aware flushing, marks the trace ready without blocking. Otherwise behaves like {@link #forceFlush()}.
+     */
     @Override
-    public void forceFlush() {
-        log.debug("Force flush initiated");
+    public void flushTrace(String rootBlockId) {
+        if (traceSampler != null) {
+            traceSampler.complete(rootBlockId);
+        }
+        if (openTraces == null) {
+            forceFlush();
+            return;
+        }
+        synchronized (this) {
+            if (!openTraces.complete(rootBlockId, activeBatch)) {
+                log.debug("No open trace for root block {}", rootBlockId);
+            }
+        }
+        flushIfBufferFull();
+    }
 
-        // Step 1: Flush any remaining data in the buffer
-        FlushData remainingData = copyBufferContentsAndClear();
-        if (!remainingData.isEmpty()) {
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        FlushBatch remainingData = swapActiveBatch(true);
+        if (remainingData != null) {
             submitFlushTask(remainingData);
-            log.debug("Submitted final flush task with {} items", remainingData.getTotalSize());
+            log.debug("Submitted flush task with {} remaining items", remainingData.getItemCount());
+        }
+        if (pendingFlushes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
+        return CompletableFuture.allOf(pendingFlushes.toArray(new CompletableFuture<?>[0]));
+    }
 
-        // Step 2: Wait for all pending flush operations to complete
-        if (!waitForPendingFlushesToComplete()) {
+    @Override
+    public void forceFlush() {
+        log.debug("Force flush initiated");
+        try {
+            flushAsync().get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+            log.debug("Force flush completed successfully");
+        } catch (TimeoutException e) {
             log.warn("Force flush timed out after {} ms with {} operations still pending",
-                    flushTimeoutMs, pendingFlushCount.get());
-            return;
+                    flushTimeoutMs, pendingFlushes.size());
+        } catch (ExecutionException e) {
+            log.warn("Force flush completed with flush errors: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Force flush interrupted", e);
         }
-
-        log.debug("Force flush completed successfully");
     }
 
     /**
-     * Waits for all pending flush operations to complete within the timeout.
-     *
-     * @return true if all operations completed, false if timed out
+     * Stops periodic flushing and force flushes what is buffered. Executors this buffer created itself are shut down
+     * afterwards; executors passed to a constructor stay the caller's to shut down.
+     * Items pushed after shutdown are only flushed by an explicit {@link #forceFlush()}.
      */
-    private boolean waitForPendingFlushesToComplete() {
-        if (pendingFlushCount.get() == 0) {
-            return true; // Nothing to wait for
+    public void shutdown() {
+        shutdown = true;
+        if (periodicFlush != null) {
+            periodicFlush.cancel(false);
         }
-
-        long startTime = System.currentTimeMillis();
-        log.debug("Waiting for {} pending flush operations to complete", pendingFlushCount.get());
-
-        while (pendingFlushCount.get() > 0) {
-            long elapsed = System.currentTimeMillis() - startTime;
-            if (elapsed >= flushTimeoutMs) {
-                return false; // Timed out
-            }
-
-            long remainingTime = flushTimeoutMs - elapsed;
-            long sleepTime = Math.min(FORCE_FLUSH_POLL_INTERVAL_MS, remainingTime);
-
-            try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Force flush interrupted", e);
-            }
+        forceFlush();
+        if (ownsScheduler) {
+            periodicFlushScheduler.shutdown();
+        }
+        if (ownsFlushExecutor) {
+            flushExecutor.shutdown();
         }
-
-        return true; // All operations completed
     }
-    
+
     /**
      * Returns the number of pending flush operations.
      * Useful for monitoring and testing.
@@ -310,7 +651,7 @@ public class AsynchronousBuffer implements VFLBuffer {
      * @return number of flush operations currently being executed
      */
     public int getPendingFlushCount() {
-        return pendingFlushCount.get();
+        return pendingFlushes.size();
     }
 
     /**
@@ -320,38 +661,221 @@ public class AsynchronousBuffer implements VFLBuffer {
      * @return current number of items in the buffer
      */
     public synchronized int getCurrentBufferSize() {
-        return totalSize;
+        return activeBatch.getItemCount() + (openTraces == null ? 0 : openTraces.getItemCount());
     }
 
     /**
-     * Immutable data class that holds all buffer contents for flushing.
-     * This allows us to pass buffer contents between threads safely.
+     * Returns the number of traces whose root block has not completed yet.
+     * Always 0 unless trace-aware flushing is enabled.
+     *
+     * @return number of open traces
      */
-    private static class FlushData {
-        private final List<Block> blocks;
-        private final List<BlockLog> logs;
-        private final Map<String, Long> blockEntered;
-        private final Map<String, Long> blockExited;
-        private final Map<String, Long> blockReturned;
+    public synchronized int getOpenTraceCount() {
+        return openTraces == null ? 0 : openTraces.getOpenTraceCount();
+    }
+
+    /**
+     * Returns the number of items buffered or waiting for the flush handler.
+     * Only tracked when {@code maxInFlightItems} is set; an unbounded buffer always reports 0.
+     *
+     * @return current number of in-flight items
+     */
+    public int getInFlightItemCount() {
+        return inFlightItems.get();
+    }
+
+    /**
+     * Returns the number of items dropped by the overflow policy since creation.
+     *
+     * @return total dropped items
+     */
+    public long getDroppedItemCount() {
+        return metrics.getDroppedEventCount();
+    }
 
-        FlushData(List<Block> blocks, List<BlockLog> logs,
-                  Map<String, Long> blockEntered, Map<String, Long> blockExited,
-                  Map<String, Long> blockReturned) {
-            this.blocks = blocks;
-            this.logs = logs;
-            this.blockEntered = blockEntered;
-            this.blockExited = blockExited;
-            this.blockReturned = blockReturned;
+    /**
+     * Returns the push, flush and drop metrics of this buffer.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link BufferMetrics#snapshot()} and {@link BufferMetrics#registerMBean(String)}
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of items that currently triggers a flush, tuned at runtime when an
+     * {@link AdaptiveFlushTuner} is configured.
+     *
+     * @return effective batch size trigger
+     */
+    public int getEffectiveBufferSize() {
+        return flushTuner == null ? bufferSize : flushTuner.getBatchSize();
+    }
+
+    /**
+     * Returns the current periodic flush interval, tuned at runtime when an {@link AdaptiveFlushTuner} is configured.
+     *
+     * @return effective periodic flush interval in milliseconds
+     */
+    public int getEffectiveFlushIntervalMs() {
+        return flushTuner == null ? flushIntervalMs : flushTuner.getFlushIntervalMs();
+    }
+
+    /**
+     * Configuration of an {@link AsynchronousBuffer}, created by {@link #builder(VFLFlushHandler)}.
+     * <p>
+     * Defaults: buffer size 100, flush interval 5000 ms, flush timeout 30000 ms, no in-flight cap, no trace-aware
+     * flushing (with at most 10000 open traces of at most 60000 ms once enabled) and no tuner.
+     */
+    public static final class Builder {
+        private final VFLFlushHandler flushHandler;
+        private int bufferSize = 100;
+        private int flushIntervalMs = 5000;
+        private int flushTimeoutMs = 30000;
+        private ExecutorService flushExecutor;
+        private ScheduledExecutorService periodicFlushScheduler;
+        private int maxConcurrentFlushes = 16;
+        private int maxInFlightItems = 0;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.dropNewest();
+        private boolean traceAwareFlush = false;
+        private long maxTraceAgeMs = 60_000;
+        private int maxOpenTraces = 10_000;
+        private AdaptiveFlushTuner flushTuner;
+
+        private Builder(VFLFlushHandler flushHandler) {
+            if (flushHandler == null) {
+                throw new IllegalArgumentException("flushHandler must not be null");
+            }
+            this.flushHandler = flushHandler;
+        }
+
+        /**
+         * @param bufferSize Maximum number of items to buffer before auto-flush. With trace-aware flushing only ready
+         *                   items count, with a tuner this is the initial value clamped to its bounds
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMs Interval between periodic flushes in milliseconds, with a tuner the initial value
+         *                        clamped to its bounds
+         */
+        public Builder flushIntervalMs(int flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+            return this;
         }
 
-        boolean isEmpty() {
-            return blocks.isEmpty() && logs.isEmpty() && blockEntered.isEmpty()
-                   && blockExited.isEmpty() && blockReturned.isEmpty();
+        /**
+         * @param flushTimeoutMs Maximum time to wait for flush operations during force flush
+         */
+        public Builder flushTimeoutMs(int flushTimeoutMs) {
+            this.flushTimeoutMs = flushTimeoutMs;
+            return this;
         }
 
-        int getTotalSize() {
-            return blocks.size() + logs.size() + blockEntered.size()
-                   + blockExited.size() + blockReturned.size();
+        /**
+         * @param flushExecutor Executor service for running flush operations. It stays the caller's to shut down.
+         *                      If unset, the buffer creates a {@link VirtualThreadFlushExecutor} and shuts it down in
+         *                      {@link AsynchronousBuffer#shutdown()}
+         */
+        public Builder flushExecutor(ExecutorService flushExecutor) {
+            this.flushExecutor = flushExecutor;
+            return this;
+        }
+
+        /**
+         * @param periodicFlushScheduler Scheduled executor for periodic flushes. It stays the caller's to shut down.
+         *                               If unset, the buffer creates one and shuts it down in
+         *                               {@link AsynchronousBuffer#shutdown()}
+         */
+        public Builder periodicFlushScheduler(ScheduledExecutorService periodicFlushScheduler) {
+            this.periodicFlushScheduler = periodicFlushScheduler;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentFlushes Maximum number of flush handler calls in flight at the same time when the buffer
+         *                             creates its own flush executor, 16 by default
+         */
+        public Builder maxConcurrentFlushes(int maxConcurrentFlushes) {
+            this.maxConcurrentFlushes = maxConcurrentFlushes;
+            return this;
+        }
+
+        /**
+         * Caps the number of items in flight.
+         *
+         * @param maxInFlightItems Maximum number of items buffered or waiting for the flush handler, 0 for unbounded
+         * @param overflowPolicy   What to do with a new item once {@code maxInFlightItems} is reached
+         */
+        public Builder maxInFlightItems(int maxInFlightItems, OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("overflowPolicy must not be null");
+            }
+            this.maxInFlightItems = maxInFlightItems;
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * With trace-aware flushing, items are grouped by the root block of their trace.
+         * {@link AsynchronousBuffer#flushTrace(String)} marks a finished trace ready without blocking, and only ready
+         * items count towards the buffer size. Items of traces still running are flushed by the periodic flush and by
+         * force flushes, so long traces are not held back indefinitely.
+         *
+         * @param traceAwareFlush Whether to hold items per trace until the trace's root block completes
+         */
+        public Builder traceAwareFlush(boolean traceAwareFlush) {
+            this.traceAwareFlush = traceAwareFlush;
+            return this;
+        }
+
+        /**
+         * Bounds the traces held by trace-aware flushing, so a root block that never completes cannot pin its trace.
+         * A trace older than {@code maxTraceAgeMs} is closed by the next periodic or force flush, and a root created
+         * while {@code maxOpenTraces} traces are open is not tracked, so its items are flushed as ready. The same
+         * limits bound the traces a {@link OverflowPolicy#sample(int)} policy remembers as dropped.
+         *
+         * @param maxTraceAgeMs Age in milliseconds after which a trace is flushed as if its root had completed
+         * @param maxOpenTraces Maximum number of traces held at the same time
+         */
+        public Builder openTraceLimits(long maxTraceAgeMs, int maxOpenTraces) {
+            if (maxTraceAgeMs <= 0) {
+                throw new IllegalArgumentException("maxTraceAgeMs must be positive");
+            }
+            if (maxOpenTraces <= 0) {
+                throw new IllegalArgumentException("maxOpenTraces must be positive");
+            }
+            this.maxTraceAgeMs = maxTraceAgeMs;
+            this.maxOpenTraces = maxOpenTraces;
+            return this;
+        }
+
+        /**
+         * @param flushTuner Tuner adjusting batch size and interval at runtime, null to keep both fixed
+         */
+        public Builder flushTuner(AdaptiveFlushTuner flushTuner) {
+            this.flushTuner = flushTuner;
+            return this;
+        }
+
+        public AsynchronousBuffer build() {
+            return new AsynchronousBuffer(this);
+        }
+    }
+
+    /**
+     * A batch waiting for the flush handler together with the future completed once the handler is done with it.
+     */
+    private static final class PendingFlush {
+        private final FlushBatch batch;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        PendingFlush(FlushBatch batch) {
+            this.batch = batch;
         }
     }
-}
\ No newline at end of file
+}
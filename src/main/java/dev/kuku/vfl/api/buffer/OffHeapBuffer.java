@@ -0,0 +1,367 @@
+package dev.kuku.vfl.api.buffer;
+
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.buffer.arena.EventArena;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous buffer that keeps buffered events off the Java heap.
+ * <p>
+ * Every push is encoded straight into a pre-allocated direct memory arena, and the pushed {@link Block} and
+ * {@link BlockLog} objects can be collected right away. A fixed number of arenas is allocated up front and recycled
+ * after each flush, so buffered telemetry costs no GC work however large the buffer is.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Handing an arena off for flushing as soon as it is full</li>
+ *     <li>Periodic flushing of the arena being filled</li>
+ *     <li>Flush handlers reading the encoded records directly through {@link VFLFlushHandler#flushRecords}</li>
+ *     <li>Backpressure: producers wait when every arena is full and waiting to be flushed</li>
+ *     <li>Non-blocking {@link #flushAsync()} and force flush with timeout built on top of it</li>
+ *     <li>Push, flush and drop metrics through {@link #getMetrics()}</li>
+ * </ul>
+ * Events larger than a whole arena are dropped and counted.
+ * <p>
+ * Thread Safety: This class is thread-safe and designed for concurrent access.
+ */
+public class OffHeapBuffer implements VFLBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapBuffer.class);
+
+    // Configuration
+    private final int flushTimeoutMs;
+    private final ExecutorService flushExecutor;
+    private final VFLFlushHandler flushHandler;
+
+    // Buffer state - guarded by this
+    private final ArrayDeque<EventArena> freeArenas;
+    private final int arenaCount;
+    // Null while every arena is waiting to be flushed
+    private EventArena activeArena;
+
+    // Flush operation tracking
+    // Completion of every arena submitted but not yet processed by the flush handler
+    private final Set<CompletableFuture<Void>> pendingFlushes = ConcurrentHashMap.newKeySet();
+
+    private final BufferMetrics metrics;
+
+    /**
+     * Creates a new OffHeapBuffer with the specified configuration.
+     *
+     * @param arenaSizeBytes         Size of each arena in bytes. An arena is flushed as soon as the next event does not fit
+     * @param arenaCount             Number of arenas allocated up front, at least 2 so one can fill while another flushes
+     * @param flushIntervalMs        Interval between periodic flushes in milliseconds
+     * @param flushTimeoutMs         Maximum time to wait for flush operations during force flush
+     * @param flushExecutor          Executor service for running flush operations
+     * @param periodicFlushScheduler Scheduled executor for periodic flushes
+     * @param flushHandler           Handler that performs the actual flush operations
+     */
+    public OffHeapBuffer(
+            int arenaSizeBytes,
+            int arenaCount,
+            int flushIntervalMs,
+            int flushTimeoutMs,
+            ExecutorService flushExecutor,
+            ScheduledExecutorService periodicFlushScheduler,
+            VFLFlushHandler flushHandler) {
+        if (arenaSizeBytes <= 0 || arenaCount < 2) {
+            throw new IllegalArgumentException("arenaSizeBytes must be positive and arenaCount at least 2");
+        }
+        this.flushTimeoutMs = flushTimeoutMs;
+        this.flushExecutor = flushExecutor;
+        this.flushHandler = flushHandler;
+        this.arenaCount = arenaCount;
+        this.freeArenas = new ArrayDeque<>(arenaCount);
+        for (int i = 0; i < arenaCount; i++) {
+            freeArenas.add(new EventArena(arenaSizeBytes));
+        }
+        this.activeArena = freeArenas.poll();
+        this.metrics = new BufferMetrics(this::getCurrentBufferSize, this::getPendingFlushCount);
+
+        periodicFlushScheduler.scheduleWithFixedDelay(
+                this::performPeriodicFlush,
+                flushIntervalMs,
+                flushIntervalMs,
+                TimeUnit.MILLISECONDS
+        );
+        log.debug("Started off-heap buffer with {} arenas of {} bytes and periodic flushing every {} ms",
+                arenaCount, arenaSizeBytes, flushIntervalMs);
+    }
+
+    /**
+     * Performs a periodic flush if there's data to flush.
+     */
+    private void performPeriodicFlush() {
+        try {
+            handOffActiveArena();
+        } catch (Exception e) {
+            log.error("Error during periodic flush", e);
+        }
+    }
+
+    private void append(BlockEvent.Type type, Block block, BlockLog blockLog, String blockId, long time) {
+        metrics.recordPush(type);
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (this) {
+            waited = metrics.endPushWait(waitStart);
+            appendLocked(type, block, blockLog, blockId, time);
+        }
+        metrics.recordPushWait(waited);
+    }
+
+    /**
+     * Encodes one event into the active arena, handing the arena off first if the event does not fit.
+     * Callers must hold this buffer's monitor.
+     */
+    private void appendLocked(BlockEvent.Type type, Block block, BlockLog blockLog, String blockId, long time) {
+        while (true) {
+            if (!awaitActiveArena()) {
+                metrics.recordDropped(1);
+                return;
+            }
+            if (activeArena.tryAppend(type, block, blockLog, blockId, time)) {
+                return;
+            }
+            if (activeArena.isEmpty()) {
+                long dropped = metrics.recordDropped(1);
+                log.warn("Dropped {} event larger than an arena, {} items dropped so far", type, dropped);
+                return;
+            }
+            EventArena full = activeArena;
+            activeArena = null;
+            submitFlushTask(full);
+            log.debug("Handed off full arena containing {} items", full.getEventCount());
+        }
+    }
+
+    /**
+     * Makes sure there is an arena to write into, waiting for a flush to return one if all are in use.
+     *
+     * @return false if interrupted while waiting
+     */
+    private boolean awaitActiveArena() {
+        while (activeArena == null) {
+            activeArena = freeArenas.poll();
+            if (activeArena != null) {
+                return true;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for a free arena, dropping item");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits the active arena for flushing if it holds anything. Producers pick up the next free arena.
+     */
+    private synchronized void handOffActiveArena() {
+        if (activeArena == null || activeArena.isEmpty()) {
+            return;
+        }
+        EventArena arena = activeArena;
+        activeArena = freeArenas.poll();
+        submitFlushTask(arena);
+        log.debug("Submitted flush task with {} items", arena.getEventCount());
+    }
+
+    /**
+     * Submits a flush task to the executor and tracks it.
+     */
+    private void submitFlushTask(EventArena arena) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        pendingFlushes.add(completion);
+        try {
+            flushExecutor.execute(() -> executeFlushOperation(arena, completion));
+        } catch (RuntimeException e) {
+            log.error("Failed to submit flush task, dropping {} items", arena.getEventCount(), e);
+            metrics.recordDropped(arena.getEventCount());
+            completeFlush(arena, completion, e);
+        }
+    }
+
+    /**
+     * Executes the actual flush operation and handles completion tracking.
+     */
+    private void executeFlushOperation(EventArena arena, CompletableFuture<Void> completion) {
+        Exception failure = null;
+        long start = System.nanoTime();
+        try {
+            flushHandler.flushRecords(arena.records(), arena.getEventCount());
+            log.debug("Successfully flushed {} items", arena.getEventCount());
+        } catch (Exception e) {
+            log.error("Error during flush operation", e);
+            failure = e;
+            // Don't rethrow - we don't want to kill the executor thread
+        } finally {
+            metrics.recordFlush(arena.getEventCount(), System.nanoTime() - start, failure == null);
+            completeFlush(arena, completion, failure);
+        }
+    }
+
+    private void completeFlush(EventArena arena, CompletableFuture<Void> completion, Exception failure) {
+        // The handler is done with the records, recycle the arena and wake producers waiting for one
+        arena.clear();
+        synchronized (this) {
+            freeArenas.add(arena);
+            notifyAll();
+        }
+        pendingFlushes.remove(completion);
+        if (failure == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(failure);
+        }
+    }
+
+    // VFLBuffer interface implementations
+
+    @Override
+    public void pushLog(BlockLog log) {
+        append(BlockEvent.Type.LOG, null, log, null, 0);
+    }
+
+    @Override
+    public void pushBlock(Block block) {
+        append(BlockEvent.Type.BLOCK_CREATED, block, null, null, 0);
+    }
+
+    @Override
+    public void pushBlockEntered(String blockId, long time) {
+        append(BlockEvent.Type.BLOCK_ENTERED, null, null, blockId, time);
+    }
+
+    @Override
+    public void pushBlockReturned(String blockId, long time) {
+        append(BlockEvent.Type.BLOCK_RETURNED, null, null, blockId, time);
+    }
+
+    @Override
+    public void pushBlockExited(String blockId, long time) {
+        append(BlockEvent.Type.BLOCK_EXITED, null, null, blockId, time);
+    }
+
+    /**
+     * Requests a flush without waiting for it, flush tasks run on the flush executor.
+     */
+    @Override
+    public void flushTrace(String rootBlockId) {
+        flushAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        handOffActiveArena();
+        if (pendingFlushes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(pendingFlushes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public void forceFlush() {
+        log.debug("Force flush initiated");
+        try {
+            flushAsync().get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+            log.debug("Force flush completed successfully");
+        } catch (TimeoutException e) {
+            log.warn("Force flush timed out after {} ms with {} operations still pending",
+                    flushTimeoutMs, pendingFlushes.size());
+        } catch (ExecutionException e) {
+            log.warn("Force flush completed with flush errors: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Force flush interrupted", e);
+        }
+    }
+
+    /**
+     * Returns the number of pending flush operations.
+     * Useful for monitoring and testing.
+     *
+     * @return number of flush operations currently being executed
+     */
+    public int getPendingFlushCount() {
+        return pendingFlushes.size();
+    }
+
+    /**
+     * Returns the number of events in the arena being filled.
+     * Useful for monitoring and testing.
+     *
+     * @return current number of items in the buffer
+     */
+    public synchronized int getCurrentBufferSize() {
+        return activeArena == null ? 0 : activeArena.getEventCount();
+    }
+
+    /**
+     * Returns the number of encoded bytes in the arena being filled.
+     * Useful for monitoring and testing.
+     *
+     * @return bytes used in the active arena
+     */
+    public synchronized int getCurrentBufferBytes() {
+        return activeArena == null ? 0 : activeArena.getUsedBytes();
+    }
+
+    /**
+     * Returns the number of arenas not currently filled or flushed.
+     * Useful for monitoring and testing.
+     *
+     * @return idle arena count, out of the total configured
+     */
+    public synchronized int getFreeArenaCount() {
+        return freeArenas.size();
+    }
+
+    /**
+     * Returns the total number of arenas.
+     *
+     * @return arena count
+     */
+    public int getArenaCount() {
+        return arenaCount;
+    }
+
+    /**
+     * Returns the number of items dropped because they did not fit in an arena or the producer was interrupted.
+     * Useful for monitoring and testing.
+     *
+     * @return dropped item count
+     */
+    public long getDroppedItemCount() {
+        return metrics.getDroppedEventCount();
+    }
+
+    /**
+     * Returns the push, flush and drop metrics of this buffer.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link BufferMetrics#snapshot()} and {@link BufferMetrics#registerMBean(String)}
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,91 @@
+package dev.kuku.vfl.api.buffer;
+
+/**
+ * Decides what a bounded buffer does with a new item when its in-flight cap is reached.
+ * <p>
+ * In-flight items are items sitting in the buffer plus items handed to the flush executor that the flush handler
+ * has not finished with yet.
+ */
+public final class OverflowPolicy {
+
+    public enum Mode {
+        /**
+         * Block the pushing thread until capacity frees up, dropping the item if the timeout expires.
+         */
+        BLOCK,
+        /**
+         * Drop the item being pushed.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest batch still waiting for the flush handler, as a whole, to make room.
+         * Falls back to dropping the newest item when no batch is waiting.
+         */
+        DROP_OLDEST_BATCH,
+        /**
+         * Keep only one of every {@code sampleRate} traces started once the buffer is half full, drop everything at
+         * the cap. The decision is made once per trace when its root block is pushed, so a kept trace is not torn
+         * apart by sampling.
+         */
+        SAMPLE
+    }
+
+    private final Mode mode;
+    private final int blockTimeoutMs;
+    private final int sampleRate;
+
+    private OverflowPolicy(Mode mode, int blockTimeoutMs, int sampleRate) {
+        this.mode = mode;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param timeoutMs Maximum time a pushing thread waits for capacity before its item is dropped
+     */
+    public static OverflowPolicy block(int timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("timeoutMs must not be negative");
+        }
+        return new OverflowPolicy(Mode.BLOCK, timeoutMs, 1);
+    }
+
+    public static OverflowPolicy dropNewest() {
+        return new OverflowPolicy(Mode.DROP_NEWEST, 0, 1);
+    }
+
+    public static OverflowPolicy dropOldestBatch() {
+        return new OverflowPolicy(Mode.DROP_OLDEST_BATCH, 0, 1);
+    }
+
+    /**
+     * @param sampleRate Keep one of every {@code sampleRate} traces while sampling
+     */
+    public static OverflowPolicy sample(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        return new OverflowPolicy(Mode.SAMPLE, 0, sampleRate);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getBlockTimeoutMs() {
+        return blockTimeoutMs;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "OverflowPolicy{" +
+               "mode=" + mode +
+               ", blockTimeoutMs=" + blockTimeoutMs +
+               ", sampleRate=" + sampleRate +
+               '}';
+    }
+}
@@ -0,0 +1,640 @@
+package dev.kuku.vfl.api.buffer;
+
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.VFLDeferredCapture;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import dev.kuku.vfl.internal.util.LazyId;
+import dev.kuku.vfl.internal.util.VFLClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free multi-producer/single-consumer ring buffer.
+ * <p>
+ * Producers claim a sequence number with a CAS, write the event into a pre-allocated slot and publish the slot.
+ * No lock is taken and nothing is allocated on the producer side. A single dedicated drainer thread consumes the
+ * slots in sequence order and hands them to the {@link VFLFlushHandler}.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Automatic flushing when {@code flushSize} events are drained</li>
+ *     <li>Periodic flushing at configured intervals</li>
+ *     <li>Non-blocking {@link #flushAsync()} and force flush with timeout, covering every event pushed before the call</li>
+ *     <li>An {@link OverflowPolicy} for a full ring: {@link OverflowPolicy.Mode#BLOCK} spins and parks until the
+ *     drainer frees a slot or the timeout expires, {@link OverflowPolicy.Mode#DROP_NEWEST} drops the event at once.
+ *     Dropped events are counted in {@link BufferMetrics#getDroppedEventCount()}, so a stalled flush handler never
+ *     blocks producers indefinitely</li>
+ *     <li>Deferred capture of sub blocks: the drainer builds blocks, logs, ids and timestamps from what the
+ *     instrumented method recorded</li>
+ *     <li>Push and flush metrics through {@link #getMetrics()}. Pushed events are counted by the drainer, and only
+ *     pushes that found the ring full record a push wait</li>
+ *     <li>{@link #shutdown()}, which flushes everything pushed before it and stops the drainer thread</li>
+ * </ul>
+ * <p>
+ * The drainer reuses its collections between flushes, so the flush handler must not retain them after returning.
+ * <p>
+ * Thread Safety: This class is thread-safe and designed for concurrent access.
+ */
+public class RingBuffer implements VFLDeferredCapture {
+
+    private static final Logger log = LoggerFactory.getLogger(RingBuffer.class);
+    private static final int FULL_RING_SPIN_TRIES = 64;
+    private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final String TRACE_PRIMARY = LogTypeTraceBlock.TRACE_PRIMARY.name();
+    // Set in claimSequence by shutdown, so no sequence can be claimed after the drainer's last one
+    private static final long CLOSED = 1L << 62;
+
+    // Configuration
+    private final int mask;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final int flushTimeoutMs;
+    private final VFLFlushHandler flushHandler;
+    // Whether producers wait for a slot when the ring is full instead of dropping their event
+    private final boolean blockWhenFull;
+    private final long fullRingTimeoutNanos;
+
+    // Ring state
+    private final Slot[] slots;
+    // Sequence number currently published in each slot. A slot is readable once it holds the expected sequence.
+    private final AtomicLongArray published;
+    // Next sequence to be claimed by a producer, with the CLOSED bit once shut down
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    // Next sequence to be read by the drainer. Only written by the drainer thread.
+    private volatile long consumedSequence = 0;
+
+    // Flush tracking
+    // Every sequence below this has been handed to the flush handler. Only written by the drainer thread.
+    private volatile long flushedSequence = 0;
+    // Highest sequence a flush request is waiting for
+    private final AtomicLong flushTarget = new AtomicLong(0);
+    // Flush requests not yet covered by flushedSequence
+    private final ConcurrentLinkedQueue<FlushWaiter> flushWaiters = new ConcurrentLinkedQueue<>();
+
+    // Drainer state - only touched by the drainer thread
+    private final Thread drainer;
+    private volatile boolean drainerParked = false;
+    private final FlushBatch batch;
+
+    private final BufferMetrics metrics;
+
+    /**
+     * Creates a new RingBuffer and starts its drainer thread. Producers finding the ring full wait up to the flush
+     * timeout for a slot, then drop their event.
+     *
+     * @param capacity        Number of pre-allocated slots. Rounded up to the next power of two
+     * @param flushSize       Number of drained events that triggers a flush
+     * @param flushIntervalMs Maximum time drained events wait before being flushed
+     * @param flushTimeoutMs  Maximum time to wait for flush operations during force flush
+     * @param flushHandler    Handler that performs the actual flush operations
+     */
+    public RingBuffer(
+            int capacity,
+            int flushSize,
+            int flushIntervalMs,
+            int flushTimeoutMs,
+            VFLFlushHandler flushHandler) {
+        this(capacity, flushSize, flushIntervalMs, flushTimeoutMs, OverflowPolicy.block(flushTimeoutMs), flushHandler);
+    }
+
+    /**
+     * Creates a new RingBuffer and starts its drainer thread.
+     *
+     * @param capacity        Number of pre-allocated slots. Rounded up to the next power of two
+     * @param flushSize       Number of drained events that triggers a flush
+     * @param flushIntervalMs Maximum time drained events wait before being flushed
+     * @param flushTimeoutMs  Maximum time to wait for flush operations during force flush
+     * @param overflowPolicy  What a producer does when the ring is full. Only {@link OverflowPolicy.Mode#BLOCK} and
+     *                        {@link OverflowPolicy.Mode#DROP_NEWEST} are supported, claimed slots cannot be taken back
+     * @param flushHandler    Handler that performs the actual flush operations
+     */
+    public RingBuffer(
+            int capacity,
+            int flushSize,
+            int flushIntervalMs,
+            int flushTimeoutMs,
+            OverflowPolicy overflowPolicy,
+            VFLFlushHandler flushHandler) {
+        if (capacity <= 0 || flushSize <= 0) {
+            throw new IllegalArgumentException("capacity and flushSize must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy must not be null");
+        }
+        if (overflowPolicy.getMode() != OverflowPolicy.Mode.BLOCK
+            && overflowPolicy.getMode() != OverflowPolicy.Mode.DROP_NEWEST) {
+            throw new IllegalArgumentException("RingBuffer supports only BLOCK and DROP_NEWEST, got " + overflowPolicy);
+        }
+        int ringSize = Integer.highestOneBit(capacity);
+        if (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+        this.mask = ringSize - 1;
+        this.flushSize = Math.min(flushSize, ringSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.flushTimeoutMs = flushTimeoutMs;
+        this.flushHandler = flushHandler;
+        this.blockWhenFull = overflowPolicy.getMode() == OverflowPolicy.Mode.BLOCK;
+        this.fullRingTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(overflowPolicy.getBlockTimeoutMs());
+        this.batch = new FlushBatch(this.flushSize);
+        // The drainer flushes inline, so no batch is ever waiting for the flush handler
+        this.metrics = new BufferMetrics(() -> (int) Math.min(getPendingEventCount(), Integer.MAX_VALUE), () -> 0);
+
+        this.slots = new Slot[ringSize];
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+
+        this.drainer = new Thread(this::drainLoop, "vfl-ring-drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+        log.debug("Started ring buffer with {} slots and flush size {}", ringSize, this.flushSize);
+    }
+
+    // VFLBuffer interface implementations
+
+    @Override
+    public void pushLog(BlockLog log) {
+        publish(BlockEvent.Type.LOG, null, log, null, 0);
+    }
+
+    @Override
+    public void pushBlock(Block block) {
+        publish(BlockEvent.Type.BLOCK_CREATED, block, null, null, 0);
+    }
+
+    @Override
+    public void pushBlockEntered(String blockId, long time) {
+        publish(BlockEvent.Type.BLOCK_ENTERED, null, null, blockId, time);
+    }
+
+    @Override
+    public void pushBlockReturned(String blockId, long time) {
+        publish(BlockEvent.Type.BLOCK_RETURNED, null, null, blockId, time);
+    }
+
+    @Override
+    public void pushBlockExited(String blockId, long time) {
+        publish(BlockEvent.Type.BLOCK_EXITED, null, null, blockId, time);
+    }
+
+    @Override
+    public void captureSubBlockEntered(String name, long nanoTime, LazyId blockId, LazyId parentBlockId, LazyId startLogId, LazyId parentLogId) {
+        long seq = claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = (int) (seq & mask);
+        Slot slot = slots[index];
+        slot.type = null;
+        slot.capture = Slot.CAPTURE_ENTERED;
+        slot.name = name;
+        slot.time = nanoTime;
+        slot.id = blockId;
+        slot.parentId = parentBlockId;
+        slot.logId = startLogId;
+        slot.parentLogId = parentLogId;
+        publish(index, seq);
+    }
+
+    @Override
+    public void captureSubBlockExited(LazyId blockId, long nanoTime) {
+        long seq = claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = (int) (seq & mask);
+        Slot slot = slots[index];
+        slot.type = null;
+        slot.capture = Slot.CAPTURE_EXITED;
+        slot.time = nanoTime;
+        slot.id = blockId;
+        publish(index, seq);
+    }
+
+    /**
+     * Requests a flush without waiting for it, the drainer flushes in the background.
+     */
+    @Override
+    public void flushTrace(String rootBlockId) {
+        flushAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        long target = claimedSequence();
+        if (flushedSequence >= target) {
+            return CompletableFuture.completedFuture(null);
+        }
+        FlushWaiter waiter = new FlushWaiter(target);
+        flushWaiters.add(waiter);
+        flushTarget.accumulateAndGet(target, Math::max);
+        LockSupport.unpark(drainer);
+        // The drainer may have passed the target before the waiter was registered
+        if (flushedSequence >= target && flushWaiters.remove(waiter)) {
+            waiter.completion.complete(null);
+        }
+        return waiter.completion;
+    }
+
+    @Override
+    public void forceFlush() {
+        log.debug("Force flush initiated");
+        try {
+            flushAsync().get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+            log.debug("Force flush completed successfully");
+        } catch (TimeoutException e) {
+            log.warn("Force flush timed out after {} ms with {} events still pending",
+                    flushTimeoutMs, claimedSequence() - flushedSequence);
+        } catch (ExecutionException e) {
+            log.warn("Force flush completed with flush errors: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Force flush interrupted", e);
+        }
+    }
+
+    /**
+     * Returns the number of events pushed but not yet handed to the flush handler.
+     * Useful for monitoring and testing.
+     *
+     * @return number of pending events
+     */
+    public long getPendingEventCount() {
+        return claimedSequence() - flushedSequence;
+    }
+
+    /**
+     * Flushes every event pushed before the call and stops the drainer thread, waiting up to the flush timeout.
+     * Events pushed afterwards are dropped and counted in {@link BufferMetrics#getDroppedEventCount()}.
+     */
+    public void shutdown() {
+        long claimed = claimSequence.getAndAccumulate(CLOSED, (current, closed) -> current | closed);
+        if ((claimed & CLOSED) == 0) {
+            log.debug("Shutting down ring buffer with {} events pending", (claimed & ~CLOSED) - flushedSequence);
+        }
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(flushTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Shutdown interrupted", e);
+        }
+        if (drainer.isAlive()) {
+            log.warn("Ring buffer drainer did not stop within {} ms, {} events still pending",
+                    flushTimeoutMs, getPendingEventCount());
+        }
+    }
+
+    /**
+     * Returns whether {@link #shutdown()} was called and the drainer thread has stopped.
+     * Useful for monitoring and testing.
+     */
+    public boolean isTerminated() {
+        return isClosed() && !drainer.isAlive();
+    }
+
+    /**
+     * Returns the number of slots in the ring.
+     *
+     * @return ring capacity
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the push and flush metrics of this buffer.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link BufferMetrics#snapshot()} and {@link BufferMetrics#registerMBean(String)}
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Producer side
+
+    /**
+     * Claims a slot, writes the event into it and publishes it to the drainer.
+     */
+    private void publish(BlockEvent.Type type, Block block, BlockLog blockLog, String blockId, long time) {
+        long seq = claim();
+        if (seq < 0) {
+            return;
+        }
+        int index = (int) (seq & mask);
+        Slot slot = slots[index];
+        slot.type = type;
+        slot.capture = Slot.CAPTURE_NONE;
+        slot.block = block;
+        slot.log = blockLog;
+        slot.blockId = blockId;
+        slot.time = time;
+        publish(index, seq);
+    }
+
+    /**
+     * Publishes a written slot to the drainer.
+     */
+    private void publish(int index, long seq) {
+        // Release store: slot fields become visible to the drainer before the sequence does
+        published.lazySet(index, seq);
+
+        if (drainerParked && seq + 1 - flushedSequence >= flushSize) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * Claims the next sequence number. If the ring is full, waits for the drainer up to the overflow policy's timeout
+     * or gives up at once, depending on the policy.
+     *
+     * @return the sequence, or -1 if the buffer was shut down or the event was dropped
+     */
+    private long claim() {
+        int tries = 0;
+        long waitStart = 0;
+        while (true) {
+            long seq = claimSequence.get();
+            if ((seq & CLOSED) != 0) {
+                metrics.recordDropped(1);
+                return -1;
+            }
+            if (seq - consumedSequence >= slots.length) {
+                if (!blockWhenFull) {
+                    metrics.recordDropped(1);
+                    return -1;
+                }
+                if (tries == 0) {
+                    waitStart = System.nanoTime();
+                } else if (tries >= FULL_RING_SPIN_TRIES && System.nanoTime() - waitStart >= fullRingTimeoutNanos) {
+                    metrics.recordPushWait(System.nanoTime() - waitStart);
+                    metrics.recordDropped(1);
+                    return -1;
+                }
+                awaitCapacity(tries++);
+                continue;
+            }
+            if (claimSequence.compareAndSet(seq, seq + 1)) {
+                if (tries > 0) {
+                    metrics.recordPushWait(System.nanoTime() - waitStart);
+                }
+                return seq;
+            }
+        }
+    }
+
+    private void awaitCapacity(int tries) {
+        if (tries == 0) {
+            LockSupport.unpark(drainer);
+        }
+        if (tries < FULL_RING_SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(FULL_RING_PARK_NANOS);
+        }
+    }
+
+    // Drainer side
+
+    private void drainLoop() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            try {
+                int drained = drainAvailable();
+                if (isClosed() && consumedSequence == claimedSequence()) {
+                    // Nothing can be claimed any more, flush the rest and complete the remaining requests
+                    flushBatch();
+                    log.debug("Ring buffer drainer stopped");
+                    return;
+                }
+                long now = System.nanoTime();
+                boolean flushRequested = flushTarget.get() > flushedSequence && consumedSequence >= flushTarget.get();
+                boolean intervalElapsed = now - lastFlush >= flushIntervalNanos;
+                if (batch.getItemCount() >= flushSize || flushRequested || (intervalElapsed && !batch.isEmpty())) {
+                    flushBatch();
+                    lastFlush = now;
+                } else if (intervalElapsed) {
+                    lastFlush = now;
+                } else if (drained == 0) {
+                    idle(flushIntervalNanos - (now - lastFlush));
+                }
+            } catch (Throwable t) {
+                // Never let the drainer die, otherwise producers would eventually spin forever on a full ring
+                log.error("Unexpected error in ring buffer drainer", t);
+            }
+        }
+    }
+
+    /**
+     * Moves published slots into the current batch, stopping at the first unpublished slot or a full batch.
+     *
+     * @return number of slots drained
+     */
+    private int drainAvailable() {
+        int drained = 0;
+        long seq = consumedSequence;
+        while (batch.getItemCount() < flushSize) {
+            int index = (int) (seq & mask);
+            if (published.get(index) != seq) {
+                break;
+            }
+            Slot slot = slots[index];
+            if (slot.capture != Slot.CAPTURE_NONE) {
+                materializeCapture(slot);
+            } else {
+                addPushedEvent(slot);
+            }
+            slot.block = null;
+            slot.log = null;
+            slot.blockId = null;
+            slot.name = null;
+            slot.id = null;
+            slot.parentId = null;
+            slot.logId = null;
+            slot.parentLogId = null;
+            seq++;
+            drained++;
+            consumedSequence = seq;
+        }
+        return drained;
+    }
+
+    private void addPushedEvent(Slot slot) {
+        metrics.recordPush(slot.type);
+        switch (slot.type) {
+            case BLOCK_CREATED:
+                batch.addBlock(slot.block);
+                break;
+            case LOG:
+                batch.addLog(slot.log);
+                break;
+            case BLOCK_ENTERED:
+                batch.addBlockEntered(slot.blockId, slot.time);
+                break;
+            case BLOCK_EXITED:
+                batch.addBlockExited(slot.blockId, slot.time);
+                break;
+            case BLOCK_RETURNED:
+                batch.addBlockReturned(slot.blockId, slot.time);
+                break;
+        }
+    }
+
+    /**
+     * Builds the events a captured sub block entry or exit stands for and adds them to the current batch.
+     */
+    private void materializeCapture(Slot slot) {
+        long millis = VFLClock.toEpochMillis(slot.time);
+        String blockId = slot.id.get();
+        if (slot.capture == Slot.CAPTURE_EXITED) {
+            batch.addBlockExited(blockId, millis);
+            batch.addBlockReturned(blockId, millis);
+            metrics.recordPush(BlockEvent.Type.BLOCK_EXITED);
+            metrics.recordPush(BlockEvent.Type.BLOCK_RETURNED);
+            return;
+        }
+        String parentBlockId = slot.parentId.get();
+        Block block = new Block();
+        block.setId(blockId);
+        block.setName(slot.name);
+        block.setParentBlockId(parentBlockId);
+        block.setCreatedAt(millis);
+        batch.addBlock(block);
+        batch.addBlockEntered(blockId, millis);
+        batch.addLog(new BlockLog(slot.logId.get(), parentBlockId, null,
+                slot.parentLogId == null ? null : slot.parentLogId.get(), blockId, millis, TRACE_PRIMARY));
+        metrics.recordPush(BlockEvent.Type.BLOCK_CREATED);
+        metrics.recordPush(BlockEvent.Type.BLOCK_ENTERED);
+        metrics.recordPush(BlockEvent.Type.LOG);
+    }
+
+    /**
+     * Parks the drainer until a producer fills a batch, a force flush arrives or the interval elapses.
+     */
+    private void idle(long parkNanos) {
+        drainerParked = true;
+        try {
+            // Re-check after announcing the park so a concurrent unpark cannot be missed
+            long seq = consumedSequence;
+            if (published.get((int) (seq & mask)) == seq && claimedSequence() - flushedSequence >= flushSize) {
+                return;
+            }
+            if (flushTarget.get() > flushedSequence || isClosed()) {
+                // A force flush or shutdown is waiting on a slot that is claimed but not yet published
+                Thread.onSpinWait();
+                return;
+            }
+            LockSupport.parkNanos(this, Math.max(parkNanos, 0));
+        } finally {
+            drainerParked = false;
+        }
+    }
+
+    /**
+     * Hands the current batch to the flush handler in sequence order and completes covered flush requests.
+     */
+    private void flushBatch() {
+        int size = batch.getItemCount();
+        Exception failure = null;
+        long start = System.nanoTime();
+        try {
+            batch.flushUsing(flushHandler);
+            if (size > 0) {
+                log.debug("Successfully flushed {} items", size);
+            }
+        } catch (Exception e) {
+            log.error("Error during flush operation", e);
+            failure = e;
+            // Don't rethrow - the drainer must keep running
+        } finally {
+            if (size > 0) {
+                metrics.recordFlush(size, System.nanoTime() - start, failure == null);
+            }
+            batch.clear();
+            flushedSequence = consumedSequence;
+            completeWaiters(failure);
+        }
+    }
+
+    private boolean isClosed() {
+        return (claimSequence.get() & CLOSED) != 0;
+    }
+
+    /**
+     * @return the next sequence to be claimed, without the CLOSED bit
+     */
+    private long claimedSequence() {
+        return claimSequence.get() & ~CLOSED;
+    }
+
+    private void completeWaiters(Exception failure) {
+        if (flushWaiters.isEmpty()) {
+            return;
+        }
+        long flushed = flushedSequence;
+        flushWaiters.removeIf(waiter -> {
+            if (waiter.target > flushed) {
+                return false;
+            }
+            if (failure == null) {
+                waiter.completion.complete(null);
+            } else {
+                waiter.completion.completeExceptionally(failure);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * A flush request waiting for every sequence below {@code target} to be flushed.
+     */
+    private static final class FlushWaiter {
+        private final long target;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        FlushWaiter(long target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * Pre-allocated event holder. Reused for the lifetime of the ring.
+     */
+    private static final class Slot {
+        private static final byte CAPTURE_NONE = 0;
+        private static final byte CAPTURE_ENTERED = 1;
+        private static final byte CAPTURE_EXITED = 2;
+
+        private BlockEvent.Type type;
+        private byte capture;
+        private Block block;
+        private BlockLog log;
+        private String blockId;
+        // Raw nanoTime for captured events
+        private long time;
+        // Name and id handles for captured events
+        private String name;
+        private LazyId id;
+        private LazyId parentId;
+        private LazyId logId;
+        private LazyId parentLogId;
+    }
+}
@@ -0,0 +1,460 @@
+package dev.kuku.vfl.api.buffer;
+
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.FlushBatchPool;
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous buffer that spreads producers over independent stripes.
+ * <p>
+ * Each producer thread is hashed onto one stripe and only ever touches that stripe's lock, batch and counter, so
+ * threads on different stripes never write to shared state while pushing.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Early hand-off of a single stripe once it reaches {@code stripeSize} items</li>
+ *     <li>Periodic flushing that merges all stripes into one batch per flush handler call</li>
+ *     <li>Non-blocking {@link #flushAsync()} and force flush with timeout built on top of it</li>
+ *     <li>Push, flush and drop metrics through {@link #getMetrics()}, recorded with striped counters</li>
+ *     <li>Stripes padded to their own cache lines, so producers on adjacent stripes do not falsely share them</li>
+ * </ul>
+ * <p>
+ * Thread Safety: This class is thread-safe and designed for concurrent access.
+ */
+public class StripedBuffer implements VFLBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(StripedBuffer.class);
+    private static final int STRIPE_BATCH_CAPACITY = 16;
+
+    // Configuration
+    private final int stripeSize;
+    private final int flushTimeoutMs;
+    private final ExecutorService flushExecutor;
+    private final VFLFlushHandler flushHandler;
+
+    // Buffer state - each stripe guards its own batch
+    private final FlushBatchPool batchPool;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    // Flush operation tracking
+    // Completion of every batch submitted but not yet processed by the flush handler
+    private final Set<CompletableFuture<Void>> pendingFlushes = ConcurrentHashMap.newKeySet();
+
+    private final BufferMetrics metrics;
+
+    /**
+     * Creates a new StripedBuffer with the specified configuration.
+     *
+     * @param stripeCount            Number of stripes. Rounded up to the next power of two
+     * @param stripeSize             Maximum number of items a stripe holds before handing itself off for flushing
+     * @param flushIntervalMs        Interval between periodic merged flushes in milliseconds
+     * @param flushTimeoutMs         Maximum time to wait for flush operations during force flush
+     * @param flushExecutor          Executor service for running flush operations
+     * @param periodicFlushScheduler Scheduled executor for periodic flushes
+     * @param flushHandler           Handler that performs the actual flush operations
+     */
+    public StripedBuffer(
+            int stripeCount,
+            int stripeSize,
+            int flushIntervalMs,
+            int flushTimeoutMs,
+            ExecutorService flushExecutor,
+            ScheduledExecutorService periodicFlushScheduler,
+            VFLFlushHandler flushHandler) {
+        if (stripeCount <= 0 || stripeSize <= 0) {
+            throw new IllegalArgumentException("stripeCount and stripeSize must be positive");
+        }
+        int count = Integer.highestOneBit(stripeCount);
+        if (count < stripeCount) {
+            count <<= 1;
+        }
+        this.stripeSize = stripeSize;
+        this.flushTimeoutMs = flushTimeoutMs;
+        this.flushExecutor = flushExecutor;
+        this.flushHandler = flushHandler;
+        // Enough idle batches to refill every stripe after a merged flush
+        this.batchPool = new FlushBatchPool(count * 2, STRIPE_BATCH_CAPACITY);
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(batchPool);
+        }
+        this.metrics = new BufferMetrics(this::getCurrentBufferSize, this::getPendingFlushCount);
+
+        periodicFlushScheduler.scheduleWithFixedDelay(
+                this::performPeriodicFlush,
+                flushIntervalMs,
+                flushIntervalMs,
+                TimeUnit.MILLISECONDS
+        );
+        log.debug("Started striped buffer with {} stripes and periodic flushing every {} ms", count, flushIntervalMs);
+    }
+
+    /**
+     * Picks the stripe owned by the calling thread.
+     */
+    private Stripe currentStripe() {
+        long id = Thread.currentThread().getId();
+        // Fibonacci hashing spreads sequential thread ids across stripes
+        int hash = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        return stripes[hash & stripeMask];
+    }
+
+    /**
+     * Performs a periodic merged flush if there's data to flush.
+     */
+    private void performPeriodicFlush() {
+        try {
+            FlushBatch merged = drainAllStripes();
+            if (merged != null) {
+                submitFlushTask(merged);
+                log.debug("Performed periodic flush with {} items", merged.getItemCount());
+            }
+        } catch (Exception e) {
+            log.error("Error during periodic flush", e);
+        }
+    }
+
+    /**
+     * Detaches the batch of every stripe and merges them into a single batch.
+     * Each stripe is locked only for the O(1) detach, merging happens outside the stripe locks.
+     *
+     * @return the merged batch, or null if every stripe was empty
+     */
+    private FlushBatch drainAllStripes() {
+        List<FlushBatch> detached = new ArrayList<>(stripes.length);
+        for (Stripe stripe : stripes) {
+            FlushBatch batch = stripe.detachIfNotEmpty();
+            if (batch != null) {
+                detached.add(batch);
+            }
+        }
+        if (detached.isEmpty()) {
+            return null;
+        }
+        if (detached.size() == 1) {
+            return detached.get(0);
+        }
+        FlushBatch merged = batchPool.acquire();
+        for (FlushBatch batch : detached) {
+            merged.mergeFrom(batch);
+            batchPool.release(batch);
+        }
+        return merged;
+    }
+
+    /**
+     * Submits a flush task to the executor and tracks it.
+     */
+    private void submitFlushTask(FlushBatch batch) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        pendingFlushes.add(completion);
+        try {
+            flushExecutor.execute(() -> executeFlushOperation(batch, completion));
+        } catch (RuntimeException e) {
+            log.error("Failed to submit flush task, dropping {} items", batch.getItemCount(), e);
+            metrics.recordDropped(batch.getItemCount());
+            completeFlush(batch, completion, e);
+        }
+    }
+
+    /**
+     * Executes the actual flush operation and handles completion tracking.
+     */
+    private void executeFlushOperation(FlushBatch batch, CompletableFuture<Void> completion) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = batch.flushAsyncUsing(flushHandler);
+        } catch (Exception e) {
+            // Don't rethrow - we don't want to kill the executor thread
+            delivery = CompletableFuture.failedFuture(e);
+        }
+        delivery.whenComplete((ignored, failure) -> {
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            if (failure == null) {
+                log.debug("Successfully flushed {} items", batch.getItemCount());
+            } else {
+                log.error("Error during flush operation", failure);
+            }
+            metrics.recordFlush(batch.getItemCount(), System.nanoTime() - start, failure == null);
+            completeFlush(batch, completion, failure);
+        });
+    }
+
+    private void completeFlush(FlushBatch batch, CompletableFuture<Void> completion, Throwable failure) {
+        // The handler is done with the batch, recycle it
+        batchPool.release(batch);
+        pendingFlushes.remove(completion);
+        if (failure == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Hands a full stripe off for flushing so a hot thread does not wait for the periodic flush.
+     */
+    private void handOffIfFull(Stripe stripe, int stripeItems) {
+        if (stripeItems < stripeSize) {
+            return;
+        }
+        FlushBatch batch = stripe.detachIfFull(stripeSize);
+        if (batch != null) {
+            submitFlushTask(batch);
+            log.debug("Handed off full stripe containing {} items", batch.getItemCount());
+        }
+    }
+
+    // VFLBuffer interface implementations
+
+    @Override
+    public void pushLog(BlockLog log) {
+        metrics.recordPush(BlockEvent.Type.LOG);
+        Stripe stripe = currentStripe();
+        int size;
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (stripe) {
+            waited = metrics.endPushWait(waitStart);
+            stripe.batch.addLog(log);
+            size = ++stripe.size;
+        }
+        metrics.recordPushWait(waited);
+        handOffIfFull(stripe, size);
+    }
+
+    @Override
+    public void pushBlock(Block block) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_CREATED);
+        Stripe stripe = currentStripe();
+        int size;
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (stripe) {
+            waited = metrics.endPushWait(waitStart);
+            stripe.batch.addBlock(block);
+            size = ++stripe.size;
+        }
+        metrics.recordPushWait(waited);
+        handOffIfFull(stripe, size);
+    }
+
+    @Override
+    public void pushBlockEntered(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_ENTERED);
+        Stripe stripe = currentStripe();
+        int size;
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (stripe) {
+            waited = metrics.endPushWait(waitStart);
+            stripe.batch.addBlockEntered(blockId, time);
+            size = ++stripe.size;
+        }
+        metrics.recordPushWait(waited);
+        handOffIfFull(stripe, size);
+    }
+
+    @Override
+    public void pushBlockReturned(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_RETURNED);
+        Stripe stripe = currentStripe();
+        int size;
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (stripe) {
+            waited = metrics.endPushWait(waitStart);
+            stripe.batch.addBlockReturned(blockId, time);
+            size = ++stripe.size;
+        }
+        metrics.recordPushWait(waited);
+        handOffIfFull(stripe, size);
+    }
+
+    @Override
+    public void pushBlockExited(String blockId, long time) {
+        metrics.recordPush(BlockEvent.Type.BLOCK_EXITED);
+        Stripe stripe = currentStripe();
+        int size;
+        long waitStart = metrics.startPushWait();
+        long waited;
+        synchronized (stripe) {
+            waited = metrics.endPushWait(waitStart);
+            stripe.batch.addBlockExited(blockId, time);
+            size = ++stripe.size;
+        }
+        metrics.recordPushWait(waited);
+        handOffIfFull(stripe, size);
+    }
+
+    /**
+     * Requests a flush without waiting for it, flush tasks run on the flush executor.
+     */
+    @Override
+    public void flushTrace(String rootBlockId) {
+        flushAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        // Merge and flush any remaining data in the stripes
+        FlushBatch remaining = drainAllStripes();
+        if (remaining != null) {
+            submitFlushTask(remaining);
+            log.debug("Submitted flush task with {} remaining items", remaining.getItemCount());
+        }
+        if (pendingFlushes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(pendingFlushes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public void forceFlush() {
+        log.debug("Force flush initiated");
+        try {
+            flushAsync().get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+            log.debug("Force flush completed successfully");
+        } catch (TimeoutException e) {
+            log.warn("Force flush timed out after {} ms with {} operations still pending",
+                    flushTimeoutMs, pendingFlushes.size());
+        } catch (ExecutionException e) {
+            log.warn("Force flush completed with flush errors: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Force flush interrupted", e);
+        }
+    }
+
+    /**
+     * Returns the number of pending flush operations.
+     * Useful for monitoring and testing.
+     *
+     * @return number of flush operations currently being executed
+     */
+    public int getPendingFlushCount() {
+        return pendingFlushes.size();
+    }
+
+    /**
+     * Returns the current buffer size summed over all stripes.
+     * Useful for monitoring and testing.
+     *
+     * @return current number of items in the buffer
+     */
+    public int getCurrentBufferSize() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of stripes producers are spread over.
+     *
+     * @return stripe count
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns the push, flush and drop metrics of this buffer.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link BufferMetrics#snapshot()} and {@link BufferMetrics#registerMBean(String)}
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Cache line padding placed in front of a stripe's fields.
+     * <p>
+     * Stripes are allocated one after another, so without padding the lock word and counter of one stripe share a
+     * cache line with those of its neighbour and producers on different stripes still invalidate each other's lines.
+     * HotSpot lays out superclass fields before subclass fields, so the padding is split over a class hierarchy
+     * instead of being declared next to the hot fields, where field layout could reorder it.
+     */
+    @SuppressWarnings("unused")
+    private abstract static class StripePadBefore {
+        private long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    /**
+     * The hot fields of a stripe, between {@link StripePadBefore} and the padding in {@link Stripe}.
+     */
+    private abstract static class StripeFields extends StripePadBefore {
+        final FlushBatchPool batchPool;
+        FlushBatch batch;
+        int size = 0;
+
+        StripeFields(FlushBatchPool batchPool) {
+            this.batchPool = batchPool;
+        }
+    }
+
+    /**
+     * A single stripe. All fields are guarded by the stripe's own monitor.
+     * <p>
+     * Padded on both sides to a 64 byte cache line so that pushes on adjacent stripes do not contend on the same line.
+     */
+    private static final class Stripe extends StripeFields {
+        @SuppressWarnings("unused")
+        private long p11, p12, p13, p14, p15, p16, p17;
+
+        Stripe(FlushBatchPool batchPool) {
+            super(batchPool);
+            this.batch = batchPool.acquire();
+        }
+
+        synchronized FlushBatch detachIfNotEmpty() {
+            if (size == 0) {
+                return null;
+            }
+            return detach();
+        }
+
+        synchronized FlushBatch detachIfFull(int stripeSize) {
+            // Another thread may have already handed this stripe off
+            if (size < stripeSize) {
+                return null;
+            }
+            return detach();
+        }
+
+        private FlushBatch detach() {
+            FlushBatch detached = batch;
+            batch = batchPool.acquire();
+            size = 0;
+            return detached;
+        }
+    }
+}
@@ -1,18 +1,19 @@
 package dev.kuku.vfl.api.buffer;
 
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.FlushBatchPool;
 import dev.kuku.vfl.internal.buffer.VFLBuffer;
 import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
 import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
 import dev.kuku.vfl.internal.models.BlockLog;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class SynchronousBuffer implements VFLBuffer {
+    private static final int MAX_POOLED_BATCHES = 4;
     private final VFLFlushHandler flushHandler;
     private final int flushSize;
 
@@ -20,12 +21,12 @@ public class SynchronousBuffer implements VFLBuffer {
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final AtomicInteger totalSize = new AtomicInteger(0);
 
-    // Consolidated data structures
-    private final List<BlockLog> logs;
-    private final List<Block> blocks;
-    private final Map<String, Long> blockEntered;
-    private final Map<String, Long> blockExited;
-    private final Map<String, Long> blockReturned;
+    // Active batch is swapped for a pooled empty one on flush
+    private final FlushBatchPool batchPool;
+    private FlushBatch activeBatch;
+
+    // Flushes run on the pushing thread, so no batch is ever waiting for the flush handler
+    private final BufferMetrics metrics = new BufferMetrics(this::getCurrentSize, () -> 0);
 
     public SynchronousBuffer(VFLFlushHandler flushHandler, int flushSize) {
         this.flushHandler = flushHandler;
@@ -33,47 +34,52 @@ public class SynchronousBuffer implements VFLBuffer {
 
         // Initialize with reasonable capacity
         int capacity = Math.max(16, flushSize / 4);
-        this.logs = new ArrayList<>(capacity);
-        this.blocks = new ArrayList<>(capacity);
-        this.blockEntered = new HashMap<>(capacity);
-        this.blockExited = new HashMap<>(capacity);
-        this.blockReturned = new HashMap<>(capacity);
+        this.batchPool = new FlushBatchPool(MAX_POOLED_BATCHES, capacity);
+        this.activeBatch = batchPool.acquire();
     }
 
     @Override
     public void pushLog(BlockLog log) {
-        addItem(() -> logs.add(log));
+        addItem(BlockEvent.Type.LOG, () -> activeBatch.addLog(log));
     }
 
     @Override
     public void pushBlock(Block block) {
-        addItem(() -> blocks.add(block));
+        addItem(BlockEvent.Type.BLOCK_CREATED, () -> activeBatch.addBlock(block));
     }
 
     @Override
     public void pushBlockReturned(String blockId, long time) {
-        addItem(() -> blockReturned.put(blockId, time));
+        addItem(BlockEvent.Type.BLOCK_RETURNED, () -> activeBatch.addBlockReturned(blockId, time));
     }
 
     @Override
     public void pushBlockEntered(String blockId, long time) {
-        addItem(() -> blockEntered.put(blockId, time));
+        addItem(BlockEvent.Type.BLOCK_ENTERED, () -> activeBatch.addBlockEntered(blockId, time));
     }
 
     @Override
     public void pushBlockExited(String blockId, long time) {
-        addItem(() -> blockExited.put(blockId, time));
+        addItem(BlockEvent.Type.BLOCK_EXITED, () -> activeBatch.addBlockExited(blockId, time));
     }
 
     @Override
     public void forceFlush() {
-        FlushData data = extractDataForFlush();
-        if (data.isEmpty()) {
+        FlushBatch data = extractDataForFlush();
+        if (data == null) {
             return;
         }
 
         // Flush outside of lock to minimize contention
-        data.flushUsing(flushHandler);
+        boolean success = false;
+        long start = System.nanoTime();
+        try {
+            data.flushUsing(flushHandler);
+            success = true;
+        } finally {
+            metrics.recordFlush(data.getItemCount(), System.nanoTime() - start, success);
+            batchPool.release(data);
+        }
     }
 
     public int getCurrentSize() {
@@ -84,15 +90,29 @@ public class SynchronousBuffer implements VFLBuffer {
         return totalSize.get() == 0;
     }
 
+    /**
+     * Returns the push and flush metrics of this buffer.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link BufferMetrics#snapshot()} and {@link BufferMetrics#registerMBean(String)}
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
     // Private helper methods
-    private void addItem(Runnable addOperation) {
+    private void addItem(BlockEvent.Type type, Runnable addOperation) {
+        metrics.recordPush(type);
+        long waitStart = metrics.startPushWait();
         lock.writeLock().lock();
+        long waited = metrics.endPushWait(waitStart);
         try {
             addOperation.run();
             totalSize.incrementAndGet();
         } finally {
             lock.writeLock().unlock();
         }
+        metrics.recordPushWait(waited);
         checkAndFlush();
     }
 
@@ -102,28 +122,16 @@ public class SynchronousBuffer implements VFLBuffer {
         }
     }
 
-    private FlushData extractDataForFlush() {
+    private FlushBatch extractDataForFlush() {
         lock.writeLock().lock();
         try {
             if (totalSize.get() == 0) {
-                return FlushData.empty();
+                return null;
             }
 
-            // Create snapshots and clear originals atomically
-            FlushData data = new FlushData(
-                    new ArrayList<>(logs),
-                    new ArrayList<>(blocks),
-                    new HashMap<>(blockEntered),
-                    new HashMap<>(blockExited),
-                    new HashMap<>(blockReturned)
-            );
-
-            // Clear all collections
-            logs.clear();
-            blocks.clear();
-            blockEntered.clear();
-            blockExited.clear();
-            blockReturned.clear();
+            // Swap in an empty batch instead of copying, O(1) under the lock
+            FlushBatch data = activeBatch;
+            activeBatch = batchPool.acquire();
             totalSize.set(0);
 
             return data;
@@ -131,40 +139,4 @@ public class SynchronousBuffer implements VFLBuffer {
             lock.writeLock().unlock();
         }
     }
-
-    // Inner class to encapsulate flush data and operations
-    private static class FlushData {
-        private final List<BlockLog> logs;
-        private final List<Block> blocks;
-        private final Map<String, Long> blockEntered;
-        private final Map<String, Long> blockExited;
-        private final Map<String, Long> blockReturned;
-
-        private FlushData(List<BlockLog> logs, List<Block> blocks,
-                          Map<String, Long> blockEntered, Map<String, Long> blockExited,
-                          Map<String, Long> blockReturned) {
-            this.logs = logs;
-            this.blocks = blocks;
-            this.blockEntered = blockEntered;
-            this.blockExited = blockExited;
-            this.blockReturned = blockReturned;
-        }
-
-        private static FlushData empty() {
-            return new FlushData(List.of(), List.of(), Map.of(), Map.of(), Map.of());
-        }
-
-        private boolean isEmpty() {
-            return logs.isEmpty() && blocks.isEmpty() &&
-                   blockEntered.isEmpty() && blockExited.isEmpty() && blockReturned.isEmpty();
-        }
-
-        private void flushUsing(VFLFlushHandler flushHandler) {
-            if (!blocks.isEmpty()) flushHandler.flushBlocks(blocks);
-            if (!logs.isEmpty()) flushHandler.flushLogs(logs);
-            if (!blockEntered.isEmpty()) flushHandler.flushBlockEntered(blockEntered);
-            if (!blockExited.isEmpty()) flushHandler.flushBlockExited(blockExited);
-            if (!blockReturned.isEmpty()) flushHandler.flushBlockReturned(blockReturned);
-        }
-    }
-}
\ No newline at end of file
+}
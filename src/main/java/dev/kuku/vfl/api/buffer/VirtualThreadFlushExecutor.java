@@ -0,0 +1,220 @@
+package dev.kuku.vfl.api.buffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that runs every flush task on its own virtual thread, with at most {@code maxConcurrentFlushes} tasks
+ * running at once.
+ * <p>
+ * Flush handlers spend most of their time waiting for the VFL Hub. On a virtual thread that wait does not hold a
+ * platform thread, so many slow requests can be in flight without sizing a pool. Tasks over the limit wait on a
+ * semaphore, parked virtual threads are cheap.
+ * <p>
+ * Virtual threads need Java 21. The library targets Java 11, so they are looked up at runtime. On older runtimes the
+ * tasks go to a pool of at most {@code maxConcurrentFlushes} daemon platform threads instead, and tasks over the limit
+ * wait in its queue rather than each holding a blocked thread.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class VirtualThreadFlushExecutor extends AbstractExecutorService {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadFlushExecutor.class);
+    private static final AtomicLong threadCounter = new AtomicLong(0);
+
+    // Null when virtual threads are not available
+    private final ThreadFactory threadFactory;
+    // Bounded fallback used instead of threadFactory before Java 21
+    private final ThreadPoolExecutor platformPool;
+    private final Semaphore permits;
+    private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+    private final Object terminationMonitor = new Object();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param maxConcurrentFlushes Maximum number of flush tasks running at the same time
+     */
+    public VirtualThreadFlushExecutor(int maxConcurrentFlushes) {
+        if (maxConcurrentFlushes <= 0) {
+            throw new IllegalArgumentException("maxConcurrentFlushes must be positive");
+        }
+        this.permits = new Semaphore(maxConcurrentFlushes);
+        this.threadFactory = virtualThreadFactory("vfl-flush-");
+        if (threadFactory != null) {
+            this.platformPool = null;
+        } else {
+            log.warn("Virtual threads are not available on this runtime, flushing on up to {} platform threads",
+                    maxConcurrentFlushes);
+            this.platformPool = new ThreadPoolExecutor(maxConcurrentFlushes, maxConcurrentFlushes,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "vfl-flush-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Idle flush threads go away instead of living as long as the buffer
+            platformPool.allowCoreThreadTimeOut(true);
+        }
+        log.debug("Created flush executor allowing {} concurrent flushes", maxConcurrentFlushes);
+    }
+
+    /**
+     * Creates a single threaded scheduler for periodic flushes. Its thread is virtual when available, a daemon
+     * platform thread otherwise.
+     */
+    public static ScheduledExecutorService newPeriodicFlushScheduler() {
+        ThreadFactory virtual = virtualThreadFactory("vfl-flush-scheduler-");
+        if (virtual != null) {
+            return Executors.newSingleThreadScheduledExecutor(virtual);
+        }
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vfl-flush-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return whether flush tasks run on virtual threads on this runtime
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory("vfl-probe-") != null;
+    }
+
+    /**
+     * Looks up {@code Thread.ofVirtual().name(prefix, 0).factory()}.
+     *
+     * @return the factory, or null before Java 21
+     */
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (platformPool != null) {
+            platformPool.execute(task);
+            return;
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Flush executor has been shut down");
+        }
+        Thread thread = threadFactory.newThread(() -> runWithPermit(task));
+        runningThreads.add(thread);
+        // Re-check so a concurrent shutdownNow cannot miss the new thread
+        if (shutdown) {
+            runningThreads.remove(thread);
+            throw new RejectedExecutionException("Flush executor has been shut down");
+        }
+        thread.start();
+    }
+
+    private void runWithPermit(Runnable task) {
+        try {
+            permits.acquire();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.debug("Flush task interrupted before it started");
+        } finally {
+            runningThreads.remove(Thread.currentThread());
+            synchronized (terminationMonitor) {
+                terminationMonitor.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (platformPool != null) {
+            platformPool.shutdown();
+        }
+    }
+
+    /**
+     * Interrupts every running flush task. Tasks still waiting for a permit are abandoned and not returned.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        if (platformPool != null) {
+            return platformPool.shutdownNow();
+        }
+        for (Thread thread : runningThreads) {
+            thread.interrupt();
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if (platformPool != null) {
+            return platformPool.isTerminated();
+        }
+        return shutdown && runningThreads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (platformPool != null) {
+            return platformPool.awaitTermination(timeout, unit);
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationMonitor) {
+            while (!isTerminated()) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                terminationMonitor.wait(remainingMs);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of flush tasks started and not yet finished, including those waiting for a permit.
+     * Useful for monitoring and testing.
+     *
+     * @return number of unfinished flush tasks
+     */
+    public int getActiveTaskCount() {
+        if (platformPool != null) {
+            return platformPool.getActiveCount() + platformPool.getQueue().size();
+        }
+        return runningThreads.size();
+    }
+}
@@ -0,0 +1,166 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flush handler that sends the requests of a {@link VFLHubFlushHandler} with {@code HttpClient.sendAsync}, so no
+ * thread is held while a request is on the wire.
+ * <p>
+ * The flush thread encodes the batch, starts sending it and returns. Several batches are then in flight at once over
+ * the hub handler's HTTP/2 connection, which lets a single flush thread keep the hub link busy.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>A cap on batches in flight: the flush thread blocks at the cap until a response frees a slot</li>
+ *     <li>{@link #flushEventsAsync} futures completed on delivery, which buffers use for their pending flush
+ *     tracking, so a force flush still waits for the hub</li>
+ *     <li>{@link #awaitIdle(long)} to wait for delivery when the buffer calls the blocking flush methods</li>
+ * </ul>
+ * <p>
+ * Requests of one batch are sent one after another and hold a single slot. In batched mode that is exactly one
+ * request per slot.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class AsyncHubFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncHubFlushHandler.class);
+
+    private final VFLHubFlushHandler hub;
+    private final int maxInFlightBatches;
+    private final Semaphore inFlightSlots;
+
+    // Batches being sent. Its monitor wakes awaitIdle.
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * Creates a handler allowing eight batches in flight.
+     */
+    public AsyncHubFlushHandler(VFLHubFlushHandler hub) {
+        this(hub, 8);
+    }
+
+    /**
+     * @param hub                Handler whose requests are sent asynchronously
+     * @param maxInFlightBatches Maximum number of batches sent concurrently before the flush thread is held back
+     */
+    public AsyncHubFlushHandler(VFLHubFlushHandler hub, int maxInFlightBatches) {
+        if (maxInFlightBatches <= 0) {
+            throw new IllegalArgumentException("maxInFlightBatches must be positive");
+        }
+        this.hub = hub;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.inFlightSlots = new Semaphore(maxInFlightBatches);
+    }
+
+    /**
+     * Starts sending the batch and returns without waiting for the hub. Failures are logged.
+     */
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        flushEventsAsync(events).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                log.error("Failed to flush {} events to VFL Hub", events.size(), failure);
+            }
+        });
+    }
+
+    /**
+     * Encodes the batch, waits for a free in-flight slot and starts sending it.
+     *
+     * @return completes once the hub answered every request of the batch
+     */
+    @Override
+    public CompletableFuture<Void> flushEventsAsync(List<BlockEvent> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<VFLHubFlushHandler.HubRequest> requests;
+        try {
+            requests = hub.encodeEvents(events);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            inFlightSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requests.forEach(VFLHubFlushHandler.HubRequest::release);
+            return CompletableFuture.failedFuture(e);
+        }
+        inFlight.incrementAndGet();
+
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = hub.sendAsync(requests.get(0));
+            for (int i = 1; i < requests.size(); i++) {
+                VFLHubFlushHandler.HubRequest next = requests.get(i);
+                delivery = delivery.thenCompose(ignored -> hub.sendAsync(next));
+            }
+        } catch (RuntimeException e) {
+            delivery = CompletableFuture.failedFuture(e);
+        }
+        return delivery.whenComplete((ignored, failure) -> {
+            // Release whatever was not sent because an earlier request failed
+            requests.forEach(VFLHubFlushHandler.HubRequest::release);
+            // Count the batch out before its slot can be taken again
+            batchDone();
+            inFlightSlots.release();
+        });
+    }
+
+    private void batchDone() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every batch started so far has been answered by the hub.
+     *
+     * @return true if no batch was in flight any more within the timeout
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                inFlight.wait(remainingMs);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of batches sent but not yet answered by the hub.
+     * Useful for monitoring and testing.
+     *
+     * @return batches in flight
+     */
+    public int getInFlightBatchCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the maximum number of batches in flight.
+     *
+     * @return in-flight cap
+     */
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+}
@@ -0,0 +1,109 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes a range of a byte array as read-only slices of that array.
+ * <p>
+ * {@code BodyPublishers.ofByteArray} copies the body into freshly allocated buffers for every subscription. Encoded
+ * request bodies already sit in pooled arrays that stay untouched until the response arrived, so they are handed to
+ * the client as they are.
+ * <p>
+ * Thread Safety: This class is thread-safe. Every subscription reads the array from the start.
+ */
+final class ByteArrayBodyPublisher implements HttpRequest.BodyPublisher {
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    ByteArrayBodyPublisher(byte[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private int position;
+        private long demand;
+        // Set while a thread delivers chunks, so a request from inside onNext only adds demand
+        private boolean emitting;
+        private boolean done;
+
+        Subscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            this.position = offset;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    done = true;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                }
+            }
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " chunks"));
+                return;
+            }
+            emit();
+        }
+
+        private void emit() {
+            int end = offset + length;
+            while (true) {
+                ByteBuffer chunk;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    if (position >= end) {
+                        done = true;
+                        chunk = null;
+                    } else if (demand == 0) {
+                        emitting = false;
+                        return;
+                    } else {
+                        int size = Math.min(CHUNK_BYTES, end - position);
+                        chunk = ByteBuffer.wrap(array, position, size).slice().asReadOnlyBuffer();
+                        position += size;
+                        demand--;
+                    }
+                }
+                if (chunk == null) {
+                    subscriber.onComplete();
+                    return;
+                }
+                subscriber.onNext(chunk);
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+        }
+    }
+}
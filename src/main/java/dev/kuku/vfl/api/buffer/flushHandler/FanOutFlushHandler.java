@@ -0,0 +1,335 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.api.buffer.OverflowPolicy;
+import dev.kuku.vfl.api.metrics.SinkMetricsSnapshot;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.FlushStage;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.SinkMetrics;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flush handler that hands every batch to several sinks, e.g. a {@link FileFlushHandler} and a
+ * {@link VFLHubFlushHandler}, each through its own queue and worker thread.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>One bounded queue and one worker per sink, so a slow or stalled sink only fills its own queue while the
+ *     other sinks keep delivering</li>
+ *     <li>An {@link OverflowPolicy} per sink deciding what happens to a batch when that sink's queue is full</li>
+ *     <li>Per-sink delivery latency, queue wait, failure and drop metrics as snapshots or through JMX</li>
+ *     <li>{@link #awaitIdle(long)} to wait until every sink worked off its queue</li>
+ * </ul>
+ * <p>
+ * A flush call copies the batch once, shares the read-only copy between the sinks and returns once every sink queued
+ * or dropped it, so a buffer's force flush no longer waits for delivery. Each sink receives its batches in flush
+ * order. The drop policies never make the calling thread wait. {@link OverflowPolicy#block(int)} does, for up to its
+ * timeout, which delays the other sinks and the buffer as well, so it is meant for sinks that must not lose data and
+ * are known to keep up. With {@link OverflowPolicy#sample(int)} a sink keeps one of every {@code sampleRate} batches
+ * while its queue is at least half full.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class FanOutFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(FanOutFlushHandler.class);
+
+    private final List<SinkQueue> sinks;
+
+    // Batches queued at some sink and not yet delivered or dropped. Its monitor wakes awaitIdle.
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * Creates a handler delivering to the given sinks.
+     *
+     * @throws IllegalArgumentException if there are no sinks or two share a name
+     */
+    public FanOutFlushHandler(List<Sink> sinks) {
+        if (sinks.isEmpty()) {
+            throw new IllegalArgumentException("At least one sink is required");
+        }
+        Set<String> names = new HashSet<>();
+        List<SinkQueue> queues = new ArrayList<>(sinks.size());
+        for (Sink sink : sinks) {
+            if (!names.add(sink.name)) {
+                throw new IllegalArgumentException("Duplicate sink name " + sink.name);
+            }
+            queues.add(new SinkQueue(sink));
+        }
+        this.sinks = Collections.unmodifiableList(queues);
+        log.debug("Started fan-out flush handler with sinks {}", names);
+    }
+
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        // The buffer recycles the list once this returns
+        accept(new ArrayList<>(events));
+    }
+
+    private void accept(List<BlockEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        QueuedBatch batch = new QueuedBatch(Collections.unmodifiableList(events));
+        for (SinkQueue sink : sinks) {
+            sink.enqueue(batch);
+        }
+    }
+
+    private void batchDone() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every sink has delivered or dropped every batch accepted so far.
+     *
+     * @return true if all queues drained within the timeout
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                inFlight.wait(remainingMs);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the sink workers. Batches still queued are dropped and counted in the sink's drop metrics, so
+     * {@link #awaitIdle(long)} only waits for the batches already being delivered.
+     */
+    public void shutdown() {
+        for (SinkQueue sink : sinks) {
+            sink.stage.shutdown();
+        }
+    }
+
+    /**
+     * Returns the metrics of every sink, in the order the sinks were given.
+     * Useful for monitoring and testing.
+     *
+     * @return sink metrics
+     */
+    public List<SinkMetricsSnapshot> getSinkMetrics() {
+        List<SinkMetricsSnapshot> snapshots = new ArrayList<>(sinks.size());
+        for (SinkQueue sink : sinks) {
+            snapshots.add(sink.metrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the metrics of one sink.
+     * Useful for monitoring and testing.
+     *
+     * @return sink metrics
+     * @throws IllegalArgumentException if there is no sink with that name
+     */
+    public SinkMetricsSnapshot getSinkMetrics(String name) {
+        return sink(name).metrics.snapshot();
+    }
+
+    /**
+     * Registers the metrics of every sink with the platform MBean server as
+     * {@code dev.kuku.vfl:type=Sink,name=<prefix>.<sink name>}.
+     */
+    public void registerMBeans(String prefix) {
+        for (SinkQueue sink : sinks) {
+            sink.metrics.registerMBean(prefix + "." + sink.name);
+        }
+    }
+
+    /**
+     * Removes the beans registered by {@link #registerMBeans}, if any.
+     */
+    public void unregisterMBeans() {
+        for (SinkQueue sink : sinks) {
+            sink.metrics.unregisterMBean();
+        }
+    }
+
+    private SinkQueue sink(String name) {
+        for (SinkQueue sink : sinks) {
+            if (sink.name.equals(name)) {
+                return sink;
+            }
+        }
+        throw new IllegalArgumentException("No sink named " + name);
+    }
+
+    /**
+     * Configuration of one destination of a {@link FanOutFlushHandler}.
+     */
+    public static final class Sink {
+        private final String name;
+        private final VFLFlushHandler handler;
+        private final int queueCapacity;
+        private final OverflowPolicy overflowPolicy;
+
+        /**
+         * @param name           Name used for the worker thread, logging and metrics
+         * @param handler        Handler delivering batches to this destination
+         * @param queueCapacity  Maximum number of batches waiting for this sink
+         * @param overflowPolicy What happens to a batch while the queue is full
+         */
+        public Sink(String name, VFLFlushHandler handler, int queueCapacity, OverflowPolicy overflowPolicy) {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("queueCapacity must be positive");
+            }
+            this.name = name;
+            this.handler = handler;
+            this.queueCapacity = queueCapacity;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        /**
+         * Creates a sink queueing up to 16 batches that drops new batches while its queue is full.
+         */
+        public Sink(String name, VFLFlushHandler handler) {
+            this(name, handler, 16, OverflowPolicy.dropNewest());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public VFLFlushHandler getHandler() {
+            return handler;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+    }
+
+    /**
+     * A batch shared by all sinks, with the time it was accepted.
+     */
+    private static final class QueuedBatch {
+        private final List<BlockEvent> events;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedBatch(List<BlockEvent> events) {
+            this.events = events;
+        }
+    }
+
+    /**
+     * Queue, worker and metrics of one sink.
+     */
+    private final class SinkQueue {
+        private final String name;
+        private final VFLFlushHandler handler;
+        private final OverflowPolicy overflowPolicy;
+        private final FlushStage<QueuedBatch> stage;
+        private final SinkMetrics metrics;
+        private final AtomicLong sampleCounter = new AtomicLong(0);
+
+        private SinkQueue(Sink sink) {
+            this.name = sink.name;
+            this.handler = sink.handler;
+            this.overflowPolicy = sink.overflowPolicy;
+            this.stage = new FlushStage<>("sink-" + sink.name, 1, sink.queueCapacity, this::deliver,
+                    this::discarded);
+            this.metrics = new SinkMetrics(sink.name, stage::getQueueDepth);
+        }
+
+        private void enqueue(QueuedBatch batch) {
+            inFlight.incrementAndGet();
+            boolean queued;
+            try {
+                queued = offer(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            } catch (RuntimeException e) {
+                // Only happens on shutdown
+                queued = false;
+            }
+            if (!queued) {
+                dropped(batch);
+            }
+        }
+
+        private boolean offer(QueuedBatch batch) throws InterruptedException {
+            switch (overflowPolicy.getMode()) {
+                case BLOCK:
+                    return stage.offer(batch, overflowPolicy.getBlockTimeoutMs());
+                case DROP_OLDEST_BATCH:
+                    while (!stage.offer(batch)) {
+                        QueuedBatch oldest = stage.removeOldest();
+                        if (oldest != null) {
+                            dropped(oldest);
+                        }
+                    }
+                    return true;
+                case SAMPLE:
+                    if (stage.getQueueDepth() * 2 >= stage.getQueueCapacity()
+                        && sampleCounter.getAndIncrement() % overflowPolicy.getSampleRate() != 0) {
+                        return false;
+                    }
+                    return stage.offer(batch);
+                default:
+                    return stage.offer(batch);
+            }
+        }
+
+        private void dropped(QueuedBatch batch) {
+            metrics.recordDropped(batch.events.size());
+            log.debug("Sink {} is full, dropped a batch of {} events", name, batch.events.size());
+            batchDone();
+        }
+
+        private void discarded(QueuedBatch batch) {
+            metrics.recordDropped(batch.events.size());
+            log.debug("Sink {} shut down, dropped a batch of {} events", name, batch.events.size());
+            batchDone();
+        }
+
+        /**
+         * Runs on the sink's worker thread.
+         */
+        private void deliver(QueuedBatch batch) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                handler.flushEvents(batch.events);
+                success = true;
+            } catch (Exception e) {
+                // Don't rethrow - the other sinks and later batches are unaffected
+                log.error("Sink {} failed to flush {} events", name, batch.events.size(), e);
+            } finally {
+                long end = System.nanoTime();
+                metrics.recordDelivery(batch.events.size(), start - batch.queuedAt, end - start, success);
+                batchDone();
+            }
+        }
+    }
+}
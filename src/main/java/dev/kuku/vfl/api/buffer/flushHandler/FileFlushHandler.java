@@ -0,0 +1,472 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import dev.kuku.vfl.internal.buffer.flushHandler.BinaryEventCodec;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.JsonEventWriter;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.util.ByteArrayPool;
+import dev.kuku.vfl.internal.util.DirectBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Flush handler that appends batches to rolling segment files in a local directory, for deployments that must not
+ * ship data to a hub.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>NDJSON or binary segments, see {@link FileFormat}, read back with {@link FileSegmentReader}</li>
+ *     <li>Encoding on the calling flush thread into pooled arrays, copied into pooled direct buffers and written
+ *     through a {@link FileChannel}</li>
+ *     <li>Group commit: batches flushed concurrently are written by one thread with a single gathering write and at
+ *     most one sync, while the other callers wait for that write instead of taking turns on the file</li>
+ *     <li>A {@link FileSyncPolicy} choosing between durability on return, periodic syncs and OS write-back</li>
+ *     <li>Rotation to a new segment by size and by age. Age is checked on write, so an idle handler keeps its
+ *     segment open until the next flush</li>
+ * </ul>
+ * <p>
+ * Segments are named {@code vfl-<sequence><extension>} and numbered on from the highest sequence already in the
+ * directory, so a restart never appends to a file a crash may have left with a partial last batch. A failed write also
+ * starts a new segment with the next batch. Old segments are never deleted by this handler.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class FileFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(FileFlushHandler.class);
+    static final String SEGMENT_PREFIX = "vfl-";
+    // Start of every binary segment, followed by a format version byte
+    static final byte[] BINARY_MAGIC = {'V', 'F', 'L', 'F'};
+    static final byte BINARY_VERSION = 1;
+    // Lines are ended explicitly, so no separator is written between root values
+    private static final JsonFactory JSON = new JsonFactory().setRootValueSeparator(null);
+
+    private final Path directory;
+    private final FileFormat format;
+    private final FileSyncPolicy syncPolicy;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeNanos;
+    private final boolean throwExceptions;
+    private final ByteArrayPool encodePool = new ByteArrayPool(16, 64 * 1024, 4 * 1024 * 1024);
+    private final DirectBufferPool directPool = new DirectBufferPool(64 * 1024, 64);
+
+    // Group commit state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final ArrayDeque<PendingWrite> pending = new ArrayDeque<>();
+    private boolean writing = false;
+    private boolean shutdown = false;
+
+    // Segment state, only touched by the thread writing a group
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentBytes;
+    private long segmentOpenedAt;
+    private long lastSyncAt;
+    private long nextSequence;
+
+    private final AtomicLong writtenEventCount = new AtomicLong(0);
+    private final AtomicLong writtenBytes = new AtomicLong(0);
+    private final AtomicLong failedEventCount = new AtomicLong(0);
+    private final AtomicLong groupWriteCount = new AtomicLong(0);
+    private final AtomicLong syncCount = new AtomicLong(0);
+    private final AtomicLong segmentCount = new AtomicLong(0);
+
+    /**
+     * Creates a handler writing NDJSON segments of up to 64 MB, rotated at least hourly and synced every second.
+     */
+    public FileFlushHandler(Path directory) {
+        this(directory, FileFormat.NDJSON, FileSyncPolicy.interval(1000), 64L * 1024 * 1024, 3_600_000, false);
+    }
+
+    /**
+     * Creates a new FileFlushHandler with the specified configuration.
+     *
+     * @param directory       Directory for the segment files. Created if missing
+     * @param format          Encoding of the segments
+     * @param syncPolicy      When written data is forced to the device
+     * @param maxSegmentBytes Size after which the next batch starts a new segment
+     * @param maxSegmentAgeMs Age in milliseconds after which the next batch starts a new segment, 0 to rotate by size
+     *                        only
+     * @param throwExceptions Whether write failures are thrown instead of only logged
+     */
+    public FileFlushHandler(
+            Path directory,
+            FileFormat format,
+            FileSyncPolicy syncPolicy,
+            long maxSegmentBytes,
+            long maxSegmentAgeMs,
+            boolean throwExceptions) {
+        if (maxSegmentBytes <= 0) {
+            throw new IllegalArgumentException("maxSegmentBytes must be positive");
+        }
+        if (maxSegmentAgeMs < 0) {
+            throw new IllegalArgumentException("maxSegmentAgeMs must not be negative");
+        }
+        this.directory = directory;
+        this.format = format;
+        this.syncPolicy = syncPolicy;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxSegmentAgeMs);
+        this.throwExceptions = throwExceptions;
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = FileSegmentReader.segments(directory);
+            this.nextSequence = existing.isEmpty() ? 0 : FileSegmentReader.sequenceOf(existing.get(existing.size() - 1)) + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open segment directory " + directory, e);
+        }
+        log.debug("Started file flush handler in {} writing {} segments with {}", directory, format, syncPolicy);
+    }
+
+    /**
+     * Appends the batch in push order and returns once it was written, and synced if the policy asks for it.
+     */
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        PendingWrite write;
+        try {
+            write = new PendingWrite(encode(events), events.size());
+        } catch (IOException | RuntimeException e) {
+            failed(events.size(), "encode", e);
+            return;
+        }
+        try {
+            commit(write);
+        } catch (IOException e) {
+            failed(events.size(), "write", e);
+        }
+    }
+
+    private ByteBuffer[] encode(List<BlockEvent> events) throws IOException {
+        ByteArrayPool.Buffer buffer = encodePool.acquire();
+        try {
+            if (format == FileFormat.BINARY) {
+                // Length prefix patched in below, the reader stops at a frame cut short by a crash
+                buffer.write(0);
+                buffer.write(0);
+                buffer.write(0);
+                buffer.write(0);
+                BinaryEventCodec.encode(events, buffer);
+                ByteBuffer.wrap(buffer.array()).putInt(0, buffer.size() - 4);
+            } else {
+                try (JsonGenerator out = JSON.createGenerator(buffer, JsonEncoding.UTF8)) {
+                    for (BlockEvent event : events) {
+                        JsonEventWriter.writeEvent(out, event);
+                        out.writeRaw('\n');
+                    }
+                }
+            }
+            return directPool.copyOf(buffer.array(), 0, buffer.size());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Queues the write and waits until a writing thread has handled it, becoming that thread if none is active.
+     */
+    private void commit(PendingWrite write) throws IOException {
+        lock.lock();
+        try {
+            if (shutdown) {
+                release(write);
+                throw new IOException("Handler has been shut down");
+            }
+            pending.addLast(write);
+            while (!write.done) {
+                if (writing) {
+                    written.awaitUninterruptibly();
+                    continue;
+                }
+                List<PendingWrite> group = new ArrayList<>(pending);
+                pending.clear();
+                writing = true;
+                lock.unlock();
+                try {
+                    writeGroup(group);
+                } finally {
+                    lock.lock();
+                    writing = false;
+                    for (PendingWrite done : group) {
+                        done.done = true;
+                    }
+                    written.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (write.failure != null) {
+            throw write.failure;
+        }
+    }
+
+    private void writeGroup(List<PendingWrite> group) {
+        List<ByteBuffer> gather = new ArrayList<>();
+        int gatheredFrom = 0;
+        try {
+            for (int i = 0; i < group.size(); i++) {
+                PendingWrite write = group.get(i);
+                if (segment != null && needsRotation(write.bytes)) {
+                    writeFully(gather);
+                    gatheredFrom = i;
+                    closeSegment();
+                }
+                if (segment == null) {
+                    openSegment();
+                }
+                for (ByteBuffer chunk : write.chunks) {
+                    gather.add(chunk);
+                }
+                segmentBytes += write.bytes;
+            }
+            writeFully(gather);
+            groupWriteCount.incrementAndGet();
+            if (syncPolicy.syncAfterWrite(System.nanoTime() - lastSyncAt)) {
+                sync();
+            }
+            for (PendingWrite write : group) {
+                writtenEventCount.addAndGet(write.eventCount);
+                writtenBytes.addAndGet(write.bytes);
+            }
+        } catch (IOException e) {
+            // Earlier groups in a rotated-away segment are already on disk, only fail what was not written
+            for (int i = gatheredFrom; i < group.size(); i++) {
+                group.get(i).failure = e;
+            }
+            for (int i = 0; i < gatheredFrom; i++) {
+                writtenEventCount.addAndGet(group.get(i).eventCount);
+                writtenBytes.addAndGet(group.get(i).bytes);
+            }
+            // Leave a possibly partial batch at the end of this segment and continue in a new one
+            abandonSegment();
+        } finally {
+            group.forEach(this::release);
+        }
+    }
+
+    private boolean needsRotation(long incomingBytes) {
+        if (segmentBytes == 0) {
+            return false;
+        }
+        return segmentBytes + incomingBytes > maxSegmentBytes
+               || (maxSegmentAgeNanos > 0 && System.nanoTime() - segmentOpenedAt >= maxSegmentAgeNanos);
+    }
+
+    private void writeFully(List<ByteBuffer> gather) throws IOException {
+        if (gather.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = gather.toArray(new ByteBuffer[0]);
+        int first = 0;
+        while (first < buffers.length) {
+            segment.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+        gather.clear();
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(FileSegmentReader.segmentName(nextSequence, format));
+        nextSequence++;
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        long bytes = 0;
+        if (format == FileFormat.BINARY) {
+            ByteBuffer header = ByteBuffer.allocate(BINARY_MAGIC.length + 1);
+            header.put(BINARY_MAGIC).put(BINARY_VERSION).flip();
+            try {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            bytes = header.limit();
+        }
+        segment = channel;
+        segmentPath = path;
+        segmentBytes = bytes;
+        segmentOpenedAt = System.nanoTime();
+        lastSyncAt = segmentOpenedAt;
+        segmentCount.incrementAndGet();
+        log.debug("Opened segment {}", path);
+    }
+
+    private void sync() throws IOException {
+        segment.force(false);
+        lastSyncAt = System.nanoTime();
+        syncCount.incrementAndGet();
+    }
+
+    /**
+     * Syncs unless the policy leaves it to the OS and closes the current segment.
+     */
+    private void closeSegment() throws IOException {
+        try {
+            if (syncPolicy.getMode() != FileSyncPolicy.Mode.NEVER) {
+                sync();
+            }
+        } finally {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    private void abandonSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.debug("Failed to close segment {}: {}", segmentPath, e.getMessage());
+        }
+        segment = null;
+    }
+
+    private void release(PendingWrite write) {
+        for (ByteBuffer chunk : write.chunks) {
+            directPool.release(chunk);
+        }
+    }
+
+    private void failed(int eventCount, String stage, Exception e) {
+        failedEventCount.addAndGet(eventCount);
+        if (throwExceptions) {
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e)
+                    : new RuntimeException("Failed to " + stage + " " + eventCount + " events", e);
+        }
+        log.error("Failed to {} {} events to {}, dropping them", stage, eventCount, directory, e);
+    }
+
+    /**
+     * Waits for writes in progress, then syncs and closes the current segment. Later flushes fail.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            while (writing || !pending.isEmpty()) {
+                written.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (segment != null) {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                log.error("Failed to close segment {}", segmentPath, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events written to segments.
+     * Useful for monitoring and testing.
+     *
+     * @return written event count
+     */
+    public long getWrittenEventCount() {
+        return writtenEventCount.get();
+    }
+
+    /**
+     * Returns the number of bytes written to segments, excluding segment headers.
+     * Useful for monitoring and testing.
+     *
+     * @return written byte count
+     */
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    /**
+     * Returns the number of events dropped because they could not be encoded or written.
+     * Useful for monitoring and testing.
+     *
+     * @return failed event count
+     */
+    public long getFailedEventCount() {
+        return failedEventCount.get();
+    }
+
+    /**
+     * Returns the number of group writes. Lower than the number of flushes when concurrent flushes were committed
+     * together.
+     * Useful for monitoring and testing.
+     *
+     * @return group write count
+     */
+    public long getGroupWriteCount() {
+        return groupWriteCount.get();
+    }
+
+    /**
+     * Returns the number of syncs to the storage device.
+     * Useful for monitoring and testing.
+     *
+     * @return sync count
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * Returns the number of segments opened by this handler.
+     * Useful for monitoring and testing.
+     *
+     * @return segment count
+     */
+    public long getSegmentCount() {
+        return segmentCount.get();
+    }
+
+    /**
+     * One encoded batch waiting for a group write.
+     */
+    private static final class PendingWrite {
+        private final ByteBuffer[] chunks;
+        private final int eventCount;
+        private final long bytes;
+        // Set by the writing thread, read by the owner once done
+        private IOException failure;
+        private boolean done;
+
+        private PendingWrite(ByteBuffer[] chunks, int eventCount) {
+            this.chunks = chunks;
+            this.eventCount = eventCount;
+            long bytes = 0;
+            for (ByteBuffer chunk : chunks) {
+                bytes += chunk.remaining();
+            }
+            this.bytes = bytes;
+        }
+    }
+}
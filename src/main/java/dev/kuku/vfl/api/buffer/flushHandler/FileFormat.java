@@ -0,0 +1,29 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+/**
+ * Encoding of the segment files {@link FileFlushHandler} writes and {@link FileSegmentReader} reads.
+ */
+public enum FileFormat {
+    /**
+     * One JSON object per event and line, readable with standard line-oriented tools.
+     */
+    NDJSON(".ndjson"),
+    /**
+     * A file header followed by length-prefixed batches encoded with {@code BinaryEventCodec}, the format of binary
+     * hub requests. Several times smaller than NDJSON and cheaper to write.
+     */
+    BINARY(".vflb");
+
+    private final String extension;
+
+    FileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return file name extension of segments in this format, including the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
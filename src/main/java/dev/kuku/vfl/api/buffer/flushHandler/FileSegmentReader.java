@@ -0,0 +1,327 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import dev.kuku.vfl.internal.buffer.flushHandler.BinaryEventCodec;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams the segment files written by {@link FileFlushHandler} back into events carrying {@link Block} and
+ * {@link BlockLog} objects, one batch at a time so files of any size can be read.
+ * <p>
+ * A segment ends early if its last batch was cut short by a crash, or at the first record that cannot be decoded.
+ * The rest of that segment is skipped with a warning and reading continues with the next segment.
+ * <p>
+ * Thread Safety: This class is thread-safe, every call works on its own state.
+ */
+public final class FileSegmentReader {
+    private static final Logger log = LoggerFactory.getLogger(FileSegmentReader.class);
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private FileSegmentReader() {
+    }
+
+    /**
+     * @return segment files of both formats in the directory, oldest first
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FileFlushHandler.SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (formatOf(file) != null && sequenceOf(file) >= 0) {
+                    segments.add(file);
+                } else {
+                    log.debug("Ignoring unexpected file {} in segment directory", file);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(FileSegmentReader::sequenceOf));
+        return segments;
+    }
+
+    /**
+     * Reads every segment in the directory, oldest first.
+     *
+     * @return number of events read
+     */
+    public static long readAll(Path directory, Consumer<BlockEvent> consumer) throws IOException {
+        long count = 0;
+        for (Path segment : segments(directory)) {
+            count += read(segment, consumer);
+        }
+        return count;
+    }
+
+    /**
+     * Reads one segment, handing its events to the consumer in the order they were flushed.
+     *
+     * @return number of events read
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    public static long read(Path segment, Consumer<BlockEvent> consumer) throws IOException {
+        FileFormat format = formatOf(segment);
+        if (format == null) {
+            throw new IOException("Not a segment file: " + segment);
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment), READ_BUFFER_BYTES)) {
+            return format == FileFormat.BINARY ? readBinary(segment, in, consumer) : readNdjson(segment, in, consumer);
+        }
+    }
+
+    private static long readBinary(Path segment, InputStream stream, Consumer<BlockEvent> consumer) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        byte[] header = new byte[FileFlushHandler.BINARY_MAGIC.length + 1];
+        try {
+            in.readFully(header);
+        } catch (EOFException e) {
+            // Created but the header never made it to disk
+            return 0;
+        }
+        for (int i = 0; i < FileFlushHandler.BINARY_MAGIC.length; i++) {
+            if (header[i] != FileFlushHandler.BINARY_MAGIC[i]) {
+                throw new IOException("Not a binary segment: " + segment);
+            }
+        }
+        if (header[header.length - 1] != FileFlushHandler.BINARY_VERSION) {
+            throw new IOException("Unsupported segment version " + header[header.length - 1] + " in " + segment);
+        }
+
+        long fileSize = Files.size(segment);
+        long count = 0;
+        byte[] frame = new byte[8 * 1024];
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return count;
+            }
+            if (length <= 0) {
+                // Zero-filled space after the last batch
+                return count;
+            }
+            if (length > fileSize) {
+                log.warn("Stopped reading {} after {} events at a batch length of {} bytes", segment, count, length);
+                return count;
+            }
+            if (length > frame.length) {
+                frame = new byte[Math.max(length, frame.length * 2)];
+            }
+            List<BlockEvent> events;
+            try {
+                in.readFully(frame, 0, length);
+                events = BinaryEventCodec.decode(frame, 0, length);
+            } catch (EOFException | IllegalArgumentException e) {
+                log.warn("Stopped reading {} after {} events at an incomplete or corrupt batch: {}",
+                        segment, count, e instanceof EOFException ? "end of file" : e.getMessage());
+                return count;
+            }
+            for (BlockEvent event : events) {
+                consumer.accept(event);
+            }
+            count += events.size();
+        }
+    }
+
+    private static long readNdjson(Path segment, InputStream in, Consumer<BlockEvent> consumer) throws IOException {
+        long count = 0;
+        try (JsonParser parser = JSON.createParser(in)) {
+            JsonToken token;
+            while (true) {
+                try {
+                    token = parser.nextToken();
+                    if (token == null) {
+                        return count;
+                    }
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new JsonParseException(parser, "Expected an event object but found " + token);
+                    }
+                    consumer.accept(readEvent(parser));
+                } catch (JsonProcessingException e) {
+                    log.warn("Stopped reading {} after {} events at an incomplete or corrupt line: {}",
+                            segment, count, e.getOriginalMessage());
+                    return count;
+                }
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Reads an event written by {@code JsonEventWriter.writeEvent}, the parser positioned at its start.
+     */
+    private static BlockEvent readEvent(JsonParser parser) throws IOException {
+        String type = null;
+        Block block = null;
+        BlockLog blockLog = null;
+        String blockId = null;
+        long time = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "type":
+                    type = parser.getText();
+                    break;
+                case "block":
+                    block = readBlock(parser);
+                    break;
+                case "log":
+                    blockLog = readLog(parser);
+                    break;
+                case "blockId":
+                    blockId = parser.getValueAsString();
+                    break;
+                case "time":
+                    time = parser.getLongValue();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            throw new JsonParseException(parser, "Event without a type");
+        }
+        switch (type) {
+            case "BLOCK_CREATED":
+                return BlockEvent.blockCreated(require(parser, block, type));
+            case "LOG":
+                return BlockEvent.log(require(parser, blockLog, type));
+            case "BLOCK_ENTERED":
+                return BlockEvent.blockEntered(blockId, time);
+            case "BLOCK_EXITED":
+                return BlockEvent.blockExited(blockId, time);
+            case "BLOCK_RETURNED":
+                return BlockEvent.blockReturned(blockId, time);
+            default:
+                throw new JsonParseException(parser, "Unknown event type " + type);
+        }
+    }
+
+    private static Block readBlock(JsonParser parser) throws IOException {
+        Block block = new Block();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    block.setId(parser.getValueAsString());
+                    break;
+                case "parentBlockId":
+                    block.setParentBlockId(parser.getValueAsString());
+                    break;
+                case "name":
+                    block.setName(parser.getValueAsString());
+                    break;
+                case "createdAt":
+                    block.setCreatedAt(parser.getLongValue());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return block;
+    }
+
+    private static BlockLog readLog(JsonParser parser) throws IOException {
+        String id = null;
+        String blockId = null;
+        String message = null;
+        String parentLogId = null;
+        String referencedBlockId = null;
+        long timestamp = 0;
+        String logType = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "blockId":
+                    blockId = parser.getValueAsString();
+                    break;
+                case "message":
+                    message = parser.getValueAsString();
+                    break;
+                case "parentLogId":
+                    parentLogId = parser.getValueAsString();
+                    break;
+                case "referencedBlockId":
+                    referencedBlockId = parser.getValueAsString();
+                    break;
+                case "timestamp":
+                    timestamp = parser.getLongValue();
+                    break;
+                case "logType":
+                    logType = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new BlockLog(id, blockId, message, parentLogId, referencedBlockId, timestamp, logType);
+    }
+
+    private static <T> T require(JsonParser parser, T value, String type) throws JsonParseException {
+        if (value == null) {
+            throw new JsonParseException(parser, type + " event without its payload");
+        }
+        return value;
+    }
+
+    static String segmentName(long sequence, FileFormat format) {
+        return String.format("%s%020d%s", FileFlushHandler.SEGMENT_PREFIX, sequence, format.getExtension());
+    }
+
+    /**
+     * @return sequence number in the file name, -1 if the name does not carry one
+     */
+    static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        FileFormat format = formatOf(segment);
+        if (format == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(FileFlushHandler.SEGMENT_PREFIX.length(),
+                    name.length() - format.getExtension().length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return format matching the file extension, null if there is none
+     */
+    static FileFormat formatOf(Path segment) {
+        String name = segment.getFileName().toString();
+        for (FileFormat format : FileFormat.values()) {
+            if (name.startsWith(FileFlushHandler.SEGMENT_PREFIX) && name.endsWith(format.getExtension())) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
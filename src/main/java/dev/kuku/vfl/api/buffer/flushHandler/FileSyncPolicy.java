@@ -0,0 +1,83 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+/**
+ * Decides when {@link FileFlushHandler} forces written segment data to the storage device.
+ * <p>
+ * Without a sync, data handed to the operating system survives a crash of the JVM but not of the machine. A sync costs
+ * a device round trip, so the handler performs one per group of concurrent flushes rather than one per flush.
+ */
+public final class FileSyncPolicy {
+
+    public enum Mode {
+        /**
+         * Leave write-back to the operating system. Segments are still synced when they are rotated or closed.
+         */
+        NEVER,
+        /**
+         * Sync before a flush returns, so a returned flush is durable.
+         */
+        EVERY_FLUSH,
+        /**
+         * Sync with the next write once the interval has passed since the last sync, bounding how much a machine
+         * crash can lose.
+         */
+        INTERVAL
+    }
+
+    private final Mode mode;
+    private final long intervalMs;
+
+    private FileSyncPolicy(Mode mode, long intervalMs) {
+        this.mode = mode;
+        this.intervalMs = intervalMs;
+    }
+
+    public static FileSyncPolicy never() {
+        return new FileSyncPolicy(Mode.NEVER, 0);
+    }
+
+    public static FileSyncPolicy everyFlush() {
+        return new FileSyncPolicy(Mode.EVERY_FLUSH, 0);
+    }
+
+    /**
+     * @param intervalMs Minimum time between syncs in milliseconds
+     */
+    public static FileSyncPolicy interval(long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive");
+        }
+        return new FileSyncPolicy(Mode.INTERVAL, intervalMs);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @param nanosSinceLastSync Time since the last sync of the current segment
+     * @return whether a write should be followed by a sync
+     */
+    boolean syncAfterWrite(long nanosSinceLastSync) {
+        switch (mode) {
+            case EVERY_FLUSH:
+                return true;
+            case INTERVAL:
+                return nanosSinceLastSync >= intervalMs * 1_000_000L;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileSyncPolicy{" +
+               "mode=" + mode +
+               ", intervalMs=" + intervalMs +
+               '}';
+    }
+}
@@ -0,0 +1,123 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import java.util.zip.Deflater;
+
+/**
+ * Decides whether and how {@link VFLHubFlushHandler} compresses request bodies.
+ * <p>
+ * Bodies smaller than the threshold are sent as they are, since compressing a few hundred bytes costs more CPU than
+ * it saves on the wire. Compressed bodies carry a matching {@code Content-Encoding} header.
+ */
+public final class HubCompression {
+
+    public enum Encoding {
+        NONE(null),
+        /**
+         * gzip container, {@code Content-Encoding: gzip}.
+         */
+        GZIP("gzip"),
+        /**
+         * zlib container, {@code Content-Encoding: deflate}.
+         */
+        DEFLATE("deflate");
+
+        private final String headerValue;
+
+        Encoding(String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        /**
+         * @return value of the {@code Content-Encoding} header, null for uncompressed bodies
+         */
+        public String getHeaderValue() {
+            return headerValue;
+        }
+    }
+
+    private final Encoding encoding;
+    private final int thresholdBytes;
+    private final int level;
+
+    private HubCompression(Encoding encoding, int thresholdBytes, int level) {
+        this.encoding = encoding;
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+    }
+
+    public static HubCompression none() {
+        return new HubCompression(Encoding.NONE, Integer.MAX_VALUE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * gzip at the fastest level, which already shrinks repetitive JSON several times over.
+     *
+     * @param thresholdBytes Smallest body size that is compressed
+     */
+    public static HubCompression gzip(int thresholdBytes) {
+        return gzip(thresholdBytes, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param thresholdBytes Smallest body size that is compressed
+     * @param level          Deflater level from 1 (fastest) to 9 (smallest)
+     */
+    public static HubCompression gzip(int thresholdBytes, int level) {
+        return create(Encoding.GZIP, thresholdBytes, level);
+    }
+
+    /**
+     * zlib-wrapped deflate at the fastest level.
+     *
+     * @param thresholdBytes Smallest body size that is compressed
+     */
+    public static HubCompression deflate(int thresholdBytes) {
+        return deflate(thresholdBytes, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param thresholdBytes Smallest body size that is compressed
+     * @param level          Deflater level from 1 (fastest) to 9 (smallest)
+     */
+    public static HubCompression deflate(int thresholdBytes, int level) {
+        return create(Encoding.DEFLATE, thresholdBytes, level);
+    }
+
+    private static HubCompression create(Encoding encoding, int thresholdBytes, int level) {
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("thresholdBytes must not be negative");
+        }
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9");
+        }
+        return new HubCompression(encoding, thresholdBytes, level);
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return whether a body of the given size is compressed
+     */
+    public boolean appliesTo(int bodyBytes) {
+        return encoding != Encoding.NONE && bodyBytes >= thresholdBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "HubCompression{" +
+               "encoding=" + encoding +
+               ", thresholdBytes=" + thresholdBytes +
+               ", level=" + level +
+               '}';
+    }
+}
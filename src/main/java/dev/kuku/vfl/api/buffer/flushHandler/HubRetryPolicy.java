@@ -0,0 +1,78 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how often and after which pause {@link ResilientHubFlushHandler} retries a failed hub request.
+ * <p>
+ * Pauses grow exponentially from the initial backoff up to the maximum, each drawn at random from the upper half of
+ * that range so clients that failed together do not retry together.
+ */
+public final class HubRetryPolicy {
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private HubRetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Sends every request once.
+     */
+    public static HubRetryPolicy none() {
+        return new HubRetryPolicy(1, 0, 0);
+    }
+
+    /**
+     * @param maxAttempts      Attempts per request including the first one
+     * @param initialBackoffMs Pause before the first retry in milliseconds
+     * @param maxBackoffMs     Upper bound of any pause in milliseconds
+     */
+    public static HubRetryPolicy exponential(int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialBackoffMs < 0 || maxBackoffMs < initialBackoffMs) {
+            throw new IllegalArgumentException("Backoff must satisfy 0 <= initialBackoffMs <= maxBackoffMs");
+        }
+        return new HubRetryPolicy(maxAttempts, initialBackoffMs, maxBackoffMs);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMs() {
+        return initialBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    /**
+     * @param retry Number of the retry, starting at 1
+     * @return pause before that retry in milliseconds
+     */
+    public long backoffMs(int retry) {
+        long ceiling = initialBackoffMs;
+        for (int i = 1; i < retry && ceiling < maxBackoffMs; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMs);
+        long floor = ceiling / 2;
+        return floor + ThreadLocalRandom.current().nextLong(ceiling - floor + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "HubRetryPolicy{" +
+               "maxAttempts=" + maxAttempts +
+               ", initialBackoffMs=" + initialBackoffMs +
+               ", maxBackoffMs=" + maxBackoffMs +
+               '}';
+    }
+}
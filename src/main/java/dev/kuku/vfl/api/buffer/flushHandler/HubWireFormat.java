@@ -0,0 +1,30 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+/**
+ * Body encoding of the requests {@link VFLHubFlushHandler} sends.
+ */
+public enum HubWireFormat {
+    /**
+     * JSON bodies, one per section or one combined batch.
+     */
+    JSON("application/json"),
+    /**
+     * Versioned binary batches decoded with {@code BinaryEventCodec}. Ids travel as 16 raw bytes, timestamps as
+     * varint deltas and repeated block names and messages as dictionary references, which makes bodies several times
+     * smaller than JSON and cheaper to encode. Always sent as one combined request to {@code /api/v1/batch}.
+     */
+    BINARY("application/vnd.vfl.batch");
+
+    private final String contentType;
+
+    HubWireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return value of the {@code Content-Type} header
+     */
+    public String getContentType() {
+        return contentType;
+    }
+}
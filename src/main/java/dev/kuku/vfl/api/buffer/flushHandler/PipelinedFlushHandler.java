@@ -0,0 +1,226 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.FlushStage;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flush handler that runs the work of a {@link VFLHubFlushHandler} as a pipeline of stages.
+ * <p>
+ * The calling flush thread only copies the batch into the encode stage. Encode threads serialize batches into pooled
+ * byte arrays and pass them to the send stage, whose threads post them to the hub. Encoding of the next batch
+ * therefore overlaps the network send of the previous one.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Separate thread counts for the CPU-bound encode stage and the I/O-bound send stage</li>
+ *     <li>Bounded hand-off queues: a full queue blocks the stage before it, down to the buffer's flush thread</li>
+ *     <li>Per-stage queue depth and activity for monitoring</li>
+ *     <li>{@link #awaitIdle(long)} to wait until every accepted batch has been sent</li>
+ * </ul>
+ * <p>
+ * A flush call returns once the batch is accepted by the pipeline, so a buffer's force flush no longer waits for the
+ * hub. Requests of one batch are sent in order by a single send thread, different batches may be sent concurrently.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class PipelinedFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedFlushHandler.class);
+
+    private final VFLHubFlushHandler hub;
+    private final FlushStage<List<BlockEvent>> encodeStage;
+    private final FlushStage<List<VFLHubFlushHandler.HubRequest>> sendStage;
+
+    // Batches accepted but not yet sent or dropped. Its monitor wakes awaitIdle.
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * Creates a pipeline with one encode thread, two send threads and queues of four batches.
+     */
+    public PipelinedFlushHandler(VFLHubFlushHandler hub) {
+        this(hub, 1, 4, 2, 4);
+    }
+
+    /**
+     * Creates a new PipelinedFlushHandler with the specified configuration.
+     *
+     * @param hub                 Handler whose encoding and sending are pipelined
+     * @param encodeThreads       Number of threads encoding batches
+     * @param encodeQueueCapacity Maximum number of batches waiting to be encoded
+     * @param sendThreads         Number of threads posting encoded batches to the hub
+     * @param sendQueueCapacity   Maximum number of encoded batches waiting to be sent
+     */
+    public PipelinedFlushHandler(
+            VFLHubFlushHandler hub,
+            int encodeThreads,
+            int encodeQueueCapacity,
+            int sendThreads,
+            int sendQueueCapacity) {
+        this.hub = hub;
+        this.sendStage = new FlushStage<>("send", sendThreads, sendQueueCapacity, this::send, this::discardRequests);
+        this.encodeStage = new FlushStage<>("encode", encodeThreads, encodeQueueCapacity, this::encode,
+                this::discardEvents);
+        log.debug("Started flush pipeline with {} encode and {} send threads", encodeThreads, sendThreads);
+    }
+
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        // The buffer recycles the list once this returns
+        accept(new ArrayList<>(events));
+    }
+
+    /**
+     * Drain stage, runs on the buffer's flush thread.
+     */
+    private void accept(List<BlockEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        inFlight.incrementAndGet();
+        try {
+            encodeStage.submit(events);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while handing {} events to the flush pipeline, dropping them", events.size());
+            batchDone();
+        } catch (RuntimeException e) {
+            batchDone();
+            throw e;
+        }
+    }
+
+    private void encode(List<BlockEvent> events) {
+        List<VFLHubFlushHandler.HubRequest> requests;
+        try {
+            requests = hub.encodeEvents(events);
+        } catch (Exception e) {
+            log.error("Failed to encode {} events, dropping them", events.size(), e);
+            batchDone();
+            return;
+        }
+        try {
+            sendStage.submit(requests);
+        } catch (InterruptedException | RuntimeException e) {
+            // Only happens on shutdown
+            requests.forEach(VFLHubFlushHandler.HubRequest::release);
+            batchDone();
+        }
+    }
+
+    private void send(List<VFLHubFlushHandler.HubRequest> requests) {
+        try {
+            for (VFLHubFlushHandler.HubRequest request : requests) {
+                hub.send(request);
+            }
+        } finally {
+            // Release whatever was not sent because an earlier request failed
+            requests.forEach(VFLHubFlushHandler.HubRequest::release);
+            batchDone();
+        }
+    }
+
+    private void discardEvents(List<BlockEvent> events) {
+        log.warn("Flush pipeline shut down, dropping {} events not yet encoded", events.size());
+        batchDone();
+    }
+
+    private void discardRequests(List<VFLHubFlushHandler.HubRequest> requests) {
+        log.warn("Flush pipeline shut down, dropping {} requests not yet sent", requests.size());
+        requests.forEach(VFLHubFlushHandler.HubRequest::release);
+        batchDone();
+    }
+
+    private void batchDone() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every batch accepted so far has been sent or dropped.
+     *
+     * @return true if the pipeline became idle within the timeout
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                inFlight.wait(remainingMs);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the stage threads. Batches still queued are dropped and count as done, so {@link #awaitIdle(long)} only
+     * waits for the batches already being encoded or sent.
+     */
+    public void shutdown() {
+        encodeStage.shutdown();
+        sendStage.shutdown();
+    }
+
+    /**
+     * Returns the number of batches waiting to be encoded.
+     * Useful for monitoring and testing.
+     *
+     * @return encode queue depth
+     */
+    public int getEncodeQueueDepth() {
+        return encodeStage.getQueueDepth();
+    }
+
+    /**
+     * Returns the number of encoded batches waiting to be sent.
+     * Useful for monitoring and testing.
+     *
+     * @return send queue depth
+     */
+    public int getSendQueueDepth() {
+        return sendStage.getQueueDepth();
+    }
+
+    /**
+     * Returns the number of batches being encoded right now.
+     * Useful for monitoring and testing.
+     *
+     * @return busy encode threads
+     */
+    public int getActiveEncodeCount() {
+        return encodeStage.getActiveCount();
+    }
+
+    /**
+     * Returns the number of batches being sent right now.
+     * Useful for monitoring and testing.
+     *
+     * @return busy send threads
+     */
+    public int getActiveSendCount() {
+        return sendStage.getActiveCount();
+    }
+
+    /**
+     * Returns the number of batches accepted but not yet sent or dropped.
+     * Useful for monitoring and testing.
+     *
+     * @return batches in the pipeline
+     */
+    public int getInFlightBatchCount() {
+        return inFlight.get();
+    }
+}
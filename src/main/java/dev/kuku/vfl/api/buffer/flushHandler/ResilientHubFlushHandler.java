@@ -0,0 +1,208 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.util.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flush handler that sends the requests of a {@link VFLHubFlushHandler} with retries behind a circuit breaker.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Bounded exponential-backoff retries of connection failures, timeouts, 408, 429 and 5xx responses</li>
+ *     <li>A batch id per request in the {@code X-VFL-Batch-Id} header, identical for every retry, so the hub can
+ *     drop a batch it already stored when only the response was lost</li>
+ *     <li>A circuit breaker that opens after consecutive failures. While it is open requests are not attempted at
+ *     all, so flush threads and force flushes return right away instead of waiting for timeouts</li>
+ *     <li>A fallback handler receiving the items of every request that was not delivered, e.g. a
+ *     {@link SpoolingFlushHandler} or a file handler</li>
+ * </ul>
+ * <p>
+ * Other 4xx responses mean the hub rejected the content. Retrying would not help, so such requests are logged and
+ * dropped without counting against the breaker. Retries sleep on the calling flush thread, so the retry policy
+ * bounds how long a flush can take while the hub is failing but the breaker is still closed.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class ResilientHubFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ResilientHubFlushHandler.class);
+
+    private final VFLHubFlushHandler hub;
+    private final HubRetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+    // Null to drop undelivered requests
+    private final VFLFlushHandler fallback;
+
+    private final AtomicLong fallbackRequestCount = new AtomicLong(0);
+    private final AtomicLong droppedRequestCount = new AtomicLong(0);
+
+    /**
+     * Creates a handler making up to three attempts 100 ms to 2 s apart, whose breaker opens for 30 s after five
+     * consecutive failures.
+     *
+     * @param fallback Handler receiving undelivered items, null to drop them
+     */
+    public ResilientHubFlushHandler(VFLHubFlushHandler hub, VFLFlushHandler fallback) {
+        this(hub, HubRetryPolicy.exponential(3, 100, 2000), 5, 30_000, fallback);
+    }
+
+    /**
+     * Creates a new ResilientHubFlushHandler with the specified configuration.
+     *
+     * @param hub                     Handler encoding and posting the requests
+     * @param retryPolicy             Attempts and backoff per request
+     * @param breakerFailureThreshold Consecutive failed attempts that open the circuit breaker
+     * @param breakerOpenMs           How long the open breaker skips the hub before a trial request is allowed
+     * @param fallback                Handler receiving the items of undelivered requests, null to drop them
+     */
+    public ResilientHubFlushHandler(
+            VFLHubFlushHandler hub,
+            HubRetryPolicy retryPolicy,
+            int breakerFailureThreshold,
+            long breakerOpenMs,
+            VFLFlushHandler fallback) {
+        this.hub = hub;
+        this.retryPolicy = retryPolicy;
+        this.breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMs);
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        List<VFLHubFlushHandler.HubRequest> requests;
+        try {
+            requests = hub.encodeEvents(events);
+        } catch (IOException | RuntimeException e) {
+            // Don't rethrow - encoding fails the same way on every attempt
+            log.error("Failed to encode {} events for VFL Hub, dropping them", events.size(), e);
+            return;
+        }
+        try {
+            for (VFLHubFlushHandler.HubRequest request : requests) {
+                deliver(request);
+            }
+        } finally {
+            requests.forEach(VFLHubFlushHandler.HubRequest::release);
+        }
+    }
+
+    private void deliver(VFLHubFlushHandler.HubRequest request) {
+        if (!breaker.tryAcquire()) {
+            toFallback(request, "circuit breaker is open");
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            String failure;
+            try {
+                int status = hub.post(request);
+                if (status < 400) {
+                    breaker.onSuccess();
+                    return;
+                }
+                if (!isRetryable(status)) {
+                    // The hub is up and answered, it just does not accept this content
+                    breaker.onSuccess();
+                    droppedRequestCount.incrementAndGet();
+                    log.warn("VFL Hub rejected {} {} with status {}, dropping them",
+                            request.getItemCount(), request.getDescription(), status);
+                    return;
+                }
+                failure = "status " + status;
+            } catch (IOException e) {
+                failure = e.toString();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breaker.onAbandoned();
+                toFallback(request, "interrupted");
+                return;
+            }
+
+            breaker.onFailure();
+            if (attempt >= retryPolicy.getMaxAttempts() || breaker.getState() != CircuitBreaker.State.CLOSED) {
+                toFallback(request, failure + " after " + attempt + " attempts");
+                return;
+            }
+            hub.getMetrics().recordRetry();
+            try {
+                Thread.sleep(retryPolicy.backoffMs(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                toFallback(request, "interrupted");
+                return;
+            }
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private void toFallback(VFLHubFlushHandler.HubRequest request, String reason) {
+        if (fallback == null) {
+            droppedRequestCount.incrementAndGet();
+            log.warn("Failed to flush {} {} to VFL Hub ({}), dropping them",
+                    request.getItemCount(), request.getDescription(), reason);
+            return;
+        }
+        fallbackRequestCount.incrementAndGet();
+        log.debug("Handing {} {} to the fallback handler ({})", request.getItemCount(), request.getDescription(), reason);
+        try {
+            request.replayTo(fallback);
+        } catch (Exception e) {
+            // Don't rethrow - the flush thread has nowhere else to send the data
+            droppedRequestCount.incrementAndGet();
+            log.error("Fallback handler failed for {} {}", request.getItemCount(), request.getDescription(), e);
+        }
+    }
+
+    /**
+     * Returns the state of the circuit breaker.
+     * Useful for monitoring and testing.
+     *
+     * @return current breaker state
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    /**
+     * Returns how often the circuit breaker opened.
+     * Useful for monitoring and testing.
+     *
+     * @return breaker open count
+     */
+    public long getCircuitOpenCount() {
+        return breaker.getOpenCount();
+    }
+
+    /**
+     * Returns the number of requests whose items were handed to the fallback handler.
+     * Useful for monitoring and testing.
+     *
+     * @return fallback request count
+     */
+    public long getFallbackRequestCount() {
+        return fallbackRequestCount.get();
+    }
+
+    /**
+     * Returns the number of requests dropped because the hub rejected them or no fallback could take them.
+     * Useful for monitoring and testing.
+     *
+     * @return dropped request count
+     */
+    public long getDroppedRequestCount() {
+        return droppedRequestCount.get();
+    }
+}
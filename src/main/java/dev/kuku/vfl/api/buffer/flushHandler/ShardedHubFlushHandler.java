@@ -0,0 +1,473 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.EventFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.util.CircuitBreaker;
+import dev.kuku.vfl.internal.util.ConsistentHashRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flush handler that spreads batches over several VFL Hubs, keeping every event of a trace on the same hub.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Routing by root block: each event is keyed by the id of the root block of its trace and the key picks a hub
+ *     on a consistent-hash ring with virtual nodes, so a trace is stored whole on one hub and the traces are spread
+ *     evenly over all of them</li>
+ *     <li>One circuit breaker per hub. The traces of a hub whose breaker is open go to the next hub clockwise on the
+ *     ring, and return to their own hub once a trial request succeeds</li>
+ *     <li>Failover within a flush: a batch part that fails is re-routed right away, so a hub going down loses
+ *     nothing as long as another hub answers</li>
+ *     <li>{@link #addEndpoint(String)} and {@link #removeEndpoint(String)} to scale the hub cluster at runtime, moving
+ *     only the traces of the arcs the changed hub gains or loses</li>
+ *     <li>A fallback handler receiving the events no hub accepted, e.g. a {@link FileFlushHandler}</li>
+ * </ul>
+ * <p>
+ * Events only carry the id of their own block, so the handler learns the root of every block from the block-created
+ * events it flushes, following the parent id to the root. The index holds the most recent {@value #TRACKED_BLOCKS}
+ * blocks. Events of a block it does not know are routed by their own block id, and a block whose parent it does not
+ * know, such as a remote block whose caller lives in another process, is routed by that parent's id together with its
+ * own sub-blocks. Traces that outlive the index or a failover can therefore end up split between two hubs.
+ * <p>
+ * Each part of a batch is posted as one batched request, one hub after another on the flush thread. Run several flush
+ * threads to keep all hubs busy. Connection failures, timeouts, 408, 429 and 5xx responses count as failures; other
+ * 4xx responses mean the hub rejected the content, so those parts are logged and dropped.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class ShardedHubFlushHandler extends EventFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedHubFlushHandler.class);
+
+    /**
+     * Number of blocks whose root is remembered, oldest first out.
+     */
+    public static final int TRACKED_BLOCKS = 100_000;
+
+    private final HubCompression compression;
+    private final HubWireFormat wireFormat;
+    private final int virtualNodes;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMs;
+    // Null to drop events no hub accepted
+    private final VFLFlushHandler fallback;
+
+    // Block id to routing key, the id of its root block. Guarded by its own monitor.
+    private final LinkedHashMap<String, String> rootOfBlock = new LinkedHashMap<String, String>(1024) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > TRACKED_BLOCKS;
+        }
+    };
+
+    // Replaced as a whole when endpoints are added or removed
+    private volatile Topology topology;
+
+    private final AtomicLong failoverEventCount = new AtomicLong(0);
+    private final AtomicLong fallbackEventCount = new AtomicLong(0);
+    private final AtomicLong droppedEventCount = new AtomicLong(0);
+
+    /**
+     * Creates a handler sending uncompressed JSON batches, with 128 virtual nodes per hub, whose breakers open for
+     * 10 s after three consecutive failures.
+     *
+     * @param hubUrls Base URLs of the hubs
+     */
+    public ShardedHubFlushHandler(List<String> hubUrls) {
+        this(hubUrls, HubCompression.none(), HubWireFormat.JSON, 128, 3, 10_000, null);
+    }
+
+    /**
+     * Creates a new ShardedHubFlushHandler with the specified configuration.
+     *
+     * @param hubUrls                 Base URLs of the hubs. Every process must list the same URLs to route a trace
+     *                                to the same hub
+     * @param compression             How request bodies are compressed
+     * @param wireFormat              Encoding of request bodies
+     * @param virtualNodes            Points per hub on the hash ring. More points spread the traces more evenly
+     * @param breakerFailureThreshold Consecutive failed requests that open a hub's circuit breaker
+     * @param breakerOpenMs           How long an open breaker skips its hub before a trial request is allowed
+     * @param fallback                Handler receiving the events no hub accepted, null to drop them
+     * @throws IllegalArgumentException if there are no hub URLs or a URL is listed twice
+     */
+    public ShardedHubFlushHandler(
+            List<String> hubUrls,
+            HubCompression compression,
+            HubWireFormat wireFormat,
+            int virtualNodes,
+            int breakerFailureThreshold,
+            long breakerOpenMs,
+            VFLFlushHandler fallback) {
+        this.compression = compression;
+        this.wireFormat = wireFormat;
+        this.virtualNodes = virtualNodes;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMs = breakerOpenMs;
+        this.fallback = fallback;
+        List<Endpoint> endpoints = new ArrayList<>(hubUrls.size());
+        for (String url : hubUrls) {
+            endpoints.add(new Endpoint(url));
+        }
+        this.topology = new Topology(endpoints);
+        log.debug("Started sharded hub flush handler with hubs {}", hubUrls);
+    }
+
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        Topology current = topology;
+        int nodes = current.endpoints.size();
+        List<BlockEvent> pending = events;
+        List<String> pendingKeys = routingKeys(events);
+
+        // Hubs skipped for the rest of this flush: open breakers, then every hub that fails a request
+        boolean[] excluded = new boolean[nodes];
+        boolean anyExcluded = false;
+        for (int node = 0; node < nodes; node++) {
+            excluded[node] = !current.endpoints.get(node).breaker.isAvailable();
+            anyExcluded |= excluded[node];
+        }
+
+        // Each round excludes at least one more hub or delivers everything
+        while (!pending.isEmpty()) {
+            List<List<BlockEvent>> parts = new ArrayList<>(Collections.nCopies(nodes, null));
+            List<List<String>> partKeys = new ArrayList<>(Collections.nCopies(nodes, null));
+            List<BlockEvent> unroutable = null;
+            for (int i = 0; i < pending.size(); i++) {
+                String key = pendingKeys.get(i);
+                int node = current.ring.owner(key, excluded);
+                if (node < 0) {
+                    if (unroutable == null) {
+                        unroutable = new ArrayList<>();
+                    }
+                    unroutable.add(pending.get(i));
+                    continue;
+                }
+                if (anyExcluded && node != current.ring.owner(key)) {
+                    failoverEventCount.incrementAndGet();
+                }
+                if (parts.get(node) == null) {
+                    parts.set(node, new ArrayList<>());
+                    partKeys.set(node, new ArrayList<>());
+                }
+                parts.get(node).add(pending.get(i));
+                partKeys.get(node).add(key);
+            }
+            if (unroutable != null) {
+                toFallback(unroutable);
+            }
+
+            List<BlockEvent> failed = new ArrayList<>();
+            List<String> failedKeys = new ArrayList<>();
+            for (int node = 0; node < nodes; node++) {
+                List<BlockEvent> part = parts.get(node);
+                if (part != null && !current.endpoints.get(node).deliver(part)) {
+                    excluded[node] = true;
+                    anyExcluded = true;
+                    failed.addAll(part);
+                    failedKeys.addAll(partKeys.get(node));
+                }
+            }
+            pending = failed;
+            pendingKeys = failedKeys;
+        }
+    }
+
+    /**
+     * Resolves the routing key of every event, learning the roots of the blocks created in this batch first so that
+     * their logs and timestamps are routed the same way regardless of their order.
+     */
+    private List<String> routingKeys(List<BlockEvent> events) {
+        List<String> keys = new ArrayList<>(events.size());
+        synchronized (rootOfBlock) {
+            for (BlockEvent event : events) {
+                if (event.getType() == BlockEvent.Type.BLOCK_CREATED) {
+                    Block block = event.getBlock();
+                    String parent = block.getParentBlockId();
+                    String root = parent == null ? block.getId() : rootOfBlock.getOrDefault(parent, parent);
+                    rootOfBlock.put(block.getId(), root);
+                }
+            }
+            for (BlockEvent event : events) {
+                keys.add(rootOfBlock.getOrDefault(event.getBlockId(), event.getBlockId()));
+            }
+        }
+        return keys;
+    }
+
+    private void toFallback(List<BlockEvent> events) {
+        if (fallback == null) {
+            droppedEventCount.addAndGet(events.size());
+            log.warn("No VFL Hub available, dropping {} events", events.size());
+            return;
+        }
+        fallbackEventCount.addAndGet(events.size());
+        log.debug("No VFL Hub available, handing {} events to the fallback handler", events.size());
+        try {
+            fallback.flushEvents(events);
+        } catch (Exception e) {
+            // Don't rethrow - the flush thread has nowhere else to send the data
+            droppedEventCount.addAndGet(events.size());
+            log.error("Fallback handler failed for {} events", events.size(), e);
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * Adds a hub to the ring. It takes over about {@code 1 / hubs} of the traces from the others, starting with the
+     * next flush.
+     *
+     * @throws IllegalArgumentException if the hub is already on the ring
+     */
+    public synchronized void addEndpoint(String url) {
+        List<Endpoint> endpoints = new ArrayList<>(topology.endpoints);
+        if (indexOf(endpoints, url) >= 0) {
+            throw new IllegalArgumentException("Duplicate hub URL " + url);
+        }
+        endpoints.add(new Endpoint(url));
+        topology = new Topology(endpoints);
+        log.info("Added VFL Hub {}", url);
+    }
+
+    /**
+     * Removes a hub from the ring. Its traces move to the hubs next to its points, the other traces stay where they
+     * are. Requests already under way are completed.
+     *
+     * @throws IllegalArgumentException if the hub is not on the ring or is the last one
+     */
+    public synchronized void removeEndpoint(String url) {
+        List<Endpoint> endpoints = new ArrayList<>(topology.endpoints);
+        int index = indexOf(endpoints, url);
+        if (index < 0) {
+            throw new IllegalArgumentException("No hub with URL " + url);
+        }
+        endpoints.remove(index);
+        topology = new Topology(endpoints);
+        log.info("Removed VFL Hub {}", url);
+    }
+
+    private static int indexOf(List<Endpoint> endpoints, String url) {
+        for (int i = 0; i < endpoints.size(); i++) {
+            if (endpoints.get(i).url.equals(url)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Endpoint endpoint(String url) {
+        List<Endpoint> endpoints = topology.endpoints;
+        int index = indexOf(endpoints, url);
+        if (index < 0) {
+            throw new IllegalArgumentException("No hub with URL " + url);
+        }
+        return endpoints.get(index);
+    }
+
+    /**
+     * Returns the hub the given root block's trace is currently routed to, ignoring breaker state.
+     * Useful for monitoring and testing.
+     *
+     * @return hub URL
+     */
+    public String getEndpointFor(String rootBlockId) {
+        Topology current = topology;
+        return current.endpoints.get(current.ring.owner(rootBlockId)).url;
+    }
+
+    /**
+     * Returns the URLs of the hubs on the ring.
+     * Useful for monitoring and testing.
+     *
+     * @return hub URLs
+     */
+    public List<String> getEndpoints() {
+        List<String> urls = new ArrayList<>();
+        for (Endpoint endpoint : topology.endpoints) {
+            urls.add(endpoint.url);
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the handler posting to one hub, e.g. for its {@link VFLHubFlushHandler#getMetrics() metrics}.
+     * Useful for monitoring and testing.
+     *
+     * @return hub handler
+     * @throws IllegalArgumentException if the hub is not on the ring
+     */
+    public VFLHubFlushHandler getHub(String url) {
+        return endpoint(url).hub;
+    }
+
+    /**
+     * Returns the state of one hub's circuit breaker.
+     * Useful for monitoring and testing.
+     *
+     * @return current breaker state
+     * @throws IllegalArgumentException if the hub is not on the ring
+     */
+    public CircuitBreaker.State getEndpointState(String url) {
+        return endpoint(url).breaker.getState();
+    }
+
+    /**
+     * Returns the number of events one hub accepted.
+     * Useful for monitoring and testing.
+     *
+     * @return delivered event count
+     * @throws IllegalArgumentException if the hub is not on the ring
+     */
+    public long getDeliveredEventCount(String url) {
+        return endpoint(url).deliveredEventCount.get();
+    }
+
+    /**
+     * Returns the number of events routed to another hub than the owner of their trace because the owner was down.
+     * Useful for monitoring and testing.
+     *
+     * @return failover event count
+     */
+    public long getFailoverEventCount() {
+        return failoverEventCount.get();
+    }
+
+    /**
+     * Returns the number of events handed to the fallback handler because no hub accepted them.
+     * Useful for monitoring and testing.
+     *
+     * @return fallback event count
+     */
+    public long getFallbackEventCount() {
+        return fallbackEventCount.get();
+    }
+
+    /**
+     * Returns the number of events dropped because a hub rejected them or no hub and no fallback could take them.
+     * Useful for monitoring and testing.
+     *
+     * @return dropped event count
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * Returns the number of blocks whose root is currently known.
+     * Useful for monitoring and testing.
+     *
+     * @return tracked block count
+     */
+    public int getTrackedBlockCount() {
+        synchronized (rootOfBlock) {
+            return rootOfBlock.size();
+        }
+    }
+
+    /**
+     * The hubs and the ring built over their URLs.
+     */
+    private final class Topology {
+        private final List<Endpoint> endpoints;
+        private final ConsistentHashRing ring;
+
+        private Topology(List<Endpoint> endpoints) {
+            if (endpoints.isEmpty()) {
+                throw new IllegalArgumentException("At least one hub URL is required");
+            }
+            List<String> urls = new ArrayList<>(endpoints.size());
+            for (Endpoint endpoint : endpoints) {
+                if (urls.contains(endpoint.url)) {
+                    throw new IllegalArgumentException("Duplicate hub URL " + endpoint.url);
+                }
+                urls.add(endpoint.url);
+            }
+            this.endpoints = Collections.unmodifiableList(endpoints);
+            this.ring = new ConsistentHashRing(urls, virtualNodes);
+        }
+    }
+
+    /**
+     * One hub with its handler and breaker.
+     */
+    private final class Endpoint {
+        private final String url;
+        private final VFLHubFlushHandler hub;
+        private final CircuitBreaker breaker;
+        private final AtomicLong deliveredEventCount = new AtomicLong(0);
+
+        private Endpoint(String url) {
+            this.url = url;
+            this.hub = new VFLHubFlushHandler(url, false, true, compression, wireFormat);
+            this.breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMs);
+        }
+
+        /**
+         * Posts the events as one request.
+         *
+         * @return false if the hub could not be reached or failed, so the events must go elsewhere
+         */
+        private boolean deliver(List<BlockEvent> events) {
+            if (!breaker.tryAcquire()) {
+                return false;
+            }
+            List<VFLHubFlushHandler.HubRequest> requests;
+            try {
+                requests = hub.encodeEvents(events);
+            } catch (IOException | RuntimeException e) {
+                // Encoding fails the same way for every hub
+                breaker.onAbandoned();
+                droppedEventCount.addAndGet(events.size());
+                log.error("Failed to encode {} events for VFL Hub, dropping them", events.size(), e);
+                return true;
+            }
+            try {
+                // Batched mode encodes the whole part into a single request
+                for (VFLHubFlushHandler.HubRequest request : requests) {
+                    int status = hub.post(request);
+                    if (isRetryable(status)) {
+                        breaker.onFailure();
+                        log.warn("VFL Hub {} answered {}, failing {} events over", url, status, events.size());
+                        return false;
+                    }
+                    breaker.onSuccess();
+                    if (status >= 400) {
+                        // The hub is up and answered, it just does not accept this content
+                        droppedEventCount.addAndGet(events.size());
+                        log.warn("VFL Hub {} rejected {} events with status {}, dropping them",
+                                url, events.size(), status);
+                        return true;
+                    }
+                }
+                deliveredEventCount.addAndGet(events.size());
+                return true;
+            } catch (IOException e) {
+                breaker.onFailure();
+                log.warn("VFL Hub {} unreachable ({}), failing {} events over", url, e.toString(), events.size());
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breaker.onAbandoned();
+                return false;
+            } finally {
+                requests.forEach(VFLHubFlushHandler.HubRequest::release);
+            }
+        }
+    }
+}
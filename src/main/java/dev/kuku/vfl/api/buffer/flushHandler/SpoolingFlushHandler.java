@@ -0,0 +1,271 @@
+package dev.kuku.vfl.api.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.buffer.spool.SegmentSpool;
+import dev.kuku.vfl.internal.buffer.spool.SpoolCodec;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Flush handler that spools data to local disk while its delegate is failing and replays it once the delegate
+ * recovers.
+ * <p>
+ * This implementation supports:
+ * <ul>
+ *     <li>Direct delivery to the delegate while the spool is empty</li>
+ *     <li>Spooling of failed calls, and of every call made while older data is still spooled so order is kept</li>
+ *     <li>Event batches split into their sections unless the delegate sends a batch as one request, so a partly
+ *     delivered batch only spools the sections that failed and replay never sends a section twice</li>
+ *     <li>Fixed-size memory-mapped segment files, so the heap stays flat during an outage</li>
+ *     <li>Background replay acknowledging each record once the delegate accepted it. The rate bound applies to the
+ *     backlog only, calls spooled behind it while the delegate is healthy raise the next run's budget, so the spool
+ *     drains under steady traffic and calls go directly to the delegate again once it is empty</li>
+ *     <li>Resuming from the remaining segments after a restart</li>
+ * </ul>
+ * <p>
+ * The delegate must report failures by throwing, e.g. a {@link VFLHubFlushHandler} created with
+ * {@code throwExceptions = true}. A slow hub counts as failing once the delegate's request timeout expires.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public class SpoolingFlushHandler implements VFLFlushHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(SpoolingFlushHandler.class);
+
+    private final VFLFlushHandler delegate;
+    private final SegmentSpool spool;
+    private final int maxReplayRecordsPerInterval;
+    // Whether the delegate delivers or fails an event batch as a whole
+    private final boolean deliversWholeBatches;
+    // Makes the check for older spooled data and the spooling of a call one step, so spooled calls keep their order
+    private final Object spoolLock = new Object();
+    // Records spooled since the last replay run only because older data was waiting, not because the delegate failed
+    private final AtomicInteger queuedBehindBacklog = new AtomicInteger();
+
+    /**
+     * Creates a spooling handler with 16 MB segments, at most 64 of them, replaying up to 50 records per second.
+     */
+    public SpoolingFlushHandler(VFLFlushHandler delegate, Path spoolDirectory, ScheduledExecutorService replayScheduler) {
+        this(delegate, spoolDirectory, 16 * 1024 * 1024, 64, 1000, 50, replayScheduler);
+    }
+
+    /**
+     * Creates a new SpoolingFlushHandler with the specified configuration.
+     *
+     * @param delegate                    Handler that delivers data to its destination, must throw on failure
+     * @param spoolDirectory              Directory for the segment files, segments left from a previous run are replayed
+     * @param segmentSizeBytes            Size of each segment file in bytes
+     * @param maxSegments                 Maximum number of segment files before the oldest one is dropped
+     * @param replayIntervalMs            Interval between replay runs in milliseconds
+     * @param maxReplayRecordsPerInterval Maximum number of backlog records replayed per run, records queued behind the
+     *                                    backlog since the last run are replayed on top of it
+     * @param replayScheduler             Scheduled executor running the replay
+     */
+    public SpoolingFlushHandler(
+            VFLFlushHandler delegate,
+            Path spoolDirectory,
+            int segmentSizeBytes,
+            int maxSegments,
+            int replayIntervalMs,
+            int maxReplayRecordsPerInterval,
+            ScheduledExecutorService replayScheduler) {
+        if (maxReplayRecordsPerInterval <= 0) {
+            throw new IllegalArgumentException("maxReplayRecordsPerInterval must be positive");
+        }
+        this.delegate = delegate;
+        this.maxReplayRecordsPerInterval = maxReplayRecordsPerInterval;
+        this.deliversWholeBatches = delegate instanceof VFLHubFlushHandler
+                                    && ((VFLHubFlushHandler) delegate).isBatched();
+        try {
+            this.spool = new SegmentSpool(spoolDirectory, segmentSizeBytes, maxSegments);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spool directory " + spoolDirectory, e);
+        }
+
+        replayScheduler.scheduleWithFixedDelay(
+                this::replay,
+                replayIntervalMs,
+                replayIntervalMs,
+                TimeUnit.MILLISECONDS
+        );
+        log.debug("Started spooling flush handler in {} replaying every {} ms", spoolDirectory, replayIntervalMs);
+    }
+
+    @Override
+    public void flushLogs(List<BlockLog> logs) {
+        if (logs == null || logs.isEmpty()) {
+            return;
+        }
+        deliver(() -> delegate.flushLogs(logs), () -> spoolInChunks(logs, SpoolCodec::encodeLogs));
+    }
+
+    @Override
+    public void flushBlocks(List<Block> blocks) {
+        if (blocks == null || blocks.isEmpty()) {
+            return;
+        }
+        deliver(() -> delegate.flushBlocks(blocks), () -> spoolInChunks(blocks, SpoolCodec::encodeBlocks));
+    }
+
+    @Override
+    public void flushBlockEntered(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        deliver(() -> delegate.flushBlockEntered(blockIds), () -> spoolInChunks(new ArrayList<>(blockIds.entrySet()),
+                chunk -> SpoolCodec.encodeTimestamps(SpoolCodec.TYPE_ENTERED, chunk)));
+    }
+
+    @Override
+    public void flushBlockExited(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        deliver(() -> delegate.flushBlockExited(blockIds), () -> spoolInChunks(new ArrayList<>(blockIds.entrySet()),
+                chunk -> SpoolCodec.encodeTimestamps(SpoolCodec.TYPE_EXITED, chunk)));
+    }
+
+    @Override
+    public void flushBlockReturned(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        deliver(() -> delegate.flushBlockReturned(blockIds), () -> spoolInChunks(new ArrayList<>(blockIds.entrySet()),
+                chunk -> SpoolCodec.encodeTimestamps(SpoolCodec.TYPE_RETURNED, chunk)));
+    }
+
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        if (!deliversWholeBatches) {
+            // A section-per-request delegate can fail after delivering the first sections, so send and spool each
+            // section on its own. Once one is spooled the later ones follow it into the spool.
+            EventSections.of(events).flushUsing(this);
+            return;
+        }
+        deliver(() -> delegate.flushEvents(events), () -> spoolInChunks(events, SpoolCodec::encodeEvents));
+    }
+
+    /**
+     * Sends directly to the delegate unless older data is still waiting in the spool, and spools the call if it has to
+     * wait or fails. Checking the spool and spooling happen under one lock, so a call that finds older data spooled is
+     * always spooled behind it.
+     */
+    private void deliver(Runnable send, IntSupplier spoolCall) {
+        synchronized (spoolLock) {
+            if (!spool.isEmpty()) {
+                queuedBehindBacklog.addAndGet(spoolCall.getAsInt());
+                return;
+            }
+        }
+        try {
+            send.run();
+            return;
+        } catch (Exception e) {
+            log.warn("Flush failed, spooling to disk: {}", e.getMessage());
+        }
+        synchronized (spoolLock) {
+            spoolCall.getAsInt();
+        }
+    }
+
+    /**
+     * Encodes and spools the items, splitting them over several records if they do not fit into one segment.
+     *
+     * @return number of records appended to the spool
+     */
+    private <T> int spoolInChunks(List<T> items, Function<List<T>, byte[]> encoder) {
+        byte[] record = encoder.apply(items);
+        if (record.length > spool.getMaxRecordSize()) {
+            if (items.size() == 1) {
+                log.error("Dropping item of {} bytes, larger than a spool segment", record.length);
+                return 0;
+            }
+            int half = items.size() / 2;
+            return spoolInChunks(items.subList(0, half), encoder)
+                   + spoolInChunks(items.subList(half, items.size()), encoder);
+        }
+        try {
+            spool.append(record);
+            return 1;
+        } catch (IOException e) {
+            log.error("Failed to spool {} items, dropping them", items.size(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Replays spooled records oldest first, stopping at the first failure so the delegate is retried on the next run.
+     * Each run replays up to the backlog limit plus the records queued behind the backlog since the previous run, so
+     * traffic arriving while the backlog drains does not eat into the backlog's rate.
+     */
+    private void replay() {
+        try {
+            int budget = maxReplayRecordsPerInterval + queuedBehindBacklog.getAndSet(0);
+            for (int i = 0; i < budget; i++) {
+                byte[] record = spool.peek();
+                if (record == null) {
+                    return;
+                }
+                FlushBatch batch;
+                try {
+                    batch = SpoolCodec.decode(record);
+                } catch (IllegalArgumentException e) {
+                    log.error("Skipping corrupt spool record: {}", e.getMessage());
+                    spool.ack();
+                    continue;
+                }
+                try {
+                    batch.flushUsing(delegate);
+                } catch (Exception e) {
+                    // Calls queued while the delegate is down are part of the backlog
+                    queuedBehindBacklog.set(0);
+                    log.debug("Replay failed, {} records remain spooled: {}", spool.getRecordCount(), e.getMessage());
+                    return;
+                }
+                spool.ack();
+            }
+        } catch (Exception e) {
+            log.error("Error during spool replay", e);
+        }
+    }
+
+    /**
+     * Returns the number of records waiting to be replayed.
+     * Useful for monitoring and testing.
+     *
+     * @return number of spooled records
+     */
+    public int getSpooledRecordCount() {
+        return spool.getRecordCount();
+    }
+
+    /**
+     * Returns the number of records discarded because the spool reached its maximum number of segments.
+     * Useful for monitoring and testing.
+     *
+     * @return number of dropped records
+     */
+    public long getDroppedRecordCount() {
+        return spool.getDroppedRecordCount();
+    }
+}
@@ -1,25 +1,61 @@
 package dev.kuku.vfl.api.buffer.flushHandler;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import dev.kuku.vfl.internal.buffer.flushHandler.BinaryEventCodec;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.buffer.flushHandler.JsonEventWriter;
 import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.metrics.HubMetrics;
 import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
 import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.util.ByteArrayPool;
+import dev.kuku.vfl.internal.util.DeflaterPool;
+import dev.kuku.vfl.internal.util.VFLIds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class VFLHubFlushHandler implements VFLFlushHandler {
     private static final Logger log = LoggerFactory.getLogger(VFLHubFlushHandler.class);
+    static final String LOGS_PATH = "/api/v1/logs";
+    static final String BLOCKS_PATH = "/api/v1/blocks";
+    static final String BLOCK_ENTERED_PATH = "/api/v1/block-entered";
+    static final String BLOCK_EXITED_PATH = "/api/v1/block-exited";
+    static final String BLOCK_RETURNED_PATH = "/api/v1/block-returned";
+    static final String BATCH_PATH = "/api/v1/batch";
+    // Stable across retries of a request, lets the hub drop duplicates
+    static final String BATCH_ID_HEADER = "X-VFL-Batch-Id";
+    private static final JsonFactory JSON = new JsonFactory();
+
     private final String url;
     private final HttpClient client;
-    private final ObjectMapper objectMapper = new ObjectMapper();
     private final boolean throwExceptions;
+    // Send every event batch as one request to BATCH_PATH instead of one request per section
+    private final boolean batched;
+    // Request bodies are encoded into pooled arrays and released once the request has been sent
+    private final ByteArrayPool bodyPool = new ByteArrayPool(16, 8 * 1024, 4 * 1024 * 1024);
+    private final HubMetrics metrics = new HubMetrics();
+    private final HubCompression compression;
+    // Null when bodies are sent uncompressed
+    private final DeflaterPool deflaterPool;
+    private final HubWireFormat wireFormat;
 
     // Constructor for backward compatibility - defaults to safe mode
     public VFLHubFlushHandler(String url) {
@@ -27,7 +63,45 @@ public class VFLHubFlushHandler implements VFLFlushHandler {
     }
 
     public VFLHubFlushHandler(String url, boolean throwExceptions) {
+        this(url, throwExceptions, false);
+    }
+
+    /**
+     * @param url             Base URL of the VFL Hub
+     * @param throwExceptions Whether flush failures are thrown instead of only logged
+     * @param batched         Whether each event batch is sent as a single request to {@code /api/v1/batch} carrying
+     *                        all five sections, so the hub receives a flush in one round trip and all or nothing
+     */
+    public VFLHubFlushHandler(String url, boolean throwExceptions, boolean batched) {
+        this(url, throwExceptions, batched, HubCompression.none());
+    }
+
+    /**
+     * @param url             Base URL of the VFL Hub
+     * @param throwExceptions Whether flush failures are thrown instead of only logged
+     * @param batched         Whether each event batch is sent as a single request to {@code /api/v1/batch}
+     * @param compression     How request bodies are compressed
+     */
+    public VFLHubFlushHandler(String url, boolean throwExceptions, boolean batched, HubCompression compression) {
+        this(url, throwExceptions, batched, compression, HubWireFormat.JSON);
+    }
+
+    /**
+     * @param url             Base URL of the VFL Hub
+     * @param throwExceptions Whether flush failures are thrown instead of only logged
+     * @param batched         Whether each event batch is sent as a single request to {@code /api/v1/batch}. Binary
+     *                        bodies are always sent that way
+     * @param compression     How request bodies are compressed
+     * @param wireFormat      Encoding of request bodies
+     */
+    public VFLHubFlushHandler(String url, boolean throwExceptions, boolean batched, HubCompression compression,
+                              HubWireFormat wireFormat) {
         this.throwExceptions = throwExceptions;
+        this.batched = batched || wireFormat == HubWireFormat.BINARY;
+        this.compression = compression;
+        this.wireFormat = wireFormat;
+        this.deflaterPool = compression.getEncoding() == HubCompression.Encoding.NONE ? null
+                : new DeflaterPool(8, compression.getLevel(), compression.getEncoding() == HubCompression.Encoding.GZIP);
         // Remove trailing slash if it exists
         this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
 
@@ -42,194 +116,450 @@ public class VFLHubFlushHandler implements VFLFlushHandler {
         if (logs == null || logs.isEmpty()) {
             return;
         }
+        if (wireFormat == HubWireFormat.BINARY) {
+            flushEvents(BlockEvent.logs(logs));
+            return;
+        }
+        encodeAndSend(LOGS_PATH, "logs", logs.size(), out -> JsonEventWriter.writeLogs(out, logs));
+    }
 
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(logs)))
-                    .header("Content-Type", "application/json")
-                    .uri(java.net.URI.create(url + "/api/v1/logs"))
-                    .timeout(Duration.ofSeconds(10))
-                    .version(HttpClient.Version.HTTP_2)
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            // Log non-2xx responses
-            if (response.statusCode() >= 400) {
-                String errorMsg = String.format("Failed to flush logs to VFL Hub. Status: %d, Response: %s",
-                        response.statusCode(), response.body());
-                log.warn(errorMsg);
-
-                if (throwExceptions) {
-                    throw new RuntimeException(errorMsg);
-                }
-            }
+    @Override
+    public void flushBlocks(List<Block> blocks) {
+        if (blocks == null || blocks.isEmpty()) {
+            return;
+        }
+        if (wireFormat == HubWireFormat.BINARY) {
+            flushEvents(BlockEvent.blocksCreated(blocks));
+            return;
+        }
+        encodeAndSend(BLOCKS_PATH, "blocks", blocks.size(), out -> JsonEventWriter.writeBlocks(out, blocks));
+    }
 
-        } catch (RuntimeException e) {
-            // Re-throw RuntimeException if it came from the status check above
-            throw e;
-        } catch (Exception e) {
-            String errorMsg = String.format("Failed to flush %d logs to VFL Hub: %s", logs.size(), e.getMessage());
-            log.error(errorMsg);
+    @Override
+    public void flushBlockEntered(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        if (wireFormat == HubWireFormat.BINARY) {
+            flushEvents(BlockEvent.blocksEntered(blockIds));
+            return;
+        }
+        encodeAndSend(BLOCK_ENTERED_PATH, "block entered events", blockIds.size(),
+                out -> JsonEventWriter.writeTimes(out, blockIds));
+    }
 
-            if (throwExceptions) {
-                throw new RuntimeException(errorMsg, e);
+    @Override
+    public void flushBlockExited(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        if (wireFormat == HubWireFormat.BINARY) {
+            flushEvents(BlockEvent.blocksExited(blockIds));
+            return;
+        }
+        encodeAndSend(BLOCK_EXITED_PATH, "block exited events", blockIds.size(),
+                out -> JsonEventWriter.writeTimes(out, blockIds));
+    }
+
+    @Override
+    public void flushBlockReturned(Map<String, Long> blockIds) {
+        if (blockIds == null || blockIds.isEmpty()) {
+            return;
+        }
+        if (wireFormat == HubWireFormat.BINARY) {
+            flushEvents(BlockEvent.blocksReturned(blockIds));
+            return;
+        }
+        encodeAndSend(BLOCK_RETURNED_PATH, "block returned events", blockIds.size(),
+                out -> JsonEventWriter.writeTimes(out, blockIds));
+    }
+
+    /**
+     * In batched mode sends all sections of the batch in one request, otherwise one request per non-empty section.
+     */
+    @Override
+    public void flushEvents(List<BlockEvent> events) {
+        if (!batched) {
+            VFLFlushHandler.super.flushEvents(events);
+            return;
+        }
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        if (wireFormat == HubWireFormat.BINARY) {
+            HubRequest request;
+            try {
+                request = encodeBinary(events);
+            } catch (RuntimeException e) {
+                metrics.recordEncodeFailure();
+                failed(request(BATCH_PATH, "events", events.size()), e);
+                return;
             }
+            send(request);
+            return;
         }
+        EventSections sections = EventSections.of(events);
+        encodeAndSend(BATCH_PATH, "events", events.size(), out -> JsonEventWriter.writeBatch(out, sections));
     }
 
+    /**
+     * With the binary wire format encodes the records straight into the request body, without building blocks and
+     * logs on the heap first. JSON bodies are written from decoded events as before.
+     */
     @Override
-    public void flushBlocks(List<Block> blocks) {
-        if (blocks == null || blocks.isEmpty()) {
+    public void flushRecords(ByteBuffer records, int count) {
+        if (wireFormat != HubWireFormat.BINARY) {
+            VFLFlushHandler.super.flushRecords(records, count);
+            return;
+        }
+        if (count == 0) {
+            return;
+        }
+        HubRequest request;
+        try {
+            request = encodeBinaryRecords(records, count);
+        } catch (RuntimeException e) {
+            metrics.recordEncodeFailure();
+            failed(request(BATCH_PATH, "events", count), e);
             return;
         }
+        send(request);
+    }
 
+    private void encodeAndSend(String path, String description, int itemCount, JsonBody payload) {
+        HubRequest request;
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(blocks)))
-                    .header("Content-Type", "application/json")
-                    .uri(java.net.URI.create(url + "/api/v1/blocks"))
-                    .timeout(Duration.ofSeconds(10))
-                    .version(HttpClient.Version.HTTP_2)
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() >= 400) {
-                String errorMsg = String.format("Failed to flush blocks to VFL Hub. Status: %d, Response: %s",
-                        response.statusCode(), response.body());
-                log.warn(errorMsg);
-
-                if (throwExceptions) {
-                    throw new RuntimeException(errorMsg);
-                }
+            request = encode(path, description, itemCount, payload);
+        } catch (IOException e) {
+            metrics.recordEncodeFailure();
+            failed(request(path, description, itemCount), e);
+            return;
+        }
+        send(request);
+    }
+
+    // Encode and send stages, also driven separately by PipelinedFlushHandler and AsyncHubFlushHandler
+
+    /**
+     * Encodes an event batch into a single combined request in batched mode, otherwise into one request per
+     * non-empty section, blocks first.
+     * The caller must {@link #send} or {@link HubRequest#release()} every returned request.
+     */
+    List<HubRequest> encodeEvents(List<BlockEvent> events) throws IOException {
+        if (wireFormat == HubWireFormat.BINARY) {
+            try {
+                return Collections.singletonList(encodeBinary(events).replayedBy(h -> h.flushEvents(events)));
+            } catch (RuntimeException e) {
+                metrics.recordEncodeFailure();
+                throw e;
+            }
+        }
+        EventSections sections = EventSections.of(events);
+        if (batched) {
+            try {
+                return Collections.singletonList(encode(BATCH_PATH, "events", events.size(),
+                        out -> JsonEventWriter.writeBatch(out, sections)).replayedBy(h -> h.flushEvents(events)));
+            } catch (IOException | RuntimeException e) {
+                metrics.recordEncodeFailure();
+                throw e;
+            }
+        }
+        List<HubRequest> requests = new ArrayList<>(5);
+        try {
+            if (!sections.blocks.isEmpty()) {
+                requests.add(encode(BLOCKS_PATH, "blocks", sections.blocks.size(),
+                        out -> JsonEventWriter.writeBlocks(out, sections.blocks))
+                        .replayedBy(h -> h.flushBlocks(sections.blocks)));
+            }
+            if (!sections.logs.isEmpty()) {
+                requests.add(encode(LOGS_PATH, "logs", sections.logs.size(),
+                        out -> JsonEventWriter.writeLogs(out, sections.logs))
+                        .replayedBy(h -> h.flushLogs(sections.logs)));
+            }
+            if (!sections.blockEntered.isEmpty()) {
+                requests.add(encode(BLOCK_ENTERED_PATH, "block entered events", sections.blockEntered.size(),
+                        out -> JsonEventWriter.writeTimes(out, sections.blockEntered))
+                        .replayedBy(h -> h.flushBlockEntered(sections.blockEntered)));
+            }
+            if (!sections.blockExited.isEmpty()) {
+                requests.add(encode(BLOCK_EXITED_PATH, "block exited events", sections.blockExited.size(),
+                        out -> JsonEventWriter.writeTimes(out, sections.blockExited))
+                        .replayedBy(h -> h.flushBlockExited(sections.blockExited)));
+            }
+            if (!sections.blockReturned.isEmpty()) {
+                requests.add(encode(BLOCK_RETURNED_PATH, "block returned events", sections.blockReturned.size(),
+                        out -> JsonEventWriter.writeTimes(out, sections.blockReturned))
+                        .replayedBy(h -> h.flushBlockReturned(sections.blockReturned)));
             }
+        } catch (IOException | RuntimeException e) {
+            metrics.recordEncodeFailure();
+            requests.forEach(HubRequest::release);
+            throw e;
+        }
+        return requests;
+    }
 
-        } catch (RuntimeException e) {
+    /**
+     * Streams the JSON body straight into a pooled buffer as UTF-8, no intermediate string is built.
+     */
+    private HubRequest encode(String path, String description, int itemCount, JsonBody payload) throws IOException {
+        ByteArrayPool.Buffer body = bodyPool.acquire();
+        try (JsonGenerator out = JSON.createGenerator(body, JsonEncoding.UTF8)) {
+            payload.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            body.release();
             throw e;
-        } catch (Exception e) {
-            String errorMsg = String.format("Failed to flush %d blocks to VFL Hub: %s", blocks.size(), e.getMessage());
-            log.error(errorMsg);
+        }
+        return compressIfLarge(path, description, itemCount, body);
+    }
 
-            if (throwExceptions) {
-                throw new RuntimeException(errorMsg, e);
-            }
+    private HubRequest encodeBinary(List<BlockEvent> events) {
+        ByteArrayPool.Buffer body = bodyPool.acquire();
+        try {
+            BinaryEventCodec.encode(events, body);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
         }
+        return compressIfLarge(BATCH_PATH, "events", events.size(), body);
     }
 
-    @Override
-    public void flushBlockEntered(Map<String, Long> blockIds) {
-        if (blockIds == null || blockIds.isEmpty()) {
-            return;
+    private HubRequest encodeBinaryRecords(ByteBuffer records, int count) {
+        ByteArrayPool.Buffer body = bodyPool.acquire();
+        try {
+            BinaryEventCodec.encodeRecords(records, count, body);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
         }
+        return compressIfLarge(BATCH_PATH, "events", count, body);
+    }
 
+    private HubRequest compressIfLarge(String path, String description, int itemCount, ByteArrayPool.Buffer body) {
+        if (!compression.appliesTo(body.size())) {
+            return new HubRequest(path, description, itemCount, body, null);
+        }
+        ByteArrayPool.Buffer compressed = bodyPool.acquire();
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(blockIds)))
-                    .header("Content-Type", "application/json")
-                    .uri(java.net.URI.create(url + "/api/v1/block-entered"))
-                    .timeout(Duration.ofSeconds(10))
-                    .version(HttpClient.Version.HTTP_2)
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() >= 400) {
-                String errorMsg = String.format("Failed to flush block entered events to VFL Hub. Status: %d, Response: %s",
-                        response.statusCode(), response.body());
-                log.warn(errorMsg);
-
-                if (throwExceptions) {
-                    throw new RuntimeException(errorMsg);
-                }
-            }
+            deflaterPool.compress(body.array(), body.size(), compressed);
+        } catch (RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            body.release();
+        }
+        return new HubRequest(path, description, itemCount, compressed, compression.getEncoding().getHeaderValue());
+    }
+
+    private static HubRequest request(String path, String description, int itemCount) {
+        return new HubRequest(path, description, itemCount, null, null);
+    }
+
+    private HttpRequest buildRequest(HubRequest hubRequest) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .POST(new ByteArrayBodyPublisher(hubRequest.body.array(), 0, hubRequest.body.size()))
+                .header("Content-Type", wireFormat.getContentType())
+                .uri(URI.create(url + hubRequest.path))
+                .header(BATCH_ID_HEADER, hubRequest.batchId)
+                .timeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_2);
+        if (hubRequest.contentEncoding != null) {
+            builder.header("Content-Encoding", hubRequest.contentEncoding);
+        }
+        return builder.build();
+    }
 
+    /**
+     * Posts an encoded request and releases its body.
+     */
+    void send(HubRequest hubRequest) {
+        int bodySize = hubRequest.getBodySize();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(buildRequest(hubRequest), HttpResponse.BodyHandlers.ofString());
+            checkResponse(hubRequest, response, bodySize, start);
         } catch (RuntimeException e) {
+            // Re-throw RuntimeException if it came from the status check above
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.recordFailedRequest(bodySize, System.nanoTime() - start);
+            failed(hubRequest, e);
         } catch (Exception e) {
-            String errorMsg = String.format("Failed to flush %d block entered events to VFL Hub: %s", blockIds.size(), e.getMessage());
-            log.error(errorMsg);
-
-            if (throwExceptions) {
-                throw new RuntimeException(errorMsg, e);
-            }
+            metrics.recordFailedRequest(bodySize, System.nanoTime() - start);
+            failed(hubRequest, e);
+        } finally {
+            hubRequest.release();
         }
     }
 
-    @Override
-    public void flushBlockExited(Map<String, Long> blockIds) {
-        if (blockIds == null || blockIds.isEmpty()) {
-            return;
+    /**
+     * Posts an encoded request once, records its metrics and keeps its body for another attempt.
+     * Neither logs nor throws on error statuses.
+     *
+     * @return the response status code
+     * @throws IOException if no response was received, including timeouts
+     */
+    int post(HubRequest hubRequest) throws IOException, InterruptedException {
+        int bodySize = hubRequest.getBodySize();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(buildRequest(hubRequest), HttpResponse.BodyHandlers.discarding());
+            metrics.recordResponse(response.statusCode(), bodySize, System.nanoTime() - start);
+            return response.statusCode();
+        } catch (IOException | InterruptedException e) {
+            metrics.recordFailedRequest(bodySize, System.nanoTime() - start);
+            throw e;
         }
+    }
 
+    /**
+     * Posts an encoded request without holding a thread during the round trip and releases its body once done.
+     * The returned future fails in the cases where {@link #send} would throw.
+     */
+    CompletableFuture<Void> sendAsync(HubRequest hubRequest) {
+        int bodySize = hubRequest.getBodySize();
+        long start = System.nanoTime();
+        HttpRequest request;
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(blockIds)))
-                    .header("Content-Type", "application/json")
-                    .uri(java.net.URI.create(url + "/api/v1/block-exited"))
-                    .timeout(Duration.ofSeconds(10))
-                    .version(HttpClient.Version.HTTP_2)
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() >= 400) {
-                String errorMsg = String.format("Failed to flush block exited events to VFL Hub. Status: %d, Response: %s",
-                        response.statusCode(), response.body());
-                log.warn(errorMsg);
-
-                if (throwExceptions) {
-                    throw new RuntimeException(errorMsg);
+            request = buildRequest(hubRequest);
+        } catch (RuntimeException e) {
+            hubRequest.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, error) -> {
+            try {
+                if (error == null) {
+                    checkResponse(hubRequest, response, bodySize, start);
+                } else {
+                    metrics.recordFailedRequest(bodySize, System.nanoTime() - start);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    failed(hubRequest, cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
                 }
+                return null;
+            } finally {
+                hubRequest.release();
             }
+        });
+    }
 
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            String errorMsg = String.format("Failed to flush %d block exited events to VFL Hub: %s", blockIds.size(), e.getMessage());
-            log.error(errorMsg);
+    private void checkResponse(HubRequest hubRequest, HttpResponse<String> response, int bodySize, long start) {
+        metrics.recordResponse(response.statusCode(), bodySize, System.nanoTime() - start);
+
+        // Log non-2xx responses
+        if (response.statusCode() >= 400) {
+            String errorMsg = String.format("Failed to flush %s to VFL Hub. Status: %d, Response: %s",
+                    hubRequest.description, response.statusCode(), response.body());
+            log.warn(errorMsg);
 
             if (throwExceptions) {
-                throw new RuntimeException(errorMsg, e);
+                throw new RuntimeException(errorMsg);
             }
         }
     }
 
-    @Override
-    public void flushBlockReturned(Map<String, Long> blockIds) {
-        if (blockIds == null || blockIds.isEmpty()) {
-            return;
+    private void failed(HubRequest hubRequest, Exception e) {
+        String errorMsg = String.format("Failed to flush %d %s to VFL Hub: %s",
+                hubRequest.itemCount, hubRequest.description, e.getMessage());
+        log.error(errorMsg);
+
+        if (throwExceptions) {
+            throw new RuntimeException(errorMsg, e);
         }
+    }
 
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(blockIds)))
-                    .header("Content-Type", "application/json")
-                    .uri(java.net.URI.create(url + "/api/v1/block-returned"))
-                    .timeout(Duration.ofSeconds(10))
-                    .version(HttpClient.Version.HTTP_2)
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() >= 400) {
-                String errorMsg = String.format("Failed to flush block returned events to VFL Hub. Status: %d, Response: %s",
-                        response.statusCode(), response.body());
-                log.warn(errorMsg);
-
-                if (throwExceptions) {
-                    throw new RuntimeException(errorMsg);
-                }
+    /**
+     * Returns whether every event batch goes to the hub as one request, so it is either delivered or failed as a
+     * whole. Always true for the binary wire format.
+     *
+     * @return true in batched mode
+     */
+    public boolean isBatched() {
+        return batched;
+    }
+
+    /**
+     * Returns the request, response and payload metrics of this handler.
+     * Useful for monitoring and testing.
+     *
+     * @return live metrics, see {@link HubMetrics#snapshot()} and {@link HubMetrics#registerMBean(String)}
+     */
+    public HubMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Writes one JSON request body.
+     */
+    private interface JsonBody {
+        void writeTo(JsonGenerator out) throws IOException;
+    }
+
+    /**
+     * One encoded request body and where to post it.
+     */
+    static final class HubRequest {
+        private final String path;
+        private final String description;
+        private final int itemCount;
+        // Null for uncompressed bodies
+        private final String contentEncoding;
+        private final String batchId = VFLIds.next();
+        private ByteArrayPool.Buffer body;
+        // Hands the encoded items to another handler, only valid during the flush call that encoded them
+        private Consumer<VFLFlushHandler> replay;
+
+        private HubRequest(String path, String description, int itemCount, ByteArrayPool.Buffer body,
+                           String contentEncoding) {
+            this.path = path;
+            this.description = description;
+            this.itemCount = itemCount;
+            this.body = body;
+            this.contentEncoding = contentEncoding;
+        }
+
+        private HubRequest replayedBy(Consumer<VFLFlushHandler> replay) {
+            this.replay = replay;
+            return this;
+        }
+
+        String getDescription() {
+            return description;
+        }
+
+        int getItemCount() {
+            return itemCount;
+        }
+
+        /**
+         * @return id sent in the {@code X-VFL-Batch-Id} header, the same for every attempt
+         */
+        String getBatchId() {
+            return batchId;
+        }
+
+        /**
+         * Flushes the items of this request to another handler, e.g. a fallback while the hub is down.
+         */
+        void replayTo(VFLFlushHandler handler) {
+            if (replay == null) {
+                throw new IllegalStateException("Request was not encoded by encodeEvents");
             }
+            replay.accept(handler);
+        }
 
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            String errorMsg = String.format("Failed to flush %d block returned events to VFL Hub: %s", blockIds.size(), e.getMessage());
-            log.error(errorMsg);
+        int getBodySize() {
+            return body == null ? 0 : body.size();
+        }
 
-            if (throwExceptions) {
-                throw new RuntimeException(errorMsg, e);
+        /**
+         * Returns the body to its pool. Safe to call more than once.
+         */
+        void release() {
+            if (body != null) {
+                body.release();
+                body = null;
             }
         }
     }
@@ -0,0 +1,43 @@
+package dev.kuku.vfl.api.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a buffer's metrics, registered under {@code dev.kuku.vfl:type=Buffer,name=<name>}.
+ * Every attribute is read live, see {@link BufferMetricsSnapshot} for their meaning.
+ */
+public interface BufferMetricsMXBean {
+
+    /**
+     * @return pushed events keyed by event type name
+     */
+    Map<String, Long> getPushedEvents();
+
+    long getPushedEventCount();
+
+    long getPushWaitP99Nanos();
+
+    long getPushWaitMaxNanos();
+
+    long getFlushCount();
+
+    long getFailedFlushCount();
+
+    long getFlushedEventCount();
+
+    long getFlushLatencyP50Micros();
+
+    long getFlushLatencyP99Micros();
+
+    long getFlushLatencyMaxMicros();
+
+    double getBatchSizeMean();
+
+    long getBatchSizeMax();
+
+    long getDroppedEventCount();
+
+    int getQueueDepth();
+
+    int getPendingFlushCount();
+}
@@ -0,0 +1,123 @@
+package dev.kuku.vfl.api.metrics;
+
+import dev.kuku.vfl.internal.models.BlockEvent;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a buffer's metrics.
+ * <p>
+ * Counters are totals since the buffer was created. Latencies are in nanoseconds.
+ */
+public final class BufferMetricsSnapshot {
+    private final Map<BlockEvent.Type, Long> pushedEvents;
+    private final HistogramSnapshot pushWaitNanos;
+    private final HistogramSnapshot flushLatencyNanos;
+    private final HistogramSnapshot batchSizes;
+    private final long failedFlushCount;
+    private final long droppedEventCount;
+    private final int queueDepth;
+    private final int pendingFlushCount;
+
+    public BufferMetricsSnapshot(
+            Map<BlockEvent.Type, Long> pushedEvents,
+            HistogramSnapshot pushWaitNanos,
+            HistogramSnapshot flushLatencyNanos,
+            HistogramSnapshot batchSizes,
+            long failedFlushCount,
+            long droppedEventCount,
+            int queueDepth,
+            int pendingFlushCount) {
+        this.pushedEvents = Collections.unmodifiableMap(new EnumMap<>(pushedEvents));
+        this.pushWaitNanos = pushWaitNanos;
+        this.flushLatencyNanos = flushLatencyNanos;
+        this.batchSizes = batchSizes;
+        this.failedFlushCount = failedFlushCount;
+        this.droppedEventCount = droppedEventCount;
+        this.queueDepth = queueDepth;
+        this.pendingFlushCount = pendingFlushCount;
+    }
+
+    /**
+     * @return number of events pushed per type, including events dropped afterwards
+     */
+    public Map<BlockEvent.Type, Long> getPushedEvents() {
+        return pushedEvents;
+    }
+
+    public long getPushedEventCount(BlockEvent.Type type) {
+        return pushedEvents.getOrDefault(type, 0L);
+    }
+
+    public long getPushedEventCount() {
+        long total = 0;
+        for (long count : pushedEvents.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return time pushes waited for the buffer's lock, or for a free slot in lock-free buffers
+     */
+    public HistogramSnapshot getPushWaitNanos() {
+        return pushWaitNanos;
+    }
+
+    /**
+     * @return time the flush handler took per batch
+     */
+    public HistogramSnapshot getFlushLatencyNanos() {
+        return flushLatencyNanos;
+    }
+
+    /**
+     * @return number of events per batch handed to the flush handler
+     */
+    public HistogramSnapshot getBatchSizes() {
+        return batchSizes;
+    }
+
+    public long getFlushCount() {
+        return flushLatencyNanos.getCount();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount;
+    }
+
+    /**
+     * @return number of events handed to the flush handler, including failed flushes
+     */
+    public long getFlushedEventCount() {
+        return batchSizes.getSum();
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    /**
+     * @return number of events buffered and not yet handed to the flush handler
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of batches handed off but not yet finished by the flush handler
+     */
+    public int getPendingFlushCount() {
+        return pendingFlushCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferMetricsSnapshot{pushed=" + pushedEvents + ", pushWaitNanos=" + pushWaitNanos
+                + ", flushLatencyNanos=" + flushLatencyNanos + ", batchSizes=" + batchSizes
+                + ", failedFlushes=" + failedFlushCount + ", dropped=" + droppedEventCount
+                + ", queueDepth=" + queueDepth + ", pendingFlushes=" + pendingFlushCount + "}";
+    }
+}
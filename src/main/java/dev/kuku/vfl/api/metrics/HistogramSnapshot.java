@@ -0,0 +1,97 @@
+package dev.kuku.vfl.api.metrics;
+
+/**
+ * Point-in-time copy of a histogram with power-of-two buckets.
+ * <p>
+ * Bucket 0 counts zero values, bucket {@code i} counts values from {@code 2^(i-1)} to {@code 2^i - 1}. Percentiles
+ * are therefore accurate to within a factor of two, which is enough to tell a 2 ms flush from a 200 ms one.
+ */
+public final class HistogramSnapshot {
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final long[] buckets;
+
+    public HistogramSnapshot(long count, long sum, long max, long[] buckets) {
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+        this.buckets = buckets.clone();
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return sum of all recorded values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return largest recorded value, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return average of the recorded values, 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, capped at the maximum.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return estimated value at the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return copy of the bucket counts
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * @return largest value counted by the bucket with the given index
+     */
+    public static long getBucketUpperBound(int index) {
+        return index >= 63 ? Long.MAX_VALUE : (1L << index) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99) + ", max=" + max + "}";
+    }
+}
@@ -0,0 +1,32 @@
+package dev.kuku.vfl.api.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a hub flush handler's metrics, registered under {@code dev.kuku.vfl:type=Hub,name=<name>}.
+ * Every attribute is read live, see {@link HubMetricsSnapshot} for their meaning.
+ */
+public interface HubMetricsMXBean {
+
+    Map<Integer, Long> getStatusCodes();
+
+    long getErrorResponseCount();
+
+    long getRequestCount();
+
+    long getFailedRequestCount();
+
+    long getEncodeFailureCount();
+
+    long getRetryCount();
+
+    long getRequestLatencyP50Micros();
+
+    long getRequestLatencyP99Micros();
+
+    long getRequestLatencyMaxMicros();
+
+    long getPayloadBytesTotal();
+
+    long getPayloadBytesMax();
+}
@@ -0,0 +1,107 @@
+package dev.kuku.vfl.api.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Point-in-time copy of a hub flush handler's metrics.
+ * <p>
+ * Counters are totals since the handler was created. Latencies are in nanoseconds.
+ */
+public final class HubMetricsSnapshot {
+    private final Map<Integer, Long> statusCodes;
+    private final HistogramSnapshot requestLatencyNanos;
+    private final HistogramSnapshot payloadBytes;
+    private final long failedRequestCount;
+    private final long encodeFailureCount;
+    private final long retryCount;
+
+    public HubMetricsSnapshot(
+            Map<Integer, Long> statusCodes,
+            HistogramSnapshot requestLatencyNanos,
+            HistogramSnapshot payloadBytes,
+            long failedRequestCount,
+            long encodeFailureCount,
+            long retryCount) {
+        this.statusCodes = Collections.unmodifiableMap(new TreeMap<>(statusCodes));
+        this.requestLatencyNanos = requestLatencyNanos;
+        this.payloadBytes = payloadBytes;
+        this.failedRequestCount = failedRequestCount;
+        this.encodeFailureCount = encodeFailureCount;
+        this.retryCount = retryCount;
+    }
+
+    /**
+     * @return number of responses per HTTP status code
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        return statusCodes;
+    }
+
+    public long getStatusCodeCount(int statusCode) {
+        return statusCodes.getOrDefault(statusCode, 0L);
+    }
+
+    /**
+     * @return number of responses with a status of 400 or above
+     */
+    public long getErrorResponseCount() {
+        long total = 0;
+        for (Map.Entry<Integer, Long> entry : statusCodes.entrySet()) {
+            if (entry.getKey() >= 400) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return number of requests sent, whether or not a response came back
+     */
+    public long getRequestCount() {
+        return requestLatencyNanos.getCount();
+    }
+
+    /**
+     * @return time from sending a request to receiving its response or failure
+     */
+    public HistogramSnapshot getRequestLatencyNanos() {
+        return requestLatencyNanos;
+    }
+
+    /**
+     * @return request body sizes in bytes
+     */
+    public HistogramSnapshot getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * @return number of requests that got no response, e.g. on timeouts or refused connections
+     */
+    public long getFailedRequestCount() {
+        return failedRequestCount;
+    }
+
+    /**
+     * @return number of batch sections that could not be serialized
+     */
+    public long getEncodeFailureCount() {
+        return encodeFailureCount;
+    }
+
+    /**
+     * @return number of requests sent again after a failed attempt
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HubMetricsSnapshot{statusCodes=" + statusCodes + ", requestLatencyNanos=" + requestLatencyNanos
+                + ", payloadBytes=" + payloadBytes + ", failedRequests=" + failedRequestCount
+                + ", encodeFailures=" + encodeFailureCount + ", retries=" + retryCount + "}";
+    }
+}
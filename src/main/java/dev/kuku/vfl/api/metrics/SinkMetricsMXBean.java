@@ -0,0 +1,28 @@
+package dev.kuku.vfl.api.metrics;
+
+/**
+ * JMX view of one sink of a fan-out flush handler, registered under {@code dev.kuku.vfl:type=Sink,name=<name>}.
+ * Every attribute is read live, see {@link SinkMetricsSnapshot} for their meaning.
+ */
+public interface SinkMetricsMXBean {
+
+    long getDeliveredBatchCount();
+
+    long getDeliveredEventCount();
+
+    long getFailedBatchCount();
+
+    long getDroppedBatchCount();
+
+    long getDroppedEventCount();
+
+    long getDeliveryLatencyP50Micros();
+
+    long getDeliveryLatencyP99Micros();
+
+    long getDeliveryLatencyMaxMicros();
+
+    long getQueueWaitP99Micros();
+
+    int getQueueDepth();
+}
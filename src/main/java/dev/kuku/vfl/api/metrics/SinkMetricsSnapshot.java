@@ -0,0 +1,98 @@
+package dev.kuku.vfl.api.metrics;
+
+/**
+ * Point-in-time copy of the metrics of one sink of a fan-out flush handler.
+ * <p>
+ * Counters are totals since the handler was created. Latencies are in nanoseconds.
+ */
+public final class SinkMetricsSnapshot {
+    private final String name;
+    private final HistogramSnapshot deliveryLatencyNanos;
+    private final HistogramSnapshot queueWaitNanos;
+    private final long deliveredEventCount;
+    private final long failedBatchCount;
+    private final long droppedBatchCount;
+    private final long droppedEventCount;
+    private final int queueDepth;
+
+    public SinkMetricsSnapshot(
+            String name,
+            HistogramSnapshot deliveryLatencyNanos,
+            HistogramSnapshot queueWaitNanos,
+            long deliveredEventCount,
+            long failedBatchCount,
+            long droppedBatchCount,
+            long droppedEventCount,
+            int queueDepth) {
+        this.name = name;
+        this.deliveryLatencyNanos = deliveryLatencyNanos;
+        this.queueWaitNanos = queueWaitNanos;
+        this.deliveredEventCount = deliveredEventCount;
+        this.failedBatchCount = failedBatchCount;
+        this.droppedBatchCount = droppedBatchCount;
+        this.droppedEventCount = droppedEventCount;
+        this.queueDepth = queueDepth;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return time the sink's handler took per batch, failed calls included
+     */
+    public HistogramSnapshot getDeliveryLatencyNanos() {
+        return deliveryLatencyNanos;
+    }
+
+    /**
+     * @return time batches waited in the sink's queue before its handler was called
+     */
+    public HistogramSnapshot getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /**
+     * @return number of batches the handler accepted without throwing
+     */
+    public long getDeliveredBatchCount() {
+        return deliveryLatencyNanos.getCount() - failedBatchCount;
+    }
+
+    public long getDeliveredEventCount() {
+        return deliveredEventCount;
+    }
+
+    /**
+     * @return number of batches whose handler call threw
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount;
+    }
+
+    /**
+     * @return number of batches discarded by the sink's overflow policy
+     */
+    public long getDroppedBatchCount() {
+        return droppedBatchCount;
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    /**
+     * @return number of batches waiting in the sink's queue
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "SinkMetricsSnapshot{name=" + name + ", deliveryLatencyNanos=" + deliveryLatencyNanos
+                + ", queueWaitNanos=" + queueWaitNanos + ", deliveredEvents=" + deliveredEventCount
+                + ", failedBatches=" + failedBatchCount + ", droppedBatches=" + droppedBatchCount
+                + ", droppedEvents=" + droppedEventCount + ", queueDepth=" + queueDepth + "}";
+    }
+}
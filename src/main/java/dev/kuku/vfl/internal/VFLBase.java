@@ -28,7 +28,7 @@ public abstract class VFLBase {
             return;
         }
         String msg = FormatMessage(message, args);
-        BlockLog l = new BlockLog(msg, ctx.getBlock().getId(), ctx.getCurrentLogId(), LogTypeBase.INFO);
+        BlockLog l = new BlockLog(msg, ctx.getBlockId(), ctx.getCurrentLogId(), LogTypeBase.INFO);
         log.debug("Created log $l");
         buffer.pushLog(l);
         ctx.setCurrentLogId(l.getId());
@@ -46,7 +46,7 @@ public abstract class VFLBase {
             return;
         }
         String msg = FormatMessage(message, args);
-        BlockLog logEntry = new BlockLog(msg, ctx.getBlock().getId(), ctx.getCurrentLogId(), LogTypeBase.WARN);
+        BlockLog logEntry = new BlockLog(msg, ctx.getBlockId(), ctx.getCurrentLogId(), LogTypeBase.WARN);
         buffer.pushLog(logEntry);
         ctx.setCurrentLogId(logEntry.getId());
     }
@@ -63,7 +63,7 @@ public abstract class VFLBase {
             return;
         }
         String msg = FormatMessage(message, args);
-        BlockLog logEntry = new BlockLog(msg, ctx.getBlock().getId(), ctx.getCurrentLogId(), LogTypeBase.ERROR);
+        BlockLog logEntry = new BlockLog(msg, ctx.getBlockId(), ctx.getCurrentLogId(), LogTypeBase.ERROR);
         buffer.pushLog(logEntry);
         ctx.setCurrentLogId(logEntry.getId());
     }
@@ -0,0 +1,102 @@
+package dev.kuku.vfl.internal.buffer;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Mutable batch of buffered events, kept in a single sequence in the order they were added.
+ * Buffers fill one batch at a time and swap it out for an empty one when flushing.
+ * <p>
+ * Not thread-safe. The owning buffer guards the active batch, and a swapped out batch belongs to the flushing thread
+ * until it is handed back to its {@link FlushBatchPool}.
+ */
+public final class FlushBatch {
+    private final ArrayList<BlockEvent> events;
+
+    public FlushBatch(int capacity) {
+        this.events = new ArrayList<>(capacity);
+    }
+
+    public void addBlock(Block block) {
+        events.add(BlockEvent.blockCreated(block));
+    }
+
+    public void addLog(BlockLog log) {
+        events.add(BlockEvent.log(log));
+    }
+
+    public void addBlockEntered(String blockId, long time) {
+        events.add(BlockEvent.blockEntered(blockId, time));
+    }
+
+    public void addBlockExited(String blockId, long time) {
+        events.add(BlockEvent.blockExited(blockId, time));
+    }
+
+    public void addBlockReturned(String blockId, long time) {
+        events.add(BlockEvent.blockReturned(blockId, time));
+    }
+
+    public void addEvent(BlockEvent event) {
+        events.add(event);
+    }
+
+    /**
+     * Appends every event of another batch after the events of this one.
+     */
+    public void mergeFrom(FlushBatch other) {
+        events.addAll(other.events);
+    }
+
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    /**
+     * @return number of events added since the last clear
+     */
+    public int getItemCount() {
+        return events.size();
+    }
+
+    /**
+     * @return the events in the order they were added. Only valid until the batch is cleared
+     */
+    public List<BlockEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Empties the batch while keeping the capacity of its event list.
+     */
+    public void clear() {
+        events.clear();
+    }
+
+    /**
+     * Hands all events to the flush handler in a single call, in the order they were added.
+     */
+    public void flushUsing(VFLFlushHandler flushHandler) {
+        if (!events.isEmpty()) {
+            flushHandler.flushEvents(events);
+        }
+    }
+
+    /**
+     * Hands all events to the flush handler like {@link #flushUsing}, returning once the handler is done reading them.
+     *
+     * @return completes once the handler delivered the events
+     */
+    public CompletableFuture<Void> flushAsyncUsing(VFLFlushHandler flushHandler) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return flushHandler.flushEventsAsync(events);
+    }
+}
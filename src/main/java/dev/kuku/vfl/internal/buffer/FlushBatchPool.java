@@ -0,0 +1,57 @@
+package dev.kuku.vfl.internal.buffer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of empty {@link FlushBatch} instances so that steady-state flushing allocates no new collections.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class FlushBatchPool {
+    private final ConcurrentLinkedQueue<FlushBatch> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int maxPooled;
+    private final int batchCapacity;
+
+    /**
+     * @param maxPooled     Maximum number of idle batches kept for reuse
+     * @param batchCapacity Initial capacity of newly created batches
+     */
+    public FlushBatchPool(int maxPooled, int batchCapacity) {
+        this.maxPooled = maxPooled;
+        this.batchCapacity = batchCapacity;
+    }
+
+    /**
+     * @return an empty batch, reused when one is available
+     */
+    public FlushBatch acquire() {
+        FlushBatch batch = pool.poll();
+        if (batch == null) {
+            return new FlushBatch(batchCapacity);
+        }
+        pooled.decrementAndGet();
+        return batch;
+    }
+
+    /**
+     * Clears the batch and keeps it for reuse unless the pool is already full.
+     * The caller must not touch the batch afterwards.
+     */
+    public void release(FlushBatch batch) {
+        batch.clear();
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(batch);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of idle batches currently pooled
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+}
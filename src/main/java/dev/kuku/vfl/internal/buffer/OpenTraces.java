@@ -0,0 +1,237 @@
+package dev.kuku.vfl.internal.buffer;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.util.LongObjectMap;
+import dev.kuku.vfl.internal.util.VFLIds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the items of traces whose root block has not completed yet, one {@link FlushBatch} per trace.
+ * <p>
+ * A trace is keyed by its root block id. Every block created under a tracked block is indexed to the same root, so
+ * logs and timestamps pushed later can be routed to the right trace. Items that cannot be matched to an open trace,
+ * for example those of remote blocks or of blocks created after their root completed, are rejected and the caller
+ * is expected to treat them as ready.
+ * <p>
+ * Blocks are indexed by the sequence number embedded in their id (see {@link VFLIds#localSequence(String)}), so the
+ * per-event lookup hashes a primitive long instead of a 36 character string. Ids created outside this process are
+ * never part of an open trace.
+ * <p>
+ * A root that never reports completion must not pin its trace forever, so traces are bounded. A trace older than the
+ * maximum age is closed by the next {@link #drainInto(FlushBatch)}, and once the maximum number of traces is open a
+ * new root is rejected, so its items are treated as ready.
+ * <p>
+ * Not thread-safe. The owning buffer guards all access.
+ */
+public final class OpenTraces {
+    // Most traces are small, so their batches start small and are pooled separately from full size batches
+    private static final int TRACE_BATCH_CAPACITY = 16;
+
+    private final FlushBatchPool batchPool;
+    private final long maxTraceAgeNanos;
+    private final int maxOpenTraces;
+    // Root block sequence to its trace
+    private final LongObjectMap<Trace> traces = new LongObjectMap<>(64);
+    // Block sequence to the trace the block belongs to
+    private final LongObjectMap<Trace> blockTraces = new LongObjectMap<>(256);
+    // Traces found stale during a drain, reused so draining allocates nothing
+    private final ArrayList<Trace> staleTraces = new ArrayList<>();
+    private int itemCount = 0;
+
+    /**
+     * @param maxPooledBatches Maximum number of idle per-trace batches kept for reuse
+     * @param maxTraceAgeMs    Age in milliseconds after which a trace is closed without its root completing
+     * @param maxOpenTraces    Maximum number of traces open at the same time
+     */
+    public OpenTraces(int maxPooledBatches, long maxTraceAgeMs, int maxOpenTraces) {
+        if (maxTraceAgeMs <= 0) {
+            throw new IllegalArgumentException("maxTraceAgeMs must be positive");
+        }
+        if (maxOpenTraces <= 0) {
+            throw new IllegalArgumentException("maxOpenTraces must be positive");
+        }
+        this.batchPool = new FlushBatchPool(maxPooledBatches, TRACE_BATCH_CAPACITY);
+        this.maxTraceAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxTraceAgeMs);
+        this.maxOpenTraces = maxOpenTraces;
+    }
+
+    /**
+     * Opens a trace for root blocks and tracks blocks created under an open trace.
+     *
+     * @return false if the block belongs to no open trace, or is a root while the maximum number of traces is open
+     */
+    public boolean addBlock(Block block) {
+        long sequence = VFLIds.localSequence(block.getId());
+        if (sequence < 0) {
+            return false;
+        }
+        Trace trace;
+        if (block.getParentBlockId() == null) {
+            if (traces.size() >= maxOpenTraces) {
+                return false;
+            }
+            trace = new Trace(batchPool.acquire(), System.nanoTime());
+            traces.put(sequence, trace);
+        } else {
+            trace = traceOf(block.getParentBlockId());
+            if (trace == null) {
+                return false;
+            }
+        }
+        blockTraces.put(sequence, trace);
+        trace.addBlockSequence(sequence);
+        trace.batch.addBlock(block);
+        itemCount++;
+        return true;
+    }
+
+    /**
+     * @return false if the log's block belongs to no open trace
+     */
+    public boolean addLog(BlockLog log) {
+        Trace trace = traceOf(log.getBlockId());
+        if (trace == null) {
+            return false;
+        }
+        trace.batch.addLog(log);
+        itemCount++;
+        return true;
+    }
+
+    /**
+     * @return false if the block belongs to no open trace
+     */
+    public boolean addBlockEntered(String blockId, long time) {
+        Trace trace = traceOf(blockId);
+        if (trace == null) {
+            return false;
+        }
+        trace.batch.addBlockEntered(blockId, time);
+        itemCount++;
+        return true;
+    }
+
+    /**
+     * @return false if the block belongs to no open trace
+     */
+    public boolean addBlockExited(String blockId, long time) {
+        Trace trace = traceOf(blockId);
+        if (trace == null) {
+            return false;
+        }
+        trace.batch.addBlockExited(blockId, time);
+        itemCount++;
+        return true;
+    }
+
+    /**
+     * @return false if the block belongs to no open trace
+     */
+    public boolean addBlockReturned(String blockId, long time) {
+        Trace trace = traceOf(blockId);
+        if (trace == null) {
+            return false;
+        }
+        trace.batch.addBlockReturned(blockId, time);
+        itemCount++;
+        return true;
+    }
+
+    /**
+     * Closes a trace, moving its items into {@code ready} and forgetting its blocks.
+     *
+     * @return false if no trace is open for the root block
+     */
+    public boolean complete(String rootBlockId, FlushBatch ready) {
+        long rootSequence = VFLIds.localSequence(rootBlockId);
+        Trace trace = rootSequence < 0 ? null : traces.remove(rootSequence);
+        if (trace == null) {
+            return false;
+        }
+        itemCount -= trace.batch.getItemCount();
+        close(trace, ready);
+        return true;
+    }
+
+    /**
+     * Moves the items buffered so far for every open trace into {@code target}.
+     * Traces older than the maximum age are closed, so items pushed for them later are treated as ready. The other
+     * traces stay open, so items pushed later are still routed to them.
+     */
+    public void drainInto(FlushBatch target) {
+        if (traces.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        traces.forEachValue(trace -> {
+            if (now - trace.openedAtNanos > maxTraceAgeNanos) {
+                staleTraces.add(trace);
+            } else if (!trace.batch.isEmpty()) {
+                target.mergeFrom(trace.batch);
+                trace.batch.clear();
+            }
+        });
+        for (int i = 0; i < staleTraces.size(); i++) {
+            Trace trace = staleTraces.get(i);
+            traces.remove(trace.blockSequences[0]);
+            close(trace, target);
+        }
+        staleTraces.clear();
+        itemCount = 0;
+    }
+
+    /**
+     * Moves a trace's items into {@code target}, forgets its blocks and returns its batch to the pool. The trace must
+     * already be removed from {@link #traces}.
+     */
+    private void close(Trace trace, FlushBatch target) {
+        for (int i = 0; i < trace.blockCount; i++) {
+            blockTraces.remove(trace.blockSequences[i]);
+        }
+        target.mergeFrom(trace.batch);
+        batchPool.release(trace.batch);
+    }
+
+    /**
+     * @return number of items held for open traces
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return number of traces whose root block has not completed yet
+     */
+    public int getOpenTraceCount() {
+        return traces.size();
+    }
+
+    private Trace traceOf(String blockId) {
+        long sequence = VFLIds.localSequence(blockId);
+        return sequence < 0 ? null : blockTraces.get(sequence);
+    }
+
+    private static final class Trace {
+        private final FlushBatch batch;
+        private final long openedAtNanos;
+        // Sequences of every block in the trace, the root first, removed from the index when the trace closes
+        private long[] blockSequences = new long[8];
+        private int blockCount = 0;
+
+        Trace(FlushBatch batch, long openedAtNanos) {
+            this.batch = batch;
+            this.openedAtNanos = openedAtNanos;
+        }
+
+        void addBlockSequence(long sequence) {
+            if (blockCount == blockSequences.length) {
+                blockSequences = Arrays.copyOf(blockSequences, blockCount * 2);
+            }
+            blockSequences[blockCount++] = sequence;
+        }
+    }
+}
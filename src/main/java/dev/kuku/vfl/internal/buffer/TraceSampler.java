@@ -0,0 +1,158 @@
+package dev.kuku.vfl.internal.buffer;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.util.LongObjectMap;
+import dev.kuku.vfl.internal.util.VFLIds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides once per trace whether a sampling buffer keeps it, so a kept trace is never missing some of its events.
+ * <p>
+ * The decision is made when the root block is pushed: while the buffer is sampling, a root is kept if a hash of its
+ * id falls into one of every {@code sampleRate} buckets. Hashing the id, rather than counting roots, keeps the choice
+ * independent of how many ids each trace consumes. Only traces that are dropped are remembered. Every block created
+ * under a dropped block is indexed to the same trace, so logs and timestamps pushed later are dropped with it, while
+ * items of blocks not in the index are kept.
+ * <p>
+ * A dropped trace is forgotten when its root completes, once it is older than the maximum age, or not remembered at
+ * all while the maximum number of dropped traces is held. Items pushed for it afterwards are kept.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class TraceSampler {
+    private final int sampleRate;
+    private final long maxTraceAgeNanos;
+    private final int maxDroppedTraces;
+    // Root block sequence to its dropped trace
+    private final LongObjectMap<DroppedTrace> traces = new LongObjectMap<>(64);
+    // Block sequence to the dropped trace the block belongs to
+    private final LongObjectMap<DroppedTrace> blockTraces = new LongObjectMap<>(256);
+    // Traces found stale during an expiry run, reused so expiring allocates nothing
+    private final ArrayList<DroppedTrace> staleTraces = new ArrayList<>();
+
+    /**
+     * @param sampleRate       Keep one of every {@code sampleRate} traces started while sampling
+     * @param maxTraceAgeMs    Age in milliseconds after which a dropped trace is forgotten
+     * @param maxDroppedTraces Maximum number of dropped traces remembered at the same time
+     */
+    public TraceSampler(int sampleRate, long maxTraceAgeMs, int maxDroppedTraces) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.maxTraceAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxTraceAgeMs);
+        this.maxDroppedTraces = maxDroppedTraces;
+    }
+
+    /**
+     * Decides a root block's trace if {@code sampling} is set, and drops blocks created under a dropped block.
+     *
+     * @return true if the block belongs to a dropped trace
+     */
+    public synchronized boolean dropsBlock(Block block, boolean sampling) {
+        long sequence = VFLIds.localSequence(block.getId());
+        if (sequence < 0) {
+            return false;
+        }
+        DroppedTrace trace;
+        if (block.getParentBlockId() == null) {
+            if (!sampling || keeps(sequence) || traces.size() >= maxDroppedTraces) {
+                return false;
+            }
+            trace = new DroppedTrace(System.nanoTime());
+            traces.put(sequence, trace);
+        } else {
+            trace = traceOf(block.getParentBlockId());
+            if (trace == null) {
+                return false;
+            }
+        }
+        blockTraces.put(sequence, trace);
+        trace.addBlockSequence(sequence);
+        return true;
+    }
+
+    /**
+     * @return true if the block belongs to a dropped trace
+     */
+    public synchronized boolean drops(String blockId) {
+        return traceOf(blockId) != null;
+    }
+
+    /**
+     * Forgets a dropped trace once its root block completed. Does nothing for kept traces.
+     */
+    public synchronized void complete(String rootBlockId) {
+        long rootSequence = VFLIds.localSequence(rootBlockId);
+        DroppedTrace trace = rootSequence < 0 ? null : traces.remove(rootSequence);
+        if (trace != null) {
+            forget(trace);
+        }
+    }
+
+    /**
+     * Forgets dropped traces older than the maximum age, so a root that never completes is not remembered forever.
+     */
+    public synchronized void expire() {
+        if (traces.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        traces.forEachValue(trace -> {
+            if (now - trace.startedAtNanos > maxTraceAgeNanos) {
+                staleTraces.add(trace);
+            }
+        });
+        for (int i = 0; i < staleTraces.size(); i++) {
+            DroppedTrace trace = staleTraces.get(i);
+            traces.remove(trace.blockSequences[0]);
+            forget(trace);
+        }
+        staleTraces.clear();
+    }
+
+    /**
+     * @return number of dropped traces whose root block has not completed yet
+     */
+    public synchronized int getDroppedTraceCount() {
+        return traces.size();
+    }
+
+    private boolean keeps(long rootSequence) {
+        // Fibonacci hashing spreads consecutive and strided sequences evenly over the buckets
+        long hash = (rootSequence * 0x9E3779B97F4A7C15L) >>> 1;
+        return hash % sampleRate == 0;
+    }
+
+    private void forget(DroppedTrace trace) {
+        for (int i = 0; i < trace.blockCount; i++) {
+            blockTraces.remove(trace.blockSequences[i]);
+        }
+    }
+
+    private DroppedTrace traceOf(String blockId) {
+        long sequence = VFLIds.localSequence(blockId);
+        return sequence < 0 ? null : blockTraces.get(sequence);
+    }
+
+    private static final class DroppedTrace {
+        private final long startedAtNanos;
+        // Sequences of every block in the trace, the root first, removed from the index when the trace is forgotten
+        private long[] blockSequences = new long[8];
+        private int blockCount = 0;
+
+        DroppedTrace(long startedAtNanos) {
+            this.startedAtNanos = startedAtNanos;
+        }
+
+        void addBlockSequence(long sequence) {
+            if (blockCount == blockSequences.length) {
+                blockSequences = Arrays.copyOf(blockSequences, blockCount * 2);
+            }
+            blockSequences[blockCount++] = sequence;
+        }
+    }
+}
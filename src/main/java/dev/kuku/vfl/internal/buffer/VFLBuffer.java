@@ -3,6 +3,8 @@ package dev.kuku.vfl.internal.buffer;
 import dev.kuku.vfl.internal.models.Block;
 import dev.kuku.vfl.internal.models.BlockLog;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface VFLBuffer {
     void pushLog(BlockLog log);
 
@@ -15,5 +17,38 @@ public interface VFLBuffer {
 
     void pushBlockExited(String blockId, long time);
 
+    /**
+     * Flushes everything pushed so far and blocks until the flush handler has processed it or the buffer's flush
+     * timeout expires.
+     */
     void forceFlush();
+
+    /**
+     * Called when the root block of a trace completes.
+     * <p>
+     * The default implementation is {@link #forceFlush()}. Buffers that flush in the background should override it
+     * so that the thread finishing the trace does not wait for the flush.
+     *
+     * @param rootBlockId id of the root block that completed
+     */
+    default void flushTrace(String rootBlockId) {
+        forceFlush();
+    }
+
+    /**
+     * Flushes everything pushed so far without blocking the caller.
+     * <p>
+     * The default implementation falls back to {@link #forceFlush()} on the calling thread.
+     *
+     * @return future completed once the flush handler has processed every item pushed before this call. Completes
+     * exceptionally if the flush handler failed.
+     */
+    default CompletableFuture<Void> flushAsync() {
+        try {
+            forceFlush();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package dev.kuku.vfl.internal.buffer;
+
+import dev.kuku.vfl.internal.util.LazyId;
+
+/**
+ * Buffer that can build sub block events on its own background thread.
+ * <p>
+ * When the configured buffer implements this interface, instrumented methods only record a name, a
+ * {@link System#nanoTime()} reading and id handles. The buffer creates the {@link dev.kuku.vfl.internal.models.Block},
+ * the trace log and the timestamps later, in the same order as the events pushed through {@link VFLBuffer}.
+ */
+public interface VFLDeferredCapture extends VFLBuffer {
+
+    /**
+     * Records that a sub block was entered. Equivalent to pushing the block, its entered time and a
+     * {@code TRACE_PRIMARY} log in the parent block that references it.
+     *
+     * @param name          block name
+     * @param nanoTime      {@link System#nanoTime()} reading used as created, entered and log time
+     * @param blockId       reserved id of the new block
+     * @param parentBlockId id of the parent block
+     * @param startLogId    reserved id of the trace log in the parent block
+     * @param parentLogId   current log of the parent block, or null
+     */
+    void captureSubBlockEntered(String name, long nanoTime, LazyId blockId, LazyId parentBlockId, LazyId startLogId, LazyId parentLogId);
+
+    /**
+     * Records that a sub block exited and returned.
+     *
+     * @param blockId  id of the block
+     * @param nanoTime {@link System#nanoTime()} reading used as exited and returned time
+     */
+    void captureSubBlockExited(LazyId blockId, long nanoTime);
+}
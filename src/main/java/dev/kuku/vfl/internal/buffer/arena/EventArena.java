@@ -0,0 +1,73 @@
+package dev.kuku.vfl.internal.buffer.arena;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-allocated direct memory holding events as {@link EventRecords}, back to back in the order they were appended.
+ * <p>
+ * Arenas are filled, flushed and cleared for reuse. Buffered events live outside the Java heap, so they cost no GC
+ * work no matter how many are buffered.
+ * <p>
+ * Not thread-safe. The owning buffer guards the arena being filled, and a full arena belongs to the flushing thread
+ * until it is cleared.
+ */
+public final class EventArena {
+    private final ByteBuffer memory;
+    private int eventCount = 0;
+
+    public EventArena(int capacityBytes) {
+        this.memory = ByteBuffer.allocateDirect(capacityBytes);
+    }
+
+    /**
+     * @return false if the event does not fit in the remaining space
+     */
+    public boolean tryAppend(BlockEvent.Type type, Block block, BlockLog log, String blockId, long time) {
+        if (EventRecords.size(type, block, log, blockId) > memory.remaining()) {
+            return false;
+        }
+        EventRecords.write(memory, type, block, log, blockId, time);
+        eventCount++;
+        return true;
+    }
+
+    /**
+     * @return a read-only view of the records written so far, positioned at the first record
+     */
+    public ByteBuffer records() {
+        ByteBuffer view = memory.duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer();
+    }
+
+    public boolean isEmpty() {
+        return eventCount == 0;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public int getUsedBytes() {
+        return memory.position();
+    }
+
+    public int getCapacityBytes() {
+        return memory.capacity();
+    }
+
+    /**
+     * Forgets all records so the arena can be filled again. The memory itself is kept.
+     */
+    public void clear() {
+        memory.clear();
+        eventCount = 0;
+    }
+}
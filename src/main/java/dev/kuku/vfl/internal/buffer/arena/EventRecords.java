@@ -0,0 +1,181 @@
+package dev.kuku.vfl.internal.buffer.arena;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary layout of a single {@link BlockEvent}, written into and read from a {@link ByteBuffer}.
+ * <p>
+ * A record is the type ordinal as one byte followed by the fields of that type:
+ * <ul>
+ *     <li>Block created: id, parent block id, name, created at</li>
+ *     <li>Log: id, block id, message, parent log id, referenced block id, timestamp, log type</li>
+ *     <li>Entered, exited, returned: block id, time</li>
+ * </ul>
+ * Strings are an int byte length, -1 for null, followed by UTF-8 bytes. Longs are 8 bytes big-endian.
+ * Writing encodes strings directly into the buffer, so it allocates nothing.
+ */
+public final class EventRecords {
+
+    private EventRecords() {
+    }
+
+    /**
+     * @return number of bytes {@link #write} needs for the event
+     */
+    public static int size(BlockEvent.Type type, Block block, BlockLog log, String blockId) {
+        switch (type) {
+            case BLOCK_CREATED:
+                return 1 + size(block.getId()) + size(block.getParentBlockId()) + size(block.getName()) + 8;
+            case LOG:
+                return 1 + size(log.getId()) + size(log.getBlockId()) + size(log.getMessage())
+                       + size(log.getParentLogId()) + size(log.getReferencedBlockId()) + 8 + size(log.getLogType());
+            default:
+                return 1 + size(blockId) + 8;
+        }
+    }
+
+    private static int size(String value) {
+        return 4 + (value == null ? 0 : utf8Length(value));
+    }
+
+    /**
+     * @return number of bytes the string takes as UTF-8, with unpaired surrogates replaced by one byte
+     */
+    public static int utf8Length(String value) {
+        int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
+
+    /**
+     * Writes one event at the buffer's position. The caller must ensure {@link #size} bytes remain.
+     */
+    public static void write(ByteBuffer out, BlockEvent.Type type, Block block, BlockLog log, String blockId, long time) {
+        out.put((byte) type.ordinal());
+        switch (type) {
+            case BLOCK_CREATED:
+                writeString(out, block.getId());
+                writeString(out, block.getParentBlockId());
+                writeString(out, block.getName());
+                out.putLong(block.getCreatedAt());
+                break;
+            case LOG:
+                writeString(out, log.getId());
+                writeString(out, log.getBlockId());
+                writeString(out, log.getMessage());
+                writeString(out, log.getParentLogId());
+                writeString(out, log.getReferencedBlockId());
+                out.putLong(log.getTimestamp());
+                writeString(out, log.getLogType());
+                break;
+            default:
+                writeString(out, blockId);
+                out.putLong(time);
+        }
+    }
+
+    /**
+     * Reads one event at the buffer's position.
+     *
+     * @throws IllegalArgumentException if the type byte is unknown
+     */
+    public static BlockEvent read(ByteBuffer in) {
+        int ordinal = in.get();
+        BlockEvent.Type[] types = BlockEvent.Type.values();
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new IllegalArgumentException("Unknown event type " + ordinal);
+        }
+        switch (types[ordinal]) {
+            case BLOCK_CREATED:
+                Block block = new Block();
+                block.setId(readString(in));
+                block.setParentBlockId(readString(in));
+                block.setName(readString(in));
+                block.setCreatedAt(in.getLong());
+                return BlockEvent.blockCreated(block);
+            case LOG:
+                String id = readString(in);
+                String logBlockId = readString(in);
+                String message = readString(in);
+                String parentLogId = readString(in);
+                String referencedBlockId = readString(in);
+                long timestamp = in.getLong();
+                return BlockEvent.log(new BlockLog(id, logBlockId, message, parentLogId, referencedBlockId, timestamp, readString(in)));
+            case BLOCK_ENTERED:
+                return BlockEvent.blockEntered(readString(in), in.getLong());
+            case BLOCK_EXITED:
+                return BlockEvent.blockExited(readString(in), in.getLong());
+            default:
+                return BlockEvent.blockReturned(readString(in), in.getLong());
+        }
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        int lengthPosition = out.position();
+        out.putInt(0);
+        int start = out.position();
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced like String.getBytes does
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        out.putInt(lengthPosition, out.position() - start);
+    }
+
+    /**
+     * Reads one string field at the buffer's position, for handlers that walk the records themselves.
+     *
+     * @return the string, or null if the field holds none
+     */
+    public static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
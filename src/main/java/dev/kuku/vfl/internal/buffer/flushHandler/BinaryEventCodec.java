@@ -0,0 +1,491 @@
+package dev.kuku.vfl.internal.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.buffer.arena.EventRecords;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of an event batch, the body of a binary {@code /api/v1/batch} request.
+ * <p>
+ * A body starts with the magic bytes {@code VFLB}, a version byte and the event count, followed by the events in
+ * order. Each event is its type ordinal as one byte followed by the fields of that type, in the same order as
+ * {@code EventRecords}. Fields are written as:
+ * <ul>
+ *     <li>Ids: lowercase UUID strings as 16 raw bytes, other ids as UTF-8. Every id is added to a table on first
+ *     use and later occurrences refer to it by index, so a block id costs a byte or two after its creation</li>
+ *     <li>Block names and log messages: UTF-8 on first use, then an index into a string dictionary</li>
+ *     <li>Timestamps: zigzag varint delta to the previous timestamp of the batch</li>
+ *     <li>Log types: index into a fixed table of the built-in types, other names through the string dictionary</li>
+ * </ul>
+ * Counts, lengths and indexes are unsigned varints. The id table and dictionary are built per body, so every
+ * request decodes on its own regardless of delivery order or retries.
+ * <p>
+ * Thread Safety: This class is thread-safe, every call works on its own state.
+ */
+public final class BinaryEventCodec {
+    public static final byte VERSION = 1;
+    private static final byte[] MAGIC = {'V', 'F', 'L', 'B'};
+
+    // Fixed for version 1, new built-in types must be appended and the names never reordered
+    private static final String[] LOG_TYPES = {
+            "INFO", "WARN", "ERROR",
+            "TRACE_PRIMARY", "TRACE_PARALLEL_JOIN", "TRACE_PARALLEL", "TRACE_REMOTE", "PUBLISH_EVENT", "LISTEN_EVENT"
+    };
+    private static final Map<String, Integer> LOG_TYPE_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < LOG_TYPES.length; i++) {
+            LOG_TYPE_CODES.put(LOG_TYPES[i], i);
+        }
+    }
+
+    // Tags of id and string fields, table references start after them
+    private static final int NULL = 0;
+    private static final int LITERAL = 1;
+    private static final int UUID_LITERAL = 2;
+    private static final int FIRST_ID_REFERENCE = 3;
+    private static final int FIRST_STRING_REFERENCE = 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BinaryEventCodec() {
+    }
+
+    /**
+     * Appends the encoded batch to {@code out}.
+     */
+    public static void encode(List<BlockEvent> events, ByteArrayOutputStream out) {
+        Writer writer = new Writer(events.size() * 48 + 16);
+        writer.putBytes(MAGIC);
+        writer.put(VERSION);
+        writer.putVarint(events.size());
+        for (BlockEvent event : events) {
+            writer.put((byte) event.getType().ordinal());
+            switch (event.getType()) {
+                case BLOCK_CREATED:
+                    Block block = event.getBlock();
+                    writer.putId(block.getId());
+                    writer.putId(block.getParentBlockId());
+                    writer.putString(block.getName());
+                    writer.putTime(block.getCreatedAt());
+                    break;
+                case LOG:
+                    BlockLog log = event.getLog();
+                    writer.putId(log.getId());
+                    writer.putId(log.getBlockId());
+                    writer.putString(log.getMessage());
+                    writer.putId(log.getParentLogId());
+                    writer.putId(log.getReferencedBlockId());
+                    writer.putTime(log.getTimestamp());
+                    writer.putLogType(log.getLogType());
+                    break;
+                default:
+                    writer.putId(event.getBlockId());
+                    writer.putTime(event.getTime());
+            }
+        }
+        out.write(writer.bytes, 0, writer.position);
+    }
+
+    /**
+     * Appends the encoded batch to {@code out}, reading the events straight from {@link EventRecords} instead of
+     * decoding them into blocks, logs and events first. Produces the same body as {@link #encode} for those events.
+     *
+     * @param records buffer positioned at the first record, advanced past the last one
+     * @param count   number of records
+     * @throws IllegalArgumentException if a record has an unknown type
+     */
+    public static void encodeRecords(ByteBuffer records, int count, ByteArrayOutputStream out) {
+        Writer writer = new Writer(count * 48 + 16);
+        writer.putBytes(MAGIC);
+        writer.put(VERSION);
+        writer.putVarint(count);
+        BlockEvent.Type[] types = BlockEvent.Type.values();
+        for (int i = 0; i < count; i++) {
+            int ordinal = records.get();
+            if (ordinal < 0 || ordinal >= types.length) {
+                throw new IllegalArgumentException("Unknown event type " + ordinal);
+            }
+            writer.put((byte) ordinal);
+            switch (types[ordinal]) {
+                case BLOCK_CREATED:
+                    writer.putId(EventRecords.readString(records));
+                    writer.putId(EventRecords.readString(records));
+                    writer.putString(EventRecords.readString(records));
+                    writer.putTime(records.getLong());
+                    break;
+                case LOG:
+                    writer.putId(EventRecords.readString(records));
+                    writer.putId(EventRecords.readString(records));
+                    writer.putString(EventRecords.readString(records));
+                    writer.putId(EventRecords.readString(records));
+                    writer.putId(EventRecords.readString(records));
+                    writer.putTime(records.getLong());
+                    writer.putLogType(EventRecords.readString(records));
+                    break;
+                default:
+                    writer.putId(EventRecords.readString(records));
+                    writer.putTime(records.getLong());
+            }
+        }
+        out.write(writer.bytes, 0, writer.position);
+    }
+
+    /**
+     * Decodes a body written by {@link #encode}.
+     *
+     * @throws IllegalArgumentException if the body is malformed, truncated or of an unsupported version
+     */
+    public static List<BlockEvent> decode(byte[] body, int offset, int length) {
+        Reader reader = new Reader(body, offset, offset + length);
+        for (byte magic : MAGIC) {
+            if (reader.get() != magic) {
+                throw new IllegalArgumentException("Not a binary VFL batch");
+            }
+        }
+        int version = reader.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary batch version " + version);
+        }
+        int count = reader.getCount();
+        BlockEvent.Type[] types = BlockEvent.Type.values();
+        List<BlockEvent> events = new ArrayList<>(Math.min(count, length));
+        for (int i = 0; i < count; i++) {
+            int ordinal = reader.get();
+            if (ordinal < 0 || ordinal >= types.length) {
+                throw new IllegalArgumentException("Unknown event type " + ordinal);
+            }
+            switch (types[ordinal]) {
+                case BLOCK_CREATED:
+                    Block block = new Block();
+                    block.setId(reader.getId());
+                    block.setParentBlockId(reader.getId());
+                    block.setName(reader.getString());
+                    block.setCreatedAt(reader.getTime());
+                    events.add(BlockEvent.blockCreated(block));
+                    break;
+                case LOG:
+                    String id = reader.getId();
+                    String blockId = reader.getId();
+                    String message = reader.getString();
+                    String parentLogId = reader.getId();
+                    String referencedBlockId = reader.getId();
+                    long timestamp = reader.getTime();
+                    events.add(BlockEvent.log(new BlockLog(id, blockId, message, parentLogId, referencedBlockId,
+                            timestamp, reader.getLogType())));
+                    break;
+                case BLOCK_ENTERED:
+                    events.add(BlockEvent.blockEntered(reader.getId(), reader.getTime()));
+                    break;
+                case BLOCK_EXITED:
+                    events.add(BlockEvent.blockExited(reader.getId(), reader.getTime()));
+                    break;
+                default:
+                    events.add(BlockEvent.blockReturned(reader.getId(), reader.getTime()));
+            }
+        }
+        if (reader.position != reader.end) {
+            throw new IllegalArgumentException("Trailing bytes after " + count + " events");
+        }
+        return events;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Growable output array with the id table and string dictionary of one body.
+     */
+    private static final class Writer {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private byte[] bytes;
+        private int position;
+        private long lastTime;
+
+        Writer(int initialBytes) {
+            this.bytes = new byte[initialBytes];
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            bytes[position++] = b;
+        }
+
+        void putBytes(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, position, b.length);
+            position += b.length;
+        }
+
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        void putTime(long time) {
+            long delta = time - lastTime;
+            lastTime = time;
+            putVarint((delta << 1) ^ (delta >> 63));
+        }
+
+        void putId(String id) {
+            if (id == null) {
+                putVarint(NULL);
+                return;
+            }
+            Integer index = ids.get(id);
+            if (index != null) {
+                putVarint(FIRST_ID_REFERENCE + index);
+                return;
+            }
+            ids.put(id, ids.size());
+            if (!putUuid(id)) {
+                putVarint(LITERAL);
+                putUtf8(id);
+            }
+        }
+
+        /**
+         * Writes the tag and 16 bytes of a lowercase UUID string.
+         *
+         * @return false without writing anything if the id is not one
+         */
+        private boolean putUuid(String id) {
+            if (id.length() != 36 || id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-'
+                || id.charAt(23) != '-') {
+                return false;
+            }
+            ensure(17);
+            int start = position;
+            bytes[position++] = UUID_LITERAL;
+            int nibble = -1;
+            for (int i = 0; i < 36; i++) {
+                if (i == 8 || i == 13 || i == 18 || i == 23) {
+                    continue;
+                }
+                int digit = hexDigit(id.charAt(i));
+                if (digit < 0) {
+                    position = start;
+                    return false;
+                }
+                if (nibble < 0) {
+                    nibble = digit;
+                } else {
+                    bytes[position++] = (byte) ((nibble << 4) | digit);
+                    nibble = -1;
+                }
+            }
+            return true;
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putVarint(NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                putVarint(FIRST_STRING_REFERENCE + index);
+                return;
+            }
+            strings.put(value, strings.size());
+            putVarint(LITERAL);
+            putUtf8(value);
+        }
+
+        void putLogType(String logType) {
+            Integer code = logType == null ? null : LOG_TYPE_CODES.get(logType);
+            if (code != null) {
+                putVarint(code);
+                return;
+            }
+            putVarint(LOG_TYPES.length);
+            putString(logType);
+        }
+
+        private void putUtf8(String value) {
+            int length = value.length();
+            int utf8Length = EventRecords.utf8Length(value);
+            putVarint(utf8Length);
+            ensure(utf8Length);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[position++] = (byte) (0xC0 | (c >> 6));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogate, replaced like String.getBytes does
+                    bytes[position++] = (byte) '?';
+                } else {
+                    bytes[position++] = (byte) (0xE0 | (c >> 12));
+                    bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounds-checked reader mirroring {@link Writer}.
+     */
+    private static final class Reader {
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+        private long lastTime;
+
+        Reader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        private void require(int n) {
+            if (n < 0 || end - position < n) {
+                throw new IllegalArgumentException("Truncated binary batch");
+            }
+        }
+
+        byte get() {
+            require(1);
+            return bytes[position++];
+        }
+
+        long getVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        int getCount() {
+            long value = getVarint();
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Count out of range " + value);
+            }
+            return (int) value;
+        }
+
+        long getTime() {
+            long zigzag = getVarint();
+            lastTime += (zigzag >>> 1) ^ -(zigzag & 1);
+            return lastTime;
+        }
+
+        String getId() {
+            int tag = getCount();
+            String id;
+            switch (tag) {
+                case NULL:
+                    return null;
+                case LITERAL:
+                    id = getUtf8();
+                    break;
+                case UUID_LITERAL:
+                    id = getUuid();
+                    break;
+                default:
+                    return lookup(ids, tag - FIRST_ID_REFERENCE);
+            }
+            ids.add(id);
+            return id;
+        }
+
+        private String getUuid() {
+            require(16);
+            char[] chars = new char[36];
+            int c = 0;
+            for (int i = 0; i < 16; i++) {
+                if (i == 4 || i == 6 || i == 8 || i == 10) {
+                    chars[c++] = '-';
+                }
+                int b = bytes[position++] & 0xFF;
+                chars[c++] = HEX[b >>> 4];
+                chars[c++] = HEX[b & 0xF];
+            }
+            return new String(chars);
+        }
+
+        String getString() {
+            int tag = getCount();
+            if (tag == NULL) {
+                return null;
+            }
+            if (tag == LITERAL) {
+                String value = getUtf8();
+                strings.add(value);
+                return value;
+            }
+            return lookup(strings, tag - FIRST_STRING_REFERENCE);
+        }
+
+        String getLogType() {
+            int code = getCount();
+            if (code < LOG_TYPES.length) {
+                return LOG_TYPES[code];
+            }
+            if (code == LOG_TYPES.length) {
+                return getString();
+            }
+            throw new IllegalArgumentException("Unknown log type code " + code);
+        }
+
+        private String getUtf8() {
+            int length = getCount();
+            require(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private static String lookup(List<String> table, int index) {
+            if (index >= table.size()) {
+                throw new IllegalArgumentException("Reference to undefined entry " + index);
+            }
+            return table.get(index);
+        }
+    }
+}
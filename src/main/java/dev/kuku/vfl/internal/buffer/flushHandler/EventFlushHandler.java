@@ -0,0 +1,46 @@
+package dev.kuku.vfl.internal.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base for handlers that work on event batches only. Each per-type method wraps its items into events and passes
+ * them to {@link #flushEvents(List)}, so subclasses implement that one method.
+ * <p>
+ * The lists passed to {@link #flushEvents(List)} by the per-type methods are new, but the handler cannot tell them
+ * apart from a buffer's recycled list, so it must copy any list it keeps.
+ */
+public abstract class EventFlushHandler implements VFLFlushHandler {
+
+    @Override
+    public void flushLogs(List<BlockLog> logs) {
+        flushEvents(BlockEvent.logs(logs));
+    }
+
+    @Override
+    public void flushBlocks(List<Block> blocks) {
+        flushEvents(BlockEvent.blocksCreated(blocks));
+    }
+
+    @Override
+    public void flushBlockEntered(Map<String, Long> blockIds) {
+        flushEvents(BlockEvent.blocksEntered(blockIds));
+    }
+
+    @Override
+    public void flushBlockExited(Map<String, Long> blockIds) {
+        flushEvents(BlockEvent.blocksExited(blockIds));
+    }
+
+    @Override
+    public void flushBlockReturned(Map<String, Long> blockIds) {
+        flushEvents(BlockEvent.blocksReturned(blockIds));
+    }
+
+    @Override
+    public abstract void flushEvents(List<BlockEvent> events);
+}
@@ -0,0 +1,57 @@
+package dev.kuku.vfl.internal.buffer.flushHandler;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered event batch split into the five collections of the per-type flush methods.
+ * Re-entering a block keeps the time of its last event of each type, like the maps the buffers used to build.
+ */
+public final class EventSections {
+    public final List<Block> blocks = new ArrayList<>();
+    public final List<BlockLog> logs = new ArrayList<>();
+    public final Map<String, Long> blockEntered = new HashMap<>();
+    public final Map<String, Long> blockExited = new HashMap<>();
+    public final Map<String, Long> blockReturned = new HashMap<>();
+
+    public static EventSections of(List<BlockEvent> events) {
+        EventSections sections = new EventSections();
+        for (BlockEvent event : events) {
+            switch (event.getType()) {
+                case BLOCK_CREATED:
+                    sections.blocks.add(event.getBlock());
+                    break;
+                case LOG:
+                    sections.logs.add(event.getLog());
+                    break;
+                case BLOCK_ENTERED:
+                    sections.blockEntered.put(event.getBlockId(), event.getTime());
+                    break;
+                case BLOCK_EXITED:
+                    sections.blockExited.put(event.getBlockId(), event.getTime());
+                    break;
+                case BLOCK_RETURNED:
+                    sections.blockReturned.put(event.getBlockId(), event.getTime());
+                    break;
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Calls the per-type flush methods for every non-empty collection, blocks first.
+     */
+    public void flushUsing(VFLFlushHandler handler) {
+        if (!blocks.isEmpty()) handler.flushBlocks(blocks);
+        if (!logs.isEmpty()) handler.flushLogs(logs);
+        if (!blockEntered.isEmpty()) handler.flushBlockEntered(blockEntered);
+        if (!blockExited.isEmpty()) handler.flushBlockExited(blockExited);
+        if (!blockReturned.isEmpty()) handler.flushBlockReturned(blockReturned);
+    }
+}
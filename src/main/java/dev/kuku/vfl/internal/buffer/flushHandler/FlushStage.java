@@ -0,0 +1,195 @@
+package dev.kuku.vfl.internal.buffer.flushHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One stage of a flush pipeline: a bounded hand-off queue worked off by its own daemon threads.
+ * <p>
+ * {@link #submit} blocks while the queue is full, so a slow stage pushes back on the stage before it instead of
+ * letting work pile up. Errors thrown by the work are logged and the worker keeps running. Items still queued when
+ * the stage shuts down are handed to the discard callback, so their owner can account for them.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class FlushStage<T> {
+    private static final Logger log = LoggerFactory.getLogger(FlushStage.class);
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> work;
+    private final Consumer<T> discard;
+    private final Thread[] workers;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong processed = new AtomicLong(0);
+    private volatile boolean running = true;
+
+    /**
+     * Creates the stage and starts its worker threads.
+     *
+     * @param name          Stage name, used for thread names and logging
+     * @param threads       Number of worker threads
+     * @param queueCapacity Maximum number of items waiting for a worker
+     * @param work          Work done for each item
+     * @param discard       Called for each item that was queued but never worked on because the stage shut down
+     */
+    public FlushStage(String name, int threads, int queueCapacity, Consumer<T> work, Consumer<T> discard) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        }
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.work = work;
+        this.discard = discard;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::workLoop, "vfl-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    /**
+     * Hands an item to the stage, waiting while the queue is full.
+     *
+     * @throws InterruptedException if interrupted while waiting, the item is not queued
+     */
+    public void submit(T item) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Flush stage " + name + " is shut down");
+        }
+        queue.put(item);
+        discardIfShutDown();
+    }
+
+    /**
+     * Hands an item to the stage, waiting at most the timeout while the queue is full.
+     *
+     * @return false if the queue stayed full, the item is not queued
+     * @throws InterruptedException if interrupted while waiting, the item is not queued
+     */
+    public boolean offer(T item, long timeoutMs) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Flush stage " + name + " is shut down");
+        }
+        boolean queued = queue.offer(item, timeoutMs, TimeUnit.MILLISECONDS);
+        discardIfShutDown();
+        return queued;
+    }
+
+    /**
+     * Hands an item to the stage without waiting.
+     *
+     * @return false if the queue is full, the item is not queued
+     */
+    public boolean offer(T item) {
+        if (!running) {
+            throw new IllegalStateException("Flush stage " + name + " is shut down");
+        }
+        boolean queued = queue.offer(item);
+        discardIfShutDown();
+        return queued;
+    }
+
+    /**
+     * Takes the item that has waited longest out of the queue, so it is never worked on.
+     *
+     * @return the removed item, null if the queue is empty
+     */
+    public T removeOldest() {
+        return queue.poll();
+    }
+
+    private void workLoop() {
+        while (running) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown
+                continue;
+            }
+            active.incrementAndGet();
+            try {
+                work.accept(item);
+            } catch (Throwable t) {
+                log.error("Error in flush stage {}", name, t);
+                // Don't rethrow - the worker must keep running
+            } finally {
+                active.decrementAndGet();
+                processed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stops the workers and hands every item still queued to the discard callback. Items already being worked on are
+     * finished by their worker.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        discardQueued();
+    }
+
+    /**
+     * Covers a producer that passed the running check just before shutdown and queued its item after the queue had
+     * been drained.
+     */
+    private void discardIfShutDown() {
+        if (!running) {
+            discardQueued();
+        }
+    }
+
+    private void discardQueued() {
+        T item;
+        // poll() hands each item to exactly one caller, so concurrent drains never discard an item twice
+        while ((item = queue.poll()) != null) {
+            try {
+                discard.accept(item);
+            } catch (Throwable t) {
+                log.error("Error discarding item of flush stage {}", name, t);
+            }
+        }
+    }
+
+    /**
+     * @return number of items waiting for a worker
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of items being worked on
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return number of items finished since the stage started
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+}
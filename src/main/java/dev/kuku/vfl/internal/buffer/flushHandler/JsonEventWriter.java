@@ -0,0 +1,156 @@
+package dev.kuku.vfl.internal.buffer.flushHandler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written JSON serialization of the hub request bodies, streamed through a {@link JsonGenerator}.
+ * <p>
+ * Writes the same documents as {@code ObjectMapper} does for {@link Block}, {@link BlockLog}, the timestamp maps and
+ * the combined batch body, without bean introspection or reflective getter calls. Field names are pre-encoded once.
+ * Single events are written for the NDJSON segments of {@code FileFlushHandler}.
+ * <p>
+ * Thread Safety: This class is thread-safe, it has no mutable state.
+ */
+public final class JsonEventWriter {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString PARENT_BLOCK_ID = new SerializedString("parentBlockId");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString CREATED_AT = new SerializedString("createdAt");
+    private static final SerializableString BLOCK_ID = new SerializedString("blockId");
+    private static final SerializableString MESSAGE = new SerializedString("message");
+    private static final SerializableString PARENT_LOG_ID = new SerializedString("parentLogId");
+    private static final SerializableString REFERENCED_BLOCK_ID = new SerializedString("referencedBlockId");
+    private static final SerializableString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializableString LOG_TYPE = new SerializedString("logType");
+    private static final SerializableString BLOCKS = new SerializedString("blocks");
+    private static final SerializableString LOGS = new SerializedString("logs");
+    private static final SerializableString BLOCK_ENTERED = new SerializedString("blockEntered");
+    private static final SerializableString BLOCK_EXITED = new SerializedString("blockExited");
+    private static final SerializableString BLOCK_RETURNED = new SerializedString("blockReturned");
+    private static final SerializableString TYPE = new SerializedString("type");
+    private static final SerializableString BLOCK = new SerializedString("block");
+    private static final SerializableString LOG = new SerializedString("log");
+    private static final SerializableString TIME = new SerializedString("time");
+
+    private JsonEventWriter() {
+    }
+
+    public static void writeBlocks(JsonGenerator out, List<Block> blocks) throws IOException {
+        out.writeStartArray();
+        for (Block block : blocks) {
+            writeBlock(out, block);
+        }
+        out.writeEndArray();
+    }
+
+    public static void writeLogs(JsonGenerator out, List<BlockLog> logs) throws IOException {
+        out.writeStartArray();
+        for (BlockLog log : logs) {
+            writeLog(out, log);
+        }
+        out.writeEndArray();
+    }
+
+    private static void writeBlock(JsonGenerator out, Block block) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName(ID);
+        out.writeString(block.getId());
+        out.writeFieldName(PARENT_BLOCK_ID);
+        out.writeString(block.getParentBlockId());
+        out.writeFieldName(NAME);
+        out.writeString(block.getName());
+        out.writeFieldName(CREATED_AT);
+        out.writeNumber(block.getCreatedAt());
+        out.writeEndObject();
+    }
+
+    private static void writeLog(JsonGenerator out, BlockLog log) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName(ID);
+        out.writeString(log.getId());
+        out.writeFieldName(BLOCK_ID);
+        out.writeString(log.getBlockId());
+        out.writeFieldName(MESSAGE);
+        out.writeString(log.getMessage());
+        out.writeFieldName(PARENT_LOG_ID);
+        out.writeString(log.getParentLogId());
+        out.writeFieldName(REFERENCED_BLOCK_ID);
+        out.writeString(log.getReferencedBlockId());
+        out.writeFieldName(TIMESTAMP);
+        out.writeNumber(log.getTimestamp());
+        out.writeFieldName(LOG_TYPE);
+        out.writeString(log.getLogType());
+        out.writeEndObject();
+    }
+
+    /**
+     * Writes one event as a single-line object: {@code {"type":"LOG","log":{...}}},
+     * {@code {"type":"BLOCK_CREATED","block":{...}}} or {@code {"type":"BLOCK_ENTERED","blockId":"...","time":0}}
+     * for the timestamp events.
+     */
+    public static void writeEvent(JsonGenerator out, BlockEvent event) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName(TYPE);
+        out.writeString(event.getType().name());
+        switch (event.getType()) {
+            case BLOCK_CREATED:
+                out.writeFieldName(BLOCK);
+                writeBlock(out, event.getBlock());
+                break;
+            case LOG:
+                out.writeFieldName(LOG);
+                writeLog(out, event.getLog());
+                break;
+            default:
+                out.writeFieldName(BLOCK_ID);
+                out.writeString(event.getBlockId());
+                out.writeFieldName(TIME);
+                out.writeNumber(event.getTime());
+        }
+        out.writeEndObject();
+    }
+
+    /**
+     * Writes block id to time entries as a JSON object.
+     */
+    public static void writeTimes(JsonGenerator out, Map<String, Long> times) throws IOException {
+        out.writeStartObject();
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            out.writeFieldName(entry.getKey());
+            Long time = entry.getValue();
+            if (time == null) {
+                out.writeNull();
+            } else {
+                out.writeNumber(time);
+            }
+        }
+        out.writeEndObject();
+    }
+
+    /**
+     * Writes the body of a combined batch request.
+     */
+    public static void writeBatch(JsonGenerator out, EventSections sections) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName(BLOCKS);
+        writeBlocks(out, sections.blocks);
+        out.writeFieldName(LOGS);
+        writeLogs(out, sections.logs);
+        out.writeFieldName(BLOCK_ENTERED);
+        writeTimes(out, sections.blockEntered);
+        out.writeFieldName(BLOCK_EXITED);
+        writeTimes(out, sections.blockExited);
+        out.writeFieldName(BLOCK_RETURNED);
+        writeTimes(out, sections.blockReturned);
+        out.writeEndObject();
+    }
+}
@@ -1,11 +1,22 @@
 package dev.kuku.vfl.internal.buffer.flushHandler;
 
+import dev.kuku.vfl.internal.buffer.arena.EventRecords;
 import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
 import dev.kuku.vfl.internal.models.BlockLog;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Sends buffered data to its destination.
+ * <p>
+ * Buffers recycle the collections passed to these methods once the call returns. Implementations that need the data
+ * afterwards must copy it.
+ */
 public interface VFLFlushHandler {
     void flushLogs(List<BlockLog> logs);
 
@@ -17,4 +28,45 @@ public interface VFLFlushHandler {
 
     void flushBlockReturned(Map<String, Long> blockIds);
 
+    /**
+     * Flushes one batch of events in the order they were pushed. Buffers call this once per flush.
+     * <p>
+     * The default implementation splits the events by type and calls the individual flush methods, blocks first.
+     * Handlers that can send the whole batch at once should override it to keep the order and save the extra calls.
+     */
+    default void flushEvents(List<BlockEvent> events) {
+        EventSections.of(events).flushUsing(this);
+    }
+
+    /**
+     * Flushes one batch of events like {@link #flushEvents(List)}, for handlers that deliver in the background.
+     * <p>
+     * The handler is done reading the list when this returns, so the buffer may recycle it. The returned future
+     * completes once the events have been delivered, and buffers only count the flush as finished then.
+     * <p>
+     * The default implementation calls {@link #flushEvents(List)} and returns a completed future.
+     */
+    default CompletableFuture<Void> flushEventsAsync(List<BlockEvent> events) {
+        flushEvents(events);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Flushes one batch of events encoded as {@link EventRecords}, back to back in the order they were pushed.
+     * Used by buffers that keep events off the heap.
+     * <p>
+     * The default implementation decodes the records and calls {@link #flushEvents(List)}. Handlers that can send the
+     * encoded bytes as they are should override it and read straight from the buffer. The buffer is only valid for
+     * the duration of the call.
+     *
+     * @param records read-only buffer positioned at the first record
+     * @param count   number of records
+     */
+    default void flushRecords(ByteBuffer records, int count) {
+        List<BlockEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(EventRecords.read(records));
+        }
+        flushEvents(events);
+    }
 }
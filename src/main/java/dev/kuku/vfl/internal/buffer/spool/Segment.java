@@ -0,0 +1,178 @@
+package dev.kuku.vfl.internal.buffer.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-size, memory-mapped spool file.
+ * <p>
+ * Layout: an 8 byte header holding a magic number and the read position, followed by records written as a 4 byte
+ * length and the record bytes. A zero length marks the end of the written records. The record bytes and the
+ * terminator after them are written before the length, so a crash mid-append never exposes a partial record.
+ * <p>
+ * Not thread-safe. {@link SegmentSpool} guards all access.
+ */
+final class Segment {
+    static final int HEADER_SIZE = 8;
+    private static final int MAGIC = 0x56464C53; // "VFLS"
+    private static final int READ_POSITION_OFFSET = 4;
+
+    private final long sequence;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+    private int writePosition;
+    private int recordCount;
+
+    private Segment(long sequence, Path path, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates and maps a new zero-filled segment file.
+     */
+    static Segment create(Path path, long sequence, int size) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file, the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        Segment segment = new Segment(sequence, path, buffer);
+        buffer.putInt(0, MAGIC);
+        segment.readPosition = HEADER_SIZE;
+        segment.writePosition = HEADER_SIZE;
+        buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+        return segment;
+    }
+
+    /**
+     * Maps an existing segment file left behind by a previous run and finds its unacknowledged records.
+     *
+     * @throws IOException if the file is not a valid segment
+     */
+    static Segment open(Path path, long sequence) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment size " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a spool segment");
+        }
+        Segment segment = new Segment(sequence, path, buffer);
+        int readPosition = buffer.getInt(READ_POSITION_OFFSET);
+        if (readPosition < HEADER_SIZE || readPosition > buffer.capacity()) {
+            throw new IOException("Invalid read position " + readPosition);
+        }
+        segment.readPosition = readPosition;
+        int position = readPosition;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > buffer.capacity()) {
+                break;
+            }
+            position += 4 + length;
+            segment.recordCount++;
+        }
+        segment.writePosition = position;
+        return segment;
+    }
+
+    /**
+     * @return largest record a segment of the given size can hold
+     */
+    static int maxRecordSize(int segmentSize) {
+        return segmentSize - HEADER_SIZE - 4;
+    }
+
+    /**
+     * @return false if the record does not fit in the remaining space
+     */
+    boolean tryAppend(byte[] record) {
+        int end = writePosition + 4 + record.length;
+        if (end > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(writePosition + 4);
+        view.put(record);
+        // Terminate before publishing, the space after the record may hold bytes from before a truncate
+        if (end + 4 <= buffer.capacity()) {
+            buffer.putInt(end, 0);
+        }
+        buffer.putInt(writePosition, record.length);
+        writePosition = end;
+        recordCount++;
+        return true;
+    }
+
+    /**
+     * @return a copy of the oldest unacknowledged record, or null if there is none
+     */
+    byte[] peek() {
+        if (readPosition == writePosition) {
+            return null;
+        }
+        byte[] record = new byte[buffer.getInt(readPosition)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(readPosition + 4);
+        view.get(record);
+        return record;
+    }
+
+    /**
+     * Acknowledges the oldest record so it is not replayed again, also after a restart.
+     */
+    void ack() {
+        readPosition += 4 + buffer.getInt(readPosition);
+        recordCount--;
+        buffer.putInt(READ_POSITION_OFFSET, readPosition);
+    }
+
+    boolean isDrained() {
+        return readPosition == writePosition;
+    }
+
+    /**
+     * Truncates a drained segment so its space can be written again.
+     */
+    void truncate() {
+        buffer.putInt(HEADER_SIZE, 0);
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        recordCount = 0;
+        buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+    }
+
+    /**
+     * Deletes the segment file. The segment must not be used afterwards.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Writes modified pages back to the file.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+}
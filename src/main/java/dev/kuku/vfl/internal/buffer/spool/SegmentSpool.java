@@ -0,0 +1,198 @@
+package dev.kuku.vfl.internal.buffer.spool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * First in, first out queue of records stored in memory-mapped segment files.
+ * <p>
+ * Records are appended to the newest segment and read from the oldest one. A record stays in its segment until it is
+ * acknowledged, and the read position is stored in the segment itself, so a restart resumes with the first
+ * unacknowledged record. Drained segments are deleted, the last one is truncated and reused instead.
+ * <p>
+ * Thread Safety: This class is thread-safe. Record bytes are copied between the caller and the mapped files, the
+ * queued records never live on the heap.
+ */
+public final class SegmentSpool {
+    private static final Logger log = LoggerFactory.getLogger(SegmentSpool.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    // Segment the record returned by the last peek came from, null if that segment was dropped since
+    private Segment peekedSegment;
+    private long nextSequence = 0;
+    private int recordCount = 0;
+    private long droppedRecordCount = 0;
+
+    /**
+     * Opens the spool, recovering the segments left behind by a previous run.
+     *
+     * @param directory   Directory holding the segment files. Created if missing
+     * @param segmentSize Size of each segment file in bytes
+     * @param maxSegments Maximum number of segment files. The oldest segment is dropped to make room for a new one
+     */
+    public SegmentSpool(Path directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= Segment.HEADER_SIZE + 4 || maxSegments <= 0) {
+            throw new IllegalArgumentException("segmentSize must leave room for records and maxSegments must be positive");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file {} in spool directory", file);
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (long sequence : sequences) {
+            Path file = segmentPath(sequence);
+            try {
+                Segment segment = Segment.open(file, sequence);
+                segments.addLast(segment);
+                recordCount += segment.getRecordCount();
+            } catch (IOException e) {
+                log.error("Skipping unreadable spool segment {}: {}", file, e.getMessage());
+            }
+            nextSequence = sequence + 1;
+        }
+        if (recordCount > 0) {
+            log.info("Recovered {} spooled records from {} segments", recordCount, segments.size());
+        }
+    }
+
+    /**
+     * @return largest record this spool can store
+     */
+    public int getMaxRecordSize() {
+        return Segment.maxRecordSize(segmentSize);
+    }
+
+    /**
+     * Appends a record, rolling over to a new segment when the newest one is full.
+     *
+     * @throws IllegalArgumentException if the record is larger than {@link #getMaxRecordSize()}
+     */
+    public synchronized void append(byte[] record) throws IOException {
+        if (record.length > getMaxRecordSize()) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes exceeds the segment size");
+        }
+        Segment newest = segments.peekLast();
+        if (newest == null || !newest.tryAppend(record)) {
+            newest = rollOver();
+            newest.tryAppend(record);
+        }
+        recordCount++;
+    }
+
+    private Segment rollOver() throws IOException {
+        if (segments.size() >= maxSegments) {
+            Segment oldest = segments.pollFirst();
+            if (oldest == peekedSegment) {
+                peekedSegment = null;
+            }
+            recordCount -= oldest.getRecordCount();
+            droppedRecordCount += oldest.getRecordCount();
+            log.warn("Spool is full, dropped segment {} with {} records", oldest.getSequence(), oldest.getRecordCount());
+            oldest.delete();
+        }
+        long sequence = nextSequence++;
+        Segment segment = Segment.create(segmentPath(sequence), sequence, segmentSize);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * @return a copy of the oldest unacknowledged record, or null if the spool is empty
+     */
+    public synchronized byte[] peek() {
+        Segment oldest = segments.peekFirst();
+        peekedSegment = oldest;
+        return oldest == null ? null : oldest.peek();
+    }
+
+    /**
+     * Acknowledges the record returned by the last {@link #peek()} and truncates its segment once it is drained.
+     * Does nothing if that record was dropped in the meantime.
+     */
+    public synchronized void ack() throws IOException {
+        Segment oldest = segments.peekFirst();
+        if (oldest == null || oldest != peekedSegment || oldest.isDrained()) {
+            return;
+        }
+        oldest.ack();
+        recordCount--;
+        if (oldest.isDrained()) {
+            if (segments.size() > 1) {
+                segments.pollFirst();
+                oldest.delete();
+                peekedSegment = null;
+            } else {
+                oldest.truncate();
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * Writes every segment back to disk. Only needed to survive an operating system crash, the mapped pages survive
+     * a crash of the process on their own.
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * @return number of records waiting in the spool
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return number of segment files currently in use
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return number of records discarded because the spool was full
+     */
+    public synchronized long getDroppedRecordCount() {
+        return droppedRecordCount;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,230 @@
+package dev.kuku.vfl.internal.buffer.spool;
+
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the argument of a single flush handler call into a spool record and decodes it back.
+ * <p>
+ * A record starts with a type byte followed by an item count and the items. Strings are written as a length
+ * prefixed UTF-8 byte sequence, with a length of -1 for null.
+ */
+public final class SpoolCodec {
+    public static final byte TYPE_BLOCKS = 1;
+    public static final byte TYPE_LOGS = 2;
+    public static final byte TYPE_ENTERED = 3;
+    public static final byte TYPE_EXITED = 4;
+    public static final byte TYPE_RETURNED = 5;
+    public static final byte TYPE_EVENTS = 6;
+
+    private SpoolCodec() {
+    }
+
+    public static byte[] encodeBlocks(List<Block> blocks) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * blocks.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_BLOCKS);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                writeBlock(out, block);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] encodeLogs(List<BlockLog> logs) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * logs.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_LOGS);
+            out.writeInt(logs.size());
+            for (BlockLog log : logs) {
+                writeLog(out, log);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a batch of mixed events, each prefixed with its {@link BlockEvent.Type} ordinal, keeping their order.
+     */
+    public static byte[] encodeEvents(List<BlockEvent> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96 * events.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_EVENTS);
+            out.writeInt(events.size());
+            for (BlockEvent event : events) {
+                out.writeByte(event.getType().ordinal());
+                switch (event.getType()) {
+                    case BLOCK_CREATED:
+                        writeBlock(out, event.getBlock());
+                        break;
+                    case LOG:
+                        writeLog(out, event.getLog());
+                        break;
+                    default:
+                        writeString(out, event.getBlockId());
+                        out.writeLong(event.getTime());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param type one of {@link #TYPE_ENTERED}, {@link #TYPE_EXITED} or {@link #TYPE_RETURNED}
+     */
+    public static byte[] encodeTimestamps(byte type, List<Map.Entry<String, Long>> timestamps) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48 * timestamps.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeInt(timestamps.size());
+            for (Map.Entry<String, Long> entry : timestamps) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a record into a batch holding the items of the original flush handler call.
+     *
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public static FlushBatch decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            byte type = in.readByte();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative item count " + count);
+            }
+            FlushBatch batch = new FlushBatch(Math.min(count, record.length));
+            for (int i = 0; i < count; i++) {
+                switch (type) {
+                    case TYPE_BLOCKS:
+                        batch.addBlock(readBlock(in));
+                        break;
+                    case TYPE_LOGS:
+                        batch.addLog(readLog(in));
+                        break;
+                    case TYPE_ENTERED:
+                        batch.addBlockEntered(readString(in), in.readLong());
+                        break;
+                    case TYPE_EXITED:
+                        batch.addBlockExited(readString(in), in.readLong());
+                        break;
+                    case TYPE_RETURNED:
+                        batch.addBlockReturned(readString(in), in.readLong());
+                        break;
+                    case TYPE_EVENTS:
+                        batch.addEvent(readEvent(in));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown record type " + type);
+                }
+            }
+            return batch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated spool record", e);
+        }
+    }
+
+    private static BlockEvent readEvent(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        BlockEvent.Type[] types = BlockEvent.Type.values();
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new IllegalArgumentException("Unknown event type " + ordinal);
+        }
+        switch (types[ordinal]) {
+            case BLOCK_CREATED:
+                return BlockEvent.blockCreated(readBlock(in));
+            case LOG:
+                return BlockEvent.log(readLog(in));
+            case BLOCK_ENTERED:
+                return BlockEvent.blockEntered(readString(in), in.readLong());
+            case BLOCK_EXITED:
+                return BlockEvent.blockExited(readString(in), in.readLong());
+            default:
+                return BlockEvent.blockReturned(readString(in), in.readLong());
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, Block block) throws IOException {
+        writeString(out, block.getId());
+        writeString(out, block.getParentBlockId());
+        writeString(out, block.getName());
+        out.writeLong(block.getCreatedAt());
+    }
+
+    private static Block readBlock(DataInputStream in) throws IOException {
+        Block block = new Block();
+        block.setId(readString(in));
+        block.setParentBlockId(readString(in));
+        block.setName(readString(in));
+        block.setCreatedAt(in.readLong());
+        return block;
+    }
+
+    private static void writeLog(DataOutputStream out, BlockLog log) throws IOException {
+        writeString(out, log.getId());
+        writeString(out, log.getBlockId());
+        writeString(out, log.getMessage());
+        writeString(out, log.getParentLogId());
+        writeString(out, log.getReferencedBlockId());
+        out.writeLong(log.getTimestamp());
+        writeString(out, log.getLogType());
+    }
+
+    private static BlockLog readLog(DataInputStream in) throws IOException {
+        String id = readString(in);
+        String blockId = readString(in);
+        String message = readString(in);
+        String parentLogId = readString(in);
+        String referencedBlockId = readString(in);
+        long timestamp = in.readLong();
+        return new BlockLog(id, blockId, message, parentLogId, referencedBlockId, timestamp, readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("String length " + length + " exceeds the record");
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -1,39 +1,119 @@
 package dev.kuku.vfl.internal.dto;
 
 import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.util.LazyId;
+import dev.kuku.vfl.internal.util.VFLClock;
 
 public class BlockContext {
-    private final Block block;
+    private Block block;
+    private LazyId blockId;
+    // Only set for deferred contexts, used to build the block on first access
+    private final String name;
+    private final long createdNanos;
+    private final BlockContext parent;
+    // At most one of these is set
     private String currentLogId = null;
+    private LazyId deferredLogId = null;
 
     public void setCurrentLogId(String currentLogId) {
         this.currentLogId = currentLogId;
+        this.deferredLogId = null;
+    }
+
+    /**
+     * Sets the current log to an id that may not be rendered yet.
+     */
+    public void setCurrentLogId(LazyId currentLogId) {
+        this.deferredLogId = currentLogId;
+        this.currentLogId = null;
     }
 
     public String getCurrentLogId() {
+        if (deferredLogId != null) {
+            return deferredLogId.get();
+        }
         return currentLogId;
     }
 
+    /**
+     * @return the current log id without rendering it, or null if there is no current log
+     */
+    public LazyId getCurrentLogHandle() {
+        if (deferredLogId != null) {
+            return deferredLogId;
+        }
+        return currentLogId == null ? null : LazyId.of(currentLogId);
+    }
 
+    /**
+     * Returns the block of this context. Deferred contexts build it on first access.
+     */
     public Block getBlock() {
+        if (block == null) {
+            Block built = new Block();
+            built.setId(blockId.get());
+            built.setName(name);
+            built.setParentBlockId(parent == null ? null : parent.getBlockId());
+            built.setCreatedAt(VFLClock.toEpochMillis(createdNanos));
+            block = built;
+        }
         return block;
     }
 
+    /**
+     * Returns the id of this context's block without building the block.
+     */
+    public String getBlockId() {
+        return getBlockHandle().get();
+    }
+
+    /**
+     * @return the block id without rendering it
+     */
+    public LazyId getBlockHandle() {
+        if (blockId == null) {
+            blockId = LazyId.of(block.getId());
+        }
+        return blockId;
+    }
 
     public BlockContext(Block block) {
         this.block = block;
+        this.name = null;
+        this.createdNanos = 0;
+        this.parent = null;
+    }
+
+    /**
+     * Creates the context of a block that was captured but not built yet.
+     *
+     * @param name         block name
+     * @param blockId      reserved id of the block
+     * @param createdNanos {@link System#nanoTime()} reading of the block's creation
+     * @param parent       context of the parent block
+     */
+    public BlockContext(String name, LazyId blockId, long createdNanos, BlockContext parent) {
+        this.blockId = blockId;
+        this.name = name;
+        this.createdNanos = createdNanos;
+        this.parent = parent;
     }
 
     public BlockContext(BlockContext existingContext) {
         this.block = existingContext.block;
+        this.blockId = existingContext.blockId;
+        this.name = existingContext.name;
+        this.createdNanos = existingContext.createdNanos;
+        this.parent = existingContext.parent;
         this.currentLogId = existingContext.currentLogId;
+        this.deferredLogId = existingContext.deferredLogId;
     }
 
     @Override
     public String toString() {
         return "BlockContext{" +
-               "block=" + block +
-               ", currentLogId='" + currentLogId + '\'' +
+               "block=" + getBlock() +
+               ", currentLogId='" + getCurrentLogId() + '\'' +
                '}';
     }
 }
@@ -0,0 +1,248 @@
+package dev.kuku.vfl.internal.metrics;
+
+import dev.kuku.vfl.api.metrics.BufferMetricsMXBean;
+import dev.kuku.vfl.api.metrics.BufferMetricsSnapshot;
+import dev.kuku.vfl.api.metrics.HistogramSnapshot;
+import dev.kuku.vfl.internal.models.BlockEvent;
+
+import javax.management.ObjectName;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics recorded by a buffer, readable as a {@link #snapshot()} or through JMX after {@link #registerMBean}.
+ * <p>
+ * Push counters and the push wait histogram are recorded on the caller's thread, so they use striped adders and
+ * never take a lock. Every push is counted, but only one in {@link #getPushWaitSampleRate()} pushes is timed, which
+ * keeps the two clock reads and the histogram update off most pushes. Queue depths are read from the buffer when a
+ * snapshot or attribute is requested.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class BufferMetrics implements BufferMetricsMXBean {
+    private static final BlockEvent.Type[] TYPES = BlockEvent.Type.values();
+    public static final int DEFAULT_PUSH_WAIT_SAMPLE_RATE = 64;
+    // Returned for pushes that are not timed
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final LongAdder[] pushed = new LongAdder[TYPES.length];
+    private final Histogram pushWaitNanos = new Histogram();
+    private final Histogram flushLatencyNanos = new Histogram();
+    private final Histogram batchSizes = new Histogram();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final IntSupplier queueDepth;
+    private final IntSupplier pendingFlushCount;
+    private volatile int pushWaitSampleRate = DEFAULT_PUSH_WAIT_SAMPLE_RATE;
+    private volatile ObjectName objectName;
+
+    /**
+     * @param queueDepth        Reads the number of events buffered and not yet handed to the flush handler
+     * @param pendingFlushCount Reads the number of batches handed off but not yet finished by the flush handler
+     */
+    public BufferMetrics(IntSupplier queueDepth, IntSupplier pendingFlushCount) {
+        for (int i = 0; i < pushed.length; i++) {
+            pushed[i] = new LongAdder();
+        }
+        this.queueDepth = queueDepth;
+        this.pendingFlushCount = pendingFlushCount;
+    }
+
+    // Recording
+
+    public void recordPush(BlockEvent.Type type) {
+        pushed[type.ordinal()].increment();
+    }
+
+    /**
+     * Starts timing how long a push waits for the buffer's lock, if this push is sampled.
+     *
+     * @return start time to pass to {@link #endPushWait(long)}
+     */
+    public long startPushWait() {
+        int rate = pushWaitSampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * @return nanoseconds since {@code start}, to pass to {@link #recordPushWait(long)}
+     */
+    public long endPushWait(long start) {
+        return start == NOT_TIMED ? NOT_TIMED : System.nanoTime() - start;
+    }
+
+    /**
+     * Records a push wait, ignoring pushes that {@link #startPushWait()} did not sample.
+     */
+    public void recordPushWait(long nanos) {
+        if (nanos != NOT_TIMED) {
+            pushWaitNanos.record(nanos);
+        }
+    }
+
+    public void recordFlush(int batchSize, long latencyNanos, boolean success) {
+        batchSizes.record(batchSize);
+        flushLatencyNanos.record(latencyNanos);
+        if (!success) {
+            failedFlushes.increment();
+        }
+    }
+
+    /**
+     * @return total number of dropped events including these
+     */
+    public long recordDropped(long events) {
+        return dropped.addAndGet(events);
+    }
+
+    // Configuration
+
+    /**
+     * Sets how many pushes share one push wait measurement, 1 times every push.
+     *
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    public void setPushWaitSampleRate(int pushWaitSampleRate) {
+        if (pushWaitSampleRate <= 0) {
+            throw new IllegalArgumentException("pushWaitSampleRate must be positive");
+        }
+        this.pushWaitSampleRate = pushWaitSampleRate;
+    }
+
+    public int getPushWaitSampleRate() {
+        return pushWaitSampleRate;
+    }
+
+    // Reading
+
+    public BufferMetricsSnapshot snapshot() {
+        Map<BlockEvent.Type, Long> counts = new EnumMap<>(BlockEvent.Type.class);
+        for (BlockEvent.Type type : TYPES) {
+            counts.put(type, pushed[type.ordinal()].sum());
+        }
+        return new BufferMetricsSnapshot(counts, pushWaitNanos.snapshot(), flushLatencyNanos.snapshot(),
+                batchSizes.snapshot(), failedFlushes.sum(), dropped.get(), queueDepth.getAsInt(),
+                pendingFlushCount.getAsInt());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as {@code dev.kuku.vfl:type=Buffer,name=<name>},
+     * replacing a buffer registered under the same name.
+     *
+     * @return the registered object name
+     */
+    public ObjectName registerMBean(String name) {
+        ObjectName registered = MBeans.register("Buffer", name, this);
+        objectName = registered;
+        return registered;
+    }
+
+    /**
+     * Removes the bean registered by {@link #registerMBean}, if any.
+     */
+    public void unregisterMBean() {
+        ObjectName registered = objectName;
+        if (registered != null) {
+            MBeans.unregister(registered);
+            objectName = null;
+        }
+    }
+
+    // BufferMetricsMXBean
+
+    @Override
+    public Map<String, Long> getPushedEvents() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (BlockEvent.Type type : TYPES) {
+            counts.put(type.name(), pushed[type.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getPushedEventCount() {
+        long total = 0;
+        for (LongAdder adder : pushed) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getPushWaitP99Nanos() {
+        return pushWaitNanos.snapshot().getPercentile(99);
+    }
+
+    @Override
+    public long getPushWaitMaxNanos() {
+        return pushWaitNanos.snapshot().getMax();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushLatencyNanos.snapshot().getCount();
+    }
+
+    @Override
+    public long getFailedFlushCount() {
+        return failedFlushes.sum();
+    }
+
+    @Override
+    public long getFlushedEventCount() {
+        return batchSizes.snapshot().getSum();
+    }
+
+    @Override
+    public long getFlushLatencyP50Micros() {
+        return toMicros(flushLatencyNanos.snapshot().getPercentile(50));
+    }
+
+    @Override
+    public long getFlushLatencyP99Micros() {
+        return toMicros(flushLatencyNanos.snapshot().getPercentile(99));
+    }
+
+    @Override
+    public long getFlushLatencyMaxMicros() {
+        return toMicros(flushLatencyNanos.snapshot().getMax());
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return batchSizes.snapshot().getMean();
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return batchSizes.snapshot().getMax();
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public int getPendingFlushCount() {
+        return pendingFlushCount.getAsInt();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,51 @@
+package dev.kuku.vfl.internal.metrics;
+
+import dev.kuku.vfl.api.metrics.HistogramSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power-of-two buckets, see {@link HistogramSnapshot} for the bucket layout.
+ * <p>
+ * Buckets are {@link LongAdder}s so threads recording on the hot path do not contend on one counter. The maximum is
+ * only written when it grows, which quickly becomes rare.
+ * <p>
+ * Thread Safety: This class is thread-safe. A snapshot taken while values are recorded may be off by those values.
+ */
+public final class Histogram {
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value Value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[Math.min(BUCKET_COUNT - Long.numberOfLeadingZeros(v), BUCKET_COUNT - 1)].increment();
+        count.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new HistogramSnapshot(count.sum(), sum.sum(), max.get(), counts);
+    }
+}
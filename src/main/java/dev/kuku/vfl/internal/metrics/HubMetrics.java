@@ -0,0 +1,151 @@
+package dev.kuku.vfl.internal.metrics;
+
+import dev.kuku.vfl.api.metrics.HubMetricsMXBean;
+import dev.kuku.vfl.api.metrics.HubMetricsSnapshot;
+
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics recorded by a hub flush handler, readable as a {@link #snapshot()} or through JMX after
+ * {@link #registerMBean}.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class HubMetrics implements HubMetricsMXBean {
+    private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final Histogram requestLatencyNanos = new Histogram();
+    private final Histogram payloadBytes = new Histogram();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder encodeFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private volatile ObjectName objectName;
+
+    // Recording
+
+    public void recordResponse(int statusCode, int bodyBytes, long latencyNanos) {
+        statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        payloadBytes.record(bodyBytes);
+        requestLatencyNanos.record(latencyNanos);
+    }
+
+    /**
+     * Records a request that got no response.
+     */
+    public void recordFailedRequest(int bodyBytes, long latencyNanos) {
+        failedRequests.increment();
+        payloadBytes.record(bodyBytes);
+        requestLatencyNanos.record(latencyNanos);
+    }
+
+    public void recordEncodeFailure() {
+        encodeFailures.increment();
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    // Reading
+
+    public HubMetricsSnapshot snapshot() {
+        return new HubMetricsSnapshot(getStatusCodes(), requestLatencyNanos.snapshot(), payloadBytes.snapshot(),
+                failedRequests.sum(), encodeFailures.sum(), retries.sum());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as {@code dev.kuku.vfl:type=Hub,name=<name>},
+     * replacing a handler registered under the same name.
+     *
+     * @return the registered object name
+     */
+    public ObjectName registerMBean(String name) {
+        ObjectName registered = MBeans.register("Hub", name, this);
+        objectName = registered;
+        return registered;
+    }
+
+    /**
+     * Removes the bean registered by {@link #registerMBean}, if any.
+     */
+    public void unregisterMBean() {
+        ObjectName registered = objectName;
+        if (registered != null) {
+            MBeans.unregister(registered);
+            objectName = null;
+        }
+    }
+
+    // HubMetricsMXBean
+
+    @Override
+    public Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCodes.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getErrorResponseCount() {
+        long total = 0;
+        for (Map.Entry<Integer, LongAdder> entry : statusCodes.entrySet()) {
+            if (entry.getKey() >= 400) {
+                total += entry.getValue().sum();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requestLatencyNanos.snapshot().getCount();
+    }
+
+    @Override
+    public long getFailedRequestCount() {
+        return failedRequests.sum();
+    }
+
+    @Override
+    public long getEncodeFailureCount() {
+        return encodeFailures.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRequestLatencyP50Micros() {
+        return toMicros(requestLatencyNanos.snapshot().getPercentile(50));
+    }
+
+    @Override
+    public long getRequestLatencyP99Micros() {
+        return toMicros(requestLatencyNanos.snapshot().getPercentile(99));
+    }
+
+    @Override
+    public long getRequestLatencyMaxMicros() {
+        return toMicros(requestLatencyNanos.snapshot().getMax());
+    }
+
+    @Override
+    public long getPayloadBytesTotal() {
+        return payloadBytes.snapshot().getSum();
+    }
+
+    @Override
+    public long getPayloadBytesMax() {
+        return payloadBytes.snapshot().getMax();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,46 @@
+package dev.kuku.vfl.internal.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers metrics beans with the platform MBean server under the {@code dev.kuku.vfl} domain.
+ */
+final class MBeans {
+    private static final String DOMAIN = "dev.kuku.vfl";
+
+    private MBeans() {
+    }
+
+    /**
+     * Registers the bean, replacing a bean already registered under the same name.
+     *
+     * @throws IllegalArgumentException if the name is not a valid object name or registration fails
+     */
+    static ObjectName register(String type, String name, Object bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Failed to register " + type + " metrics as " + name, e);
+        }
+    }
+
+    static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister " + objectName, e);
+        }
+    }
+}
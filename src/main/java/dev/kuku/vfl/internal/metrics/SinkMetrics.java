@@ -0,0 +1,140 @@
+package dev.kuku.vfl.internal.metrics;
+
+import dev.kuku.vfl.api.metrics.SinkMetricsMXBean;
+import dev.kuku.vfl.api.metrics.SinkMetricsSnapshot;
+
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics recorded for one sink of a fan-out flush handler, readable as a {@link #snapshot()} or through JMX after
+ * {@link #registerMBean}.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class SinkMetrics implements SinkMetricsMXBean {
+    private final String name;
+    private final Histogram deliveryLatencyNanos = new Histogram();
+    private final Histogram queueWaitNanos = new Histogram();
+    private final LongAdder deliveredEvents = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder droppedBatches = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final IntSupplier queueDepth;
+    private volatile ObjectName objectName;
+
+    /**
+     * @param name       Name of the sink
+     * @param queueDepth Reads the number of batches waiting in the sink's queue
+     */
+    public SinkMetrics(String name, IntSupplier queueDepth) {
+        this.name = name;
+        this.queueDepth = queueDepth;
+    }
+
+    // Recording
+
+    public void recordDelivery(int eventCount, long queueWaitNanos, long latencyNanos, boolean success) {
+        this.queueWaitNanos.record(queueWaitNanos);
+        deliveryLatencyNanos.record(latencyNanos);
+        if (success) {
+            deliveredEvents.add(eventCount);
+        } else {
+            failedBatches.increment();
+        }
+    }
+
+    public void recordDropped(int eventCount) {
+        droppedBatches.increment();
+        droppedEvents.add(eventCount);
+    }
+
+    // Reading
+
+    public SinkMetricsSnapshot snapshot() {
+        return new SinkMetricsSnapshot(name, deliveryLatencyNanos.snapshot(), queueWaitNanos.snapshot(),
+                deliveredEvents.sum(), failedBatches.sum(), droppedBatches.sum(), droppedEvents.sum(),
+                queueDepth.getAsInt());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as {@code dev.kuku.vfl:type=Sink,name=<name>},
+     * replacing a sink registered under the same name.
+     *
+     * @return the registered object name
+     */
+    public ObjectName registerMBean(String name) {
+        ObjectName registered = MBeans.register("Sink", name, this);
+        objectName = registered;
+        return registered;
+    }
+
+    /**
+     * Removes the bean registered by {@link #registerMBean}, if any.
+     */
+    public void unregisterMBean() {
+        ObjectName registered = objectName;
+        if (registered != null) {
+            MBeans.unregister(registered);
+            objectName = null;
+        }
+    }
+
+    // SinkMetricsMXBean
+
+    @Override
+    public long getDeliveredBatchCount() {
+        return deliveryLatencyNanos.snapshot().getCount() - failedBatches.sum();
+    }
+
+    @Override
+    public long getDeliveredEventCount() {
+        return deliveredEvents.sum();
+    }
+
+    @Override
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    @Override
+    public long getDroppedBatchCount() {
+        return droppedBatches.sum();
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    @Override
+    public long getDeliveryLatencyP50Micros() {
+        return toMicros(deliveryLatencyNanos.snapshot().getPercentile(50));
+    }
+
+    @Override
+    public long getDeliveryLatencyP99Micros() {
+        return toMicros(deliveryLatencyNanos.snapshot().getPercentile(99));
+    }
+
+    @Override
+    public long getDeliveryLatencyMaxMicros() {
+        return toMicros(deliveryLatencyNanos.snapshot().getMax());
+    }
+
+    @Override
+    public long getQueueWaitP99Micros() {
+        return toMicros(queueWaitNanos.snapshot().getPercentile(99));
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -1,7 +1,7 @@
 package dev.kuku.vfl.internal.models;
 
 
-import io.github.robsonkades.uuidv7.UUIDv7;
+import dev.kuku.vfl.internal.util.VFLIds;
 
 import java.time.Instant;
 
@@ -12,7 +12,7 @@ public class Block {
     private long createdAt;
 
     public Block(String name, String parentBlockId) {
-        this.id = UUIDv7.randomUUID().toString();
+        this.id = VFLIds.next();
         this.parentBlockId = parentBlockId;
         this.name = name;
         this.createdAt = Instant.now().toEpochMilli();
@@ -0,0 +1,144 @@
+package dev.kuku.vfl.internal.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single buffered event. Buffers keep events in one sequence in the order they were pushed, so the flush handler
+ * sees block creation, logs and timestamps in causal order.
+ */
+public final class BlockEvent {
+
+    public enum Type {
+        BLOCK_CREATED,
+        LOG,
+        BLOCK_ENTERED,
+        BLOCK_EXITED,
+        BLOCK_RETURNED
+    }
+
+    private final Type type;
+    private final Block block;
+    private final BlockLog log;
+    private final String blockId;
+    private final long time;
+
+    private BlockEvent(Type type, Block block, BlockLog log, String blockId, long time) {
+        this.type = type;
+        this.block = block;
+        this.log = log;
+        this.blockId = blockId;
+        this.time = time;
+    }
+
+    public static BlockEvent blockCreated(Block block) {
+        return new BlockEvent(Type.BLOCK_CREATED, block, null, block.getId(), block.getCreatedAt());
+    }
+
+    public static BlockEvent log(BlockLog log) {
+        return new BlockEvent(Type.LOG, null, log, log.getBlockId(), log.getTimestamp());
+    }
+
+    public static BlockEvent blockEntered(String blockId, long time) {
+        return new BlockEvent(Type.BLOCK_ENTERED, null, null, blockId, time);
+    }
+
+    public static BlockEvent blockExited(String blockId, long time) {
+        return new BlockEvent(Type.BLOCK_EXITED, null, null, blockId, time);
+    }
+
+    public static BlockEvent blockReturned(String blockId, long time) {
+        return new BlockEvent(Type.BLOCK_RETURNED, null, null, blockId, time);
+    }
+
+    /**
+     * @return a new list with one {@link Type#LOG} event per log, in list order
+     */
+    public static List<BlockEvent> logs(List<BlockLog> logs) {
+        List<BlockEvent> events = new ArrayList<>(logs.size());
+        for (BlockLog blockLog : logs) {
+            events.add(log(blockLog));
+        }
+        return events;
+    }
+
+    /**
+     * @return a new list with one {@link Type#BLOCK_CREATED} event per block, in list order
+     */
+    public static List<BlockEvent> blocksCreated(List<Block> blocks) {
+        List<BlockEvent> events = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            events.add(blockCreated(block));
+        }
+        return events;
+    }
+
+    /**
+     * @return a new list with one {@link Type#BLOCK_ENTERED} event per block id and time, in map order
+     */
+    public static List<BlockEvent> blocksEntered(Map<String, Long> blockIds) {
+        List<BlockEvent> events = new ArrayList<>(blockIds.size());
+        blockIds.forEach((blockId, time) -> events.add(blockEntered(blockId, time)));
+        return events;
+    }
+
+    /**
+     * @return a new list with one {@link Type#BLOCK_EXITED} event per block id and time, in map order
+     */
+    public static List<BlockEvent> blocksExited(Map<String, Long> blockIds) {
+        List<BlockEvent> events = new ArrayList<>(blockIds.size());
+        blockIds.forEach((blockId, time) -> events.add(blockExited(blockId, time)));
+        return events;
+    }
+
+    /**
+     * @return a new list with one {@link Type#BLOCK_RETURNED} event per block id and time, in map order
+     */
+    public static List<BlockEvent> blocksReturned(Map<String, Long> blockIds) {
+        List<BlockEvent> events = new ArrayList<>(blockIds.size());
+        blockIds.forEach((blockId, time) -> events.add(blockReturned(blockId, time)));
+        return events;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the created block, null unless the type is {@link Type#BLOCK_CREATED}
+     */
+    public Block getBlock() {
+        return block;
+    }
+
+    /**
+     * @return the log, null unless the type is {@link Type#LOG}
+     */
+    public BlockLog getLog() {
+        return log;
+    }
+
+    /**
+     * @return id of the block the event belongs to
+     */
+    public String getBlockId() {
+        return blockId;
+    }
+
+    /**
+     * @return time of the event in epoch milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockEvent{" +
+               "type=" + type +
+               ", blockId='" + blockId + '\'' +
+               ", time=" + time +
+               '}';
+    }
+}
@@ -2,7 +2,7 @@ package dev.kuku.vfl.internal.models;
 
 import dev.kuku.vfl.internal.models.logType.LogTypeBase;
 import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
-import io.github.robsonkades.uuidv7.UUIDv7;
+import dev.kuku.vfl.internal.util.VFLIds;
 
 import java.time.Instant;
 
@@ -44,7 +44,7 @@ public class BlockLog {
     private final String logType;
 
     public BlockLog(String message, String blockId, String parentLogId, LogTypeBase logType) {
-        String id = UUIDv7.randomUUID().toString();
+        String id = VFLIds.next();
         this.id = id;
         this.blockId = blockId;
         this.message = message;
@@ -55,7 +55,7 @@ public class BlockLog {
     }
 
     public BlockLog(String message, String blockId, String parentLogId, String referencedBlockId, LogTypeTraceBlock logType) {
-        String id = UUIDv7.randomUUID().toString();
+        String id = VFLIds.next();
         this.blockId = blockId;
         this.id = id;
         this.parentLogId = parentLogId;
@@ -65,6 +65,19 @@ public class BlockLog {
         this.logType = logType.name();
     }
 
+    /**
+     * Recreates a log with all of its fields, e.g. when reading it back from a spool.
+     */
+    public BlockLog(String id, String blockId, String message, String parentLogId, String referencedBlockId, long timestamp, String logType) {
+        this.id = id;
+        this.blockId = blockId;
+        this.message = message;
+        this.parentLogId = parentLogId;
+        this.referencedBlockId = referencedBlockId;
+        this.timestamp = timestamp;
+        this.logType = logType;
+    }
+
     @Override
     public String toString() {
         return "BlockLog{" +
@@ -0,0 +1,94 @@
+package dev.kuku.vfl.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of growable byte buffers used to encode payloads, so steady-state encoding reuses the same arrays.
+ * <p>
+ * Buffers that grew beyond {@code maxRetainedBytes} are dropped on release instead of being kept, so one huge payload
+ * does not pin its array for the lifetime of the pool.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class ByteArrayPool {
+    private final ConcurrentLinkedQueue<Buffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int maxPooled;
+    private final int initialBytes;
+    private final int maxRetainedBytes;
+
+    /**
+     * @param maxPooled        Maximum number of idle buffers kept for reuse
+     * @param initialBytes     Initial capacity of newly created buffers
+     * @param maxRetainedBytes Buffers larger than this are not kept for reuse
+     */
+    public ByteArrayPool(int maxPooled, int initialBytes, int maxRetainedBytes) {
+        this.maxPooled = maxPooled;
+        this.initialBytes = initialBytes;
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return an empty buffer, reused when one is available
+     */
+    public Buffer acquire() {
+        Buffer buffer = pool.poll();
+        if (buffer == null) {
+            return new Buffer(this, initialBytes);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    private void release(Buffer buffer) {
+        buffer.reset();
+        if (buffer.capacity() > maxRetainedBytes) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of idle buffers currently pooled
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * Output stream whose backing array can be read without copying.
+     * Not thread-safe, a buffer belongs to one thread at a time.
+     */
+    public static final class Buffer extends ByteArrayOutputStream {
+        private final ByteArrayPool owner;
+
+        private Buffer(ByteArrayPool owner, int initialBytes) {
+            super(initialBytes);
+            this.owner = owner;
+        }
+
+        /**
+         * @return the backing array. Only the first {@link #size()} bytes are valid
+         */
+        public byte[] array() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Returns the buffer to its pool. The caller must not touch it afterwards.
+         */
+        public void release() {
+            owner.release(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dev.kuku.vfl.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * <p>
+ * The breaker opens after {@code failureThreshold} failures in a row and then rejects every call for the open
+ * duration. Afterwards it is half-open and lets a single trial call through: success closes it, failure opens it for
+ * another period.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    // Whether the single half-open trial call has been handed out
+    private boolean trialTaken;
+    private long openCount;
+
+    /**
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param openMillis       How long the breaker rejects calls before allowing a trial call
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        if (openMillis < 0) {
+            throw new IllegalArgumentException("openMillis must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Asks to make a call. Every permitted call must end with {@link #onSuccess()}, {@link #onFailure()} or
+     * {@link #onAbandoned()}.
+     *
+     * @return false if the call must not be made
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialTaken = true;
+                return true;
+            default:
+                if (trialTaken) {
+                    return false;
+                }
+                trialTaken = true;
+                return true;
+        }
+    }
+
+    /**
+     * Tells whether {@link #tryAcquire()} would currently permit a call, without taking the permit.
+     */
+    public synchronized boolean isAvailable() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - openedAt >= openNanos;
+            default:
+                return !trialTaken;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialTaken = false;
+    }
+
+    public synchronized void onFailure() {
+        trialTaken = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            openCount++;
+        }
+    }
+
+    /**
+     * Gives a permit back without an outcome, e.g. when the caller was interrupted.
+     */
+    public synchronized void onAbandoned() {
+        trialTaken = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return how often the breaker opened so far
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+}
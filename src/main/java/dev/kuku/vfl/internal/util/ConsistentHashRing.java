@@ -0,0 +1,145 @@
+package dev.kuku.vfl.internal.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consistent-hash ring over a fixed list of nodes, each placed on the ring at several virtual points.
+ * <p>
+ * A key belongs to the node of the first point at or after the key's hash, wrapping around. Adding or removing a
+ * node only moves the keys of the arcs that node gains or loses, roughly {@code 1 / nodes} of them, and the virtual
+ * points spread each node's share over the whole ring so the load stays even. Nodes are addressed by their index in
+ * the list given to the constructor.
+ * <p>
+ * Thread Safety: This class is immutable and thread-safe.
+ */
+public final class ConsistentHashRing {
+
+    private final int nodeCount;
+    // Sorted hashes of all virtual points, with the index of the owning node at the same position
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodeKeys     Stable name of every node, e.g. its URL. The same names give the same ring in every process
+     * @param virtualNodes Points per node on the ring
+     */
+    public ConsistentHashRing(List<String> nodeKeys, int virtualNodes) {
+        if (nodeKeys.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is required");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.nodeCount = nodeKeys.size();
+        int size = nodeCount * virtualNodes;
+        long[] hashes = new long[size];
+        int[] nodes = new int[size];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int i = node * virtualNodes + v;
+                hashes[i] = hash(nodeKeys.get(node) + "#" + v);
+                nodes[i] = node;
+            }
+        }
+        // Sort point indices by hash, ties broken by node index so every process builds the same ring
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byHash = Long.compareUnsigned(hashes[a], hashes[b]);
+            return byHash != 0 ? byHash : Integer.compare(nodes[a], nodes[b]);
+        });
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes[order[i]];
+        }
+    }
+
+    /**
+     * @return number of nodes on the ring
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return index of the node owning the key
+     */
+    public int owner(CharSequence key) {
+        return owners[firstPoint(hash(key))];
+    }
+
+    /**
+     * Returns the index of the first node clockwise from the key that is not excluded, which is where the key's
+     * traffic fails over to while its owner is down.
+     *
+     * @param excluded Per node index, whether the node must be skipped
+     * @return node index, or -1 if every node is excluded
+     */
+    public int owner(CharSequence key, boolean[] excluded) {
+        int start = firstPoint(hash(key));
+        for (int i = 0; i < points.length; i++) {
+            int node = owners[(start + i) % points.length];
+            if (!excluded[node]) {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return distinct node indices in the order the key would fail over through them, owner first
+     */
+    public List<Integer> preferenceList(CharSequence key) {
+        boolean[] seen = new boolean[nodeCount];
+        List<Integer> nodes = new ArrayList<>(nodeCount);
+        int start = firstPoint(hash(key));
+        for (int i = 0; i < points.length && nodes.size() < nodeCount; i++) {
+            int node = owners[(start + i) % points.length];
+            if (!seen[node]) {
+                seen[node] = true;
+                nodes.add(node);
+            }
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+
+    private int firstPoint(long hash) {
+        int low = 0;
+        int high = points.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // Past the last point wraps around to the first
+        return low == points.length ? 0 : low;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars, finished with the MurmurHash3 mixer. FNV alone leaves ids that differ only
+     * in their last characters close together, which would put them on the same arc.
+     */
+    public static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
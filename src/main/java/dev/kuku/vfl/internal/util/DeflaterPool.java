@@ -0,0 +1,112 @@
+package dev.kuku.vfl.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of {@link Deflater}s that compresses byte arrays into gzip or zlib streams.
+ * <p>
+ * Every {@code Deflater} holds native zlib memory that is only freed by {@link Deflater#end()} or finalization, so
+ * creating one per request churns native allocations. Pooled deflaters are {@link Deflater#reset() reset} and reused,
+ * deflaters beyond {@code maxPooled} are ended right away.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class DeflaterPool {
+    private static final int CHUNK_BYTES = 8 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final ConcurrentLinkedQueue<Entry> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int maxPooled;
+    private final int level;
+    private final boolean gzip;
+
+    /**
+     * @param maxPooled Maximum number of idle deflaters kept for reuse
+     * @param level     Deflater compression level
+     * @param gzip      Whether to write a gzip container, otherwise a zlib container
+     */
+    public DeflaterPool(int maxPooled, int level, boolean gzip) {
+        this.maxPooled = maxPooled;
+        this.level = level;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Compresses {@code length} bytes of {@code input} and appends the result to {@code out}.
+     */
+    public void compress(byte[] input, int length, ByteArrayOutputStream out) {
+        Entry entry = acquire();
+        try {
+            Deflater deflater = entry.deflater;
+            if (gzip) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+                entry.crc.update(input, 0, length);
+            }
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(entry.chunk);
+                out.write(entry.chunk, 0, n);
+            }
+            if (gzip) {
+                writeIntLE(out, (int) entry.crc.getValue());
+                writeIntLE(out, length);
+            }
+        } finally {
+            release(entry);
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private Entry acquire() {
+        Entry entry = pool.poll();
+        if (entry == null) {
+            // gzip wraps raw deflate output in its own header and trailer
+            return new Entry(new Deflater(level, gzip));
+        }
+        pooled.decrementAndGet();
+        return entry;
+    }
+
+    private void release(Entry entry) {
+        entry.deflater.reset();
+        entry.crc.reset();
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(entry);
+        } else {
+            pooled.decrementAndGet();
+            entry.deflater.end();
+        }
+    }
+
+    /**
+     * @return number of idle deflaters currently pooled
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * A deflater with its scratch space, owned by one thread at a time.
+     */
+    private static final class Entry {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] chunk = new byte[CHUNK_BYTES];
+
+        Entry(Deflater deflater) {
+            this.deflater = deflater;
+        }
+    }
+}
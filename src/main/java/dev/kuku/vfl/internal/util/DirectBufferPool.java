@@ -0,0 +1,81 @@
+package dev.kuku.vfl.internal.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed-size direct buffers used to hand bytes to a channel, so steady-state writes reuse the same
+ * native memory.
+ * <p>
+ * Writing a heap buffer to a channel makes the JDK copy it into a temporary direct buffer of the same size that it
+ * caches per thread, without a size limit by default. Copying into pooled chunks instead keeps the native memory
+ * bounded by {@code maxPooled * chunkBytes} no matter how large a batch gets or how many threads flush.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class DirectBufferPool {
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int chunkBytes;
+    private final int maxPooled;
+
+    /**
+     * @param chunkBytes Capacity of every buffer
+     * @param maxPooled  Maximum number of idle buffers kept for reuse
+     */
+    public DirectBufferPool(int chunkBytes, int maxPooled) {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("chunkBytes must be positive");
+        }
+        this.chunkBytes = chunkBytes;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return an empty buffer of {@link #getChunkBytes()} capacity, reused when one is available
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(chunkBytes);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Copies {@code length} bytes into as many buffers as needed, each flipped for reading.
+     */
+    public ByteBuffer[] copyOf(byte[] bytes, int offset, int length) {
+        ByteBuffer[] chunks = new ByteBuffer[Math.max(1, (length + chunkBytes - 1) / chunkBytes)];
+        for (int i = 0; i < chunks.length; i++) {
+            int size = Math.min(chunkBytes, length - i * chunkBytes);
+            chunks[i] = acquire().put(bytes, offset + i * chunkBytes, size).flip();
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not touch it afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    /**
+     * @return number of idle buffers currently pooled
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+}
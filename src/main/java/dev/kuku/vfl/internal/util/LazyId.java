@@ -0,0 +1,65 @@
+package dev.kuku.vfl.internal.util;
+
+/**
+ * Block or log id whose string form is rendered on first use.
+ * <p>
+ * A reserved id holds the sequence number from {@link VFLIds#reserve()} and the {@link System#nanoTime()} reading of
+ * its creation. Rendering is deterministic, so the application thread and a background thread that both render the
+ * id see the same string, and whichever renders first saves the other the work.
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ */
+public final class LazyId {
+    private final long nanoTime;
+    private final long sequence;
+    private volatile String rendered;
+
+    private LazyId(long nanoTime, long sequence, String rendered) {
+        this.nanoTime = nanoTime;
+        this.sequence = sequence;
+        this.rendered = rendered;
+    }
+
+    /**
+     * Reserves a new id without rendering it.
+     *
+     * @param nanoTime {@link System#nanoTime()} reading the id's timestamp is derived from
+     */
+    public static LazyId reserve(long nanoTime) {
+        return new LazyId(nanoTime, VFLIds.reserve(), null);
+    }
+
+    /**
+     * Wraps a sequence number that was already reserved, e.g. one of several from {@link VFLIds#reserve(int)}.
+     *
+     * @param nanoTime {@link System#nanoTime()} reading the id's timestamp is derived from
+     * @param sequence reserved sequence number
+     */
+    public static LazyId reserved(long nanoTime, long sequence) {
+        return new LazyId(nanoTime, sequence, null);
+    }
+
+    /**
+     * Wraps an id that is already rendered.
+     */
+    public static LazyId of(String id) {
+        return new LazyId(0, -1, id);
+    }
+
+    /**
+     * @return the id, rendering it if no thread has done so yet
+     */
+    public String get() {
+        String id = rendered;
+        if (id == null) {
+            id = VFLIds.render(VFLClock.toEpochMillis(nanoTime), sequence);
+            rendered = id;
+        }
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return get();
+    }
+}
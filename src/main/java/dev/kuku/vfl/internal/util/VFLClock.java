@@ -0,0 +1,24 @@
+package dev.kuku.vfl.internal.util;
+
+/**
+ * Converts {@link System#nanoTime()} readings to unix milliseconds.
+ * <p>
+ * Lets hot paths read only the monotonic clock and leave the conversion to a background thread. The wall clock is
+ * sampled once when the class loads, so converted times do not follow later wall clock adjustments. The conversion is
+ * a pure function of its argument, so every thread converts a reading to the same value.
+ */
+public final class VFLClock {
+    private static final long ANCHOR_MILLIS = System.currentTimeMillis();
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    private VFLClock() {
+    }
+
+    /**
+     * @param nanoTime a reading of {@link System#nanoTime()} taken in this process
+     * @return the unix timestamp in milliseconds of that reading
+     */
+    public static long toEpochMillis(long nanoTime) {
+        return ANCHOR_MILLIS + Math.floorDiv(nanoTime - ANCHOR_NANOS, 1_000_000L);
+    }
+}
@@ -0,0 +1,157 @@
+package dev.kuku.vfl.internal.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates block and log ids from a process-local sequence.
+ * <p>
+ * Ids are valid UUIDv7 strings, so the hub and other services see the same format as before. The 128 bits are laid
+ * out as:
+ * <ul>
+ *     <li>48 bit unix timestamp in milliseconds, then the version nibble</li>
+ *     <li>12 + 14 bits of a random node prefix chosen once per process, around the variant bits</li>
+ *     <li>48 bit sequence number, unique within the process and starting at a random value</li>
+ * </ul>
+ * Two processes only produce the same id if they draw the same node prefix and their sequences overlap in the same
+ * millisecond, so the random start widens the 26 node bits by up to 48 more.
+ * <p>
+ * Unlike a random UUID this needs no random bytes and no intermediate {@link java.util.UUID} per id, just the string
+ * itself. Each thread takes sequence numbers from its own block of {@value #THREAD_BLOCK}, so the shared counter is
+ * only touched once per block. Ids are therefore unique but not ordered by sequence across threads. The sequence can
+ * be read back from ids created by this process with {@link #localSequence(String)}, which lets buffers index blocks
+ * by a primitive long.
+ */
+public final class VFLIds {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+    private static final long SEQUENCE_MASK = 0xFFFFFFFFFFFFL;
+    // Characters of the rendered node prefix, compared when reading a sequence back
+    private static final int NODE_START = 15;
+    private static final int NODE_END = 23;
+    // Sequence numbers a thread reserves from the shared counter at a time
+    private static final int THREAD_BLOCK = 1024;
+
+    private static final long NODE_HIGH;
+    private static final long NODE_LOW;
+    private static final String NODE_CHARS;
+    private static final AtomicLong sequence;
+    private static final ThreadLocal<SequenceBlock> threadBlock = ThreadLocal.withInitial(SequenceBlock::new);
+
+    static {
+        SecureRandom random = new SecureRandom();
+        long node = random.nextLong();
+        NODE_HIGH = node & 0xFFF;
+        NODE_LOW = (node >>> 12) & 0x3FFF;
+        NODE_CHARS = render(0, NODE_HIGH, NODE_LOW, 0).substring(NODE_START, NODE_END);
+        // Aligned to the block size, so a block never wraps around the 48 bit mask and its numbers are consecutive
+        sequence = new AtomicLong(random.nextLong() & SEQUENCE_MASK & -THREAD_BLOCK);
+    }
+
+    /**
+     * Range of sequence numbers reserved by one thread, {@code next} up to but excluding {@code end}.
+     */
+    private static final class SequenceBlock {
+        long next;
+        long end;
+    }
+
+    private VFLIds() {
+    }
+
+    /**
+     * @return a new id, unique within this process and random across processes
+     */
+    public static String next() {
+        return render(System.currentTimeMillis(), reserve());
+    }
+
+    /**
+     * Reserves a sequence number without rendering an id. Together with a timestamp it determines the id, which
+     * can then be rendered later and on any thread with {@link #render(long, long)}.
+     *
+     * @return a sequence number unique within this process
+     */
+    public static long reserve() {
+        return reserve(1);
+    }
+
+    /**
+     * Reserves consecutive sequence numbers at once, e.g. for a block and its start log.
+     *
+     * @param count how many numbers to reserve, at most {@value #THREAD_BLOCK}
+     * @return the first of {@code count} sequence numbers unique within this process, the others follow it
+     */
+    public static long reserve(int count) {
+        if (count <= 0 || count > THREAD_BLOCK) {
+            throw new IllegalArgumentException("count must be between 1 and " + THREAD_BLOCK);
+        }
+        SequenceBlock block = threadBlock.get();
+        if (block.end - block.next < count) {
+            block.next = sequence.getAndAdd(THREAD_BLOCK);
+            block.end = block.next + THREAD_BLOCK;
+        }
+        long first = block.next;
+        block.next += count;
+        return first & SEQUENCE_MASK;
+    }
+
+    /**
+     * Renders the id for a reserved sequence number. The same arguments always render the same id.
+     *
+     * @param millis   unix timestamp in milliseconds
+     * @param sequence sequence number from {@link #reserve()}
+     */
+    public static String render(long millis, long sequence) {
+        return render(millis, NODE_HIGH, NODE_LOW, sequence);
+    }
+
+    /**
+     * Reads the sequence number back from an id without allocating.
+     *
+     * @return the sequence, or -1 if the id was not created by {@link #next()} in this process
+     */
+    public static long localSequence(String id) {
+        if (id == null || id.length() != 36) {
+            return -1;
+        }
+        for (int i = NODE_START; i < NODE_END; i++) {
+            if (id.charAt(i) != NODE_CHARS.charAt(i - NODE_START)) {
+                return -1;
+            }
+        }
+        long value = 0;
+        for (int i = 24; i < 36; i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static String render(long millis, long nodeHigh, long nodeLow, long seq) {
+        long msb = (millis << 16) | 0x7000L | nodeHigh;
+        long lsb = 0x8000000000000000L | (nodeLow << 48) | seq;
+        // Latin-1 bytes map straight onto a compact string, a char[] would be twice the size and compressed again
+        byte[] chars = new byte[36];
+        writeHex(chars, 0, msb >>> 32, 8);
+        chars[8] = '-';
+        writeHex(chars, 9, msb >>> 16, 4);
+        chars[13] = '-';
+        writeHex(chars, 14, msb, 4);
+        chars[18] = '-';
+        writeHex(chars, 19, lsb >>> 48, 4);
+        chars[23] = '-';
+        writeHex(chars, 24, lsb, 12);
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeHex(byte[] chars, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
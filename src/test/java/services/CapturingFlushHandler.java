@@ -0,0 +1,57 @@
+package services;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory flush handler that records everything it receives. Collections are copied because buffers may reuse them.
+ */
+public class CapturingFlushHandler implements VFLFlushHandler {
+    public final ConcurrentLinkedQueue<Block> blocks = new ConcurrentLinkedQueue<>();
+    public final ConcurrentLinkedQueue<BlockLog> logs = new ConcurrentLinkedQueue<>();
+    public final Map<String, Long> blockEntered = new ConcurrentHashMap<>();
+    public final Map<String, Long> blockExited = new ConcurrentHashMap<>();
+    public final Map<String, Long> blockReturned = new ConcurrentHashMap<>();
+    public final AtomicInteger flushCalls = new AtomicInteger();
+
+    @Override
+    public void flushLogs(List<BlockLog> logs) {
+        flushCalls.incrementAndGet();
+        this.logs.addAll(logs);
+    }
+
+    @Override
+    public void flushBlocks(List<Block> blocks) {
+        flushCalls.incrementAndGet();
+        this.blocks.addAll(blocks);
+    }
+
+    @Override
+    public void flushBlockEntered(Map<String, Long> blockIds) {
+        flushCalls.incrementAndGet();
+        blockEntered.putAll(blockIds);
+    }
+
+    @Override
+    public void flushBlockExited(Map<String, Long> blockIds) {
+        flushCalls.incrementAndGet();
+        blockExited.putAll(blockIds);
+    }
+
+    @Override
+    public void flushBlockReturned(Map<String, Long> blockIds) {
+        flushCalls.incrementAndGet();
+        blockReturned.putAll(blockIds);
+    }
+
+    public int totalEvents() {
+        return blocks.size() + logs.size() + blockEntered.size() + blockExited.size() + blockReturned.size();
+    }
+}
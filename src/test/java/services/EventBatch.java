@@ -0,0 +1,32 @@
+package services;
+
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of a combined batch request: the five sections the hub otherwise receives on separate endpoints.
+ * <p>
+ * The handlers write this body with {@code JsonEventWriter}; tests serialize this bean with Jackson as the reference.
+ */
+public class EventBatch {
+    public List<Block> blocks;
+    public List<BlockLog> logs;
+    public Map<String, Long> blockEntered;
+    public Map<String, Long> blockExited;
+    public Map<String, Long> blockReturned;
+
+    public EventBatch(EventSections sections) {
+        this.blocks = sections.blocks;
+        this.logs = sections.logs;
+        this.blockEntered = sections.blockEntered;
+        this.blockExited = sections.blockExited;
+        this.blockReturned = sections.blockReturned;
+    }
+
+    public EventBatch() {
+    }
+}
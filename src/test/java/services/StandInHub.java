@@ -0,0 +1,332 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.kuku.vfl.internal.buffer.flushHandler.BinaryEventCodec;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local stand-in for the VFL Hub. Accepts POSTs to the five section endpoints and {@code /api/v1/batch}, records them
+ * and answers 200 after an optional delay. Other paths under {@code /api/v1/} are answered with 404.
+ * <p>
+ * Errors can be injected with {@link #setStatusCode}, {@link #failNext} and {@link #setErrorRate}. Failed requests are
+ * not recorded, so the counters only show what the hub would have stored.
+ * <p>
+ * Bodies sent with {@code Content-Encoding: gzip} or {@code deflate} are decompressed before they are recorded.
+ * <p>
+ * Combined batches posted to {@code /api/v1/batch} are checked like the hub does: the body must be a JSON object
+ * holding only the five sections, or the whole batch is rejected with 400 and not recorded. Batches sent with the
+ * binary content type are decoded with {@link BinaryEventCodec} and rejected the same way when malformed. Bodies of the
+ * section endpoints must be a JSON array for logs and blocks and a JSON object for the timestamp sections.
+ */
+public class StandInHub implements AutoCloseable {
+
+    /**
+     * One request as received, with its body decompressed.
+     */
+    public static final class Request {
+        public final String path;
+        public final byte[] body;
+        // Body size before decompression
+        public final int wireBytes;
+        // Null for uncompressed bodies
+        public final String contentEncoding;
+        // Decoded events of a binary batch, null for JSON bodies
+        public final List<BlockEvent> events;
+        public final String batchId;
+
+        Request(String path, byte[] body, int wireBytes, String contentEncoding, List<BlockEvent> events, String batchId) {
+            this.path = path;
+            this.body = body;
+            this.wireBytes = wireBytes;
+            this.contentEncoding = contentEncoding;
+            this.events = events;
+            this.batchId = batchId;
+        }
+    }
+
+    public static final String BATCH_PATH = "/api/v1/batch";
+    public static final String BINARY_CONTENT_TYPE = "application/vnd.vfl.batch";
+    private static final List<String> ARRAY_SECTIONS = Arrays.asList("blocks", "logs");
+    private static final List<String> MAP_SECTIONS = Arrays.asList("blockEntered", "blockExited", "blockReturned");
+    private static final List<String> SECTIONS = Arrays.asList("blocks", "logs", "blockEntered", "blockExited",
+            "blockReturned");
+    // Section carried by each single-section endpoint
+    private static final Map<String, String> SECTION_PATHS = new HashMap<>();
+
+    static {
+        SECTION_PATHS.put("/api/v1/blocks", "blocks");
+        SECTION_PATHS.put("/api/v1/logs", "logs");
+        SECTION_PATHS.put("/api/v1/block-entered", "blockEntered");
+        SECTION_PATHS.put("/api/v1/block-exited", "blockExited");
+        SECTION_PATHS.put("/api/v1/block-returned", "blockReturned");
+    }
+
+    public final List<Request> requests = new CopyOnWriteArrayList<>();
+    // Batch id header of every request received, including failed ones
+    public final List<String> receivedBatchIds = new CopyOnWriteArrayList<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    public final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final HttpServer server;
+    private volatile int latencyMs;
+    private volatile int statusCode = 200;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile int failureStatusCode;
+    private volatile double errorRate;
+    private volatile int errorRateStatusCode;
+
+    public StandInHub(int latencyMs) throws IOException {
+        this.latencyMs = latencyMs;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setLatencyMs(int latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Answers the next {@code count} requests with the given status without recording them.
+     */
+    public void failNext(int count, int statusCode) {
+        this.failureStatusCode = statusCode;
+        failuresLeft.set(count);
+    }
+
+    /**
+     * Answers each following request with the given status with probability {@code rate}, without recording it.
+     */
+    public void setErrorRate(double rate, int statusCode) {
+        this.errorRateStatusCode = statusCode;
+        this.errorRate = rate;
+    }
+
+    public long countRequests(String path) {
+        return requests.stream().filter(r -> r.path.equals(path)).count();
+    }
+
+    /**
+     * @return number of items in the given section summed over every accepted batch request
+     */
+    public long countBatchItems(String section) throws IOException {
+        long total = 0;
+        for (Request request : requests) {
+            if (request.events != null) {
+                total += binarySectionSize(EventSections.of(request.events), section);
+            } else if (request.path.equals(BATCH_PATH)) {
+                JsonNode items = objectMapper.readTree(request.body).get(section);
+                total += items == null ? 0 : items.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return number of items in the given section summed over every accepted request, whichever endpoint and wire
+     * format carried them
+     */
+    public long countItems(String section) throws IOException {
+        long total = countBatchItems(section);
+        for (Request request : requests) {
+            if (section.equals(SECTION_PATHS.get(request.path))) {
+                total += objectMapper.readTree(request.body).size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return number of items in all five sections of every accepted request
+     */
+    public long countItems() throws IOException {
+        long total = 0;
+        for (String section : SECTIONS) {
+            total += countItems(section);
+        }
+        return total;
+    }
+
+    /**
+     * @return names of all blocks received so far, in arrival order
+     */
+    public List<String> blockNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.events != null) {
+                for (Block block : EventSections.of(request.events).blocks) {
+                    names.add(block.getName());
+                }
+                continue;
+            }
+            JsonNode blocks = null;
+            if (request.path.equals(BATCH_PATH)) {
+                blocks = objectMapper.readTree(request.body).get("blocks");
+            } else if ("blocks".equals(SECTION_PATHS.get(request.path))) {
+                blocks = objectMapper.readTree(request.body);
+            }
+            if (blocks != null) {
+                blocks.forEach(block -> names.add(block.get("name").asText()));
+            }
+        }
+        return names;
+    }
+
+    private static int binarySectionSize(EventSections sections, String section) {
+        switch (section) {
+            case "blocks":
+                return sections.blocks.size();
+            case "logs":
+                return sections.logs.size();
+            case "blockEntered":
+                return sections.blockEntered.size();
+            case "blockExited":
+                return sections.blockExited.size();
+            case "blockReturned":
+                return sections.blockReturned.size();
+            default:
+                return 0;
+        }
+    }
+
+    private static byte[] decompress(byte[] wire, String encoding) throws IOException {
+        if (encoding == null) {
+            return wire;
+        }
+        InputStream in;
+        if (encoding.equals("gzip")) {
+            in = new GZIPInputStream(new ByteArrayInputStream(wire));
+        } else if (encoding.equals("deflate")) {
+            in = new InflaterInputStream(new ByteArrayInputStream(wire));
+        } else {
+            throw new IOException("Unsupported Content-Encoding " + encoding);
+        }
+        try (InputStream decompressed = in) {
+            return decompressed.readAllBytes();
+        }
+    }
+
+    private boolean isValidBatch(byte[] body) {
+        JsonNode batch;
+        try {
+            batch = objectMapper.readTree(body);
+        } catch (IOException e) {
+            return false;
+        }
+        if (batch == null || !batch.isObject()) {
+            return false;
+        }
+        Iterator<String> sections = batch.fieldNames();
+        while (sections.hasNext()) {
+            String section = sections.next();
+            JsonNode items = batch.get(section);
+            boolean valid = ARRAY_SECTIONS.contains(section) ? items.isArray()
+                    : MAP_SECTIONS.contains(section) && items.isObject();
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidSection(byte[] body, String section) {
+        JsonNode items;
+        try {
+            items = objectMapper.readTree(body);
+        } catch (IOException e) {
+            return false;
+        }
+        return items != null && (ARRAY_SECTIONS.contains(section) ? items.isArray() : items.isObject());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int concurrent = concurrentRequests.incrementAndGet();
+        maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] wire = in.readAllBytes();
+            String batchId = exchange.getRequestHeaders().getFirst("X-VFL-Batch-Id");
+            receivedBatchIds.add(String.valueOf(batchId));
+            String path = exchange.getRequestURI().getPath();
+            if (!path.equals(BATCH_PATH) && !SECTION_PATHS.containsKey(path)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (failuresLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                exchange.sendResponseHeaders(failureStatusCode, -1);
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(errorRateStatusCode, -1);
+                return;
+            }
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            byte[] body;
+            try {
+                body = decompress(wire, encoding);
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            List<BlockEvent> events = null;
+            if (BINARY_CONTENT_TYPE.equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                try {
+                    events = BinaryEventCodec.decode(body, 0, body.length);
+                } catch (IllegalArgumentException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+            } else if (path.equals(BATCH_PATH) ? !isValidBatch(body) : !isValidSection(body, SECTION_PATHS.get(path))) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            requests.add(new Request(path, body, wire.length, encoding, events, batchId));
+            exchange.sendResponseHeaders(statusCode, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            concurrentRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,154 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AdaptiveFlushTuner;
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+import services.StandInHub;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveFlushTunerTest {
+
+    private static class Hub extends CapturingFlushHandler {
+        final int latencyMs;
+        final boolean failing;
+
+        Hub(int latencyMs, boolean failing) {
+            this.latencyMs = latencyMs;
+            this.failing = failing;
+        }
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new RuntimeException("hub error");
+            }
+            super.flushBlocks(blocks);
+        }
+    }
+
+    private static AsynchronousBuffer tunedBuffer(VFLFlushHandler handler, int initialBatch, AdaptiveFlushTuner tuner) {
+        return AsynchronousBuffer.builder(handler)
+                .bufferSize(initialBatch)
+                .flushIntervalMs(20)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newFixedThreadPool(4))
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .flushTuner(tuner)
+                .build();
+    }
+
+    private static void pushFor(AsynchronousBuffer buffer, long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 20; i++) {
+                buffer.pushBlock(new Block("b", null));
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Pushes until the buffer reaches the given settings, or gives up after {@code maxMillis}.
+     */
+    private static void pushUntilSettled(AsynchronousBuffer buffer, int batchSize, int intervalMs, long maxMillis)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + maxMillis;
+        while (System.currentTimeMillis() < end
+               && (buffer.getEffectiveBufferSize() != batchSize || buffer.getEffectiveFlushIntervalMs() != intervalMs)) {
+            pushFor(buffer, 20);
+        }
+    }
+
+    @Test
+    void initialSettingsAreClampedToBounds() {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(10, 50, 100, 1000, 50);
+        AsynchronousBuffer buffer = AsynchronousBuffer.builder(new Hub(0, false))
+                .bufferSize(500)
+                .flushIntervalMs(5)
+                .flushTuner(tuner)
+                .build();
+        assertEquals(50, buffer.getEffectiveBufferSize());
+        assertEquals(100, buffer.getEffectiveFlushIntervalMs());
+    }
+
+    @Test
+    void fixedBufferReportsConfiguredSettings() {
+        AsynchronousBuffer buffer = new AsynchronousBuffer(123, 4567, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), new Hub(0, false));
+        assertEquals(123, buffer.getEffectiveBufferSize());
+        assertEquals(4567, buffer.getEffectiveFlushIntervalMs());
+    }
+
+    @Test
+    void slowFlushesShrinkTheBatch() throws InterruptedException {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(5, 500, 20, 200, 5);
+        AsynchronousBuffer buffer = tunedBuffer(new Hub(30, false), 200, tuner);
+        pushFor(buffer, 600);
+        assertTrue(buffer.getEffectiveBufferSize() < 200, "batch size " + buffer.getEffectiveBufferSize());
+        assertTrue(tuner.getAverageFlushLatencyMs() >= 25);
+        assertTrue(tuner.getPushRatePerSecond() > 0);
+    }
+
+    @Test
+    void fastFlushesGrowTheBatch() throws InterruptedException {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(5, 500, 20, 200, 200);
+        AsynchronousBuffer buffer = tunedBuffer(new Hub(0, false), 10, tuner);
+        pushFor(buffer, 400);
+        assertTrue(buffer.getEffectiveBufferSize() > 10, "batch size " + buffer.getEffectiveBufferSize());
+        assertTrue(buffer.getEffectiveBufferSize() <= 500);
+    }
+
+    @Test
+    void hubErrorsBackOffToTheLongestInterval() throws InterruptedException {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(5, 500, 20, 160, 50);
+        AsynchronousBuffer buffer = tunedBuffer(new Hub(0, true), 100, tuner);
+        pushUntilSettled(buffer, 5, 160, 10_000);
+        assertEquals(160, buffer.getEffectiveFlushIntervalMs());
+        assertEquals(5, buffer.getEffectiveBufferSize());
+    }
+
+    @Test
+    void batchGrowsByAFixedStep() throws InterruptedException {
+        // Step is (330 - 10) / 32 = 10 items per adjustment
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(10, 330, 20, 200, 200);
+        AsynchronousBuffer buffer = tunedBuffer(new Hub(0, false), 10, tuner);
+        pushFor(buffer, 300);
+        assertEquals(0, (buffer.getEffectiveBufferSize() - 10) % 10, "batch size " + buffer.getEffectiveBufferSize());
+    }
+
+    @Test
+    void hubErrorsThatAreNotThrownStillBackOff() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            hub.setErrorRate(1.0, 503);
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(5, 500, 20, 160, 50)
+                    .watchHubFailures(handler.getMetrics());
+            AsynchronousBuffer buffer = tunedBuffer(handler, 100, tuner);
+            pushUntilSettled(buffer, 5, 160, 10_000);
+            assertEquals(160, buffer.getEffectiveFlushIntervalMs());
+            assertEquals(5, buffer.getEffectiveBufferSize());
+        }
+    }
+
+    @Test
+    void invalidBoundsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveFlushTuner(10, 5, 10, 100, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveFlushTuner(1, 5, 100, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveFlushTuner(1, 5, 10, 100, 0));
+    }
+}
@@ -0,0 +1,92 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.flushHandler.AsyncHubFlushHandler;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import org.junit.jupiter.api.Test;
+import services.StandInHub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncHubFlushHandlerTest {
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            events.add(BlockEvent.blockCreated(new Block("block " + i, null)));
+        }
+        return events;
+    }
+
+    @Test
+    void singleFlushThreadKeepsSeveralBatchesInFlight() throws Exception {
+        try (StandInHub hub = new StandInHub(100)) {
+            AsyncHubFlushHandler handler = new AsyncHubFlushHandler(new VFLHubFlushHandler(hub.getUrl(), false, true), 4);
+            AsynchronousBuffer buffer = new AsynchronousBuffer(5, 60_000, 10_000,
+                    Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+
+            for (int i = 0; i < 40; i++) {
+                buffer.pushBlock(new Block("block " + i, null));
+            }
+            buffer.forceFlush();
+
+            // Force flush waits for the hub through the delivery futures
+            assertEquals(8L, hub.countRequests(StandInHub.BATCH_PATH));
+            assertEquals(0, buffer.getPendingFlushCount());
+            assertEquals(0, handler.getInFlightBatchCount());
+            // The single flush thread did not wait for one response before sending the next batch
+            assertTrue(hub.maxConcurrentRequests.get() > 1, "max concurrent " + hub.maxConcurrentRequests.get());
+        }
+    }
+
+    @Test
+    void inFlightCapHoldsBackTheFlushThread() throws Exception {
+        try (StandInHub hub = new StandInHub(100)) {
+            VFLHubFlushHandler hubHandler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            AsyncHubFlushHandler handler = new AsyncHubFlushHandler(hubHandler, 2);
+
+            for (int i = 1; i <= 6; i++) {
+                handler.flushEvents(batch(1));
+                assertTrue(handler.getInFlightBatchCount() <= 2);
+                // A batch beyond the cap was only accepted once an earlier response had freed a slot
+                long responses = hubHandler.getMetrics().snapshot().getStatusCodeCount(200);
+                assertTrue(responses >= i - 2, responses + " responses after " + i + " batches");
+            }
+            assertTrue(handler.awaitIdle(10_000));
+
+            assertEquals(6, hub.requests.size());
+            assertTrue(hub.maxConcurrentRequests.get() <= 2, "max concurrent " + hub.maxConcurrentRequests.get());
+        }
+    }
+
+    @Test
+    void failedDeliveryFailsTheBufferFlush() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            hub.setStatusCode(500);
+            AsyncHubFlushHandler handler = new AsyncHubFlushHandler(new VFLHubFlushHandler(hub.getUrl(), true, true));
+            AsynchronousBuffer buffer = new AsynchronousBuffer(100, 60_000, 10_000,
+                    Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+
+            buffer.pushBlock(new Block("block", null));
+            boolean failed = false;
+            try {
+                buffer.flushAsync().get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                failed = true;
+            }
+
+            assertTrue(failed);
+            assertEquals(Long.valueOf(1), Long.valueOf(buffer.getMetrics().snapshot().getFailedFlushCount()));
+            assertEquals(0, handler.getInFlightBatchCount());
+        }
+    }
+}
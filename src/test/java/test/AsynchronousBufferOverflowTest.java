@@ -0,0 +1,198 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.OverflowPolicy;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsynchronousBufferOverflowTest {
+
+    /**
+     * Simulates a hub that does not answer until released.
+     */
+    private static class StalledFlushHandler extends CapturingFlushHandler {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.flushBlocks(blocks);
+        }
+    }
+
+    private static AsynchronousBuffer bounded(StalledFlushHandler handler, OverflowPolicy policy) {
+        return AsynchronousBuffer.builder(handler)
+                .bufferSize(5)
+                .flushIntervalMs(60_000)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newSingleThreadExecutor())
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .maxInFlightItems(20, policy)
+                .build();
+    }
+
+    @Test
+    void dropNewestCapsInFlightItems() {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = bounded(handler, OverflowPolicy.dropNewest());
+
+        for (int i = 0; i < 100; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        assertEquals(20, buffer.getInFlightItemCount());
+        assertEquals(80, buffer.getDroppedItemCount());
+        handler.release.countDown();
+        buffer.forceFlush();
+        assertEquals(20, handler.blocks.size());
+        assertEquals(0, buffer.getInFlightItemCount());
+    }
+
+    @Test
+    void blockGivesUpAfterTimeout() {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = bounded(handler, OverflowPolicy.block(50));
+
+        for (int i = 0; i < 21; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        assertEquals(1, buffer.getDroppedItemCount());
+        handler.release.countDown();
+    }
+
+    @Test
+    void blockResumesOnceHubCatchesUp() throws InterruptedException {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = bounded(handler, OverflowPolicy.block(5000));
+        for (int i = 0; i < 20; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            handler.release.countDown();
+        });
+        releaser.start();
+        buffer.pushBlock(new Block("late", null));
+        releaser.join();
+
+        assertEquals(0, buffer.getDroppedItemCount());
+        buffer.forceFlush();
+        assertEquals(21, handler.blocks.size());
+    }
+
+    @Test
+    void dropOldestBatchDiscardsQueuedBatchesWhole() {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = bounded(handler, OverflowPolicy.dropOldestBatch());
+
+        for (int i = 0; i < 100; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        // Dropped in units of whole batches of 5
+        assertTrue(buffer.getDroppedItemCount() > 0);
+        assertEquals(0, buffer.getDroppedItemCount() % 5);
+        assertTrue(buffer.getInFlightItemCount() <= 20);
+        handler.release.countDown();
+    }
+
+    @Test
+    void sampleKeepsWholeTracesPastHalfTheCap() {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = bounded(handler, OverflowPolicy.sample(5));
+
+        for (int i = 0; i < 60; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        // 10 admitted freely, then about 1 in 5 of the remaining 50 traces, never more than the cap
+        assertTrue(buffer.getInFlightItemCount() <= 20);
+        assertTrue(buffer.getDroppedItemCount() >= 40);
+        assertEquals(60, buffer.getInFlightItemCount() + buffer.getDroppedItemCount());
+        handler.release.countDown();
+    }
+
+    @Test
+    void everyKeptTraceArrivesComplete() {
+        StalledFlushHandler handler = new StalledFlushHandler();
+        AsynchronousBuffer buffer = AsynchronousBuffer.builder(handler)
+                .bufferSize(5)
+                .flushIntervalMs(60_000)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newSingleThreadExecutor())
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .maxInFlightItems(400, OverflowPolicy.sample(10))
+                // Keeps flushTrace from waiting on the stalled handler
+                .traceAwareFlush(true)
+                .build();
+
+        List<Block> roots = new ArrayList<>();
+        Map<String, Block> childOf = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            Block root = new Block("root" + i, null);
+            Block child = new Block("child" + i, root.getId());
+            roots.add(root);
+            childOf.put(root.getId(), child);
+            buffer.pushBlock(root);
+            buffer.pushBlockEntered(root.getId(), 1);
+            buffer.pushBlock(child);
+            buffer.pushBlockEntered(child.getId(), 2);
+            buffer.pushLog(new BlockLog("work", child.getId(), null, LogTypeBase.INFO));
+            buffer.pushBlockExited(child.getId(), 3);
+            buffer.pushBlockReturned(child.getId(), 3);
+            buffer.pushBlockExited(root.getId(), 4);
+            buffer.pushBlockReturned(root.getId(), 4);
+            buffer.flushTrace(root.getId());
+        }
+        assertTrue(buffer.getDroppedItemCount() > 0);
+        handler.release.countDown();
+        buffer.forceFlush();
+
+        Set<String> flushedBlocks = new HashSet<>();
+        handler.blocks.forEach(b -> flushedBlocks.add(b.getId()));
+        Set<String> loggedBlocks = new HashSet<>();
+        handler.logs.forEach(l -> loggedBlocks.add(l.getBlockId()));
+        int kept = 0;
+        for (Block root : roots) {
+            String childId = childOf.get(root.getId()).getId();
+            boolean rootKept = flushedBlocks.contains(root.getId());
+            // Each trace arrives either whole or not at all
+            assertEquals(rootKept, flushedBlocks.contains(childId));
+            assertEquals(rootKept, loggedBlocks.contains(childId));
+            for (String id : List.of(root.getId(), childId)) {
+                assertEquals(rootKept, handler.blockEntered.containsKey(id));
+                assertEquals(rootKept, handler.blockExited.containsKey(id));
+                assertEquals(rootKept, handler.blockReturned.containsKey(id));
+            }
+            if (rootKept) {
+                kept++;
+            }
+        }
+        assertTrue(kept > 0);
+        assertEquals(Long.valueOf(900 - 9L * kept), Long.valueOf(buffer.getDroppedItemCount()));
+    }
+}
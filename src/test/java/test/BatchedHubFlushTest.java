@@ -0,0 +1,108 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.PipelinedFlushHandler;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.StandInHub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchedHubFlushTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchedHubFlushTest.class);
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("block " + i, null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), i));
+            events.add(BlockEvent.log(new BlockLog("log " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.blockExited(block.getId(), i + 1));
+            events.add(BlockEvent.blockReturned(block.getId(), i + 1));
+        }
+        return events;
+    }
+
+    @Test
+    void batchedFlushSendsEverySectionInOneRequest() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, true);
+            handler.flushEvents(batch(3));
+
+            assertEquals(1, hub.requests.size());
+            assertEquals(StandInHub.BATCH_PATH, hub.requests.get(0).path);
+            assertEquals(Long.valueOf(3), Long.valueOf(hub.countBatchItems("blocks")));
+            assertEquals(Long.valueOf(3), Long.valueOf(hub.countBatchItems("logs")));
+            assertEquals(Long.valueOf(3), Long.valueOf(hub.countBatchItems("blockEntered")));
+            assertEquals(Long.valueOf(3), Long.valueOf(hub.countBatchItems("blockExited")));
+            assertEquals(Long.valueOf(3), Long.valueOf(hub.countBatchItems("blockReturned")));
+        }
+    }
+
+    @Test
+    void unbatchedFlushKeepsOneRequestPerSection() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            new VFLHubFlushHandler(hub.getUrl(), true).flushEvents(batch(2));
+
+            assertEquals(5, hub.requests.size());
+            assertEquals(0L, hub.countRequests(StandInHub.BATCH_PATH));
+        }
+    }
+
+    @Test
+    void pipelineSendsOneRequestPerBatchInBatchedMode() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            PipelinedFlushHandler handler = new PipelinedFlushHandler(new VFLHubFlushHandler(hub.getUrl(), false, true));
+            for (int i = 0; i < 4; i++) {
+                handler.flushEvents(batch(2));
+            }
+            assertTrue(handler.awaitIdle(10_000));
+            handler.shutdown();
+
+            assertEquals(4L, hub.countRequests(StandInHub.BATCH_PATH));
+            assertEquals(Long.valueOf(8), Long.valueOf(hub.countBatchItems("blocks")));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstPerSectionRequests() throws Exception {
+        int batches = 10;
+        try (StandInHub hub = new StandInHub(10)) {
+            VFLHubFlushHandler perSection = new VFLHubFlushHandler(hub.getUrl());
+            VFLHubFlushHandler combined = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            // Warm up the connection and the encoders
+            perSection.flushEvents(batch(1));
+            combined.flushEvents(batch(1));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                perSection.flushEvents(batch(20));
+            }
+            long perSectionMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                combined.flushEvents(batch(20));
+            }
+            long combinedMs = (System.nanoTime() - start) / 1_000_000;
+
+            log.info("Flushed {} batches with 10 ms hub latency: per section {} ms, combined {} ms",
+                    batches, perSectionMs, combinedMs);
+            // One round trip per batch instead of one per section
+            assertEquals(Long.valueOf(batches + 1), Long.valueOf(hub.countRequests(StandInHub.BATCH_PATH)));
+        }
+    }
+}
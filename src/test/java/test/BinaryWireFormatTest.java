@@ -0,0 +1,179 @@
+package test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.kuku.vfl.api.buffer.flushHandler.HubCompression;
+import dev.kuku.vfl.api.buffer.flushHandler.HubWireFormat;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.buffer.arena.EventRecords;
+import dev.kuku.vfl.internal.buffer.flushHandler.BinaryEventCodec;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.EventBatch;
+import services.StandInHub;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryWireFormatTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryWireFormatTest.class);
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("OrderService.processOrder", null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), block.getCreatedAt()));
+            events.add(BlockEvent.log(new BlockLog("Validated order " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.blockReturned(block.getId(), block.getCreatedAt() + 3));
+        }
+        return events;
+    }
+
+    private static byte[] encode(List<BlockEvent> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEventCodec.encode(events, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameEvent(BlockEvent expected, BlockEvent actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getBlockId(), actual.getBlockId());
+        assertEquals(Long.valueOf(expected.getTime()), Long.valueOf(actual.getTime()));
+        if (expected.getBlock() != null) {
+            assertEquals(expected.getBlock().getId(), actual.getBlock().getId());
+            assertEquals(expected.getBlock().getParentBlockId(), actual.getBlock().getParentBlockId());
+            assertEquals(expected.getBlock().getName(), actual.getBlock().getName());
+        }
+        if (expected.getLog() != null) {
+            assertEquals(expected.getLog().getId(), actual.getLog().getId());
+            assertEquals(expected.getLog().getMessage(), actual.getLog().getMessage());
+            assertEquals(expected.getLog().getParentLogId(), actual.getLog().getParentLogId());
+            assertEquals(expected.getLog().getReferencedBlockId(), actual.getLog().getReferencedBlockId());
+            assertEquals(expected.getLog().getLogType(), actual.getLog().getLogType());
+        }
+    }
+
+    @Test
+    void eventsSurviveARoundTrip() {
+        Block root = new Block("root", null);
+        Block remote = new Block("remote \u00e9\u4e2d\ud83d\ude00", root.getId());
+        remote.setId("remote-service:42");
+        BlockLog first = new BlockLog("started", root.getId(), null, LogTypeBase.WARN);
+        BlockLog trace = new BlockLog("call", root.getId(), first.getId(), remote.getId(), LogTypeTraceBlock.TRACE_REMOTE);
+        List<BlockEvent> events = Arrays.asList(
+                BlockEvent.blockCreated(root),
+                BlockEvent.blockCreated(remote),
+                BlockEvent.log(first),
+                BlockEvent.log(trace),
+                BlockEvent.log(new BlockLog("ABCDEF01-0000-7000-8000-000000000000", root.getId(), "started",
+                        null, null, 5, "CUSTOM")),
+                BlockEvent.log(new BlockLog("x", null, "started", null, null, 7, null)),
+                // Time going backwards encodes a negative delta
+                BlockEvent.blockEntered(root.getId(), 1),
+                BlockEvent.blockExited(remote.getId(), Long.MAX_VALUE),
+                BlockEvent.blockReturned(root.getId(), -1));
+
+        byte[] body = encode(events);
+        List<BlockEvent> decoded = BinaryEventCodec.decode(body, 0, body.length);
+
+        assertEquals(events.size(), decoded.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertSameEvent(events.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void recordsEncodeToTheSameBodyAsEvents() {
+        List<BlockEvent> events = batch(20);
+        events.add(BlockEvent.log(new BlockLog("x", null, "\u00e9\ud83d\ude00", null, null, 7, "CUSTOM")));
+        ByteBuffer records = ByteBuffer.allocate(64 * 1024);
+        for (BlockEvent event : events) {
+            EventRecords.write(records, event.getType(), event.getBlock(), event.getLog(), event.getBlockId(),
+                    event.getTime());
+        }
+        records.flip();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEventCodec.encodeRecords(records, events.size(), out);
+        assertArrayEquals(encode(events), out.toByteArray());
+        assertEquals(0, records.remaining());
+    }
+
+    @Test
+    void malformedBodiesAreRejected() {
+        byte[] body = encode(batch(3));
+        assertThrows(IllegalArgumentException.class, () -> BinaryEventCodec.decode(body, 0, body.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> BinaryEventCodec.decode("{}".getBytes(), 0, 2));
+
+        byte[] futureVersion = body.clone();
+        futureVersion[4] = (byte) (BinaryEventCodec.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> BinaryEventCodec.decode(futureVersion, 0, body.length));
+    }
+
+    @Test
+    void handlerSendsBinaryBatchesTheHubDecodes() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, false, HubCompression.gzip(1024),
+                    HubWireFormat.BINARY);
+            handler.flushEvents(batch(50));
+            // Per-section calls are sent as binary batches too
+            handler.flushBlocks(Collections.singletonList(new Block("single", null)));
+
+            assertEquals(2, hub.countRequests(StandInHub.BATCH_PATH));
+            assertEquals(200, hub.requests.get(0).events.size());
+            assertEquals("gzip", hub.requests.get(0).contentEncoding);
+            assertNull(hub.requests.get(1).contentEncoding);
+            assertEquals(51, hub.countBatchItems("blocks"));
+            assertEquals(50, hub.countBatchItems("logs"));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkBodySizeAndEncodeTimeAgainstJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<BlockEvent> events = batch(200);
+        int rounds = 200;
+        long jsonBytes = 0;
+        long binaryBytes = 0;
+        // Warm up both encoders before timing
+        for (int i = 0; i < rounds; i++) {
+            jsonBytes = objectMapper.writeValueAsString(new EventBatch(EventSections.of(events))).length();
+            binaryBytes = encode(events).length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            objectMapper.writeValueAsString(new EventBatch(EventSections.of(events)));
+        }
+        long jsonMicros = (System.nanoTime() - start) / rounds / 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            encode(events);
+        }
+        long binaryMicros = (System.nanoTime() - start) / rounds / 1000;
+
+        log.info("JSON: {} bytes in {} us, binary: {} bytes in {} us per batch of {} events",
+                jsonBytes, jsonMicros, binaryBytes, binaryMicros, events.size());
+        assertTrue(binaryBytes * 4 < jsonBytes, binaryBytes + " binary bytes against " + jsonBytes + " JSON bytes");
+    }
+}
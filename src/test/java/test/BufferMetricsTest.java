@@ -0,0 +1,139 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.RingBuffer;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.api.metrics.BufferMetricsSnapshot;
+import dev.kuku.vfl.api.metrics.HistogramSnapshot;
+import dev.kuku.vfl.api.metrics.HubMetricsSnapshot;
+import dev.kuku.vfl.internal.metrics.BufferMetrics;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+import services.StandInHub;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferMetricsTest {
+
+    @Test
+    void bufferCountsPushesFlushesAndExposesThemOverJmx() throws Exception {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = new AsynchronousBuffer(4, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+        buffer.getMetrics().setPushWaitSampleRate(1);
+
+        for (int i = 0; i < 3; i++) {
+            Block block = new Block("block " + i, null);
+            buffer.pushBlock(block);
+            buffer.pushBlockEntered(block.getId(), i);
+            buffer.pushLog(new BlockLog("log " + i, block.getId(), null, LogTypeBase.INFO));
+        }
+        assertEquals(1, buffer.getMetrics().snapshot().getQueueDepth());
+        buffer.forceFlush();
+
+        BufferMetricsSnapshot snapshot = buffer.getMetrics().snapshot();
+        assertEquals(Long.valueOf(3), Long.valueOf(snapshot.getPushedEventCount(BlockEvent.Type.LOG)));
+        assertEquals(Long.valueOf(3), Long.valueOf(snapshot.getPushedEventCount(BlockEvent.Type.BLOCK_CREATED)));
+        assertEquals(Long.valueOf(9), Long.valueOf(snapshot.getPushedEventCount()));
+        assertEquals(Long.valueOf(9), Long.valueOf(snapshot.getPushWaitNanos().getCount()));
+        // Two full batches of four, then the remaining item on force flush
+        assertEquals(Long.valueOf(3), Long.valueOf(snapshot.getFlushCount()));
+        assertEquals(Long.valueOf(9), Long.valueOf(snapshot.getFlushedEventCount()));
+        assertEquals(Long.valueOf(4), Long.valueOf(snapshot.getBatchSizes().getMax()));
+        assertEquals(Long.valueOf(0), Long.valueOf(snapshot.getFailedFlushCount()));
+        assertEquals(0, snapshot.getQueueDepth());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = buffer.getMetrics().registerMBean("metrics-test");
+        try {
+            assertEquals(9L, server.getAttribute(name, "PushedEventCount"));
+            assertEquals(3L, server.getAttribute(name, "FlushCount"));
+            assertEquals(0, server.getAttribute(name, "QueueDepth"));
+        } finally {
+            buffer.getMetrics().unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void pushWaitIsTimedForOneInEverySampleRatePushes() {
+        AsynchronousBuffer buffer = new AsynchronousBuffer(100_000, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(),
+                new CapturingFlushHandler());
+        assertEquals(BufferMetrics.DEFAULT_PUSH_WAIT_SAMPLE_RATE, buffer.getMetrics().getPushWaitSampleRate());
+        buffer.getMetrics().setPushWaitSampleRate(8);
+
+        for (int i = 0; i < 8000; i++) {
+            buffer.pushLog(new BlockLog("log " + i, "block", null, LogTypeBase.INFO));
+        }
+
+        BufferMetricsSnapshot snapshot = buffer.getMetrics().snapshot();
+        // Every push is counted, about one in eight is timed
+        assertEquals(Long.valueOf(8000), Long.valueOf(snapshot.getPushedEventCount()));
+        long timed = snapshot.getPushWaitNanos().getCount();
+        assertTrue(timed > 500 && timed < 2000, timed + " pushes timed");
+    }
+
+    @Test
+    void ringBufferCountsEventsOnTheDrainer() throws Exception {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        RingBuffer buffer = new RingBuffer(64, 1000, 60_000, 5000, handler);
+        for (int i = 0; i < 10; i++) {
+            buffer.pushBlockExited("block", i);
+        }
+        buffer.forceFlush();
+
+        BufferMetricsSnapshot snapshot = buffer.getMetrics().snapshot();
+        assertEquals(Long.valueOf(10), Long.valueOf(snapshot.getPushedEventCount(BlockEvent.Type.BLOCK_EXITED)));
+        assertEquals(Long.valueOf(10), Long.valueOf(snapshot.getFlushedEventCount()));
+        assertEquals(0, snapshot.getQueueDepth());
+    }
+
+    @Test
+    void hubRecordsStatusCodesPayloadBytesAndFailedRequests() throws Exception {
+        VFLHubFlushHandler handler;
+        try (StandInHub hub = new StandInHub(0)) {
+            handler = new VFLHubFlushHandler(hub.getUrl());
+            handler.flushBlocks(Collections.singletonList(new Block("block", null)));
+            hub.setStatusCode(503);
+            handler.flushBlockEntered(Collections.singletonMap("block", 1L));
+        }
+        // Nothing listens any more
+        handler.flushBlockExited(Collections.singletonMap("block", 2L));
+
+        HubMetricsSnapshot snapshot = handler.getMetrics().snapshot();
+        assertEquals(Long.valueOf(1), Long.valueOf(snapshot.getStatusCodeCount(200)));
+        assertEquals(Long.valueOf(1), Long.valueOf(snapshot.getStatusCodeCount(503)));
+        assertEquals(Long.valueOf(1), Long.valueOf(snapshot.getErrorResponseCount()));
+        assertEquals(Long.valueOf(1), Long.valueOf(snapshot.getFailedRequestCount()));
+        assertEquals(Long.valueOf(3), Long.valueOf(snapshot.getRequestCount()));
+        assertTrue(snapshot.getPayloadBytes().getSum() > 0);
+    }
+
+    @Test
+    void histogramPercentilesStayWithinTheirBucket() {
+        long[] buckets = new long[64];
+        // 90 values of 1, 10 values between 512 and 1023
+        buckets[1] = 90;
+        buckets[10] = 10;
+        HistogramSnapshot histogram = new HistogramSnapshot(100, 90 + 10 * 700, 900, buckets);
+
+        assertEquals(Long.valueOf(1), Long.valueOf(histogram.getPercentile(50)));
+        assertEquals(Long.valueOf(1), Long.valueOf(histogram.getPercentile(90)));
+        // Capped at the recorded maximum instead of the bucket bound of 1023
+        assertEquals(Long.valueOf(900), Long.valueOf(histogram.getPercentile(99)));
+        assertEquals(Long.valueOf(0), Long.valueOf(new HistogramSnapshot(0, 0, 0, new long[64]).getPercentile(99)));
+    }
+}
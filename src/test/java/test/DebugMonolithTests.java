@@ -4,21 +4,30 @@ import dev.kuku.vfl.api.annotation.VFLAnnotation;
 import dev.kuku.vfl.api.buffer.SynchronousBuffer;
 import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
 import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import services.FlowService;
+import services.StandInHub;
 
-import java.util.concurrent.ExecutionException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DebugMonolithTests {
+    // Records what the instrumented flows flush, in place of a hub on localhost:8080
+    private static StandInHub hub;
+    private static VFLBuffer buffer;
 
     @BeforeAll
     static void setupBytecodeManipulation() throws Exception {
         System.out.println("=== STARTING SETUP ===");
 
         // Initialize VFL directly instead of separate JVM
-        VFLBuffer buffer = new SynchronousBuffer(
-                new VFLHubFlushHandler("http://localhost:8080"),
+        hub = new StandInHub(0);
+        buffer = new SynchronousBuffer(
+                new VFLHubFlushHandler(hub.getUrl()),
                 3
         );
 
@@ -32,6 +41,32 @@ public class DebugMonolithTests {
         System.out.println("=== SETUP COMPLETE ===");
     }
 
+    @AfterAll
+    static void stopHub() {
+        hub.close();
+    }
+
+    private interface Flow {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the flow, flushes the buffer and checks that the hub received its blocks and at least its logs. Pool threads
+     * reused by an earlier flow can add sub-block logs.
+     */
+    private static void assertDelivered(Flow flow, int minLogs, String... blockNames) throws Exception {
+        int blocksBefore = hub.blockNames().size();
+        long logsBefore = hub.countItems("logs");
+        flow.run();
+        buffer.forceFlush();
+
+        List<String> received = hub.blockNames();
+        received = received.subList(blocksBefore, received.size());
+        assertTrue(received.containsAll(Arrays.asList(blockNames)), "hub received blocks " + received);
+        long logs = hub.countItems("logs") - logsBefore;
+        assertTrue(logs >= minLogs, "hub received " + logs + " logs");
+    }
+
     private final FlowService flowService;
 
     DebugMonolithTests() {
@@ -41,27 +76,28 @@ public class DebugMonolithTests {
     }
 
     @Test
-    void flat() {
-        flowService.flatFlow();
+    void flat() throws Exception {
+        assertDelivered(flowService::flatFlow, 4, "flatFlow");
     }
 
     @Test
-    void linear() {
-        flowService.linearFlow();
+    void linear() throws Exception {
+        assertDelivered(flowService::linearFlow, 14, "linearFlow", "square", "pythagorean", "sum");
     }
 
     @Test
-    void parallel() throws ExecutionException, InterruptedException {
-        flowService.parallelFlow();
+    void parallel() throws Exception {
+        assertDelivered(flowService::parallelFlow, 10, "parallelFlow", "Task1", "Task2", "sum", "square");
     }
 
     @Test
-    void parallelSingleThread() throws ExecutionException, InterruptedException {
-        flowService.parallelFlowButSingleBgThread();
+    void parallelSingleThread() throws Exception {
+        assertDelivered(flowService::parallelFlowButSingleBgThread, 12,
+                "parallelFlowButSingleBgThread", "Task1", "Task2", "square", "sum");
     }
 
     @Test
-    void longRunningFlow() {
-        flowService.longRunningOperation();
+    void longRunningFlow() throws Exception {
+        assertDelivered(flowService::longRunningOperation, 12, "longRunningOperation");
     }
-}
\ No newline at end of file
+}
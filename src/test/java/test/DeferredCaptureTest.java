@@ -0,0 +1,151 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.RingBuffer;
+import dev.kuku.vfl.internal.dto.BlockContext;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import dev.kuku.vfl.internal.util.LazyId;
+import dev.kuku.vfl.internal.util.VFLIds;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.CapturingFlushHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeferredCaptureTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredCaptureTest.class);
+
+    private static class EventRecordingHandler extends CapturingFlushHandler {
+        final List<BlockEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void flushEvents(List<BlockEvent> events) {
+            this.events.addAll(events);
+        }
+    }
+
+    /**
+     * Does what {@code SubBlockAdvice} does on entry when the buffer supports deferred capture.
+     */
+    private static BlockContext enter(RingBuffer buffer, String name, BlockContext parent) {
+        long now = System.nanoTime();
+        long sequence = VFLIds.reserve(2);
+        LazyId blockId = LazyId.reserved(now, sequence);
+        LazyId startLogId = LazyId.reserved(now, sequence + 1);
+        buffer.captureSubBlockEntered(name, now, blockId, parent.getBlockHandle(), startLogId, parent.getCurrentLogHandle());
+        parent.setCurrentLogId(startLogId);
+        return new BlockContext(name, blockId, now, parent);
+    }
+
+    @Test
+    void capturedSubBlockIsBuiltOnTheDrainer() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        RingBuffer buffer = new RingBuffer(1024, 100, 60_000, 5000, handler);
+        long before = System.currentTimeMillis();
+
+        Block root = new Block("root", null);
+        buffer.pushBlock(root);
+        BlockContext rootContext = new BlockContext(root);
+        BlockContext child = enter(buffer, "child", rootContext);
+        // A log written inside the sub block renders the id on the application thread
+        BlockLog inside = new BlockLog("inside", child.getBlockId(), child.getCurrentLogId(), LogTypeBase.INFO);
+        buffer.pushLog(inside);
+        child.setCurrentLogId(inside.getId());
+        BlockContext grandChild = enter(buffer, "grandChild", child);
+        buffer.captureSubBlockExited(grandChild.getBlockHandle(), System.nanoTime());
+        buffer.captureSubBlockExited(child.getBlockHandle(), System.nanoTime());
+        buffer.forceFlush();
+
+        List<BlockEvent> events = handler.events;
+        assertEquals(1 + 3 + 1 + 3 + 2 + 2, events.size());
+        Block childBlock = events.get(1).getBlock();
+        assertEquals("child", childBlock.getName());
+        assertEquals(root.getId(), childBlock.getParentBlockId());
+        assertEquals(child.getBlockId(), childBlock.getId());
+        assertTrue(childBlock.getCreatedAt() >= before - 1 && childBlock.getCreatedAt() <= System.currentTimeMillis() + 1);
+        assertEquals(childBlock.getCreatedAt(), events.get(2).getTime());
+
+        BlockLog childStart = events.get(3).getLog();
+        assertEquals(root.getId(), childStart.getBlockId());
+        assertNull(childStart.getParentLogId());
+        assertEquals(childBlock.getId(), childStart.getReferencedBlockId());
+        assertEquals(LogTypeTraceBlock.TRACE_PRIMARY.name(), childStart.getLogType());
+        assertEquals(rootContext.getCurrentLogId(), childStart.getId());
+
+        assertEquals(childBlock.getId(), events.get(4).getLog().getBlockId());
+        Block grandChildBlock = events.get(5).getBlock();
+        assertEquals(childBlock.getId(), grandChildBlock.getParentBlockId());
+        assertEquals(inside.getId(), events.get(7).getLog().getParentLogId());
+        assertEquals(BlockEvent.Type.BLOCK_EXITED, events.get(8).getType());
+        assertEquals(grandChildBlock.getId(), events.get(9).getBlockId());
+        assertEquals(childBlock.getId(), events.get(11).getBlockId());
+        // Building the block on the application thread gives the same block the drainer built
+        assertEquals(childBlock.getCreatedAt(), child.getBlock().getCreatedAt());
+        assertEquals(root.getId(), child.getBlock().getParentBlockId());
+    }
+
+    /**
+     * Reports the application thread cost of a sub block entry and exit with and without deferred capture. The drainer
+     * runs concurrently, so on few cores its work shows up in both timings.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkCallerOverhead() {
+        // Few enough calls that neither ring fills up, so the drainer never holds back the caller
+        int calls = 20_000;
+        CapturingFlushHandler eagerHandler = new CapturingFlushHandler();
+        CapturingFlushHandler deferredHandler = new CapturingFlushHandler();
+        RingBuffer eager = new RingBuffer(1 << 17, 1000, 60_000, 30_000, eagerHandler);
+        RingBuffer deferred = new RingBuffer(1 << 17, 1000, 60_000, 30_000, deferredHandler);
+        Block root = new Block("root", null);
+        BlockContext eagerRoot = new BlockContext(root);
+        BlockContext deferredRoot = new BlockContext(root);
+
+        long eagerNs = 0;
+        long deferredNs = 0;
+        // Earlier rounds warm up both paths
+        int rounds = 5;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                Block block = new Block("child", eagerRoot.getBlockId());
+                long time = System.currentTimeMillis();
+                eager.pushBlock(block);
+                eager.pushBlockEntered(block.getId(), time);
+                BlockLog startLog = new BlockLog(null, eagerRoot.getBlockId(), eagerRoot.getCurrentLogId(), block.getId(),
+                        LogTypeTraceBlock.TRACE_PRIMARY);
+                eager.pushLog(startLog);
+                eagerRoot.setCurrentLogId(startLog.getId());
+                long end = System.currentTimeMillis();
+                eager.pushBlockExited(block.getId(), end);
+                eager.pushBlockReturned(block.getId(), end);
+            }
+            eagerNs = (System.nanoTime() - start) / calls;
+            eager.forceFlush();
+
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                BlockContext child = enter(deferred, "child", deferredRoot);
+                deferred.captureSubBlockExited(child.getBlockHandle(), System.nanoTime());
+            }
+            deferredNs = (System.nanoTime() - start) / calls;
+            deferred.forceFlush();
+        }
+
+        log.info("Caller cost per sub block entry and exit: eager {} ns, deferred capture {} ns",
+                eagerNs, deferredNs);
+        assertEquals(rounds * calls, eagerHandler.blocks.size());
+        assertEquals(rounds * calls, deferredHandler.blocks.size());
+    }
+}
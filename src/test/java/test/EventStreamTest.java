@@ -0,0 +1,118 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.RingBuffer;
+import dev.kuku.vfl.api.buffer.StripedBuffer;
+import dev.kuku.vfl.api.buffer.SynchronousBuffer;
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.buffer.spool.SpoolCodec;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EventStreamTest {
+
+    /**
+     * Records every event batch in the order it arrives.
+     */
+    private static class EventRecordingHandler extends CapturingFlushHandler {
+        final List<BlockEvent> events = new CopyOnWriteArrayList<>();
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void flushEvents(List<BlockEvent> events) {
+            batchSizes.add(events.size());
+            this.events.addAll(events);
+        }
+    }
+
+    private static List<BlockEvent.Type> pushTrace(VFLBuffer buffer) {
+        Block block = new Block("root", null);
+        buffer.pushBlock(block);
+        buffer.pushBlockEntered(block.getId(), 1);
+        buffer.pushLog(new BlockLog("first", block.getId(), null, LogTypeBase.INFO));
+        buffer.pushBlockExited(block.getId(), 2);
+        // Re-entering the same block must not overwrite the first timestamp
+        buffer.pushBlockEntered(block.getId(), 3);
+        buffer.pushBlockReturned(block.getId(), 4);
+        return List.of(BlockEvent.Type.BLOCK_CREATED, BlockEvent.Type.BLOCK_ENTERED, BlockEvent.Type.LOG,
+                BlockEvent.Type.BLOCK_EXITED, BlockEvent.Type.BLOCK_ENTERED, BlockEvent.Type.BLOCK_RETURNED);
+    }
+
+    private static void assertOrderedSingleBatch(VFLBuffer buffer, EventRecordingHandler handler) {
+        List<BlockEvent.Type> expected = pushTrace(buffer);
+        buffer.forceFlush();
+        List<BlockEvent.Type> actual = new ArrayList<>();
+        for (BlockEvent event : handler.events) {
+            actual.add(event.getType());
+        }
+        assertEquals(expected, actual);
+        assertEquals(List.of(expected.size()), handler.batchSizes);
+        assertEquals(3L, handler.events.get(4).getTime());
+    }
+
+    @Test
+    void synchronousBuffer() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        assertOrderedSingleBatch(new SynchronousBuffer(handler, 100), handler);
+    }
+
+    @Test
+    void asynchronousBuffer() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        assertOrderedSingleBatch(new AsynchronousBuffer(100, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler), handler);
+    }
+
+    @Test
+    void ringBuffer() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        assertOrderedSingleBatch(new RingBuffer(64, 100, 60_000, 5000, handler), handler);
+    }
+
+    @Test
+    void stripedBuffer() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        assertOrderedSingleBatch(new StripedBuffer(4, 100, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler), handler);
+    }
+
+    @Test
+    void legacyHandlersStillReceiveSplitCalls() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        VFLBuffer buffer = new SynchronousBuffer(handler, 100);
+        pushTrace(buffer);
+        buffer.forceFlush();
+        assertEquals(1, handler.blocks.size());
+        assertEquals(1, handler.logs.size());
+        assertEquals(5, handler.flushCalls.get());
+    }
+
+    @Test
+    void spoolCodecKeepsEventOrder() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        List<BlockEvent> events = new ArrayList<>();
+        Block block = new Block("root", null);
+        events.add(BlockEvent.blockCreated(block));
+        events.add(BlockEvent.log(new BlockLog("hi", block.getId(), null, LogTypeBase.WARN)));
+        events.add(BlockEvent.blockReturned(block.getId(), 7));
+
+        SpoolCodec.decode(SpoolCodec.encodeEvents(events)).flushUsing(handler);
+
+        assertEquals(3, handler.events.size());
+        assertEquals(block.getId(), handler.events.get(0).getBlock().getId());
+        assertEquals("hi", handler.events.get(1).getLog().getMessage());
+        assertEquals(BlockEvent.Type.BLOCK_RETURNED, handler.events.get(2).getType());
+        assertEquals(7L, handler.events.get(2).getTime());
+    }
+}
@@ -0,0 +1,197 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.OverflowPolicy;
+import dev.kuku.vfl.api.buffer.flushHandler.FanOutFlushHandler;
+import dev.kuku.vfl.api.metrics.SinkMetricsSnapshot;
+import dev.kuku.vfl.internal.buffer.flushHandler.VFLFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FanOutFlushHandlerTest {
+
+    private static List<BlockEvent> batch(String name) {
+        Block block = new Block(name, null);
+        List<BlockEvent> events = new ArrayList<>();
+        events.add(BlockEvent.blockCreated(block));
+        events.add(BlockEvent.log(new BlockLog("log of " + name, block.getId(), null, LogTypeBase.INFO)));
+        return events;
+    }
+
+    /**
+     * Records the block name of every batch, optionally waiting for a latch before each one.
+     */
+    static class RecordingSink extends CapturingFlushHandler {
+        final List<String> batches = new CopyOnWriteArrayList<>();
+        final CountDownLatch release;
+
+        RecordingSink(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void flushEvents(List<BlockEvent> events) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batches.add(events.get(0).getBlock().getName());
+            super.flushEvents(events);
+        }
+    }
+
+    /**
+     * Waits until the sink's worker took the queued batch.
+     */
+    private static void awaitEmptyQueue(FanOutFlushHandler handler, String sink) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.getSinkMetrics(sink).getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void everySinkReceivesEveryBatchInOrder() throws Exception {
+        RecordingSink disk = new RecordingSink(null);
+        RecordingSink hub = new RecordingSink(null);
+        FanOutFlushHandler handler = new FanOutFlushHandler(Arrays.asList(
+                new FanOutFlushHandler.Sink("disk", disk, 64, OverflowPolicy.block(1000)),
+                new FanOutFlushHandler.Sink("hub", hub, 64, OverflowPolicy.block(1000))));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            handler.flushEvents(batch("batch " + i));
+            expected.add("batch " + i);
+        }
+        handler.flushBlocks(Arrays.asList(new Block("single", null)));
+        expected.add("single");
+        assertTrue(handler.awaitIdle(5000));
+        handler.shutdown();
+
+        assertEquals(expected, disk.batches);
+        assertEquals(expected, hub.batches);
+        assertEquals(41, disk.totalEvents());
+        SinkMetricsSnapshot metrics = handler.getSinkMetrics("hub");
+        assertEquals(21, metrics.getDeliveredBatchCount());
+        assertEquals(41, metrics.getDeliveredEventCount());
+        assertEquals(21, metrics.getDeliveryLatencyNanos().getCount());
+        assertEquals(0, metrics.getDroppedBatchCount());
+    }
+
+    @Test
+    void stalledSinkDelaysNeitherTheCallerNorTheOtherSinks() throws Exception {
+        CountDownLatch hubDown = new CountDownLatch(1);
+        RecordingSink disk = new RecordingSink(null);
+        RecordingSink hub = new RecordingSink(hubDown);
+        FanOutFlushHandler handler = new FanOutFlushHandler(Arrays.asList(
+                new FanOutFlushHandler.Sink("disk", disk, 64, OverflowPolicy.dropNewest()),
+                new FanOutFlushHandler.Sink("hub", hub, 4, OverflowPolicy.dropNewest())));
+
+        handler.flushEvents(batch("batch 0"));
+        awaitEmptyQueue(handler, "hub");
+        // The hub sink stays stalled until released below, so these calls only return because they never wait for it
+        for (int i = 1; i < 50; i++) {
+            handler.flushEvents(batch("batch " + i));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (disk.batches.size() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(50, disk.batches.size());
+        assertEquals(0, hub.batches.size());
+        // One batch held by the stalled worker, four queued, the rest dropped
+        assertEquals(45, handler.getSinkMetrics("hub").getDroppedBatchCount());
+        assertEquals(4, handler.getSinkMetrics("hub").getQueueDepth());
+
+        hubDown.countDown();
+        assertTrue(handler.awaitIdle(5000));
+        handler.shutdown();
+        assertEquals(Arrays.asList("batch 0", "batch 1", "batch 2", "batch 3", "batch 4"), hub.batches);
+    }
+
+    @Test
+    void dropOldestBatchKeepsTheNewestBatches() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(stalled);
+        FanOutFlushHandler handler = new FanOutFlushHandler(Arrays.asList(
+                new FanOutFlushHandler.Sink("slow", sink, 3, OverflowPolicy.dropOldestBatch())));
+
+        handler.flushEvents(batch("first"));
+        awaitEmptyQueue(handler, "slow");
+        for (int i = 0; i < 10; i++) {
+            handler.flushEvents(batch("batch " + i));
+        }
+        stalled.countDown();
+        assertTrue(handler.awaitIdle(5000));
+        handler.shutdown();
+
+        assertEquals(Arrays.asList("first", "batch 7", "batch 8", "batch 9"), sink.batches);
+        assertEquals(7, handler.getSinkMetrics("slow").getDroppedBatchCount());
+        assertEquals(14, handler.getSinkMetrics("slow").getDroppedEventCount());
+    }
+
+    @Test
+    void shutdownDropsQueuedBatchesSoAwaitIdleReturns() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(stalled);
+        FanOutFlushHandler handler = new FanOutFlushHandler(Arrays.asList(
+                new FanOutFlushHandler.Sink("slow", sink, 8, OverflowPolicy.dropNewest())));
+
+        handler.flushEvents(batch("first"));
+        awaitEmptyQueue(handler, "slow");
+        for (int i = 0; i < 4; i++) {
+            handler.flushEvents(batch("batch " + i));
+        }
+        assertEquals(4, handler.getSinkMetrics("slow").getQueueDepth());
+
+        // Interrupts the stalled worker, which then finishes its batch, and drops the queued ones
+        handler.shutdown();
+        assertTrue(handler.awaitIdle(5000));
+        assertEquals(Arrays.asList("first"), sink.batches);
+        assertEquals(4, handler.getSinkMetrics("slow").getDroppedBatchCount());
+        assertEquals(0, handler.getSinkMetrics("slow").getQueueDepth());
+    }
+
+    @Test
+    void failingSinkIsCountedWithoutAffectingTheOthers() throws Exception {
+        RecordingSink disk = new RecordingSink(null);
+        VFLFlushHandler broken = new CapturingFlushHandler() {
+            @Override
+            public void flushEvents(List<BlockEvent> events) {
+                throw new IllegalStateException("sink unavailable");
+            }
+        };
+        FanOutFlushHandler handler = new FanOutFlushHandler(Arrays.asList(
+                new FanOutFlushHandler.Sink("broken", broken),
+                new FanOutFlushHandler.Sink("disk", disk)));
+
+        for (int i = 0; i < 5; i++) {
+            handler.flushEvents(batch("batch " + i));
+        }
+        assertTrue(handler.awaitIdle(5000));
+        handler.shutdown();
+
+        assertEquals(5, disk.batches.size());
+        List<SinkMetricsSnapshot> metrics = handler.getSinkMetrics();
+        assertEquals("broken", metrics.get(0).getName());
+        assertEquals(5, metrics.get(0).getFailedBatchCount());
+        assertEquals(0, metrics.get(0).getDeliveredBatchCount());
+        assertEquals(5, metrics.get(1).getDeliveredBatchCount());
+    }
+}
@@ -0,0 +1,232 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.FileFlushHandler;
+import dev.kuku.vfl.api.buffer.flushHandler.FileFormat;
+import dev.kuku.vfl.api.buffer.flushHandler.FileSegmentReader;
+import dev.kuku.vfl.api.buffer.flushHandler.FileSyncPolicy;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileFlushHandlerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(FileFlushHandlerTest.class);
+
+    private static List<BlockEvent> batch(String prefix, int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("OrderService.processOrder", null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), block.getCreatedAt()));
+            events.add(BlockEvent.log(new BlockLog(prefix + " order " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.blockExited(block.getId(), block.getCreatedAt() + 2));
+            events.add(BlockEvent.blockReturned(block.getId(), block.getCreatedAt() + 3));
+        }
+        return events;
+    }
+
+    private static List<BlockEvent> readAll(Path dir) throws Exception {
+        List<BlockEvent> events = new ArrayList<>();
+        FileSegmentReader.readAll(dir, events::add);
+        return events;
+    }
+
+    private static void assertSameEvents(List<BlockEvent> expected, List<BlockEvent> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            BlockEvent e = expected.get(i);
+            BlockEvent a = actual.get(i);
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getBlockId(), a.getBlockId());
+            assertEquals(Long.valueOf(e.getTime()), Long.valueOf(a.getTime()));
+            if (e.getBlock() != null) {
+                assertEquals(e.getBlock().getName(), a.getBlock().getName());
+                assertEquals(e.getBlock().getParentBlockId(), a.getBlock().getParentBlockId());
+            }
+            if (e.getLog() != null) {
+                assertEquals(e.getLog().getId(), a.getLog().getId());
+                assertEquals(e.getLog().getMessage(), a.getLog().getMessage());
+                assertEquals(e.getLog().getLogType(), a.getLog().getLogType());
+            }
+        }
+    }
+
+    @Test
+    void batchesRoundTripInBothFormats() throws Exception {
+        for (FileFormat format : FileFormat.values()) {
+            Path dir = Files.createTempDirectory("vfl-file");
+            FileFlushHandler handler = new FileFlushHandler(dir, format, FileSyncPolicy.everyFlush(),
+                    1024 * 1024, 0, true);
+            List<BlockEvent> first = batch("first", 20);
+            List<BlockEvent> second = batch("second \u00e9\u4e2d\ud83d\ude00", 5);
+            Block single = new Block("single", null);
+            handler.flushEvents(first);
+            handler.flushBlocks(Collections.singletonList(single));
+            handler.flushEvents(second);
+            handler.shutdown();
+
+            List<BlockEvent> expected = new ArrayList<>(first);
+            expected.add(BlockEvent.blockCreated(single));
+            expected.addAll(second);
+            List<BlockEvent> read = readAll(dir);
+            assertSameEvents(expected, read);
+            assertEquals(expected.size(), handler.getWrittenEventCount());
+            assertEquals(1, FileSegmentReader.segments(dir).size());
+            // One sync per flush and one on shutdown
+            assertEquals(4, handler.getSyncCount());
+        }
+    }
+
+    @Test
+    void rotatesBySizeAndKeepsNumberingAfterARestart() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-file");
+        FileFlushHandler handler = new FileFlushHandler(dir, FileFormat.BINARY, FileSyncPolicy.never(),
+                4 * 1024, 0, true);
+        List<BlockEvent> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            List<BlockEvent> events = batch("batch " + i, 20);
+            handler.flushEvents(events);
+            expected.addAll(events);
+        }
+        handler.shutdown();
+        long segments = handler.getSegmentCount();
+        assertTrue(segments > 1, "expected rotation, got " + segments + " segments");
+
+        FileFlushHandler restarted = new FileFlushHandler(dir, FileFormat.NDJSON, FileSyncPolicy.never(),
+                4 * 1024, 0, true);
+        List<BlockEvent> more = batch("after restart", 3);
+        restarted.flushEvents(more);
+        restarted.shutdown();
+        expected.addAll(more);
+
+        List<Path> files = FileSegmentReader.segments(dir);
+        assertEquals(segments + 1, files.size());
+        assertTrue(files.get(files.size() - 1).toString().endsWith(".ndjson"));
+        assertSameEvents(expected, readAll(dir));
+    }
+
+    @Test
+    void rotatesByAge() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-file");
+        FileFlushHandler handler = new FileFlushHandler(dir, FileFormat.NDJSON, FileSyncPolicy.never(),
+                1024 * 1024, 50, true);
+        handler.flushEvents(batch("old", 1));
+        handler.flushEvents(batch("still young", 1));
+        Thread.sleep(80);
+        handler.flushEvents(batch("new", 1));
+        handler.shutdown();
+
+        assertEquals(2, FileSegmentReader.segments(dir).size());
+        assertEquals(15, readAll(dir).size());
+    }
+
+    @Test
+    void readerStopsAtABatchCutShortByACrash() throws Exception {
+        for (FileFormat format : FileFormat.values()) {
+            Path dir = Files.createTempDirectory("vfl-file");
+            FileFlushHandler handler = new FileFlushHandler(dir, format, FileSyncPolicy.never(),
+                    1024 * 1024, 0, true);
+            List<BlockEvent> kept = batch("kept", 10);
+            handler.flushEvents(kept);
+            handler.flushEvents(batch("torn", 10));
+            handler.shutdown();
+
+            Path segment = FileSegmentReader.segments(dir).get(0);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 25);
+            }
+
+            List<BlockEvent> read = readAll(dir);
+            if (format == FileFormat.BINARY) {
+                // The whole torn batch is one frame
+                assertSameEvents(kept, read);
+            } else {
+                // Every complete line survives
+                assertSameEvents(kept, read.subList(0, kept.size()));
+                assertTrue(read.size() < 100, format + " read " + read.size());
+            }
+        }
+    }
+
+    @Test
+    void concurrentFlushesAreCommittedInGroups() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-file");
+        FileFlushHandler handler = new FileFlushHandler(dir, FileFormat.BINARY, FileSyncPolicy.everyFlush(),
+                64 * 1024 * 1024, 0, true);
+        int threads = 8;
+        int flushesPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < flushesPerThread; i++) {
+                        handler.flushEvents(batch("thread " + thread, 4));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        handler.shutdown();
+
+        int flushes = threads * flushesPerThread;
+        assertEquals(flushes * 20L, handler.getWrittenEventCount());
+        assertEquals(flushes * 20, readAll(dir).size());
+        assertEquals(handler.getGroupWriteCount() + 1, handler.getSyncCount());
+        log.info("{} concurrent flushes committed in {} group writes", flushes, handler.getGroupWriteCount());
+        assertTrue(handler.getGroupWriteCount() <= flushes);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkSingleThreadThroughput() throws Exception {
+        for (FileFormat format : FileFormat.values()) {
+            Path dir = Files.createTempDirectory("vfl-file");
+            FileFlushHandler handler = new FileFlushHandler(dir, format, FileSyncPolicy.interval(1000),
+                    64 * 1024 * 1024, 0, true);
+            List<BlockEvent> events = batch("benchmark", 200);
+            // Warm up before timing
+            for (int i = 0; i < 200; i++) {
+                handler.flushEvents(events);
+            }
+            int rounds = 500;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                handler.flushEvents(events);
+            }
+            long nanos = System.nanoTime() - start;
+            handler.shutdown();
+
+            long eventsPerSecond = rounds * (long) events.size() * 1_000_000_000L / nanos;
+            log.info("{}: {} events/s, {} bytes per event", format, eventsPerSecond,
+                    handler.getWrittenBytes() / handler.getWrittenEventCount());
+            assertEquals(700L * events.size(), handler.getWrittenEventCount());
+        }
+    }
+}
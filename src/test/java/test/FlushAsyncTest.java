@@ -0,0 +1,95 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.RingBuffer;
+import dev.kuku.vfl.api.buffer.StripedBuffer;
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlushAsyncTest {
+
+    /**
+     * Holds every flush until released, so the test controls exactly when the handler acknowledges a batch.
+     */
+    private static class GatedFlushHandler extends CapturingFlushHandler {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.flushBlocks(blocks);
+        }
+    }
+
+    private static void assertCompletesOnlyAfterHandler(VFLBuffer buffer, GatedFlushHandler handler) throws Exception {
+        buffer.pushBlock(new Block("b", null));
+
+        CompletableFuture<Void> flushed = buffer.flushAsync();
+        assertTrue(handler.entered.await(5, TimeUnit.SECONDS));
+        assertFalse(flushed.isDone());
+
+        handler.gate.countDown();
+        flushed.get(5, TimeUnit.SECONDS);
+        assertEquals(1, handler.blocks.size());
+    }
+
+    @Test
+    void asynchronousBuffer() throws Exception {
+        GatedFlushHandler handler = new GatedFlushHandler();
+        assertCompletesOnlyAfterHandler(new AsynchronousBuffer(100, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler), handler);
+    }
+
+    @Test
+    void stripedBuffer() throws Exception {
+        GatedFlushHandler handler = new GatedFlushHandler();
+        assertCompletesOnlyAfterHandler(new StripedBuffer(4, 100, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler), handler);
+    }
+
+    @Test
+    void ringBuffer() throws Exception {
+        GatedFlushHandler handler = new GatedFlushHandler();
+        assertCompletesOnlyAfterHandler(new RingBuffer(64, 100, 60_000, 5000, handler), handler);
+    }
+
+    @Test
+    void forceFlushReturnsOnceTheHandlerFinished() throws Exception {
+        GatedFlushHandler handler = new GatedFlushHandler();
+        AsynchronousBuffer buffer = new AsynchronousBuffer(100, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+        buffer.pushBlock(new Block("gated", null));
+
+        CompletableFuture<Void> forced = CompletableFuture.runAsync(buffer::forceFlush);
+        assertTrue(handler.entered.await(5, TimeUnit.SECONDS));
+        assertFalse(forced.isDone());
+        handler.gate.countDown();
+        forced.get(5, TimeUnit.SECONDS);
+        assertEquals(1, handler.blocks.size());
+
+        // Every force flush has delivered its batch by the time it returns
+        for (int i = 0; i < 20; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+            buffer.forceFlush();
+            assertEquals(i + 2, handler.blocks.size());
+        }
+    }
+}
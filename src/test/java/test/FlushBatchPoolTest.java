@@ -0,0 +1,43 @@
+package test;
+
+import dev.kuku.vfl.internal.buffer.FlushBatch;
+import dev.kuku.vfl.internal.buffer.FlushBatchPool;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlushBatchPoolTest {
+
+    @Test
+    void releasedBatchIsClearedAndReused() {
+        FlushBatchPool pool = new FlushBatchPool(2, 16);
+        FlushBatch batch = pool.acquire();
+        batch.addBlock(new Block("b", null));
+        batch.addBlockEntered("id", 1);
+
+        pool.release(batch);
+        FlushBatch reused = pool.acquire();
+
+        assertSame(batch, reused);
+        assertTrue(reused.isEmpty());
+        assertEquals(0, reused.getItemCount());
+    }
+
+    @Test
+    void poolKeepsAtMostMaxPooledBatches() {
+        FlushBatchPool pool = new FlushBatchPool(1, 16);
+        FlushBatch first = pool.acquire();
+        FlushBatch second = pool.acquire();
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.getPooledCount());
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+}
@@ -0,0 +1,187 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.SynchronousBuffer;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.api.metrics.BufferMetricsSnapshot;
+import dev.kuku.vfl.api.metrics.HubMetricsSnapshot;
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.StandInHub;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end flush throughput: several threads run flows through a buffer and a {@link VFLHubFlushHandler} into a
+ * {@link StandInHub} with a little latency, and each test logs events/s, flush latency and lost events.
+ */
+@Tag("benchmark")
+public class FlushBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(FlushBenchmarkTest.class);
+
+    private static final int THREADS = 8;
+    private static final int FLOWS_PER_THREAD = 250;
+    private static final int HUB_LATENCY_MS = 1;
+
+    /**
+     * Pushes what an instrumented {@code FlowService.linearFlow()} does: a root block with four logs calling five
+     * sub-blocks, each entered, logged, exited and returned, then flushes the trace like the root block advice.
+     *
+     * @return number of events pushed
+     */
+    private static int runFlow(VFLBuffer buffer) {
+        int events = 0;
+        Block root = new Block("linearFlow", null);
+        buffer.pushBlock(root);
+        buffer.pushBlockEntered(root.getId(), root.getCreatedAt());
+        events += 2;
+        String lastLogId = null;
+        for (int i = 0; i < 4; i++) {
+            BlockLog info = new BlockLog("Num " + i + " = 12", root.getId(), lastLogId, LogTypeBase.INFO);
+            buffer.pushLog(info);
+            lastLogId = info.getId();
+            events++;
+        }
+        for (int i = 0; i < 5; i++) {
+            Block sub = new Block(i % 2 == 0 ? "square" : "sum", root.getId());
+            BlockLog trace = new BlockLog(null, root.getId(), lastLogId, sub.getId(), LogTypeTraceBlock.TRACE_PRIMARY);
+            buffer.pushLog(trace);
+            lastLogId = trace.getId();
+            buffer.pushBlock(sub);
+            buffer.pushBlockEntered(sub.getId(), sub.getCreatedAt());
+            buffer.pushLog(new BlockLog("Squaring " + i, sub.getId(), null, LogTypeBase.INFO));
+            long now = System.currentTimeMillis();
+            buffer.pushBlockExited(sub.getId(), now);
+            buffer.pushBlockReturned(sub.getId(), now);
+            events += 6;
+        }
+        long now = System.currentTimeMillis();
+        buffer.pushBlockExited(root.getId(), now);
+        buffer.pushBlockReturned(root.getId(), now);
+        buffer.flushTrace(root.getId());
+        return events + 2;
+    }
+
+    /**
+     * Runs the flows on {@link #THREADS} threads and force flushes the rest.
+     *
+     * @return nanoseconds from the first flow until the buffer was empty
+     */
+    private static long drive(VFLBuffer buffer, AtomicLong pushed) throws InterruptedException {
+        ExecutorService producers = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            producers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < FLOWS_PER_THREAD; i++) {
+                    pushed.addAndGet(runFlow(buffer));
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(60, TimeUnit.SECONDS));
+        buffer.forceFlush();
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(String name, long pushed, long nanos, BufferMetricsSnapshot buffer,
+                               HubMetricsSnapshot hub, long received) {
+        log.info(String.format("%s: %d events/s, flush latency p50 %.2f ms p99 %.2f ms over %d flushes, "
+                        + "hub request p99 %.2f ms, %d of %d events lost (%d dropped by the buffer, %d error responses)",
+                name,
+                pushed * 1_000_000_000L / nanos,
+                buffer.getFlushLatencyNanos().getPercentile(50) / 1e6,
+                buffer.getFlushLatencyNanos().getPercentile(99) / 1e6,
+                buffer.getFlushCount(),
+                hub.getRequestLatencyNanos().getPercentile(99) / 1e6,
+                pushed - received,
+                pushed,
+                buffer.getDroppedEventCount(),
+                hub.getErrorResponseCount()));
+    }
+
+    @Test
+    void synchronousBuffer() throws Exception {
+        try (StandInHub hub = new StandInHub(HUB_LATENCY_MS)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            SynchronousBuffer buffer = new SynchronousBuffer(handler, 500);
+            AtomicLong pushed = new AtomicLong();
+
+            long nanos = drive(buffer, pushed);
+            long received = hub.countItems();
+            report("SynchronousBuffer", pushed.get(), nanos, buffer.getMetrics().snapshot(),
+                    handler.getMetrics().snapshot(), received);
+
+            assertEquals(THREADS * FLOWS_PER_THREAD * 38L, pushed.get());
+            assertEquals(pushed.get(), received);
+        }
+    }
+
+    @Test
+    void asynchronousBuffer() throws Exception {
+        try (StandInHub hub = new StandInHub(HUB_LATENCY_MS)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            ExecutorService flushExecutor = Executors.newFixedThreadPool(4);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            AsynchronousBuffer buffer = new AsynchronousBuffer(500, 100, 30_000, flushExecutor, scheduler, handler);
+            AtomicLong pushed = new AtomicLong();
+
+            long nanos = drive(buffer, pushed);
+            long received = hub.countItems();
+            report("AsynchronousBuffer", pushed.get(), nanos, buffer.getMetrics().snapshot(),
+                    handler.getMetrics().snapshot(), received);
+            flushExecutor.shutdown();
+            scheduler.shutdown();
+
+            assertEquals(pushed.get(), received);
+            assertEquals(0, buffer.getDroppedItemCount());
+        }
+    }
+
+    @Test
+    void asynchronousBufferWithHubErrors() throws Exception {
+        try (StandInHub hub = new StandInHub(HUB_LATENCY_MS)) {
+            hub.setErrorRate(0.05, 503);
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            ExecutorService flushExecutor = Executors.newFixedThreadPool(4);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            AsynchronousBuffer buffer = new AsynchronousBuffer(500, 100, 30_000, flushExecutor, scheduler, handler);
+            AtomicLong pushed = new AtomicLong();
+
+            long nanos = drive(buffer, pushed);
+            long received = hub.countItems();
+            HubMetricsSnapshot hubMetrics = handler.getMetrics().snapshot();
+            report("AsynchronousBuffer, 5% hub errors", pushed.get(), nanos, buffer.getMetrics().snapshot(),
+                    hubMetrics, received);
+            flushExecutor.shutdown();
+            scheduler.shutdown();
+
+            // Without retries every failed request loses its batch
+            assertTrue(hubMetrics.getErrorResponseCount() > 0);
+            assertTrue(received < pushed.get());
+        }
+    }
+}
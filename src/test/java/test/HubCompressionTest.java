@@ -0,0 +1,122 @@
+package test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.kuku.vfl.api.buffer.flushHandler.HubCompression;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.StandInHub;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HubCompressionTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HubCompressionTest.class);
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("OrderService.processOrder", null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), i));
+            events.add(BlockEvent.log(new BlockLog("Validated order " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.blockReturned(block.getId(), i + 1));
+        }
+        return events;
+    }
+
+    @Test
+    void gzipBodiesAreDecodedByTheHub() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, true, HubCompression.gzip(1024));
+            // Several batches so pooled deflaters are reused after a reset
+            for (int i = 0; i < 3; i++) {
+                handler.flushEvents(batch(50));
+            }
+
+            assertEquals(3, hub.requests.size());
+            for (StandInHub.Request request : hub.requests) {
+                assertEquals("gzip", request.contentEncoding);
+                assertTrue(request.wireBytes * 3 < request.body.length,
+                        request.wireBytes + " bytes on the wire for " + request.body.length);
+                JsonNode batch = new ObjectMapper().readTree(request.body);
+                assertEquals(50, batch.get("blocks").size());
+            }
+        }
+    }
+
+    @Test
+    void deflateBodiesAreDecodedByTheHub() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, false, HubCompression.deflate(0));
+            handler.flushBlocks(Collections.singletonList(new Block("block", null)));
+
+            StandInHub.Request request = hub.requests.get(0);
+            assertEquals("deflate", request.contentEncoding);
+            assertEquals(1, new ObjectMapper().readTree(request.body).size());
+        }
+    }
+
+    @Test
+    void bodiesBelowTheThresholdAreSentAsTheyAre() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, true, HubCompression.gzip(64 * 1024));
+            handler.flushEvents(batch(2));
+
+            StandInHub.Request request = hub.requests.get(0);
+            assertNull(request.contentEncoding);
+            assertEquals(request.body.length, request.wireBytes);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkWireBytesAndCpuPerBatch() throws Exception {
+        int batches = 30;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        HubCompression[] modes = {HubCompression.none(), HubCompression.gzip(1024), HubCompression.deflate(1024)};
+        long[] wireBytesPerBatch = new long[modes.length];
+        for (int m = 0; m < modes.length; m++) {
+            try (StandInHub hub = new StandInHub(0)) {
+                VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, true, modes[m]);
+                for (int i = 0; i < 5; i++) {
+                    handler.flushEvents(batch(200));
+                }
+                hub.requests.clear();
+
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                for (int i = 0; i < batches; i++) {
+                    handler.flushEvents(batch(200));
+                }
+                long cpuPerBatchMicros = (threads.getCurrentThreadCpuTime() - cpuStart) / batches / 1000;
+
+                long wireBytes = 0;
+                long bodyBytes = 0;
+                for (StandInHub.Request request : hub.requests) {
+                    wireBytes += request.wireBytes;
+                    bodyBytes += request.body.length;
+                }
+                wireBytesPerBatch[m] = wireBytes / batches;
+                log.info("{}: {} bytes on the wire per batch of {} JSON bytes, {} us CPU per batch",
+                        modes[m].getEncoding(), wireBytesPerBatch[m], bodyBytes / batches, cpuPerBatchMicros);
+            }
+        }
+        assertTrue(wireBytesPerBatch[1] * 3 < wireBytesPerBatch[0]);
+        assertTrue(wireBytesPerBatch[2] * 3 < wireBytesPerBatch[0]);
+    }
+}
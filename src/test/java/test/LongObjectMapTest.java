@@ -0,0 +1,50 @@
+package test;
+
+import dev.kuku.vfl.internal.util.LongObjectMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LongObjectMapTest {
+
+    @Test
+    void behavesLikeHashMapUnderRandomOperations() {
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Small key range so removals hit populated probe chains
+            long key = random.nextInt(2000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                map.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            } else if (op == 1) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void clearAndNegativeKeys() {
+        LongObjectMap<String> map = new LongObjectMap<>(16);
+        map.put(-1L, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+        assertEquals("minus one", map.get(-1L));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(-1L));
+    }
+}
@@ -0,0 +1,168 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.OffHeapBuffer;
+import dev.kuku.vfl.api.buffer.flushHandler.HubCompression;
+import dev.kuku.vfl.api.buffer.flushHandler.HubWireFormat;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.buffer.arena.EventRecords;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+import services.StandInHub;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapBufferTest {
+
+    private static class EventRecordingHandler extends CapturingFlushHandler {
+        final List<BlockEvent> events = new CopyOnWriteArrayList<>();
+        final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public void flushEvents(List<BlockEvent> events) {
+            batches.incrementAndGet();
+            this.events.addAll(events);
+        }
+    }
+
+    private static OffHeapBuffer newBuffer(int arenaSizeBytes, CapturingFlushHandler handler) {
+        return new OffHeapBuffer(arenaSizeBytes, 2, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+    }
+
+    @Test
+    void eventsSurviveTheArenaUnchanged() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        OffHeapBuffer buffer = newBuffer(64 * 1024, handler);
+
+        Block block = new Block("r\u00e4ksm\u00f6rg\u00e5s \uD83E\uDD90", null);
+        BlockLog blockLog = new BlockLog("na\u00efve \u2013 \u2713", block.getId(), null, LogTypeBase.ERROR);
+        buffer.pushBlock(block);
+        buffer.pushBlockEntered(block.getId(), 11);
+        buffer.pushLog(blockLog);
+        buffer.pushBlockExited(block.getId(), 12);
+        buffer.pushBlockReturned(block.getId(), 13);
+        buffer.forceFlush();
+
+        assertEquals(5, handler.events.size());
+        Block flushedBlock = handler.events.get(0).getBlock();
+        assertEquals(block.getId(), flushedBlock.getId());
+        assertEquals(block.getName(), flushedBlock.getName());
+        assertNull(flushedBlock.getParentBlockId());
+        assertEquals(block.getCreatedAt(), flushedBlock.getCreatedAt());
+        BlockLog flushedLog = handler.events.get(2).getLog();
+        assertEquals(blockLog.getId(), flushedLog.getId());
+        assertEquals(blockLog.getMessage(), flushedLog.getMessage());
+        assertEquals(blockLog.getLogType(), flushedLog.getLogType());
+        assertEquals(blockLog.getTimestamp(), flushedLog.getTimestamp());
+        assertEquals(BlockEvent.Type.BLOCK_RETURNED, handler.events.get(4).getType());
+        assertEquals(13L, handler.events.get(4).getTime());
+        assertEquals(0, buffer.getCurrentBufferSize());
+    }
+
+    @Test
+    void fullArenaIsHandedOffAndRecycled() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        OffHeapBuffer buffer = newBuffer(1024, handler);
+
+        Block block = new Block("root", null);
+        int pushes = 500;
+        for (int i = 0; i < pushes; i++) {
+            buffer.pushBlockEntered(block.getId(), i);
+        }
+        buffer.forceFlush();
+
+        assertEquals(pushes, handler.events.size());
+        for (int i = 0; i < pushes; i++) {
+            assertEquals(i, handler.events.get(i).getTime());
+        }
+        assertTrue(handler.batches.get() > buffer.getArenaCount(), "arenas should have been reused");
+        assertEquals(0, buffer.getCurrentBufferSize());
+    }
+
+    @Test
+    void handlerCanReadRecordsDirectly() {
+        AtomicInteger records = new AtomicInteger();
+        AtomicInteger bytes = new AtomicInteger();
+        CapturingFlushHandler handler = new CapturingFlushHandler() {
+            @Override
+            public void flushRecords(ByteBuffer buffer, int count) {
+                records.addAndGet(count);
+                bytes.addAndGet(buffer.remaining());
+            }
+        };
+        OffHeapBuffer buffer = newBuffer(64 * 1024, handler);
+
+        Block block = new Block("root", null);
+        buffer.pushBlock(block);
+        buffer.pushBlockEntered(block.getId(), 1);
+        int expectedBytes = buffer.getCurrentBufferBytes();
+        buffer.forceFlush();
+
+        assertEquals(2, records.get());
+        assertEquals(expectedBytes, bytes.get());
+        assertEquals(0, handler.flushCalls.get());
+    }
+
+    @Test
+    void recordSizeIsExact() {
+        Block block = new Block("r\u00e4ksm\u00f6rg\u00e5s \uD83E\uDD90 \uD800", null);
+        BlockLog blockLog = new BlockLog("na\u00efve \u2013 \u2713", block.getId(), null, LogTypeBase.ERROR);
+        ByteBuffer out = ByteBuffer.allocate(1024);
+
+        EventRecords.write(out, BlockEvent.Type.BLOCK_CREATED, block, null, null, 0);
+        assertEquals(EventRecords.size(BlockEvent.Type.BLOCK_CREATED, block, null, null), out.position());
+        out.clear();
+        EventRecords.write(out, BlockEvent.Type.LOG, null, blockLog, null, 0);
+        assertEquals(EventRecords.size(BlockEvent.Type.LOG, null, blockLog, null), out.position());
+    }
+
+    @Test
+    void binaryHubHandlerSendsArenaRecordsAsTheyAre() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler handler = new VFLHubFlushHandler(hub.getUrl(), true, true, HubCompression.none(),
+                    HubWireFormat.BINARY);
+            OffHeapBuffer buffer = new OffHeapBuffer(64 * 1024, 2, 60_000, 5000,
+                    Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+
+            Block block = new Block("r\u00e4ksm\u00f6rg\u00e5s", null);
+            buffer.pushBlock(block);
+            buffer.pushBlockEntered(block.getId(), 11);
+            buffer.pushLog(new BlockLog("na\u00efve", block.getId(), null, LogTypeBase.INFO));
+            buffer.pushBlockReturned(block.getId(), 13);
+            buffer.forceFlush();
+
+            assertEquals(1, hub.countRequests(StandInHub.BATCH_PATH));
+            List<BlockEvent> received = hub.requests.get(0).events;
+            assertEquals(4, received.size());
+            assertEquals(block.getName(), received.get(0).getBlock().getName());
+            assertEquals("na\u00efve", received.get(2).getLog().getMessage());
+            assertEquals(13L, received.get(3).getTime());
+        }
+    }
+
+    @Test
+    void eventLargerThanAnArenaIsDropped() {
+        EventRecordingHandler handler = new EventRecordingHandler();
+        OffHeapBuffer buffer = newBuffer(256, handler);
+
+        Block block = new Block("root", null);
+        buffer.pushLog(new BlockLog("x".repeat(1000), block.getId(), null, LogTypeBase.INFO));
+        buffer.pushBlockEntered(block.getId(), 1);
+        buffer.forceFlush();
+
+        assertEquals(1L, buffer.getDroppedItemCount());
+        assertEquals(1, handler.events.size());
+    }
+}
@@ -0,0 +1,142 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.PipelinedFlushHandler;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.StandInHub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelinedFlushHandlerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedFlushHandlerTest.class);
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("block " + i, null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), i));
+            events.add(BlockEvent.log(new BlockLog("log " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.blockReturned(block.getId(), i + 1));
+        }
+        return events;
+    }
+
+    @Test
+    void sendsEveryBatchWithItsSectionsInOrder() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            PipelinedFlushHandler handler = new PipelinedFlushHandler(new VFLHubFlushHandler(hub.getUrl()), 2, 4, 1, 4);
+            for (int i = 0; i < 5; i++) {
+                handler.flushEvents(batch(3));
+            }
+            assertTrue(handler.awaitIdle(10_000));
+            handler.shutdown();
+
+            assertEquals(20, hub.requests.size());
+            for (int i = 0; i < 20; i += 4) {
+                assertEquals("/api/v1/blocks", hub.requests.get(i).path);
+                assertEquals("/api/v1/logs", hub.requests.get(i + 1).path);
+                assertEquals("/api/v1/block-entered", hub.requests.get(i + 2).path);
+                assertEquals("/api/v1/block-returned", hub.requests.get(i + 3).path);
+            }
+            assertEquals(0, handler.getInFlightBatchCount());
+        }
+    }
+
+    @Test
+    void queueDepthIsObservableWhileTheHubIsSlow() throws Exception {
+        try (StandInHub hub = new StandInHub(200)) {
+            PipelinedFlushHandler handler = new PipelinedFlushHandler(new VFLHubFlushHandler(hub.getUrl()), 1, 8, 1, 8);
+            for (int i = 0; i < 4; i++) {
+                handler.flushEvents(batch(1));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((handler.getSendQueueDepth() < 2 || handler.getActiveSendCount() == 0)
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(handler.getSendQueueDepth() >= 2, "send queue depth " + handler.getSendQueueDepth());
+            assertEquals(1, handler.getActiveSendCount());
+            assertEquals(4, handler.getInFlightBatchCount());
+            assertTrue(handler.awaitIdle(10_000));
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownDropsQueuedBatchesSoAwaitIdleReturns() throws Exception {
+        try (StandInHub hub = new StandInHub(100)) {
+            PipelinedFlushHandler handler = new PipelinedFlushHandler(new VFLHubFlushHandler(hub.getUrl()), 1, 8, 1, 8);
+            for (int i = 0; i < 4; i++) {
+                handler.flushEvents(batch(1));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((handler.getSendQueueDepth() < 2 || handler.getActiveSendCount() == 0)
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(4, handler.getInFlightBatchCount());
+
+            handler.shutdown();
+            assertTrue(handler.awaitIdle(5000));
+            assertEquals(0, handler.getInFlightBatchCount());
+            assertEquals(0, handler.getSendQueueDepth());
+            // Only the batch being sent when the pipeline shut down reached the hub
+            assertTrue(hub.requests.size() <= 4, hub.requests.size() + " requests");
+        }
+    }
+
+    /**
+     * Compares flushing batches one after another through the hub handler with the pipelined handler.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstSequentialFlush() throws Exception {
+        int batches = 20;
+        int latencyMs = 20;
+        List<List<BlockEvent>> work = new ArrayList<>();
+        for (int i = 0; i < batches; i++) {
+            work.add(batch(200));
+        }
+        try (StandInHub hub = new StandInHub(latencyMs)) {
+            VFLHubFlushHandler sequential = new VFLHubFlushHandler(hub.getUrl());
+            // Warm up the client and Jackson
+            sequential.flushEvents(work.get(0));
+
+            long start = System.nanoTime();
+            for (List<BlockEvent> events : work) {
+                sequential.flushEvents(events);
+            }
+            long sequentialMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            hub.maxConcurrentRequests.set(0);
+            PipelinedFlushHandler pipelined = new PipelinedFlushHandler(new VFLHubFlushHandler(hub.getUrl()), 1, 4, 4, 4);
+            start = System.nanoTime();
+            for (List<BlockEvent> events : work) {
+                pipelined.flushEvents(events);
+            }
+            assertTrue(pipelined.awaitIdle(30_000));
+            long pipelinedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            pipelined.shutdown();
+
+            log.info("Flushed {} batches with {} ms hub latency: sequential {} ms, pipelined {} ms",
+                    batches, latencyMs, sequentialMs, pipelinedMs);
+            assertEquals((batches * 2 + 1) * 4, hub.requests.size());
+            // The send threads overlap requests of different batches, the sequential handler never does
+            assertTrue(hub.maxConcurrentRequests.get() > 1, hub.maxConcurrentRequests.get() + " concurrent requests");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.HubRetryPolicy;
+import dev.kuku.vfl.api.buffer.flushHandler.ResilientHubFlushHandler;
+import dev.kuku.vfl.api.buffer.flushHandler.VFLHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.util.CircuitBreaker;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+import services.StandInHub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResilientHubFlushHandlerTest {
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("block-" + i, null);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.log(new BlockLog("message " + i, block.getId(), null, LogTypeBase.INFO)));
+        }
+        return events;
+    }
+
+    @Test
+    void retriesResendTheSameBatchId() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler hubHandler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            CapturingFlushHandler fallback = new CapturingFlushHandler();
+            ResilientHubFlushHandler handler = new ResilientHubFlushHandler(hubHandler,
+                    HubRetryPolicy.exponential(3, 1, 5), 5, 60_000, fallback);
+
+            hub.failNext(2, 503);
+            handler.flushEvents(batch(3));
+
+            assertEquals(1, hub.requests.size());
+            assertEquals(3, hub.receivedBatchIds.size());
+            assertEquals(1, hub.receivedBatchIds.stream().distinct().count());
+            assertEquals(hub.requests.get(0).batchId, hub.receivedBatchIds.get(0));
+            assertEquals(Long.valueOf(2), Long.valueOf(hubHandler.getMetrics().snapshot().getRetryCount()));
+            assertEquals(0, fallback.flushCalls.get());
+            assertEquals(CircuitBreaker.State.CLOSED, handler.getCircuitState());
+        }
+    }
+
+    @Test
+    void openBreakerSendsBatchesToTheFallbackWithoutCallingTheHub() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            // One request per section, so the logs request finds the breaker opened by the blocks request
+            VFLHubFlushHandler hubHandler = new VFLHubFlushHandler(hub.getUrl(), false, false);
+            CapturingFlushHandler fallback = new CapturingFlushHandler();
+            ResilientHubFlushHandler handler = new ResilientHubFlushHandler(hubHandler,
+                    HubRetryPolicy.exponential(2, 1, 1), 2, 60_000, fallback);
+
+            hub.failNext(1000, 503);
+            for (int i = 0; i < 5; i++) {
+                handler.flushEvents(batch(2));
+            }
+
+            assertEquals(CircuitBreaker.State.OPEN, handler.getCircuitState());
+            assertEquals(2, hub.receivedBatchIds.size());
+            assertEquals(10, fallback.blocks.size());
+            assertEquals(10, fallback.logs.size());
+            assertEquals(10, handler.getFallbackRequestCount());
+        }
+    }
+
+    @Test
+    void breakerClosesAfterASuccessfulTrialRequest() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler hubHandler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            CapturingFlushHandler fallback = new CapturingFlushHandler();
+            ResilientHubFlushHandler handler = new ResilientHubFlushHandler(hubHandler,
+                    HubRetryPolicy.none(), 1, 100, fallback);
+
+            hub.failNext(1, 500);
+            handler.flushEvents(batch(1));
+            assertEquals(CircuitBreaker.State.OPEN, handler.getCircuitState());
+            handler.flushEvents(batch(1));
+            assertEquals(1, hub.receivedBatchIds.size());
+
+            Thread.sleep(150);
+            handler.flushEvents(batch(1));
+
+            assertEquals(CircuitBreaker.State.CLOSED, handler.getCircuitState());
+            assertEquals(1, hub.requests.size());
+            assertEquals(2, fallback.blocks.size());
+        }
+    }
+
+    @Test
+    void rejectedContentIsDroppedWithoutRetryOrFallback() throws Exception {
+        try (StandInHub hub = new StandInHub(0)) {
+            VFLHubFlushHandler hubHandler = new VFLHubFlushHandler(hub.getUrl(), false, true);
+            CapturingFlushHandler fallback = new CapturingFlushHandler();
+            ResilientHubFlushHandler handler = new ResilientHubFlushHandler(hubHandler,
+                    HubRetryPolicy.exponential(3, 1, 5), 1, 60_000, fallback);
+
+            hub.failNext(1, 400);
+            handler.flushEvents(batch(1));
+
+            assertEquals(1, hub.receivedBatchIds.size());
+            assertEquals(1, handler.getDroppedRequestCount());
+            assertEquals(0, fallback.flushCalls.get());
+            assertEquals(CircuitBreaker.State.CLOSED, handler.getCircuitState());
+        }
+    }
+
+    @Test
+    void backoffGrowsUpToTheMaximum() {
+        HubRetryPolicy policy = HubRetryPolicy.exponential(10, 100, 1000);
+        for (int i = 0; i < 20; i++) {
+            long first = policy.backoffMs(1);
+            assertTrue(first >= 50 && first <= 100, "first backoff " + first);
+            long third = policy.backoffMs(3);
+            assertTrue(third >= 200 && third <= 400, "third backoff " + third);
+            long tenth = policy.backoffMs(10);
+            assertTrue(tenth >= 500 && tenth <= 1000, "tenth backoff " + tenth);
+        }
+    }
+}
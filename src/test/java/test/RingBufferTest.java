@@ -0,0 +1,195 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.OverflowPolicy;
+import dev.kuku.vfl.api.buffer.RingBuffer;
+import dev.kuku.vfl.api.metrics.HistogramSnapshot;
+import dev.kuku.vfl.internal.metrics.Histogram;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.CapturingFlushHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RingBufferTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RingBufferTest.class);
+
+    @Test
+    void forceFlushDeliversEverythingPushedBeforeIt() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        RingBuffer buffer = new RingBuffer(64, 1000, 60_000, 5000, handler);
+
+        Block block = new Block("root", null);
+        buffer.pushBlock(block);
+        buffer.pushBlockEntered(block.getId(), 1);
+        buffer.pushBlockExited(block.getId(), 2);
+        buffer.pushBlockReturned(block.getId(), 3);
+        buffer.forceFlush();
+
+        assertEquals(4, handler.totalEvents());
+        assertEquals(0, buffer.getPendingEventCount());
+    }
+
+    @Test
+    void concurrentProducersWrapTheRingWithoutLosingEvents() throws InterruptedException {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        // Small ring so producers are forced to wait for the drainer
+        RingBuffer buffer = new RingBuffer(16, 8, 50, 10_000, handler);
+        int threads = 8;
+        int perThread = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < perThread; i++) {
+                    buffer.pushBlock(new Block("b", null));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffer.forceFlush();
+
+        assertEquals(threads * perThread, handler.blocks.size());
+    }
+
+    @Test
+    void shutdownFlushesPendingEventsAndStopsTheDrainer() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        RingBuffer buffer = new RingBuffer(64, 1000, 60_000, 5000, handler);
+        for (int i = 0; i < 10; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+
+        buffer.shutdown();
+        assertTrue(buffer.isTerminated());
+        assertEquals(10, handler.blocks.size());
+        assertEquals(0, buffer.getPendingEventCount());
+
+        // Pushes after shutdown are dropped instead of waiting for a drainer that is gone
+        for (int i = 0; i < 100; i++) {
+            buffer.pushBlock(new Block("late", null));
+        }
+        assertEquals(100, buffer.getMetrics().getDroppedEventCount());
+        buffer.forceFlush();
+        buffer.shutdown();
+        assertEquals(10, handler.blocks.size());
+    }
+
+    /**
+     * Reports the p99 latency of a single push as more producer threads share the ring.
+     */
+    /**
+     * Blocks every flush until released, like a hub that stopped answering.
+     */
+    static class StalledHandler extends CapturingFlushHandler {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.flushBlocks(blocks);
+        }
+    }
+
+    @Test
+    void stalledHandlerMakesProducersDropInsteadOfBlocking() {
+        StalledHandler handler = new StalledHandler();
+        RingBuffer buffer = new RingBuffer(16, 8, 60_000, 5000, OverflowPolicy.dropNewest(), handler);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            buffer.pushBlock(new Block("b", null));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs < 1000, "pushes took " + elapsedMs + " ms");
+        long dropped = buffer.getMetrics().getDroppedEventCount();
+        assertTrue(dropped > 0);
+        handler.release.countDown();
+        buffer.shutdown();
+        assertEquals(1000, handler.blocks.size() + dropped);
+    }
+
+    @Test
+    void blockingProducersGiveUpAfterTheTimeout() {
+        StalledHandler handler = new StalledHandler();
+        RingBuffer buffer = new RingBuffer(16, 8, 60_000, 5000, OverflowPolicy.block(20), handler);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            buffer.pushBlock(new Block("b", null));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long dropped = buffer.getMetrics().getDroppedEventCount();
+        assertTrue(dropped > 0);
+        // Every dropped push waited about the timeout, none waited for the handler
+        assertTrue(elapsedMs < dropped * 20 + 1000, "pushes took " + elapsedMs + " ms");
+        handler.release.countDown();
+        buffer.shutdown();
+        assertEquals(40, handler.blocks.size() + dropped);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void pushLatencyByProducerThreads() throws InterruptedException {
+        int perThread = 20_000;
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            CapturingFlushHandler handler = new CapturingFlushHandler();
+            RingBuffer buffer = new RingBuffer(1024, 256, 50, 10_000, handler);
+            Histogram pushNanos = new Histogram();
+            Block block = new Block("b", null);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        long begin = System.nanoTime();
+                        buffer.pushBlock(block);
+                        pushNanos.record(System.nanoTime() - begin);
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            start.countDown();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            buffer.shutdown();
+
+            HistogramSnapshot snapshot = pushNanos.snapshot();
+            log.info("RingBuffer push with {} producer threads: p50 {} ns, p99 {} ns, max {} ns",
+                    threads, snapshot.getPercentile(50), snapshot.getPercentile(99), snapshot.getMax());
+            assertEquals(threads * perThread, handler.blocks.size());
+        }
+    }
+}
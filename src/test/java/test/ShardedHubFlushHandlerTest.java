@@ -0,0 +1,256 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.HubCompression;
+import dev.kuku.vfl.api.buffer.flushHandler.HubWireFormat;
+import dev.kuku.vfl.api.buffer.flushHandler.ShardedHubFlushHandler;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.util.CircuitBreaker;
+import dev.kuku.vfl.internal.util.ConsistentHashRing;
+import dev.kuku.vfl.internal.util.VFLIds;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+import services.StandInHub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedHubFlushHandlerTest {
+
+    /**
+     * A root block with a child and a grandchild, split into the block-created events and the activity that a later
+     * flush carries.
+     */
+    private static final class Trace {
+        final Block root = new Block("root", null);
+        final Block child = new Block("child", root.getId());
+        final Block grandchild = new Block("grandchild", child.getId());
+
+        List<BlockEvent> created() {
+            return Arrays.asList(BlockEvent.blockCreated(root), BlockEvent.blockCreated(child),
+                    BlockEvent.blockCreated(grandchild));
+        }
+
+        List<BlockEvent> activity() {
+            List<BlockEvent> events = new ArrayList<>();
+            for (Block block : Arrays.asList(root, child, grandchild)) {
+                events.add(BlockEvent.blockEntered(block.getId(), block.getCreatedAt()));
+                events.add(BlockEvent.log(new BlockLog("in " + block.getName(), block.getId(), null, LogTypeBase.INFO)));
+                events.add(BlockEvent.blockReturned(block.getId(), block.getCreatedAt() + 1));
+            }
+            return events;
+        }
+    }
+
+    private static List<Trace> traces(int count) {
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            traces.add(new Trace());
+        }
+        return traces;
+    }
+
+    private static ShardedHubFlushHandler handler(List<StandInHub> hubs, int breakerOpenMs,
+                                                  CapturingFlushHandler fallback) {
+        List<String> urls = new ArrayList<>();
+        for (StandInHub hub : hubs) {
+            urls.add(hub.getUrl());
+        }
+        return new ShardedHubFlushHandler(urls, HubCompression.none(), HubWireFormat.BINARY, 128, 1,
+                breakerOpenMs, fallback);
+    }
+
+    /**
+     * Flushes the block-created events of all traces in one batch and their activity, shuffled, in a second one.
+     */
+    private static void flushAll(ShardedHubFlushHandler handler, List<Trace> traces) {
+        List<BlockEvent> created = new ArrayList<>();
+        List<BlockEvent> activity = new ArrayList<>();
+        for (Trace trace : traces) {
+            created.addAll(trace.created());
+            activity.addAll(trace.activity());
+        }
+        Collections.shuffle(activity);
+        handler.flushEvents(created);
+        handler.flushEvents(activity);
+    }
+
+    /**
+     * @return number of events of the trace each hub received, by hub URL
+     */
+    private static Map<String, Integer> received(List<StandInHub> hubs, Trace trace) {
+        List<String> ids = Arrays.asList(trace.root.getId(), trace.child.getId(), trace.grandchild.getId());
+        Map<String, Integer> counts = new HashMap<>();
+        for (StandInHub hub : hubs) {
+            int count = 0;
+            for (StandInHub.Request request : hub.requests) {
+                for (BlockEvent event : request.events) {
+                    if (ids.contains(event.getBlockId())) {
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                counts.put(hub.getUrl(), count);
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    void everyEventOfATraceLandsOnTheHubOwningItsRoot() throws Exception {
+        List<StandInHub> hubs = Arrays.asList(new StandInHub(0), new StandInHub(0), new StandInHub(0));
+        try {
+            ShardedHubFlushHandler handler = handler(hubs, 60_000, null);
+            List<Trace> traces = traces(90);
+            flushAll(handler, traces);
+
+            for (Trace trace : traces) {
+                Map<String, Integer> counts = received(hubs, trace);
+                assertEquals(Collections.singletonMap(handler.getEndpointFor(trace.root.getId()), 12), counts);
+            }
+            for (StandInHub hub : hubs) {
+                // Each hub owns some traces and gets one request per flush
+                assertTrue(handler.getDeliveredEventCount(hub.getUrl()) > 0);
+                assertEquals(2, hub.requests.size());
+            }
+            assertEquals(90 * 12, hubs.stream().mapToLong(h -> handler.getDeliveredEventCount(h.getUrl())).sum());
+            assertEquals(0, handler.getFailoverEventCount());
+            assertEquals(270, handler.getTrackedBlockCount());
+        } finally {
+            hubs.forEach(StandInHub::close);
+        }
+    }
+
+    @Test
+    void tracesFailOverToTheNextHubAndReturnAfterRecovery() throws Exception {
+        List<StandInHub> hubs = Arrays.asList(new StandInHub(0), new StandInHub(0));
+        try {
+            ShardedHubFlushHandler handler = handler(hubs, 200, null);
+            StandInHub down = hubs.get(0);
+            StandInHub up = hubs.get(1);
+            List<Trace> traces = traces(40);
+            List<Trace> ownedByDown = new ArrayList<>();
+            for (Trace trace : traces) {
+                if (handler.getEndpointFor(trace.root.getId()).equals(down.getUrl())) {
+                    ownedByDown.add(trace);
+                }
+            }
+            assertTrue(!ownedByDown.isEmpty());
+
+            down.failNext(1, 503);
+            flushAll(handler, traces);
+
+            // The failed part went to the other hub within the same flush
+            assertEquals(0, down.requests.size());
+            for (Trace trace : traces) {
+                assertEquals(Collections.singletonMap(up.getUrl(), 12), received(hubs, trace));
+            }
+            assertEquals(CircuitBreaker.State.OPEN, handler.getEndpointState(down.getUrl()));
+            assertEquals(ownedByDown.size() * 12L, handler.getFailoverEventCount());
+            assertEquals(0, handler.getDroppedEventCount());
+
+            // After the open period a trial request closes the breaker and the traces move back
+            Thread.sleep(250);
+            List<BlockEvent> more = new ArrayList<>();
+            for (Trace trace : ownedByDown) {
+                more.add(BlockEvent.log(new BlockLog("late", trace.grandchild.getId(), null, LogTypeBase.INFO)));
+            }
+            handler.flushEvents(more);
+            assertEquals(CircuitBreaker.State.CLOSED, handler.getEndpointState(down.getUrl()));
+            assertEquals(1, down.requests.size());
+            assertEquals(ownedByDown.size(), down.requests.get(0).events.size());
+        } finally {
+            hubs.forEach(StandInHub::close);
+        }
+    }
+
+    @Test
+    void eventsNoHubAcceptsGoToTheFallback() throws Exception {
+        List<StandInHub> hubs = Arrays.asList(new StandInHub(0), new StandInHub(0));
+        try {
+            CapturingFlushHandler fallback = new CapturingFlushHandler();
+            ShardedHubFlushHandler handler = handler(hubs, 60_000, fallback);
+            hubs.forEach(hub -> hub.failNext(1, 500));
+            flushAll(handler, traces(10));
+
+            assertEquals(120, fallback.totalEvents());
+            assertEquals(120, handler.getFallbackEventCount());
+            assertEquals(CircuitBreaker.State.OPEN, handler.getEndpointState(hubs.get(0).getUrl()));
+            assertEquals(CircuitBreaker.State.OPEN, handler.getEndpointState(hubs.get(1).getUrl()));
+            // The open breakers keep the second flush from calling either hub
+            assertEquals(2, hubs.get(0).receivedBatchIds.size() + hubs.get(1).receivedBatchIds.size());
+        } finally {
+            hubs.forEach(StandInHub::close);
+        }
+    }
+
+    @Test
+    void addingAHubOnlyMovesTracesToTheNewHub() throws Exception {
+        List<StandInHub> hubs = Arrays.asList(new StandInHub(0), new StandInHub(0), new StandInHub(0));
+        try {
+            ShardedHubFlushHandler handler = handler(hubs.subList(0, 2), 60_000, null);
+            int keys = 10_000;
+            List<String> roots = new ArrayList<>();
+            List<String> before = new ArrayList<>();
+            for (int i = 0; i < keys; i++) {
+                String root = VFLIds.next();
+                roots.add(root);
+                before.add(handler.getEndpointFor(root));
+            }
+
+            handler.addEndpoint(hubs.get(2).getUrl());
+            int moved = 0;
+            for (int i = 0; i < keys; i++) {
+                String after = handler.getEndpointFor(roots.get(i));
+                if (!after.equals(before.get(i))) {
+                    assertEquals(hubs.get(2).getUrl(), after);
+                    moved++;
+                }
+            }
+            // About a third of the traces move, none between the old hubs
+            assertTrue(moved > keys / 4 && moved < keys * 5 / 12, moved + " of " + keys + " moved");
+
+            handler.removeEndpoint(hubs.get(2).getUrl());
+            for (int i = 0; i < keys; i++) {
+                assertEquals(before.get(i), handler.getEndpointFor(roots.get(i)));
+            }
+        } finally {
+            hubs.forEach(StandInHub::close);
+        }
+    }
+
+    @Test
+    void ringSpreadsKeysEvenlyAndFailsOverClockwise() {
+        List<String> nodes = Arrays.asList("http://hub-a:8080", "http://hub-b:8080", "http://hub-c:8080",
+                "http://hub-d:8080");
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+        int[] counts = new int[nodes.size()];
+        boolean[] excluded = new boolean[nodes.size()];
+        excluded[1] = true;
+        for (int i = 0; i < 40_000; i++) {
+            String key = VFLIds.next();
+            int owner = ring.owner(key);
+            counts[owner]++;
+            List<Integer> preference = ring.preferenceList(key);
+            assertEquals(owner, preference.get(0).intValue());
+            assertEquals(nodes.size(), preference.size());
+            int failover = ring.owner(key, excluded);
+            assertEquals(owner == 1 ? preference.get(1).intValue() : owner, failover);
+        }
+        for (int count : counts) {
+            assertTrue(count > 7_000 && count < 13_000, Arrays.toString(counts));
+        }
+        Arrays.fill(excluded, true);
+        assertEquals(-1, ring.owner("any", excluded));
+    }
+}
@@ -0,0 +1,237 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.flushHandler.SpoolingFlushHandler;
+import dev.kuku.vfl.internal.buffer.spool.SegmentSpool;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpoolingFlushHandlerTest {
+
+    /**
+     * Throws while the hub is marked as down.
+     */
+    static class FlakyHub extends CapturingFlushHandler {
+        final AtomicBoolean down = new AtomicBoolean(true);
+
+        private void check() {
+            if (down.get()) {
+                throw new RuntimeException("hub unavailable");
+            }
+        }
+
+        @Override
+        public void flushLogs(List<BlockLog> logs) {
+            check();
+            super.flushLogs(logs);
+        }
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            check();
+            super.flushBlocks(blocks);
+        }
+
+        @Override
+        public void flushBlockEntered(Map<String, Long> blockIds) {
+            check();
+            super.flushBlockEntered(blockIds);
+        }
+
+        @Override
+        public void flushBlockExited(Map<String, Long> blockIds) {
+            check();
+            super.flushBlockExited(blockIds);
+        }
+
+        @Override
+        public void flushBlockReturned(Map<String, Long> blockIds) {
+            check();
+            super.flushBlockReturned(blockIds);
+        }
+    }
+
+    private static void awaitDrained(SpoolingFlushHandler handler) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.getSpooledRecordCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void spoolsDuringOutageAndReplaysInOrderAfterRecovery() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FlakyHub hub = new FlakyHub();
+        SpoolingFlushHandler handler = new SpoolingFlushHandler(hub, dir, 64 * 1024, 4, 20, 10, scheduler);
+
+        Block block = new Block("root", null);
+        BlockLog log = new BlockLog("hello", block.getId(), null, LogTypeBase.INFO);
+        handler.flushBlocks(List.of(block));
+        handler.flushLogs(List.of(log));
+        handler.flushBlockEntered(Map.of(block.getId(), 1L));
+        handler.flushBlockReturned(Map.of(block.getId(), 2L));
+
+        assertEquals(4, handler.getSpooledRecordCount());
+        assertEquals(0, hub.totalEvents());
+
+        hub.down.set(false);
+        awaitDrained(handler);
+        scheduler.shutdownNow();
+
+        assertEquals(0, handler.getSpooledRecordCount());
+        Block replayed = hub.blocks.peek();
+        assertEquals(block.getId(), replayed.getId());
+        assertEquals("root", replayed.getName());
+        BlockLog replayedLog = hub.logs.peek();
+        assertEquals(log.getId(), replayedLog.getId());
+        assertEquals("hello", replayedLog.getMessage());
+        assertNull(replayedLog.getReferencedBlockId());
+        assertEquals(Long.valueOf(2L), hub.blockReturned.get(block.getId()));
+    }
+
+    @Test
+    void partlyDeliveredBatchOnlySpoolsTheFailedSections() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        // Accepts blocks but fails logs, like a hub handler sending one request per section
+        FlakyHub hub = new FlakyHub() {
+            @Override
+            public void flushBlocks(List<Block> blocks) {
+                this.blocks.addAll(blocks);
+                flushCalls.incrementAndGet();
+            }
+        };
+        SpoolingFlushHandler handler = new SpoolingFlushHandler(hub, dir, 64 * 1024, 4, 20, 10, scheduler);
+
+        Block block = new Block("root", null);
+        handler.flushEvents(List.of(
+                BlockEvent.blockCreated(block),
+                BlockEvent.log(new BlockLog("hello", block.getId(), null, LogTypeBase.INFO)),
+                BlockEvent.blockEntered(block.getId(), 1L)));
+
+        assertEquals(1, hub.blocks.size());
+        // The log section failed, the entered section followed it into the spool
+        assertEquals(2, handler.getSpooledRecordCount());
+
+        hub.down.set(false);
+        awaitDrained(handler);
+        scheduler.shutdownNow();
+
+        assertEquals(1, hub.blocks.size());
+        assertEquals(1, hub.logs.size());
+        assertEquals(Long.valueOf(1L), hub.blockEntered.get(block.getId()));
+        assertEquals(3, hub.flushCalls.get());
+    }
+
+    @Test
+    void spoolDrainsWhileTrafficKeepsFlowingAfterOutage() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FlakyHub hub = new FlakyHub();
+        // Two backlog records per 20 ms run, well below the incoming rate
+        SpoolingFlushHandler handler = new SpoolingFlushHandler(hub, dir, 64 * 1024, 16, 20, 2, scheduler);
+        for (int i = 0; i < 20; i++) {
+            handler.flushLogs(List.of(new BlockLog("outage " + i, "block", null, LogTypeBase.INFO)));
+        }
+        assertEquals(20, handler.getSpooledRecordCount());
+        // Let a replay run fail so the outage records count as backlog
+        Thread.sleep(60);
+
+        hub.down.set(false);
+        int sent = 0;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.getSpooledRecordCount() > 0 && System.currentTimeMillis() < deadline) {
+            handler.flushLogs(List.of(new BlockLog("live " + sent++, "block", null, LogTypeBase.INFO)));
+            Thread.sleep(1);
+        }
+        assertEquals(0, handler.getSpooledRecordCount());
+
+        // With the backlog gone, calls go straight to the hub
+        handler.flushLogs(List.of(new BlockLog("direct", "block", null, LogTypeBase.INFO)));
+        scheduler.shutdownNow();
+        assertEquals(0, handler.getSpooledRecordCount());
+        assertEquals(20 + sent + 1, hub.logs.size());
+        assertEquals("outage 0", hub.logs.peek().getMessage());
+    }
+
+    @Test
+    void restartResumesFromRemainingSegments() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        ScheduledExecutorService first = Executors.newSingleThreadScheduledExecutor();
+        FlakyHub hub = new FlakyHub();
+        SpoolingFlushHandler handler = new SpoolingFlushHandler(hub, dir, 1024, 16, 20, 10, first);
+        for (int i = 0; i < 50; i++) {
+            handler.flushLogs(List.of(new BlockLog("log " + i, "block", null, LogTypeBase.INFO)));
+        }
+        first.shutdownNow();
+
+        ScheduledExecutorService second = Executors.newSingleThreadScheduledExecutor();
+        hub.down.set(false);
+        SpoolingFlushHandler restarted = new SpoolingFlushHandler(hub, dir, 1024, 16, 20, 10, second);
+        assertEquals(50, restarted.getSpooledRecordCount());
+        awaitDrained(restarted);
+        second.shutdownNow();
+
+        assertEquals(50, hub.logs.size());
+        assertEquals("log 0", hub.logs.peek().getMessage());
+    }
+
+    @Test
+    void drainedSegmentsAreDeletedAndAckedRecordsAreNotReplayedAgain() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        SegmentSpool spool = new SegmentSpool(dir, 64, 8);
+        for (int i = 0; i < 10; i++) {
+            spool.append(new byte[]{(byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        assertTrue(spool.getSegmentCount() > 1);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, spool.peek()[0]);
+            spool.ack();
+        }
+
+        SegmentSpool reopened = new SegmentSpool(dir, 64, 8);
+        assertEquals(6, reopened.getRecordCount());
+        for (int i = 4; i < 10; i++) {
+            assertEquals(i, reopened.peek()[0]);
+            reopened.ack();
+        }
+        assertNull(reopened.peek());
+        assertEquals(1, reopened.getSegmentCount());
+
+        // The truncated segment is reused, stale records behind the new one must not reappear
+        reopened.append(new byte[]{42});
+        SegmentSpool again = new SegmentSpool(dir, 64, 8);
+        assertEquals(1, again.getRecordCount());
+        assertArrayEquals(new byte[]{42}, again.peek());
+    }
+
+    @Test
+    void fullSpoolDropsOldestSegment() throws Exception {
+        Path dir = Files.createTempDirectory("vfl-spool");
+        SegmentSpool spool = new SegmentSpool(dir, 64, 2);
+        for (int i = 0; i < 20; i++) {
+            spool.append(new byte[]{(byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        assertEquals(2, spool.getSegmentCount());
+        assertTrue(spool.getDroppedRecordCount() > 0);
+        assertEquals(20, spool.getRecordCount() + spool.getDroppedRecordCount());
+    }
+}
@@ -0,0 +1,114 @@
+package test;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.kuku.vfl.internal.buffer.flushHandler.EventSections;
+import dev.kuku.vfl.internal.buffer.flushHandler.JsonEventWriter;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockEvent;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import dev.kuku.vfl.internal.models.logType.LogTypeTraceBlock;
+import dev.kuku.vfl.internal.util.ByteArrayPool;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.EventBatch;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingJsonTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingJsonTest.class);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static List<BlockEvent> batch(int blocks) {
+        List<BlockEvent> events = new ArrayList<>();
+        for (int i = 0; i < blocks; i++) {
+            Block block = new Block("OrderService.processOrder", i % 2 == 0 ? null : "parent-" + i);
+            events.add(BlockEvent.blockCreated(block));
+            events.add(BlockEvent.blockEntered(block.getId(), i));
+            events.add(BlockEvent.log(new BlockLog("Validated \"order\" \u00e9 " + i, block.getId(), null, LogTypeBase.INFO)));
+            events.add(BlockEvent.log(new BlockLog("call", block.getId(), null, "remote-" + i, LogTypeTraceBlock.TRACE_REMOTE)));
+            events.add(BlockEvent.blockExited(block.getId(), i + 1));
+            events.add(BlockEvent.blockReturned(block.getId(), i + 2));
+        }
+        return events;
+    }
+
+    private static void writeBatch(ByteArrayPool.Buffer body, EventSections sections) throws Exception {
+        try (JsonGenerator out = JSON.createGenerator(body, JsonEncoding.UTF8)) {
+            JsonEventWriter.writeBatch(out, sections);
+        }
+    }
+
+    @Test
+    void writesTheSameDocumentsAsObjectMapper() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        EventSections sections = EventSections.of(batch(20));
+        ByteArrayPool pool = new ByteArrayPool(1, 1024, 1024 * 1024);
+
+        ByteArrayPool.Buffer body = pool.acquire();
+        writeBatch(body, sections);
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(new EventBatch(sections))),
+                objectMapper.readTree(body.toByteArray()));
+        body.release();
+
+        body = pool.acquire();
+        try (JsonGenerator out = JSON.createGenerator(body, JsonEncoding.UTF8)) {
+            JsonEventWriter.writeLogs(out, sections.logs);
+        }
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(sections.logs)),
+                objectMapper.readTree(body.toByteArray()));
+        body.release();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkAllocationPerBatchAgainstWriteValueAsString() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ObjectMapper objectMapper = new ObjectMapper();
+        EventSections sections = EventSections.of(batch(200));
+        ByteArrayPool pool = new ByteArrayPool(1, 64 * 1024, 1024 * 1024);
+        int rounds = 200;
+        int payloadBytes = 0;
+        for (int i = 0; i < rounds; i++) {
+            payloadBytes = objectMapper.writeValueAsString(new EventBatch(sections)).getBytes(StandardCharsets.UTF_8).length;
+            ByteArrayPool.Buffer body = pool.acquire();
+            writeBatch(body, sections);
+            body.release();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            objectMapper.writeValueAsString(new EventBatch(sections)).getBytes(StandardCharsets.UTF_8);
+        }
+        long stringMicros = (System.nanoTime() - start) / rounds / 1000;
+        long stringBytes = (threads.getThreadAllocatedBytes(threadId) - allocated) / rounds;
+
+        allocated = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ByteArrayPool.Buffer body = pool.acquire();
+            writeBatch(body, sections);
+            body.release();
+        }
+        long streamMicros = (System.nanoTime() - start) / rounds / 1000;
+        long streamBytes = (threads.getThreadAllocatedBytes(threadId) - allocated) / rounds;
+
+        log.info("Batch of {} JSON bytes: string {} bytes allocated in {} us, streamed {} bytes allocated in {} us",
+                payloadBytes, stringBytes, stringMicros, streamBytes, streamMicros);
+        assertTrue(streamBytes * 10 < stringBytes, streamBytes + " bytes streamed against " + stringBytes);
+    }
+}
@@ -0,0 +1,64 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.StripedBuffer;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StripedBufferTest {
+
+    @Test
+    void fullStripeIsHandedOffWithoutWaitingForPeriodicFlush() throws InterruptedException {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        StripedBuffer buffer = new StripedBuffer(4, 10, 60_000, 5000,
+                Executors.newSingleThreadExecutor(), Executors.newSingleThreadScheduledExecutor(), handler);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.blocks.size() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(10, handler.blocks.size());
+        assertEquals(0, buffer.getCurrentBufferSize());
+    }
+
+    @Test
+    void forceFlushMergesEveryStripe() throws InterruptedException {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        StripedBuffer buffer = new StripedBuffer(8, 1_000_000, 60_000, 5000,
+                Executors.newFixedThreadPool(2), Executors.newSingleThreadScheduledExecutor(), handler);
+        int threads = 8;
+        int perThread = 500;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    Block block = new Block("b", null);
+                    buffer.pushBlock(block);
+                    buffer.pushBlockEntered(block.getId(), i);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffer.forceFlush();
+
+        assertEquals(threads * perThread, handler.blocks.size());
+        assertEquals(threads * perThread, handler.blockEntered.size());
+        // One merged batch means one call per non-empty collection
+        assertTrue(handler.flushCalls.get() <= 2);
+    }
+}
@@ -0,0 +1,169 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.models.BlockLog;
+import dev.kuku.vfl.internal.models.logType.LogTypeBase;
+import org.junit.jupiter.api.Test;
+import services.CapturingFlushHandler;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TraceAwareFlushTest {
+
+    private static AsynchronousBuffer traceAware(CapturingFlushHandler handler, int bufferSize) {
+        return AsynchronousBuffer.builder(handler)
+                .bufferSize(bufferSize)
+                .flushIntervalMs(60_000)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newSingleThreadExecutor())
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .traceAwareFlush(true)
+                .build();
+    }
+
+    @Test
+    void completedTraceIsFlushedWhileRunningTraceIsHeld() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = traceAware(handler, 4);
+
+        Block running = new Block("running", null);
+        buffer.pushBlock(running);
+        Block runningChild = new Block("runningChild", running.getId());
+        buffer.pushBlock(runningChild);
+        buffer.pushLog(new BlockLog("still going", runningChild.getId(), null, LogTypeBase.INFO));
+
+        Block finished = new Block("finished", null);
+        buffer.pushBlock(finished);
+        buffer.pushBlockEntered(finished.getId(), 1);
+        buffer.pushBlockExited(finished.getId(), 2);
+        buffer.pushBlockReturned(finished.getId(), 2);
+        buffer.flushTrace(finished.getId());
+        buffer.flushAsync().join();
+
+        assertEquals(1, buffer.getOpenTraceCount());
+        assertTrue(handler.blocks.stream().anyMatch(b -> b.getId().equals(finished.getId())));
+        assertTrue(handler.blockReturned.containsKey(finished.getId()));
+        // flushAsync also sends what the running trace produced so far, but keeps the trace open
+        assertEquals(1, handler.logs.size());
+        buffer.pushBlockReturned(runningChild.getId(), 3);
+        assertEquals(1, buffer.getCurrentBufferSize());
+    }
+
+    @Test
+    void readyItemsAloneTriggerTheSizeFlush() throws InterruptedException {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = traceAware(handler, 3);
+
+        Block running = new Block("running", null);
+        buffer.pushBlock(running);
+        for (int i = 0; i < 10; i++) {
+            buffer.pushLog(new BlockLog("log " + i, running.getId(), null, LogTypeBase.INFO));
+        }
+        Thread.sleep(50);
+        assertEquals(0, handler.totalEvents());
+
+        buffer.flushTrace(running.getId());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.logs.size() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, handler.logs.size());
+        assertEquals(0, buffer.getOpenTraceCount());
+    }
+
+    @Test
+    void flushTraceDoesNotWaitForTheHandler() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingFlushHandler slowHub = new CapturingFlushHandler() {
+            @Override
+            public void flushBlocks(List<Block> blocks) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.flushBlocks(blocks);
+            }
+        };
+        AsynchronousBuffer buffer = traceAware(slowHub, 1);
+
+        Block root = new Block("root", null);
+        buffer.pushBlock(root);
+        // The handler stays blocked until released, so flushTrace can only return if it does not wait for it
+        CompletableFuture<Void> flushed = CompletableFuture.runAsync(() -> buffer.flushTrace(root.getId()));
+        flushed.get(5, TimeUnit.SECONDS);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertFalse(slowHub.blocks.contains(root));
+        release.countDown();
+        buffer.forceFlush();
+        assertTrue(slowHub.blocks.contains(root));
+    }
+
+    @Test
+    void rootThatNeverCompletesIsClosedOnceStale() throws InterruptedException {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = AsynchronousBuffer.builder(handler)
+                .bufferSize(100)
+                .flushIntervalMs(60_000)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newSingleThreadExecutor())
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .traceAwareFlush(true)
+                .openTraceLimits(50, 100)
+                .build();
+
+        // The root block's advice returned early, flushTrace is never called
+        Block abandoned = new Block("abandoned", null);
+        buffer.pushBlock(abandoned);
+        Block child = new Block("child", abandoned.getId());
+        buffer.pushBlock(child);
+        buffer.pushLog(new BlockLog("before", child.getId(), null, LogTypeBase.INFO));
+        buffer.flushAsync().join();
+        assertEquals(1, buffer.getOpenTraceCount());
+
+        Thread.sleep(80);
+        buffer.pushLog(new BlockLog("late", child.getId(), null, LogTypeBase.INFO));
+        buffer.flushAsync().join();
+        assertEquals(0, buffer.getOpenTraceCount());
+        assertEquals(2, handler.logs.size());
+        assertEquals(2, handler.blocks.size());
+
+        // Items of the closed trace are now ready and no longer routed to it
+        buffer.pushBlockReturned(child.getId(), 3);
+        assertEquals(1, buffer.getCurrentBufferSize());
+        assertEquals(0, buffer.getOpenTraceCount());
+    }
+
+    @Test
+    void rootsBeyondTheOpenTraceLimitAreTreatedAsReady() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = AsynchronousBuffer.builder(handler)
+                .bufferSize(100)
+                .flushIntervalMs(60_000)
+                .flushTimeoutMs(5000)
+                .flushExecutor(Executors.newSingleThreadExecutor())
+                .periodicFlushScheduler(Executors.newSingleThreadScheduledExecutor())
+                .traceAwareFlush(true)
+                .openTraceLimits(60_000, 2)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            buffer.pushBlock(new Block("root " + i, null));
+        }
+        assertEquals(2, buffer.getOpenTraceCount());
+        buffer.flushAsync().join();
+        assertEquals(5, handler.blocks.size());
+    }
+}
@@ -0,0 +1,126 @@
+package test;
+
+import dev.kuku.vfl.internal.models.Block;
+import dev.kuku.vfl.internal.util.VFLIds;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VFLIdsTest {
+
+    private static final Logger log = LoggerFactory.getLogger(VFLIdsTest.class);
+
+    @Test
+    void idsAreUniqueTimeOrderedUuidV7() {
+        Set<String> seen = new HashSet<>();
+        long before = System.currentTimeMillis();
+        for (int i = 0; i < 10_000; i++) {
+            String id = VFLIds.next();
+            UUID uuid = UUID.fromString(id);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertTrue((uuid.getMostSignificantBits() >>> 16) >= before);
+            assertTrue(seen.add(id));
+        }
+        assertEquals(36, new Block("b", null).getId().length());
+    }
+
+    @Test
+    void sequenceIsReadBackOnlyFromLocalIds() {
+        long first = VFLIds.localSequence(VFLIds.next());
+        long second = VFLIds.localSequence(VFLIds.next());
+        assertTrue(first >= 0);
+        assertTrue(second >= 0);
+        assertNotEquals(first, second);
+
+        assertEquals(-1, VFLIds.localSequence(UUID.randomUUID().toString()));
+        assertEquals(-1, VFLIds.localSequence("not-an-id"));
+        assertEquals(-1, VFLIds.localSequence(null));
+    }
+
+    @Test
+    void reservedRangesDoNotOverlap() {
+        Set<Long> sequences = new HashSet<>();
+        for (int i = 0; i < 2_000; i++) {
+            long first = VFLIds.reserve(3);
+            for (int j = 0; j < 3; j++) {
+                assertTrue(sequences.add(first + j));
+                assertEquals(first + j, VFLIds.localSequence(VFLIds.render(System.currentTimeMillis(), first + j)));
+            }
+            assertTrue(sequences.add(VFLIds.reserve()));
+        }
+    }
+
+    @Test
+    void threadsTakingSequenceBlocksNeverShareAnId() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        Set<Long> sequences = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    sequences.add(VFLIds.localSequence(VFLIds.next()));
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, sequences.size());
+    }
+
+    /**
+     * Compares bytes allocated per block id against rendering a random {@link UUID}, as block ids were created before.
+     */
+    @Test
+    @Tag("benchmark")
+    void allocatesLessThanRandomUuidStrings() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int n = 100_000;
+        // Warm up both paths so class loading and JIT do not count
+        for (int i = 0; i < n; i++) {
+            VFLIds.next();
+            UUID.randomUUID().toString();
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < n; i++) {
+            UUID.randomUUID().toString();
+        }
+        long uuidBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < n; i++) {
+            VFLIds.next();
+        }
+        long idBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+        log.info("Allocated per id: UUID.randomUUID().toString() {} bytes, VFLIds.next() {} bytes",
+                uuidBytes / n, idBytes / n);
+        assertTrue(idBytes < uuidBytes);
+    }
+}
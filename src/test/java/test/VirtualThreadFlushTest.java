@@ -0,0 +1,204 @@
+package test;
+
+import dev.kuku.vfl.api.buffer.AsynchronousBuffer;
+import dev.kuku.vfl.api.buffer.VirtualThreadFlushExecutor;
+import dev.kuku.vfl.internal.buffer.VFLBuffer;
+import dev.kuku.vfl.internal.models.Block;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.CapturingFlushHandler;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadFlushTest {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadFlushTest.class);
+
+    /**
+     * Simulates a hub that takes a fixed time to answer every request.
+     */
+    private static class SlowHub extends CapturingFlushHandler {
+        final int latencyMs;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        SlowHub(int latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public void flushBlocks(List<Block> blocks) {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            super.flushBlocks(blocks);
+        }
+    }
+
+    @Test
+    void concurrencyLimitIsRespected() throws Exception {
+        VirtualThreadFlushExecutor executor = new VirtualThreadFlushExecutor(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(4, maxRunning.get());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+    }
+
+    @Test
+    void builtInModeFlushesEverything() {
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = new AsynchronousBuffer(10, 60_000, 5000, 8, handler);
+        for (int i = 0; i < 95; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+        buffer.forceFlush();
+        assertEquals(95, handler.blocks.size());
+        buffer.shutdown();
+    }
+
+    @Test
+    void shutdownFlushesAndStopsTheBuffersOwnExecutors() throws Exception {
+        Set<Thread> before = flushThreads();
+        CapturingFlushHandler handler = new CapturingFlushHandler();
+        AsynchronousBuffer buffer = new AsynchronousBuffer(100, 60_000, 5000, 4, handler);
+        for (int i = 0; i < 5; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+        Set<Thread> started = flushThreads();
+        started.removeAll(before);
+        assertTrue(!started.isEmpty());
+
+        buffer.shutdown();
+        assertEquals(5, handler.blocks.size());
+        // The flush and scheduler threads end once the buffer's executors are shut down
+        for (Thread thread : started) {
+            thread.join(5000);
+            assertTrue(!thread.isAlive(), thread.getName() + " still running");
+        }
+    }
+
+    @Test
+    void platformFallbackNeverStartsMoreThreadsThanTheLimit() throws Exception {
+        if (VirtualThreadFlushExecutor.isVirtualThreadSupported()) {
+            // Only older runtimes use the platform thread fallback
+            return;
+        }
+        Set<Thread> before = flushThreads();
+        VirtualThreadFlushExecutor executor = new VirtualThreadFlushExecutor(3);
+        CountDownLatch hubDown = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            executor.execute(() -> {
+                try {
+                    hubDown.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        Set<Thread> started = flushThreads();
+        started.removeAll(before);
+        assertEquals(3, started.size());
+        assertEquals(50, executor.getActiveTaskCount());
+
+        hubDown.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static Set<Thread> flushThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("vfl-flush-")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Throughput against a slow hub, comparing the fixed pool from the README with virtual thread flushing at the same
+     * concurrency limit. Only reports the timings; both sides are bounded by the hub latency and the limit.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstFixedPool() {
+        int items = 2000;
+        int batchSize = 50;
+        int hubLatencyMs = 25;
+        int concurrency = 8;
+
+        SlowHub fixedHub = new SlowHub(hubLatencyMs);
+        ExecutorService fixedPool = Executors.newFixedThreadPool(concurrency);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        long fixedMs = pushAndFlush(new AsynchronousBuffer(batchSize, 60_000, 30_000, fixedPool, scheduler, fixedHub),
+                items);
+        fixedPool.shutdown();
+        scheduler.shutdown();
+
+        SlowHub virtualHub = new SlowHub(hubLatencyMs);
+        AsynchronousBuffer virtualBuffer = new AsynchronousBuffer(batchSize, 60_000, 30_000, concurrency, virtualHub);
+        long virtualMs = pushAndFlush(virtualBuffer, items);
+        virtualBuffer.shutdown();
+
+        log.info("Flushed {} items in batches of {} with {} ms hub latency at concurrency {}: fixed pool"
+                 + " {} ms ({} items/s), virtual threads {} ms ({} items/s)",
+                items, batchSize, hubLatencyMs, concurrency,
+                fixedMs, items * 1000 / Math.max(1, fixedMs), virtualMs, items * 1000 / Math.max(1, virtualMs));
+
+        assertEquals(items, fixedHub.blocks.size());
+        assertEquals(items, virtualHub.blocks.size());
+        assertTrue(fixedHub.maxInFlight.get() <= concurrency);
+        assertTrue(virtualHub.maxInFlight.get() <= concurrency);
+    }
+
+    private static long pushAndFlush(VFLBuffer buffer, int items) {
+        long start = System.nanoTime();
+        for (int i = 0; i < items; i++) {
+            buffer.pushBlock(new Block("b" + i, null));
+        }
+        buffer.forceFlush();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}